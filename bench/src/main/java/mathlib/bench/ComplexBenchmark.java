@@ -0,0 +1,89 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+
+package mathlib.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import mathlib.Complex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * measures the Complex arithmetic on an array of numbers. Every operation
+ * creates a new object, as in the kets with Complex storage.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComplexBenchmark {
+
+    private static final int SIZE = 1024;
+
+    private Complex[] a;
+    private Complex[] b;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+	a = new Complex[SIZE];
+	b = new Complex[SIZE];
+	for (int i = 0; i < SIZE; i++) {
+	    a[i] = new Complex(Math.cos(i), Math.sin(i));
+	    b[i] = new Complex(1.0/(i+1), -0.5);
+	}
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void plus(Blackhole bh) {
+	for (int i = 0; i < SIZE; i++) bh.consume(a[i].plus(b[i]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void times(Blackhole bh) {
+	for (int i = 0; i < SIZE; i++) bh.consume(a[i].times(b[i]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void divided(Blackhole bh) {
+	for (int i = 0; i < SIZE; i++) bh.consume(a[i].divided(b[i]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void timesScalar(Blackhole bh) {
+	for (int i = 0; i < SIZE; i++) bh.consume(a[i].times(0.5));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double magnitude() {
+	double sum = 0;
+	for (int i = 0; i < SIZE; i++) sum += a[i].magnitude();
+	return sum;
+    }
+}
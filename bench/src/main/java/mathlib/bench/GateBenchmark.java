@@ -0,0 +1,85 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+
+package mathlib.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import mathlib.BinaryOp;
+import mathlib.Braket;
+import mathlib.Gate;
+import mathlib.ParallelKernel;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * measures one application of a gate to a ket by <tt>BinaryOp.implicitApply</tt>,
+ * over the register size, the gate type and the number of controls. The gates 
+ * are unitary, so the ket keeps its norm over the iterations.
+ * <p>Registers of 24 and more qubits need a heap of several GB, Complex storage
+ * (<tt>-p primitive=false</tt>) about ten times as much as primitive storage.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class GateBenchmark {
+
+    @Param({"4", "8", "12", "16", "20", "24", "26"})
+    public int qubits;
+
+    @Param({"diagonal", "antidiagonal", "general", "nxn"})
+    public String gate;
+
+    @Param({"0", "1", "2"})
+    public int controls;
+
+    @Param({"true"})
+    public boolean primitive;
+
+    /** threads of the kernels, see ParallelKernel */
+    @Param({"1"})
+    public int threads;
+
+    private Braket q;
+    private Gate g;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+	ParallelKernel.setThreads(threads);
+	q = Kets.superposition(qubits, primitive);
+	g = Kets.gate(qubits, gate, controls);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+	q = null;
+	ParallelKernel.setThreads(1);
+    }
+
+    @Benchmark
+    public Braket implicitApply() {
+	BinaryOp.implicitApply(g, q, null);
+	return q;
+    }
+}
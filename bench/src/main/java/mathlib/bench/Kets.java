@@ -0,0 +1,113 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+
+package mathlib.bench;
+
+import mathlib.*;
+
+/**
+ * helpers creating the kets and gates the benchmarks work on. Gates are parsed
+ * by a Mathlib object like in the simulator, so the matrix cache is used as in
+ * a real circuit.
+ */
+public class Kets {
+
+    /** matrices of the gate types */
+    static final String DIAGONAL = "sigma_z";
+    static final String ANTIDIAGONAL = "NOT";
+    static final String GENERAL = "H";
+    static final String NXN = "xChange";
+
+    private static Mathlib mathlib = null;
+
+    /**
+     * returns the Mathlib object, creating it on first use
+     */
+    static synchronized Mathlib mathlib() {
+	if (mathlib == null) {
+	    mathlib = new Mathlib();
+	    mathlib.evaluateExpression(NXN + "=[1 0 0 0, 0 0 1 0, 0 1 0 0, 0 0 0 1]");
+	}
+	return mathlib;
+    }
+
+    /**
+     * returns a gate on n qubits. The first <tt>controls</tt> qubits control the
+     * gate, the target is the qubit in the middle of the register (and its
+     * neighbour for 4x4 matrices), all other qubits are free.
+     * @param n number of qubits
+     * @param type one of diagonal, antidiagonal, general, nxn
+     * @param controls number of controls
+     */
+    public static Gate gate(int n, String type, int controls) {
+	String matrix;
+	if ("diagonal".equals(type)) matrix = DIAGONAL;
+	else if ("antidiagonal".equals(type)) matrix = ANTIDIAGONAL;
+	else if ("general".equals(type)) matrix = GENERAL;
+	else if ("nxn".equals(type)) matrix = NXN;
+	else throw new IllegalArgumentException("unknown gate type: " + type);
+
+	int target = n/2;
+	int width = (matrix == NXN) ? 2 : 1;
+	if (controls > target || target+width > n) 
+	    throw new IllegalArgumentException("too many qubits for " + n + " qubit register");
+
+	StringBuffer descr = new StringBuffer("{");
+	for (int k = 0; k < n; k++) {
+	    if (k > 0) descr.append(':');
+	    if (k < controls) descr.append('1');
+	    else if (k >= target && k < target+width) descr.append(matrix);
+	    else descr.append('-');
+	}
+	descr.append('}');
+	return gate(descr.toString());
+    }
+
+    /**
+     * parses a gate like <tt>{1:H:-}</tt>
+     */
+    public static Gate gate(String descr) {
+	Mathlib m = mathlib();
+	return (Gate)Mathlib.getVar(m.evaluateExpression("bench_gate=" + descr));
+    }
+
+    /**
+     * returns the uniform superposition of n qubits, i.e. every component is
+     * non zero.
+     * @param primitive selects the primitive storage
+     */
+    public static Braket superposition(int n, boolean primitive) {
+	mathlib();
+	Braket.setPrimitiveStorage(primitive);
+	Braket q = new Braket(0, n);
+	for (int k = 0; k < n; k++) {
+	    StringBuffer descr = new StringBuffer("{");
+	    for (int j = 0; j < n; j++) {
+		if (j > 0) descr.append(':');
+		descr.append((j == k) ? GENERAL : "-");
+	    }
+	    descr.append('}');
+	    BinaryOp.implicitApply(gate(descr.toString()), q, null);
+	}
+	return q;
+    }
+}
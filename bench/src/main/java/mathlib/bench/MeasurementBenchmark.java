@@ -0,0 +1,90 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+
+package mathlib.bench;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import mathlib.Braket;
+import mathlib.Decoherence;
+import mathlib.Measurement;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * measures the probability distribution of a number of measured qubits and
+ * the decoherence of a qubit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class MeasurementBenchmark {
+
+    @Param({"4", "8", "12", "16", "20"})
+    public int qubits;
+
+    /** number of qubits in the distribution */
+    @Param({"1", "4"})
+    public int measured;
+
+    @Param({"true"})
+    public boolean primitive;
+
+    private Braket template;
+    private Braket q;
+    private int[] selection;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+	template = Kets.superposition(qubits, primitive);
+	q = new Braket(template);
+	selection = new int[Math.min(measured, qubits)];
+	for (int i = 0; i < selection.length; i++) selection[i] = i;
+	random = new Random(1);
+    }
+
+    /**
+     * decoherence changes the ket, so every invocation starts from a copy.
+     */
+    @Setup(Level.Invocation)
+    public void copy() {
+	q = new Braket(template);
+    }
+
+    @Benchmark
+    public Vector probDistribution() {
+	return Measurement.getProbDistribution(q, selection);
+    }
+
+    /**
+     * a decay of the qubit in the middle of the register, i.e. its projection
+     * onto |0> with renormalization
+     */
+    @Benchmark
+    public boolean decohere() {
+	return Decoherence.decohere(q, 0, qubits/2, random);
+    }
+}
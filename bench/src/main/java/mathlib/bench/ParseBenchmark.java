@@ -0,0 +1,57 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+
+package mathlib.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import mathlib.MathObject;
+import mathlib.Parse;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * measures the parser on typical expressions of circuit files.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"1/sqrt2*[1 1, 1 -1]", 
+	    "exp(i*pi/8)*[1 0, 0 1]",
+	    "[1 0 0 0, 0 1 0 0, 0 0 0 1, 0 0 1 0]",
+	    "{1:-:H:-}"})
+    public String expression;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+	Kets.mathlib();
+    }
+
+    @Benchmark
+    public MathObject parseExpression() {
+	return Parse.parseExpression(expression);
+    }
+}
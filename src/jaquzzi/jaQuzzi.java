@@ -36,7 +36,6 @@ import javax.swing.table.*;
 import mathlib.Argument;
 import mathlib.BinaryOp;
 import mathlib.Braket;
-import mathlib.Decoherence;
 import mathlib.Gate;
 import mathlib.GateProperty;
 import mathlib.MathObject;
@@ -45,13 +44,17 @@ import mathlib.MathlibEvent;
 import mathlib.Matrix;
 import mathlib.Parse;
 import mathlib.StringArgument;
+import mathlib.Timing;
 
 import qsymbol2.ChartWindow;
+import qsymbol2.CircuitProgram;
 import qsymbol2.DataWindow;
+import qsymbol2.DensityMatrixSweep;
 import qsymbol2.GateContainer;
 import qsymbol2.GatePanel;
 import qsymbol2.GateTableModel;
 import qsymbol2.InfoPanel;
+import qsymbol2.MonteCarloSweep;
 import qsymbol2.QVarTree;
 
 /**
@@ -362,6 +365,95 @@ public class jaQuzzi extends JApplet  {
 	}
     }
 
+    /**
+     * resets the model and sets the ket and the reference ket to the given 
+     * basis state for the next repetition of the batch mode. The kets of the
+     * previous repetition are released, so that memory mapped registers do 
+     * not pile up on disk.
+     * @see Braket#release()
+     */
+    private static void restart(GateTableModel gateTableModel, int qubitState, int n) {
+	MathObject q = Mathlib.getVar("qubits");
+	MathObject refQ = Mathlib.getVar("refQubits");
+	gateTableModel.reset();
+	Parse.fireMathlibEvent("qubits", new Braket(qubitState, n), MathlibEvent.CHANGE);
+	Parse.fireMathlibEvent("refQubits", new Braket(qubitState, n), MathlibEvent.CHANGE);
+	if (q instanceof Braket) ((Braket)q).release();
+	if (refQ instanceof Braket && refQ != q) ((Braket)refQ).release();
+    }
+
+    /**
+     * runs the circuit once: resumes from the snapshot file given by the option
+     * -resume, runs to the step given by -stop (to the end if it is -1) and
+     * writes the snapshot file given by -snapshot. The files may be null.
+     * @see GateTableModel#loadState(File)
+     * @see GateTableModel#saveState(File)
+     */
+    private static void run(GateTableModel gateTableModel, File resumeFile, int stopStep,
+			    File snapshotFile) {
+	try {
+	    if (resumeFile != null) {
+		gateTableModel.loadState(resumeFile);
+		System.out.println("resumed at step " + gateTableModel.getStep() + " from " + resumeFile);
+	    }
+	    if (stopStep == -1) gateTableModel.run();
+	    else {
+		while (gateTableModel.getStep() < Math.min(stopStep, gateTableModel.getStepCount()))
+		    gateTableModel.stepForward();
+	    }
+	    if (snapshotFile != null) {
+		gateTableModel.saveState(snapshotFile);
+		System.out.println("saved step " + gateTableModel.getStep() + " to " + snapshotFile);
+	    }
+	}
+	catch (IOException e) {
+	    System.out.println(e.getMessage());
+	    System.exit(-1);
+	}
+    }
+
+    /**
+     * performs the given number of independent runs of the circuit with the
+     * current circuit properties on the given number of threads and writes the
+     * averaged results. Used by the batch mode if the option -threads is given.
+     * With density set, a single run on the density matrix replaces the runs
+     * (option -engine density); its decoherence and preparations are resets
+     * and differ from the trajectories for qubits in superpositions.
+     * @see mathlib.DensityMatrix
+     * @see MonteCarloSweep
+     * @see DensityMatrixSweep
+     */
+    private static void sweep(GateTableModel gateTableModel, File inputFile, int[] plotQubits,
+			      Braket initial, int runs, int threads, boolean density) {
+	MonteCarloSweep sweep;
+	try {
+	    if (density) 
+		sweep = new DensityMatrixSweep(new CircuitProgram(gateTableModel), 
+					       gateTableModel.getSimulationMode(), 
+					       initial, plotQubits);
+	    else 
+		sweep = new MonteCarloSweep(new CircuitProgram(gateTableModel), 
+					    gateTableModel.getSimulationMode(), 
+					    initial, plotQubits);
+	}
+	catch (IllegalArgumentException e) {
+	    System.out.println(e.getMessage());
+	    System.exit(-1);
+	    return;
+	}
+	sweep.setThreads(threads);
+	sweep.setDecayQubit(gateTableModel.getDecayQubit());
+	sweep.setSeed(Mathlib.getRandom().nextLong());
+
+	Timing timing = new Timing();
+	timing.start();
+	sweep.run(runs);
+	timing.stop();
+	System.out.println("computation done in " + 
+			   "\t"+GatePanel.elapsedTime+": "+timing.getElapsedTimeSec());
+	gateTableModel.dumpData(inputFile, plotQubits, sweep);
+    }
+
     /**
      * this method is called when the jaQuzzi class is started from the command line.
      * It creates a frame in the case of no parameters given and put the applet into
@@ -382,6 +474,12 @@ public class jaQuzzi extends JApplet  {
 	    int n = 0;
 
 	    int decayQubit = -1;
+	    int threads = 0;
+	    long seed = -1;
+	    boolean density = false;
+	    File resumeFile = null;
+	    File snapshotFile = null;
+	    int stopStep = -1;
 
 	    double val, dec, noise;
 
@@ -458,6 +556,59 @@ public class jaQuzzi extends JApplet  {
 			    System.exit(-1);
 			}
 		    }
+		    else if (s[token].endsWith("threads")){
+			token++;
+			try {
+			    threads = Integer.parseInt(s[token++]);
+			}
+			catch (Exception e) {
+			    System.out.println("error in parameter -threads");
+			    System.exit(-1);
+			}
+		    }
+		    else if (s[token].endsWith("engine")){
+			token++;
+			if (s[token].equals("density")) {
+			    density = true;
+			    System.out.println("note: -engine density resets decayed and prepared qubits; "+
+					       "the trajectories keep superpositions coherent, so the "+
+					       "results differ for them");
+			}
+			else if (s[token].equals("trajectories")) density = false;
+			else {
+			    System.out.println("error in parameter -engine");
+			    System.exit(-1);
+			}
+			token++;
+		    }
+		    else if (s[token].endsWith("seed")){
+			token++;
+			try {
+			    seed = Long.parseLong(s[token++]);
+			}
+			catch (Exception e) {
+			    System.out.println("error in parameter -seed");
+			    System.exit(-1);
+			}
+		    }
+		    else if (s[token].endsWith("resume")){
+			token++;
+			resumeFile = new File(s[token++]);
+		    }
+		    else if (s[token].endsWith("snapshot")){
+			token++;
+			snapshotFile = new File(s[token++]);
+		    }
+		    else if (s[token].endsWith("stop")){
+			token++;
+			try {
+			    stopStep = Integer.parseInt(s[token++]);
+			}
+			catch (Exception e) {
+			    System.out.println("error in parameter -stop");
+			    System.exit(-1);
+			}
+		    }
 		    else {
 			System.out.println("invalid parameter: " + s[token]);
 			System.exit(-1);
@@ -478,6 +629,11 @@ public class jaQuzzi extends JApplet  {
 		Mathlib mathlib = new Mathlib();
 		GateTableModel gateTableModel = new GateTableModel(mathlib);
 		gateTableModel.primitiveLoadFromFile(inputFile);
+		// the seed option overrides the seed of the circuit
+		if (seed >= 0) {
+		    gateTableModel.setCircuitProperty("seed", seed);
+		    gateTableModel.reseed();
+		}
 		// initalization value given
 		Braket qubits = (Braket) Mathlib.getVar("qubits");
 		n = qubits.n;
@@ -511,18 +667,24 @@ public class jaQuzzi extends JApplet  {
 		    decay = new Parameter(tempVal, tempVal, 1, 1);
 		}
 
+		// snapshots belong to a single run
+		if ((resumeFile != null || snapshotFile != null || stopStep != -1) && mode > 0) {
+		    System.out.println("-resume, -snapshot and -stop need mode 0 or the circuit presets");
+		    System.exit(-1);
+		}
+
 		gateTableModel.setCalcFidelity(true);
 		// circuit presets
 		if (mode == -1) {
 		    System.out.println("mode: "+mode+" sigma: "+sigma.start+" rate: "+rate.start+" decay: "+decay.start);
-		    gateTableModel.run();
+		    run(gateTableModel, resumeFile, stopStep, snapshotFile);
 		    gateTableModel.dumpData(inputFile, plotQubits);
 		}
 		// ideal mode
 		else if (mode == 0) {
 		    gateTableModel.setCircuitProperty("mode", 0);
 		    System.out.println("mode: "+mode+" sigma: "+sigma.start+" rate: "+rate.start+" decay: "+decay.start);
-		    gateTableModel.run();
+		    run(gateTableModel, resumeFile, stopStep, snapshotFile);
 		    gateTableModel.dumpData(inputFile, plotQubits);
 		}
 		// noise errors
@@ -532,11 +694,14 @@ public class jaQuzzi extends JApplet  {
 			if (sigma.steps == 1) val = sigma.start;
 			else val = sigma.start+(sigma.end-sigma.start)/(sigma.steps-1)*c;
 			gateTableModel.setCircuitProperty("sigma", val);
+			if (threads > 0 || density) {
+			    System.out.println("mode: "+mode+" sigma: "+val+" rate: "+rate.start+" decay: "+decay.start +" runs: "+sigma.rep);
+			    sweep(gateTableModel, inputFile, plotQubits, new Braket(qubitState, n), sigma.rep, threads, density);
+			    continue;
+			}
 			for (int i = 0; i < sigma.rep; i++) {
 			    System.out.println("mode: "+mode+" sigma: "+val+" rate: "+rate.start+" decay: "+decay.start +" rep: "+i);
-			    gateTableModel.reset();
-			    Parse.fireMathlibEvent("qubits", new Braket(qubitState, n), MathlibEvent.CHANGE);
-			    Parse.fireMathlibEvent("refQubits", new Braket(qubitState, n), MathlibEvent.CHANGE);
+			    restart(gateTableModel, qubitState, n);
 			    gateTableModel.run();
 			    gateTableModel.dumpData(inputFile, plotQubits);
 			}
@@ -544,12 +709,22 @@ public class jaQuzzi extends JApplet  {
 		}
 		// decoherence errors
 		else if (mode == 2) {
-		    Decoherence.presetQubit = decayQubit;
+		    gateTableModel.setDecayQubit(decayQubit);
 		    gateTableModel.setCircuitProperty("mode", 2);
 		    for (int c = 0; c < rate.steps; c++) {
 			if (rate.steps == 1) val = rate.start;
 			else val = rate.start+(rate.end-rate.start)/(rate.steps-1)*c;
 			gateTableModel.setCircuitProperty("rate", val);
+			if (threads > 0 || density) {
+			    for (int d = 0; d < decay.steps; d++) {
+				if (decay.steps == 1) tempVal = decay.start;
+				else tempVal = decay.start+(decay.end-decay.start)/(decay.steps-1)*d;
+				gateTableModel.setCircuitProperty("decay", tempVal);
+				System.out.println("mode: "+mode+" sigma: "+sigma.start+" rate: "+val+" decay: "+tempVal +" runs: "+rate.rep*decay.rep);
+				sweep(gateTableModel, inputFile, plotQubits, new Braket(qubitState, n), rate.rep*decay.rep, threads, density);
+			    }
+			    continue;
+			}
 			for (int i = 0; i < rate.rep; i++) {
 			    for (int d = 0; d < decay.steps; d++) {
 				if (decay.steps == 1) tempVal = decay.start;
@@ -557,9 +732,7 @@ public class jaQuzzi extends JApplet  {
 				gateTableModel.setCircuitProperty("decay", tempVal);
 				for (int k = 0; k < decay.rep; k++) {
 				    System.out.println("mode: "+mode+" sigma: "+sigma.start+" rate: "+val+" decay: "+tempVal +" rep: "+i+"-"+k);
-				    gateTableModel.reset();
-				    Parse.fireMathlibEvent("qubits", new Braket(qubitState, n), MathlibEvent.CHANGE);
-				    Parse.fireMathlibEvent("refQubits", new Braket(qubitState, n), MathlibEvent.CHANGE);
+				    restart(gateTableModel, qubitState, n);
 				    gateTableModel.run();
 				    gateTableModel.dumpData(inputFile, plotQubits);
 				}
@@ -569,12 +742,28 @@ public class jaQuzzi extends JApplet  {
 		}
 		// both errors
 		else if (mode == 3) {
-		    Decoherence.presetQubit = decayQubit;
+		    gateTableModel.setDecayQubit(decayQubit);
 		    gateTableModel.setCircuitProperty("mode", 3);
 		    for (int b = 0; b < sigma.steps; b++) {
 			if (sigma.steps == 1) noise = sigma.start;
 			else noise = sigma.start + (sigma.end-sigma.start)/(sigma.steps-1)*b;
 			gateTableModel.setCircuitProperty("sigma", noise);
+			if (threads > 0 || density) {
+			    for (int c = 0; c < rate.steps; c++) {
+				if (rate.steps == 1) val = rate.start;
+				else val = rate.start+(rate.end-rate.start)/(rate.steps-1)*c;
+				gateTableModel.setCircuitProperty("rate", val);
+				for (int d = 0; d < decay.steps; d++) {
+				    if (decay.steps == 1) dec = decay.start;
+				    else dec = decay.start+(decay.end-decay.start)/(decay.steps-1)*d;
+				    gateTableModel.setCircuitProperty("decay", dec);
+				    System.out.println("mode: "+mode+" sigma: "+noise+" rate: "+val+" decay: "+dec +" runs: "+sigma.rep*rate.rep*decay.rep);
+				    sweep(gateTableModel, inputFile, plotQubits, new Braket(qubitState, n), 
+					  sigma.rep*rate.rep*decay.rep, threads, density);
+				}
+			    }
+			    continue;
+			}
 			for (int j = 0; j < sigma.rep; j++) {
 			    for (int c = 0; c < rate.steps; c++) {
 				if (rate.steps == 1) val = rate.start;
@@ -587,9 +776,7 @@ public class jaQuzzi extends JApplet  {
 					gateTableModel.setCircuitProperty("decay", dec);
 					for (int k = 0; k < decay.rep; k++) {
 					    System.out.println("mode: "+mode+" sigma: "+noise+" rate: "+val+" decay: "+dec +" rep: "+j+"-"+i+"-"+k);
-					    gateTableModel.reset();
-					    Parse.fireMathlibEvent("qubits", new Braket(qubitState, n), MathlibEvent.CHANGE);
-					    Parse.fireMathlibEvent("refQubits", new Braket(qubitState, n), MathlibEvent.CHANGE);
+					    restart(gateTableModel, qubitState, n);
 					    gateTableModel.run();
 					    gateTableModel.dumpData(inputFile, plotQubits);
 					}
@@ -945,9 +1132,11 @@ public class jaQuzzi extends JApplet  {
 	public void actionPerformed(ActionEvent actionEvent) {
 	    if (gatePanel.gates.isCalculationRunning() == true) return;
 	    JaqFileFilter ff = new JaqFileFilter();
+	    JaqFileFilter jqbff = new JaqFileFilter("jqb", "binary circuits (*.jqb)");
 	    fileChooser = new JFileChooser(".");
 	    fileChooser.setDialogType(JFileChooser.OPEN_DIALOG);
 	    fileChooser.addChoosableFileFilter(ff);
+	    fileChooser.addChoosableFileFilter(jqbff);
 	    fileChooser.addChoosableFileFilter(fileChooser.getAcceptAllFileFilter());
 	    fileChooser.setFileFilter(ff);
 	    fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
@@ -985,10 +1174,12 @@ public class jaQuzzi extends JApplet  {
 	    if (gatePanel.gates.isCalculationRunning() == true) return;
 	    if (ask || file == null) {
 		JaqFileFilter ff = new JaqFileFilter();
+		JaqFileFilter jqbff = new JaqFileFilter("jqb", "binary circuits (*.jqb)");
 		JaqFileFilter texff = new JaqFileFilter("tex", "LaTeX files (*.tex)");
 		fileChooser = new JFileChooser(".");
 		fileChooser.setDialogType(JFileChooser.SAVE_DIALOG);
 		fileChooser.addChoosableFileFilter(ff);
+		fileChooser.addChoosableFileFilter(jqbff);
 		fileChooser.addChoosableFileFilter(texff);
 		fileChooser.setFileFilter(ff);
 		fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
@@ -1003,6 +1194,12 @@ public class jaQuzzi extends JApplet  {
 			    gatePanel.gates.saveModelToFile(file);
 			    fileChanged = false; updateTitle();
 			}
+			else if (fileChooser.getFileFilter() == jqbff) {
+			    if (jqbff.getExtension(file) == null) 
+				file = new File(file.getPath()+".jqb");
+			    gatePanel.gates.saveModelToFile(file);
+			    fileChanged = false; updateTitle();
+			}
 			else {
 			    if (ff.getExtension(file) == null) 
 				file = new File(file.getPath()+".tex");
@@ -0,0 +1,310 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+
+package mathlib;
+
+import java.util.*;
+
+/**
+ * a map from basis state indices to complex amplitudes, used as sparse storage 
+ * of brakets. It is an open addressing hash table with linear probing on 
+ * primitive arrays, so no objects are created per component. Components which 
+ * become 0 are removed.
+ * <p>Indices are longs, so that registers of up to 62 qubits can be represented
+ * as long as only few components are populated.</p>
+ * @see Braket#isSparse()
+ */
+public class AmplitudeMap {
+    /** marks an empty slot */
+    private static final long EMPTY = -1;
+
+    /** indices of the components, EMPTY for free slots */
+    private long[] keys;
+    /** real and imaginary parts, interleaved */
+    private double[] values;
+    /** number of components */
+    private int size;
+    /** capacity - 1, the capacity is a power of 2 */
+    private int mask;
+
+    /**
+     * creates an empty map
+     */
+    public AmplitudeMap() {
+	this(8);
+    }
+
+    /**
+     * creates an empty map with room for the given number of components
+     */
+    public AmplitudeMap(int expected) {
+	allocate(capacity(expected));
+    }
+
+    /**
+     * copy constructor
+     */
+    public AmplitudeMap(AmplitudeMap map) {
+	keys = (long[])map.keys.clone();
+	values = (double[])map.values.clone();
+	size = map.size;
+	mask = map.mask;
+    }
+
+    /**
+     * returns the table size for the given number of components, the load 
+     * factor is kept below 1/2.
+     */
+    private static int capacity(int expected) {
+	int capacity = 16;
+	while (capacity < 2*expected) capacity <<= 1;
+	return capacity;
+    }
+
+    private void allocate(int capacity) {
+	keys = new long[capacity];
+	Arrays.fill(keys, EMPTY);
+	values = new double[2*capacity];
+	mask = capacity-1;
+	size = 0;
+    }
+
+    /**
+     * spreads the bits of the index, basis state indices differ in few bits only
+     */
+    private static int hash(long key) {
+	key *= 0x9E3779B97F4A7C15L;
+	return (int)(key ^ (key >>> 32));
+    }
+
+    /**
+     * returns the slot of the given index or -1
+     */
+    int find(long key) {
+	int i = hash(key) & mask;
+	while (keys[i] != EMPTY) {
+	    if (keys[i] == key) return i;
+	    i = (i+1) & mask;
+	}
+	return -1;
+    }
+
+    /**
+     * returns the number of non zero components
+     */
+    public int size() {
+	return size;
+    }
+
+    /**
+     * returns the number of slots, see <tt>keyAt</tt>
+     */
+    public int capacity() {
+	return keys.length;
+    }
+
+    /**
+     * returns the index held in a slot or -1 for an empty slot
+     */
+    public long keyAt(int slot) {
+	return keys[slot];
+    }
+
+    /**
+     * returns the real part of the component held in a slot
+     */
+    public double reAt(int slot) {
+	return values[2*slot];
+    }
+
+    /**
+     * returns the imaginary part of the component held in a slot
+     */
+    public double imAt(int slot) {
+	return values[2*slot+1];
+    }
+
+    /**
+     * overwrites the component held in a slot. Setting it to 0 leaves the slot
+     * occupied, see <tt>removeZeros</tt>.
+     */
+    void setAt(int slot, double re, double im) {
+	values[2*slot] = re;
+	values[2*slot+1] = im;
+    }
+
+    /**
+     * returns true if the component is not 0
+     */
+    public boolean contains(long key) {
+	return find(key) != -1;
+    }
+
+    /**
+     * returns the real part of a component
+     */
+    public double re(long key) {
+	int i = find(key);
+	return (i == -1) ? 0 : values[2*i];
+    }
+
+    /**
+     * returns the imaginary part of a component
+     */
+    public double im(long key) {
+	int i = find(key);
+	return (i == -1) ? 0 : values[2*i+1];
+    }
+
+    /**
+     * sets a component, 0 removes it
+     */
+    public void put(long key, double re, double im) {
+	if (re == 0 && im == 0) {
+	    remove(key);
+	    return;
+	}
+	int i = hash(key) & mask;
+	while (keys[i] != EMPTY) {
+	    if (keys[i] == key) {
+		values[2*i] = re;
+		values[2*i+1] = im;
+		return;
+	    }
+	    i = (i+1) & mask;
+	}
+	keys[i] = key;
+	values[2*i] = re;
+	values[2*i+1] = im;
+	if (++size > keys.length/2) rehash(2*keys.length);
+    }
+
+    /**
+     * adds re + i*im to a component
+     */
+    public void add(long key, double re, double im) {
+	int i = find(key);
+	if (i == -1) put(key, re, im);
+	else put(key, values[2*i] + re, values[2*i+1] + im);
+    }
+
+    /**
+     * sets a component to 0
+     */
+    public void remove(long key) {
+	int i = find(key);
+	if (i == -1) return;
+
+	// shift the following entries of the cluster back (no tombstones)
+	int j = i;
+	while (true) {
+	    j = (j+1) & mask;
+	    if (keys[j] == EMPTY) break;
+	    int home = hash(keys[j]) & mask;
+	    // entry j may move to i if its home slot is not in (i, j]
+	    if ((i <= j) ? (home <= i || home > j) : (home <= i && home > j)) {
+		keys[i] = keys[j];
+		values[2*i] = values[2*j];
+		values[2*i+1] = values[2*j+1];
+		i = j;
+	    }
+	}
+	keys[i] = EMPTY;
+	values[2*i] = 0;
+	values[2*i+1] = 0;
+	size--;
+    }
+
+    /**
+     * removes the components which were set to 0 by <tt>setAt</tt>
+     */
+    void removeZeros() {
+	int zeros = 0;
+	for (int i = 0; i < keys.length; i++) {
+	    if (keys[i] != EMPTY && values[2*i] == 0 && values[2*i+1] == 0) zeros++;
+	}
+	if (zeros > 0) rehash(keys.length);
+    }
+
+    /**
+     * moves all non zero components into a table of the given size
+     */
+    private void rehash(int capacity) {
+	long[] oldKeys = keys;
+	double[] oldValues = values;
+	allocate(capacity);
+	for (int i = 0; i < oldKeys.length; i++) {
+	    if (oldKeys[i] != EMPTY) put(oldKeys[i], oldValues[2*i], oldValues[2*i+1]);
+	}
+    }
+
+    /**
+     * returns the indices of all components in ascending order
+     */
+    public long[] keys() {
+	long[] result = new long[size];
+	int k = 0;
+	for (int i = 0; i < keys.length; i++) {
+	    if (keys[i] != EMPTY) result[k++] = keys[i];
+	}
+	Arrays.sort(result);
+	return result;
+    }
+
+    /**
+     * returns the sum of the squared magnitudes
+     */
+    public double norm() {
+	double norm = 0;
+	for (int i = 0; i < keys.length; i++) {
+	    if (keys[i] != EMPTY) 
+		norm += values[2*i]*values[2*i] + values[2*i+1]*values[2*i+1];
+	}
+	return norm;
+    }
+
+    /**
+     * multiplies all components by a real factor
+     */
+    public void scale(double factor) {
+	for (int i = 0; i < values.length; i++) values[i] *= factor;
+	if (factor == 0) allocate(keys.length);
+    }
+
+    /**
+     * conjugates all components
+     */
+    public void conjugate() {
+	for (int i = 1; i < values.length; i += 2) {
+	    if (values[i] != 0) values[i] = -values[i];
+	}
+    }
+
+    /**
+     * negates all components
+     */
+    public void negative() {
+	for (int i = 0; i < values.length; i++) {
+	    if (values[i] != 0) values[i] = -values[i];
+	}
+    }
+}
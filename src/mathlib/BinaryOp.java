@@ -122,7 +122,7 @@ public class BinaryOp extends Operator {
 
 	    if (v2 instanceof Braket && ((Braket)v2).isBra()) s1.conjugate();
 	    for (int i = 0; i < v2.dimension; i++) {
-		result.data[i] = v2.getElement(i).times(s1);
+		result.setElement(i, v2.getElement(i).times(s1));
 	    }
 	    if (v2 instanceof Braket && ((Braket)v2).isBra()) s1.conjugate();
 	    return result;
@@ -148,7 +148,7 @@ public class BinaryOp extends Operator {
 		    result = new Braket(((Braket)v2).n);
 		else result = new Vect(v1.dimension);
 		for (int i = 0; i < v1.dimension; i++) {
-		    result.data[i] = v1.getElement(i).plus(v2.getElement(i));
+		    result.setElement(i, v1.getElement(i).plus(v2.getElement(i)));
 		}
 		if (v1.transpose) 
 		    if (!(result instanceof Braket)) result.transpose();
@@ -162,7 +162,7 @@ public class BinaryOp extends Operator {
 		else result = new Vect(v1.dimension);
 
 		for (int i = 0; i < v1.dimension; i++) {
-		    result.data[i] = v1.getElement(i).minus(v2.getElement(i));
+		    result.setElement(i, v1.getElement(i).minus(v2.getElement(i)));
 		}
 		if (v1.transpose) 
 		    if (!(result instanceof Braket)) result.transpose();
@@ -173,6 +173,22 @@ public class BinaryOp extends Operator {
 	// inner product
 	case '*': {
 	    if (v1.dimension == v2.dimension) {
+		if (v1 instanceof Braket && v2 instanceof Braket 
+		    && (((Braket)v1).isSparse() || ((Braket)v2).isSparse())) {
+		    if (((Braket)v1).n != ((Braket)v2).n) return null;
+		    return SparseKernels.product((Braket)v1, (Braket)v2);
+		}
+		if (v1 instanceof Braket && ((Braket)v1).isPrimitive() 
+		    && v2 instanceof Braket && ((Braket)v2).isPrimitive()) {
+		    double[] a1 = ((Braket)v1).amplitudes;
+		    double[] a2 = ((Braket)v2).amplitudes;
+		    double re = 0, im = 0;
+		    for (int i = 0; i < 2*v2.dimension; i += 2) {
+			re += a1[i]*a2[i] - a1[i+1]*a2[i+1];
+			im += a1[i]*a2[i+1] + a1[i+1]*a2[i];
+		    }
+		    return new Complex(re, im);
+		}
 		Complex result = new Complex();
 		for (int i = 0; i < v2.dimension; i++) {
 		    result = result.plus(v1.getElement(i).times(v2.getElement(i)));
@@ -204,7 +220,7 @@ public class BinaryOp extends Operator {
 
 		for (int i = 0; i < v1.dimension; i++) {
 		    for(int j = 0; j < v2.dimension; j++) {
-			result.data[i*v2.dimension+j] = v1.getElement(i).times(v2.getElement(j));
+			result.setElement(i*v2.dimension+j, v1.getElement(i).times(v2.getElement(j)));
 		    }
 		}
 		return result;
@@ -231,7 +247,7 @@ public class BinaryOp extends Operator {
 
 		for (int i = 0; i < v1.dimension; i++) {
 		    for(int j = 0; j < v2.dimension; j++) {
-			result.data[i*v2.dimension+j] = v1.getElement(i).times(v2.getElement(j));
+			result.setElement(i*v2.dimension+j, v1.getElement(i).times(v2.getElement(j)));
 		    }
 		}
 		return result;
@@ -374,8 +390,8 @@ public class BinaryOp extends Operator {
 		
 		for (int i = 0; i < m1.n(); i++) {
 		    for (int u = 0; u < m1.m(); u++) {
-			result.data[i] = 
-			    result.getElement(i).plus(m1.getElement(i,u).times(v2.getElement(u)));
+			result.setElement(i, 
+			    result.getElement(i).plus(m1.getElement(i,u).times(v2.getElement(u))));
 		    }
 		}
 		if (!(result instanceof Braket)) result.transpose();
@@ -399,109 +415,12 @@ public class BinaryOp extends Operator {
     }
 
     /**
-     * gate-vector operations (*)
+     * gate-vector operations (*). Gates are applied to kets by 
+     * <tt>implicitApply</tt>, so this returns null.
+     * @see BinaryOp#implicitApply(Gate, Braket, Matrix)
      */
     public MathObject apply(Gate g1, Vect v2) {
-	Vect result = null;
-	int dim = 0, n = 0, cs = 0;
-	int first, offset, step;
-	boolean exchange = false;
-	int[] jokers = new int[g1.n];
-	/*
-	switch (data) {
-	case '*': {
-	    if (pow(2, g1.n) == v2.dimension) {
-		
-		if (v2 instanceof Braket) result = new Braket((Braket)v2);
-		else result = new Vect(v2);
-
-
-		n = g1.n;
-		dim = pow(2, n);
-
-		first = 0;
-		step = 0;
-		offset = 0;
-
-		int j = 0;
-		for (int k = 0; k < n; k++) {
-		    switch (g1.gate_descr.charAt(k)) {
-		    case '1': cs++; first += pow(2, n-k-1); break;
-		    case 'm': offset += pow(2, n-k-1); break;
-		    case '+': {
-			if (exchange == false) offset = pow(2, n-k-1); 
-			else first = pow(2,n-k-1);
-			exchange = true; 
-		    }
-		    }
-
-		    if (g1.gate_descr.charAt(k) == '-') { 
-			jokers[j] = n-k-1;
-			j++;
-		    }
-		}
-
-		if (exchange) {
-		    boolean[] binary_counter = new boolean[n-2];
-
-		    offset = offset - first;
-
-		    for (int i = 0; i < pow(2,n-2); i++) {
-			step = 0;
-			if (n-2 > 0) {
-			    // calculate stepsize
-			    for (int l = 0; l < n-2; l++) {
-				step += (binary_counter[l]? pow(2,jokers[n-2-l-1]) : 0);
-			    } 
-
-			    // increase binary counter
-			    for(j=0;(j<n-2)&&!(binary_counter[j]=!binary_counter[j++]););
-			}
-
-
-			result.data[first+step] = v2.data[first + offset + step];
-			result.data[first + offset + step] = v2.data[first+step];
-		    }
-		
-		}
-		else if (offset != 0 || cs != 0) {
-
-		    boolean[] binary_counter = new boolean[n-cs-1];
-
-		    //		for (int l = 0; l < n-cs-1; l++) binary_counter[l] = false;
-
-
-		    for (int i = 0; i < pow(2,n-cs-1); i++) {
-			step = 0;
-			if (n-cs-1 > 0) {
-
-			    // calculate stepsize
-			    for (int l = 0; l < n-cs-1; l++) {
-				step += (binary_counter[l]? pow(2,jokers[n-cs-1-l-1]) : 0);
-			    } 
-
-			    // increase binary counter
-			    for(j=0;(j<n-cs-1)&&!(binary_counter[j]=!binary_counter[j++]););
-
-
-			    result.data[first+step] = 
-				g1.data[0][0].times(v2.data[first+step]).plus(
-			        g1.data[0][1].times(v2.data[first+offset+step]));
-			    result.data[first + offset + step] = 
-				g1.data[1][0].times(v2.data[first+step]).plus(
-			        g1.data[1][1].times(v2.data[first+offset+step]));
-			}
-
-
-		    }
-		
-		}
-	    }
-
-	}
-	}
-	*/
-	return result;
+	return null;
     }
 
 
@@ -509,19 +428,21 @@ public class BinaryOp extends Operator {
      * this method dispatches gate operation to specialized methods. It is a specialized
      * method used in the quantum simulation and is not used during a normal parse
      * process. The parameter error can be a 2x2 matrix with which the gate is modified
-     * in oder to simulate operational errors.
+     * in oder to simulate operational errors. The 2x2 and NxN kernels distribute
+     * their work with <tt>ParallelKernel</tt> if more than one thread is enabled.
      * @param g1 gate to be applied
      * @param v2 ket vector
      * @param error 2x2 matrix or null
      * @see Measurement#partialMeasurement(Braket, int)
-     * @see BinaryOp#implicitApply2x2(Gate, Braket, Matrix)
+     * @see BinaryOp#implicitApply2x2InPlace(Gate, Braket, Matrix)
      * @see BinaryOp#implicitApply2x2a(Gate, Braket)
      * @see BinaryOp#implicitApply2x2b(Gate, Braket)
      * @see BinaryOp#implicitApplyNxN(Gate, Braket)
      * @see BinaryOp#implicitApplyNxNo(Gate, Braket)
+     * @see SparseKernels
      */
     public static void implicitApply(Gate g1, Braket v2, Matrix error) {
-	if (pow(2, g1.n) == v2.dimension) {
+	if (v2.isSparse() ? g1.n == v2.n : pow(2, g1.n) == v2.dimension) {
 
 	    Mathlib.fireComputationEvent(g1, v2, 0, 0, ComputationEvent.STARTED);
 
@@ -531,24 +452,20 @@ public class BinaryOp extends Operator {
 	    int d = g1.gate_descr.indexOf('d');
 	    int measurement = g1.gate_descr.indexOf('!');
 	    if (measurement != -1) Measurement.partialMeasurement(v2, measurement);
+	    else if (v2.isSparse()) SparseKernels.apply(g1, v2, error);
 	    else {
 		// 2x2 matrix
 		if (u != -1 || d != -1)
-		    implicitApply2x2(g1, v2, null);
+		    implicitApply2x2InPlace(g1, v2, null);
 		else if (first_m != -1 && last_m == first_m) {
-		    Complex comp = new Complex(0, 0);
-		    Matrix m = g1.getMatrix();
+		    MatrixCache.Entry entry = g1.getEntry();
 
-		    if (error == null 
-			&& m.getElement(0,0).equals(comp) 
-			&& m.getElement(1,1).equals(comp))
+		    if (error == null && entry.antiDiagonal)
 			implicitApply2x2b(g1, v2);
-		    else if (error == null 
-			     && m.getElement(1,0).equals(comp) 
-			     && m.getElement(0,1).equals(comp))
+		    else if (error == null && entry.diagonal)
 			implicitApply2x2a(g1, v2);
 		    else
-			implicitApply2x2(g1, v2, error);
+			implicitApply2x2InPlace(g1, v2, error);
 		}
 		// NxN matrix
 		else if (first_m != last_m) implicitApplyNxN(g1, v2);
@@ -564,75 +481,130 @@ public class BinaryOp extends Operator {
      * this method applies a general unitary 2x2 matrix onto the corresponding 
      * subspace as specified by the Gate argument to the ket given by v2.
      * The parameter error is a 2x2 matrix with which the gate gets modified.
+     * Kept for compatibility, it is the same as <tt>implicitApply2x2InPlace</tt>.
+     * @see BinaryOp#implicitApply2x2InPlace(Gate, Braket, Matrix)
      * @see BinaryOp#implicitApply2x2a(Gate, Braket)
      */
     public static void implicitApply2x2(Gate g1, Braket v2, Matrix error){
-	int dim = 0, n = 0, cs = 0;
-	int first, offset, step;
-	int u = 0, d = 0;
-	Complex c1, c2;
-	int[] jokers = new int[g1.n];
-	Matrix m;	
-	Complex m11, m12, m21, m22;
+	implicitApply2x2InPlace(g1, v2, error);
+    }
 
-	//	System.out.println("implicitApply2x2");
+    /** coefficients of the preparation matrices [1 1, 0 0] and [0 0, 1 1] */
+    static final double[] UP = {1, 0, 1, 0, 0, 0, 0, 0};
+    static final double[] DOWN = {0, 0, 0, 0, 1, 0, 1, 0};
+
+    /**
+     * this method applies a general unitary 2x2 matrix like 
+     * <tt>implicitApply2x2</tt>, but updates the components in place. The matrix
+     * elements and the components of each pair are held in local doubles, so no
+     * objects are created except for components that have not been populated yet.
+     * @see BinaryOp#implicitApply2x2(Gate, Braket, Matrix)
+     * @see ParallelKernel
+     */
+    public static void implicitApply2x2InPlace(Gate g1, Braket v2, Matrix error){
+	v2.modified();
+	if (v2.isSparse()) {
+	    if (g1.n == v2.n) SparseKernels.apply(g1, v2, error);
+	    return;
+	}
+	int n = 0, cs = 0;
+	int first, offset;
+	int u = 0, d = 0;
+	int free = 0;
+	double[] c;
 
 	if (pow(2, g1.n) == v2.dimension) {
 		
 	    n = g1.n;
-	    dim = pow(2, n);
 
 	    first = 0;
-	    step = 0;
 	    offset = 0;
 
-	    int j = 0;
 	    for (int k = 0; k < n; k++) {
 		switch (g1.gate_descr.charAt(k)) {
-		case '1': cs++; first += pow(2, n-k-1); break;
-		case 'm': offset += pow(2, n-k-1); break;
-		case 'u': offset += pow(2, n-k-1); u = 1; break;
-		case 'd': offset += pow(2, n-k-1); d = 1; break;
-		}
-
-		if (g1.gate_descr.charAt(k) == '-') { 
-		    jokers[j] = n-k-1;
-		    j++;
+		case '1': cs++; first += (1 << (n-k-1)); break;
+		case 'm': offset += (1 << (n-k-1)); break;
+		case 'u': offset += (1 << (n-k-1)); u = 1; break;
+		case 'd': offset += (1 << (n-k-1)); d = 1; break;
+		case '-': free |= 1 << (n-k-1); break;
 		}
 	    }
 
 	    if (u != 0 && d == 0)
-		m = Matrix.parseMatrix("[1 1, 0 0]");
+		c = UP;
 	    else if (u == 0 && d != 0)
-		m = Matrix.parseMatrix("[0 0, 1 1]");
-	    else {
-		m = g1.getMatrix();
+		c = DOWN;
+	    else if (error != null)
+		c = errorCoefficients(g1, error);
+	    else c = g1.getCoefficients();
 
-		if (error != null) {
-		    BinaryOp times = new BinaryOp('*');
-		    m = (Matrix)(times.apply(m, error));
-		}
-	    }
+	    if (offset != 0 || cs != 0) apply2x2(v2, first, offset, free, c);
+	}
+    }
+
+    /**
+     * returns the coefficients of the gate matrix multiplied by the 2x2 error
+     * matrix, row major with real and imaginary parts interleaved.
+     */
+    static double[] errorCoefficients(Gate g1, Matrix error) {
+	BinaryOp times = new BinaryOp('*');
+	Matrix m = (Matrix)(times.apply(g1.getMatrix(), error));
+	double[] c = new double[8];
+	for (int i = 0; i < 4; i++) {
+	    c[2*i] = m.getElement(i/2, i%2).re;
+	    c[2*i+1] = m.getElement(i/2, i%2).im;
+	}
+	return c;
+    }
 
-	    Complex comp = new Complex(0,0);
-	    m11 = m.getElement(0, 0);
-	    m12 = m.getElement(0, 1);
-	    m21 = m.getElement(1, 0);
-	    m22 = m.getElement(1, 1);
-
-	    if (offset != 0 || cs != 0) {
-		boolean[] binary_counter = new boolean[n-cs-1];
-
-		for (int i = 0; i < pow(2,n-cs-1); i++) {
-		    step = 0;
-		    if (n-cs-1 > 0) {
-			// calculate stepsize
-			for (int l = 0; l < n-cs-1; l++) {
-			    step += (binary_counter[l]? pow(2,jokers[n-cs-1-l-1]) : 0);
-			} 
-
-			// increase binary counter
-			for(j=0;(j<n-cs-1)&&!(binary_counter[j]=!binary_counter[j++]););
+    /**
+     * the kernel of <tt>implicitApply2x2InPlace</tt>: applies the 2x2 matrix with
+     * the coefficients c to the pairs of components first+step and
+     * first+offset+step, where step runs over all submasks of free. Controlled
+     * gates on primitive storage are handled by <tt>ControlledKernels</tt>.
+     * @see CompiledGate
+     */
+    static void apply2x2(Braket v2, int first, int offset, int free, double[] c) {
+	v2.modified();
+	if (v2.isSparse()) {
+	    SparseKernels.apply2x2(v2, first, offset, c, CompiledGate.GENERAL);
+	    return;
+	}
+	if (v2.isMapped()) {
+	    MappedKernels.apply2x2(v2, first, offset, free, c, CompiledGate.GENERAL);
+	    return;
+	}
+	if (v2.amplitudes != null && first != 0) {
+	    ControlledKernels.apply2x2(v2.amplitudes, first, offset, free, c, 
+				       CompiledGate.GENERAL);
+	    return;
+	}
+	final double[] a = v2.amplitudes;
+	final Complex[] data = v2.data;
+	final int base = first, pair = offset, mask = free;
+
+	final double m11r = c[0], m11i = c[1], m12r = c[2], m12i = c[3];
+	final double m21r = c[4], m21i = c[5], m22r = c[6], m22i = c[7];
+
+	ParallelKernel.run(SubspaceIndex.size(free), new ParallelKernel.Range() {
+	    public void apply(int lo, int hi) {
+		int step = SubspaceIndex.deposit(lo, mask);
+		for (int i = lo; i < hi; i++, step = SubspaceIndex.next(step, mask)) {
+		    int i1 = base+step, i2 = base+pair+step;
+		    double c1r, c1i, c2r, c2i;
+		    Complex c1 = null, c2 = null;
+
+		    if (a != null) {
+			c1r = a[2*i1]; c1i = a[2*i1+1];
+			c2r = a[2*i2]; c2i = a[2*i2+1];
+		    }
+		    else {
+			c1 = data[i1];
+			c2 = data[i2];
+			// both components 0: do nothing!
+			if (c1 == null && c2 == null) continue;
+			c1r = (c1 == null) ? 0 : c1.re; c1i = (c1 == null) ? 0 : c1.im;
+			c2r = (c2 == null) ? 0 : c2.re; c2i = (c2 == null) ? 0 : c2.im;
 		    }
 
 		    //
@@ -640,37 +612,22 @@ public class BinaryOp extends Operator {
 		    // |       | * |    |
 		    // |m21 m22|   | c2 |
 		    // 
-
-		    // c1 == 0
-		    if (v2.data[first+step] == null) {
-			//c2 == 0
-			if (v2.data[first+offset+step] == null) {
-			    // do nothing!
-			}
-			// c2 != 0
-			else {
-			    v2.data[first+step] = m12.times(v2.data[first+offset+step]);
-			    v2.data[first+offset+step] = 
-				m22.times(v2.data[first+offset+step]);
-			}
+		    double r1 = m11r*c1r - m11i*c1i + m12r*c2r - m12i*c2i;
+		    double i1v = m11r*c1i + m11i*c1r + m12r*c2i + m12i*c2r;
+		    double r2 = m21r*c1r - m21i*c1i + m22r*c2r - m22i*c2i;
+		    double i2v = m21r*c1i + m21i*c1r + m22r*c2i + m22i*c2r;
+
+		    if (a != null) {
+			a[2*i1] = r1; a[2*i1+1] = i1v;
+			a[2*i2] = r2; a[2*i2+1] = i2v;
 		    }
-		    // c1 != 0
 		    else {
-			if (v2.data[first+offset+step] == null) {
-			    v2.data[first+offset+step] = m21.times(v2.data[first+step]);
-			    v2.data[first+step] = m11.times(v2.data[first+step]);
-			}
-			else {
-			    c1 = new Complex(v2.data[first+step]);
-			    c2 = new Complex(v2.data[first+offset+step]);
-
-			    v2.data[first+step] = m11.times(c1).plus(m12.times(c2));
-			    v2.data[first+offset+step] = m21.times(c1).plus(m22.times(c2));
-			}
+			data[i1] = new Complex(r1, i1v);
+			data[i2] = new Complex(r2, i2v);
 		    }
 		}
 	    }
-	}
+	});
     }
 
     /**
@@ -681,57 +638,67 @@ public class BinaryOp extends Operator {
      * @see BinaryOp#implicitApply2x2b(Gate, Braket)
      */
     public static void implicitApply2x2a(Gate g1, Braket v2){
-	int dim = 0, n = 0, cs = 0;
-	int first, offset, step;
-	Complex c1, c2;
-	int[] jokers = new int[g1.n];
-	Matrix m;	
-	Complex m11, m22;
+	if (v2.isSparse()) {
+	    if (g1.n == v2.n) SparseKernels.apply(g1, v2, null);
+	    return;
+	}
+	int n = 0, cs = 0;
+	int first, offset;
+	int free = 0;
 
 	//	System.out.println("implicitApply2x2a");
 
 	if (pow(2, g1.n) == v2.dimension) {
 		
 	    n = g1.n;
-	    dim = pow(2, n);
 
 	    first = 0;
-	    step = 0;
 	    offset = 0;
 
-	    int j = 0;
 	    for (int k = 0; k < n; k++) {
 		switch (g1.gate_descr.charAt(k)) {
-		case '1': cs++; first += pow(2, n-k-1); break;
-		case 'm': offset += pow(2, n-k-1); break;
-		}
-
-		if (g1.gate_descr.charAt(k) == '-') { 
-		    jokers[j] = n-k-1;
-		    j++;
+		case '1': cs++; first += (1 << (n-k-1)); break;
+		case 'm': offset += (1 << (n-k-1)); break;
+		case '-': free |= 1 << (n-k-1); break;
 		}
 	    }
-	    m = g1.getMatrix();
-	    m11 = m.getElement(0, 0);
-	    m22 = m.getElement(1, 1);
-
-	    if (offset != 0 || cs != 0) {
-		boolean[] binary_counter = new boolean[n-cs-1];
-
-		for (int i = 0; i < pow(2,n-cs-1); i++) {
-		    step = 0;
-		    if (n-cs-1 > 0) {
-
-			// calculate stepsize
-			for (int l = 0; l < n-cs-1; l++) {
-			    step += (binary_counter[l]? pow(2,jokers[n-cs-1-l-1]) : 0);
-			} 
-
-			// increase binary counter
-			for(j=0;(j<n-cs-1)&&!(binary_counter[j]=!binary_counter[j++]););
-
+	    if (offset != 0 || cs != 0)
+		apply2x2a(v2, first, offset, free, g1.getCoefficients());
+	}
+    }
 
-		    }
+    /**
+     * the kernel of <tt>implicitApply2x2a</tt>: only the diagonal coefficients
+     * of c are used.
+     * @see CompiledGate
+     */
+    static void apply2x2a(Braket v2, int first, int offset, int free, double[] c) {
+	v2.modified();
+	if (v2.isSparse()) {
+	    SparseKernels.apply2x2(v2, first, offset, c, CompiledGate.DIAGONAL);
+	    return;
+	}
+	if (v2.isMapped()) {
+	    MappedKernels.apply2x2(v2, first, offset, free, c, CompiledGate.DIAGONAL);
+	    return;
+	}
+	if (v2.amplitudes != null && first != 0) {
+	    ControlledKernels.apply2x2(v2.amplitudes, first, offset, free, c, 
+				       CompiledGate.DIAGONAL);
+	    return;
+	}
+	final double[] a = v2.amplitudes;
+	final Complex[] data = v2.data;
+	final int base = first, pair = offset, mask = free;
+	final double m11r = c[0], m11i = c[1], m22r = c[6], m22i = c[7];
+	final Complex m11 = new Complex(m11r, m11i);
+	final Complex m22 = new Complex(m22r, m22i);
+
+	ParallelKernel.run(SubspaceIndex.size(free), new ParallelKernel.Range() {
+	    public void apply(int lo, int hi) {
+		int step = SubspaceIndex.deposit(lo, mask);
+		for (int i = lo; i < hi; i++, step = SubspaceIndex.next(step, mask)) {
+		    int i1 = base+step, i2 = base+pair+step;
 
 		    //
 		    // |m11  0 |   | c1 |
@@ -739,33 +706,22 @@ public class BinaryOp extends Operator {
 		    // | 0  m22|   | c2 |
 		    // 
 
-		    // c1 == 0
-		    if (v2.data[first+step] == null) {
-			//c2 == 0
-			if (v2.data[first+offset+step] == null) {
-			    // do nothing!
-			}
-			// c2 != 0
-			else {
-			    v2.data[first+step] = null;
-			    v2.data[first+offset+step] = 
-				m22.times(v2.data[first+offset+step]);
-			}
-		    }
-		    // c1 != 0
-		    else {
-			if (v2.data[first+offset+step] == null) {
-			    v2.data[first+offset+step] = null;
-			    v2.data[first+step] = m11.times(v2.data[first+step]);
-			}
-			else {
-			    v2.data[first+step] = m11.times(v2.data[first+step]);
-			    v2.data[first+offset+step] = m22.times(v2.data[first+offset+step]);
-			}
+		    if (a != null) {
+			double c1r = a[2*i1], c1i = a[2*i1+1];
+			double c2r = a[2*i2], c2i = a[2*i2+1];
+			a[2*i1]   = m11r*c1r - m11i*c1i;
+			a[2*i1+1] = m11r*c1i + m11i*c1r;
+			a[2*i2]   = m22r*c2r - m22i*c2i;
+			a[2*i2+1] = m22r*c2i + m22i*c2r;
+			continue;
 		    }
+
+		    // c1 == 0, c2 == 0: do nothing!
+		    if (data[i1] != null) data[i1] = m11.times(data[i1]);
+		    if (data[i2] != null) data[i2] = m22.times(data[i2]);
 		}
 	    }
-	}
+	});
     }
 
 
@@ -777,58 +733,68 @@ public class BinaryOp extends Operator {
      * @see BinaryOp#implicitApply2x2a(Gate, Braket)
      */
     public static void implicitApply2x2b(Gate g1, Braket v2){
-	int dim = 0, n = 0, cs = 0;
-	int first, offset, step;
-	Complex c1, c2;
-	int[] jokers = new int[g1.n];
-	Matrix m;	
-	Complex m12, m21;
+	if (v2.isSparse()) {
+	    if (g1.n == v2.n) SparseKernels.apply(g1, v2, null);
+	    return;
+	}
+	int n = 0, cs = 0;
+	int first, offset;
+	int free = 0;
 
 	//	System.out.println("implicitApply2x2b");
 
 	if (pow(2, g1.n) == v2.dimension) {
 		
 	    n = g1.n;
-	    dim = pow(2, n);
 
 	    first = 0;
-	    step = 0;
 	    offset = 0;
 
-	    int j = 0;
 	    for (int k = 0; k < n; k++) {
 		switch (g1.gate_descr.charAt(k)) {
-		case '1': cs++; first += pow(2, n-k-1); break;
-		case 'm': offset += pow(2, n-k-1); break;
-		}
-
-		if (g1.gate_descr.charAt(k) == '-') { 
-		    jokers[j] = n-k-1;
-		    j++;
+		case '1': cs++; first += (1 << (n-k-1)); break;
+		case 'm': offset += (1 << (n-k-1)); break;
+		case '-': free |= 1 << (n-k-1); break;
 		}
 	    }
 
-	    m = g1.getMatrix();
-	    m12 = m.getElement(0, 1);
-	    m21 = m.getElement(1, 0);
-
-	    if (offset != 0 || cs != 0) {
-		boolean[] binary_counter = new boolean[n-cs-1];
-
-		for (int i = 0; i < pow(2,n-cs-1); i++) {
-		    step = 0;
-		    if (n-cs-1 > 0) {
-
-			// calculate stepsize
-			for (int l = 0; l < n-cs-1; l++) {
-			    step += (binary_counter[l]? pow(2,jokers[n-cs-1-l-1]) : 0);
-			} 
-
-			// increase binary counter
-			for(j=0;(j<n-cs-1)&&!(binary_counter[j]=!binary_counter[j++]););
-
+	    if (offset != 0 || cs != 0)
+		apply2x2b(v2, first, offset, free, g1.getCoefficients());
+	}
+    }
 
-		    }
+    /**
+     * the kernel of <tt>implicitApply2x2b</tt>: only the counter diagonal
+     * coefficients of c are used.
+     * @see CompiledGate
+     */
+    static void apply2x2b(Braket v2, int first, int offset, int free, double[] c) {
+	v2.modified();
+	if (v2.isSparse()) {
+	    SparseKernels.apply2x2(v2, first, offset, c, CompiledGate.ANTIDIAGONAL);
+	    return;
+	}
+	if (v2.isMapped()) {
+	    MappedKernels.apply2x2(v2, first, offset, free, c, CompiledGate.ANTIDIAGONAL);
+	    return;
+	}
+	if (v2.amplitudes != null && first != 0) {
+	    ControlledKernels.apply2x2(v2.amplitudes, first, offset, free, c, 
+				       CompiledGate.ANTIDIAGONAL);
+	    return;
+	}
+	final double[] a = v2.amplitudes;
+	final Complex[] data = v2.data;
+	final int base = first, pair = offset, mask = free;
+	final double m12r = c[2], m12i = c[3], m21r = c[4], m21i = c[5];
+	final Complex m12 = new Complex(m12r, m12i);
+	final Complex m21 = new Complex(m21r, m21i);
+
+	ParallelKernel.run(SubspaceIndex.size(free), new ParallelKernel.Range() {
+	    public void apply(int lo, int hi) {
+		int step = SubspaceIndex.deposit(lo, mask);
+		for (int i = lo; i < hi; i++, step = SubspaceIndex.next(step, mask)) {
+		    int i1 = base+step, i2 = base+pair+step;
 
 		    //
 		    // | 0  m12|   | c1 |
@@ -836,35 +802,23 @@ public class BinaryOp extends Operator {
 		    // |m21  0 |   | c2 |
 		    // 
 
-		    // c1 == 0
-		    if (v2.data[first+step] == null) {
-			//c2 == 0
-			if (v2.data[first+offset+step] == null) {
-			    // do nothing!
-			}
-			// c2 != 0
-			else {
-			    v2.data[first+step] = m12.times(v2.data[first+offset+step]);
-			    v2.data[first+offset+step] = null;
-				
-			}
+		    if (a != null) {
+			double c1r = a[2*i1], c1i = a[2*i1+1];
+			double c2r = a[2*i2], c2i = a[2*i2+1];
+			a[2*i1]   = m12r*c2r - m12i*c2i;
+			a[2*i1+1] = m12r*c2i + m12i*c2r;
+			a[2*i2]   = m21r*c1r - m21i*c1i;
+			a[2*i2+1] = m21r*c1i + m21i*c1r;
+			continue;
 		    }
-		    // c1 != 0
-		    else {
-			if (v2.data[first+offset+step] == null) {
-			    v2.data[first+offset+step] = m21.times(v2.data[first+step]);
-			    v2.data[first+step] = null;
-			}
-			else {
-			    c1 = new Complex(v2.data[first+step]);
 
-			    v2.data[first+step] = m12.times(v2.data[first+offset+step]);
-			    v2.data[first+offset+step] = m21.times(c1);
-			}
-		    }
+		    // c1 == 0, c2 == 0: do nothing!
+		    Complex c1 = data[i1];
+		    data[i1] = m12.times_(data[i2]);
+		    data[i2] = m21.times_(c1);
 		}
 	    }
-	}
+	});
     }
 
 
@@ -875,201 +829,182 @@ public class BinaryOp extends Operator {
      * @see BinaryOp#implicitApplyNxNo(Gate, Braket)
      */
     public static void implicitApplyNxN(Gate g1, Braket v2){
-	int dim = 0, n = 0, cs = 0, ms = 0;
-	int first, step;
-	int[] jokers = new int[g1.n];
-	int[] m = new int[g1.n];
-
-	Complex[] temp = null;
+	if (v2.isSparse()) {
+	    if (g1.n == v2.n) SparseKernels.apply(g1, v2, null);
+	    return;
+	}
+	int n = 0, cs = 0, ms = 0;
+	int first;
+	int free = 0;
+	int targets = 0;
 
 	if (pow(2, g1.n) == v2.dimension) {
 		
 	    n = g1.n;
-	    dim = pow(2, n);
 
 	    first = 0;
-	    step = 0;
 
-	    int j = 0;
 	    for (int k = 0; k < n; k++) {
 		switch (g1.gate_descr.charAt(k)) {
-		case '1': cs++; first += pow(2, n-k-1); break;
-		case 'm': m[ms] = n-k-1; ms++; break;
-		case '-': jokers[j] = n-k-1; j++; break;
+		case '1': cs++; first += (1 << (n-k-1)); break;
+		case 'm': targets |= 1 << (n-k-1); ms++; break;
+		case '-': free |= 1 << (n-k-1); break;
 		}
 	    }
 
-	    if (ms != 0 || cs != 0) {
-		boolean[] binary_counter = new boolean[ms];
-
-		int[] offsets = new int[pow(2,ms)];
-		for (int i = 0; i < pow(2, ms); i++) {
-		    // calculate steps
-		    for (int l = 0; l < ms; l++) {
-			offsets[i] += (binary_counter[l]? pow(2,m[ms-l-1]) : 0);
-		    } 
-		    // increase binary counter
-		    for(j=0;(j<ms)&&!(binary_counter[j]=!binary_counter[j++]););
-		}
+	    if (ms != 0) {
+		// fetch matrix: coefficients for primitive storage, elements otherwise
+		applyNxN(v2, first, SubspaceIndex.indices(targets), free, g1.getCoefficients(),
+			 (v2.amplitudes == null) ? g1.getMatrix() : null);
+	    }
+	}
+    }
 
-		// fetch matrix
-		Matrix matrix = null;
-		if (ms != 0) matrix = g1.getMatrix();
+    /**
+     * the kernel of <tt>implicitApplyNxN</tt>: applies the matrix to the
+     * components first+offsets[l]+step, where step runs over all submasks of
+     * free. The coefficients c are used for primitive storage, the matrix
+     * elements otherwise. Controlled gates on primitive storage are handled by 
+     * <tt>ControlledKernels</tt>.
+     * @see CompiledGate
+     */
+    static void applyNxN(Braket v2, int first, final int[] offsets, int free, 
+			 final double[] c, final Matrix matrix) {
+	v2.modified();
+	if (v2.isSparse()) {
+	    // the last offset has all target bits set
+	    SparseKernels.applyNxN(v2, first, offsets[offsets.length-1], c);
+	    return;
+	}
+	if (v2.isMapped()) {
+	    MappedKernels.applyNxN(v2, first, offsets, free, c);
+	    return;
+	}
+	if (v2.amplitudes != null && first != 0) {
+	    ControlledKernels.applyNxN(v2.amplitudes, first, offsets, free, c);
+	    return;
+	}
+	final int size = offsets.length;
 
-		// reinitialize binary counter
-		binary_counter = new boolean[n-cs-ms];
+	final double[] a = v2.amplitudes;
+	final Complex[] data = v2.data;
+	final int base = first, mask = free;
 
-		for (int i = 0; i < pow(2,n-cs-ms); i++) {
-		    step = 0;
-		    if (n-cs-ms > 0) {
-			// calculate stepsize
-			for (int l = 0; l < n-cs-ms; l++) {
-			    step += (binary_counter[l]? pow(2,jokers[n-cs-ms-l-1]) : 0);
-			} 
+	ParallelKernel.run(SubspaceIndex.size(free), new ParallelKernel.Range() {
+	    public void apply(int lo, int hi) {
+		// working copy of the subspace
+		double[] tmp = new double[2*size];
+		Complex[] temp = new Complex[size];
 
-			// increase binary counter
-			for(j=0;(j<n-cs-ms)&&!(binary_counter[j]=!binary_counter[j++]););
+		int step = SubspaceIndex.deposit(lo, mask);
+		for (int i = lo; i < hi; i++, step = SubspaceIndex.next(step, mask)) {
+
+		    if (a != null) {
+			for (int l = 0; l < size; l++) {
+			    tmp[2*l] = a[2*(base+offsets[l]+step)];
+			    tmp[2*l+1] = a[2*(base+offsets[l]+step)+1];
+			}
+			for (int l = 0; l < size; l++) {
+			    double re = 0, im = 0;
+			    for (int k = 0; k < size; k++) {
+				double mr = c[2*(l*size+k)], mi = c[2*(l*size+k)+1];
+				re += mr*tmp[2*k] - mi*tmp[2*k+1];
+				im += mr*tmp[2*k+1] + mi*tmp[2*k];
+			    }
+			    a[2*(base+offsets[l]+step)] = re;
+			    a[2*(base+offsets[l]+step)+1] = im;
+			}
+			continue;
 		    }
 
 		    // get values from ket
-		    temp = new Complex[ms*2];
-		    for (int l = 0; l < ms; l++) {
-			if (v2.data[first+offsets[2*l]+step] == null)
-			    temp[2*l] = null;
-			else 
-			    temp[2*l] = new Complex(v2.data[first+offsets[2*l]+step]);
-
-			if (v2.data[first+offsets[2*l+1]+step] == null)
-			    temp[2*l+1] = null;
-			else
-			    temp[2*l+1] = new Complex(v2.data[first+offsets[2*l+1]+step]);
+		    for (int l = 0; l < size; l++) {
+			Complex c = data[base+offsets[l]+step];
+			temp[l] = (c == null) ? null : new Complex(c);
 		    }
 
 		    // do calculation
-		    for (int l = 0; l < ms; l++) {
-			v2.data[first+offsets[2*l]+step] = 
-			    matrix.getElement(2*l,0).times_(temp[0]);
-			v2.data[first+offsets[2*l+1]+step] = 
-			    matrix.getElement(2*l+1,0).times_(temp[0]);
-
-			for (int k = 1; k < 2*ms; k++) {
-			    if (v2.data[first+offsets[2*l]+step] == null)
-				v2.data[first+offsets[2*l]+step] = 
-				    matrix.getElement(2*l,k).times_(temp[k]);
-			    else
-				v2.data[first+offsets[2*l]+step] = 
-				    v2.data[first+offsets[2*l]+step].
-				    plus_(matrix.getElement(2*l,k).times_(temp[k]));
+		    for (int l = 0; l < size; l++) {
+			int index = base+offsets[l]+step;
+			data[index] = matrix.getElement(l,0).times_(temp[0]);
 
-			    if (v2.data[first+offsets[2*l+1]+step] == null)
-				v2.data[first+offsets[2*l+1]+step] = 
-				    matrix.getElement(2*l+1,k).times_(temp[k]);
+			for (int k = 1; k < size; k++) {
+			    if (data[index] == null)
+				data[index] = matrix.getElement(l,k).times_(temp[k]);
 			    else
-				v2.data[first+offsets[2*l+1]+step] = 
-				    v2.data[first+offsets[2*l+1]+step].
-				    plus_(matrix.getElement(2*l+1,k).times_(temp[k]));
+				data[index] = 
+				    data[index].plus_(matrix.getElement(l,k).times_(temp[k]));
 			}
 		    }
 		}
-		
 	    }
+	});
+    }
+
+    /**
+     * applies a sequence of diagonal 2x2 matrices in a single pass over the ket
+     * v2. Matrix j acts on the components with all bits of controls[j] set and
+     * multiplies them by c[4*j], c[4*j+1] if the bit targets[j] is clear and by
+     * c[4*j+2], c[4*j+3] otherwise. Since diagonal matrices commute, the order
+     * of the sequence does not matter.
+     * @see CompiledGate#fuse(CompiledGate, CompiledGate)
+     */
+    static void applyDiagonals(Braket v2, final long[] controls, final long[] targets, 
+			       final double[] c) {
+	v2.modified();
+	if (v2.isSparse()) {
+	    SparseKernels.applyDiagonals(v2, controls, targets, c);
+	    return;
+	}
+	if (v2.isMapped()) {
+	    MappedKernels.applyDiagonals(v2, controls, targets, c);
+	    return;
 	}
+	final double[] a = v2.amplitudes;
+	final Complex[] data = v2.data;
+	final int count = controls.length;
+
+	ParallelKernel.run(v2.dimension, new ParallelKernel.Range() {
+	    public void apply(int lo, int hi) {
+		for (int i = lo; i < hi; i++) {
+		    // component 0: do nothing!
+		    if (a == null && data[i] == null) continue;
+
+		    // accumulate the phase of all matrices acting on component i
+		    double pr = 1, pi = 0;
+		    for (int j = 0; j < count; j++) {
+			if ((i & controls[j]) != controls[j]) continue;
+			int k = ((i & targets[j]) == 0) ? 4*j : 4*j+2;
+			double t = pr*c[k] - pi*c[k+1];
+			pi = pr*c[k+1] + pi*c[k];
+			pr = t;
+		    }
+
+		    double re, im;
+		    if (a != null) {
+			re = a[2*i]; im = a[2*i+1];
+			a[2*i] = pr*re - pi*im;
+			a[2*i+1] = pr*im + pi*re;
+		    }
+		    else {
+			re = data[i].re; im = data[i].im;
+			data[i] = new Complex(pr*re - pi*im, pr*im + pi*re);
+		    }
+		}
+	    }
+	});
     }
 
     /**
      * this method is an optimized method for applying a general unitary NxN matrix 
      * onto the corresponding subspace as specified by the Gate argument to the ket 
-     * given by v2. It should perform better for N > 4 than the general version.
+     * given by v2. Kept for compatibility, it is the same as 
+     * <tt>implicitApplyNxN</tt>.
      * @see BinaryOp#implicitApply2x2(Gate, Braket, Matrix)
      * @see BinaryOp#implicitApplyNxN(Gate, Braket)
      */
     public static void implicitApplyNxNo(Gate g1, Braket v2){
-	int dim = 0, n = 0, cs = 0, ms = 0;
-	int first, step;
-	int[] jokers = new int[g1.n];
-	int[] m = new int[g1.n];
-
-	// make working copy...
-	Braket temp = new Braket(v2);
-
-	if (pow(2, g1.n) == v2.dimension) {
-		
-	    n = g1.n;
-	    dim = pow(2, n);
-
-	    first = 0;
-	    step = 0;
-
-	    int j = 0;
-	    for (int k = 0; k < n; k++) {
-		switch (g1.gate_descr.charAt(k)) {
-		case '1': cs++; first += pow(2, n-k-1); break;
-		case 'm': m[ms] = n-k-1; ms++; break;
-		case '-': jokers[j] = n-k-1; j++; break;
-		}
-	    }
-
-	    if (ms != 0 || cs != 0) {
-		boolean[] binary_counter = new boolean[ms];
-
-		int[] offsets = new int[pow(2,ms)];
-		for (int i = 0; i < pow(2, ms); i++) {
-		    // calculate steps
-		    for (int l = 0; l < ms; l++) {
-			offsets[i] += (binary_counter[l]? pow(2,m[ms-l-1]) : 0);
-		    } 
-		    // increase binary counter
-		    for(j=0;(j<ms)&&!(binary_counter[j]=!binary_counter[j++]););
-		}
-
-		// fetch matrix
-		Matrix matrix = null;
-		if (ms != 0) matrix = g1.getMatrix();
-
-		// reinitialize binary counter
-		binary_counter = new boolean[n-cs-ms];
-
-		for (int i = 0; i < pow(2,n-cs-ms); i++) {
-		    step = 0;
-		    if (n-cs-ms > 0) {
-			// calculate stepsize
-			for (int l = 0; l < n-cs-ms; l++) {
-			    step += (binary_counter[l]? pow(2,jokers[n-cs-ms-l-1]) : 0);
-			} 
-
-			// increase binary counter
-			for(j=0;(j<n-cs-ms)&&!(binary_counter[j]=!binary_counter[j++]););
-		    }
-
-		    // do calculation
-		    for (int l = 0; l < ms; l++) {
-			v2.data[first+offsets[2*l]+step] = 
-			    matrix.getElement(2*l,0).times_(temp.data[0]);
-			v2.data[first+offsets[2*l+1]+step] = 
-			    matrix.getElement(2*l+1,0).times_(temp.data[0]);
-
-			for (int k = 1; k < 2*ms; k++) {
-			    if (v2.data[first+offsets[2*l]+step] == null)
-				v2.data[first+offsets[2*l]+step] = 
-				    matrix.getElement(2*l,k).times_(temp.data[k]);
-			    else
-				v2.data[first+offsets[2*l]+step] = 
-				    v2.data[first+offsets[2*l]+step].
-				    plus_(matrix.getElement(2*l,k).times_(temp.data[k]));
-
-			    if (v2.data[first+offsets[2*l+1]+step] == null)
-				v2.data[first+offsets[2*l+1]+step] = 
-				    matrix.getElement(2*l+1,k).times_(temp.data[k]);
-			    else
-				v2.data[first+offsets[2*l+1]+step] = 
-				    v2.data[first+offsets[2*l+1]+step].
-				    plus_(matrix.getElement(2*l+1,k).times_(temp.data[k]));
-			}
-		    }
-		}
-		
-	    }
-	}
+	implicitApplyNxN(g1, v2);
     }
 
     /**
@@ -22,6 +22,8 @@
 
 package mathlib;
 
+import java.io.*;
+import java.util.*;
 
 /**
  * <p>Class representing a mathematical bra or ket object as introduced by the Dirac
@@ -30,8 +32,22 @@ package mathlib;
  * <tt>Vect</tt> and is the most important object for quantum computations.</p>
  * The components of the braket are not created before they are actually needed in a
  * computation.
+ * <p>Alternatively a braket can keep its components in a primitive array of
+ * interleaved real and imaginary parts (primitive storage). This needs 16 bytes per
+ * component instead of a <tt>Complex</tt> object each and allows the gate methods of
+ * <tt>BinaryOp</tt> to work without creating objects. The storage mode of newly created
+ * brakets is controlled by <tt>setPrimitiveStorage()</tt> (system variable PRIMITIVE).</p>
+ * <p>Brakets with few populated components can be kept in sparse storage, a map
+ * from the basis state to the component. Sparse storage is enabled by a positive
+ * sparse threshold (system property <tt>jaquzzi.sparse</tt>, default 0): basis 
+ * kets then start sparse, and the storage is converted to dense storage when the
+ * fraction of populated components exceeds the threshold. Registers of more than 30 qubits are always sparse; their
+ * dimension can not be given as an int, so <tt>dimension</tt> is 0 and only the
+ * methods taking long indices, the gate kernels, the measurements and the
+ * decoherence work on them.</p>
  * @see Complex#times_(Complex).
  * @see BinaryOp
+ * @see AmplitudeMap
  */
 public class Braket extends Vect {
     /**
@@ -45,15 +61,95 @@ public class Braket extends Vect {
     protected boolean bra;
 
     /**
-     * clone constructor
+     * holds the components as interleaved real and imaginary parts in case of primitive
+     * storage, otherwise null. Component i is given by amplitudes[2*i] + i*amplitudes[2*i+1].
+     */
+    protected double[] amplitudes;
+
+    /**
+     * holds the components in case of sparse storage, otherwise null.
+     */
+    protected AmplitudeMap map;
+
+    /**
+     * holds the components in case of memory mapped storage, otherwise null.
+     * @see Braket#setMapped(boolean)
+     */
+    protected MappedAmplitudes mapped;
+
+    /**
+     * counts the changes of the components
+     */
+    protected int version;
+
+    /**
+     * probability distributions of registers for the current version
+     * @see Measurement#getProbabilities(Braket, int[])
+     */
+    protected Hashtable distributions;
+
+    /**
+     * the version the distributions belong to
+     */
+    protected int distributionsVersion;
+
+    /**
+     * the largest number of qubits with dense storage
+     */
+    public static final int MAX_DENSE_QUBITS = 30;
+
+    /**
+     * storage mode of newly created brakets
+     */
+    private static boolean primitiveStorage = false;
+
+    /**
+     * fraction of populated components up to which brakets are kept sparse.
+     * 0 (the default) keeps brakets of up to 30 qubits dense.
+     */
+    private static double sparseThreshold = 
+	Double.parseDouble(System.getProperty("jaquzzi.sparse", "0"));
+
+    /**
+     * number of qubits from which dense brakets are memory mapped. 0 maps the
+     * brakets that take more than half of the maximum heap size.
+     */
+    private static int mappedQubits = 
+	Integer.parseInt(System.getProperty("jaquzzi.mapped", "0"));
+
+    /**
+     * clone constructor. The clone keeps the storage mode of the original.
      * @see Vect#Vect(MathObject)
      */
     public Braket(MathObject o) {
-	super((Vect)o);
+	super();
+	Vect v = (Vect)o;
+	this.dimension = v.dimension;
+	this.transpose = v.transpose;
 	if (o instanceof Braket) {
 	    Braket b = (Braket)o;
 	    this.bra = b.bra;
 	    this.n = b.n;
+	    if (b.map != null) {
+		map = new AmplitudeMap(b.map);
+		return;
+	    }
+	    if (b.amplitudes != null) {
+		amplitudes = (double[])b.amplitudes.clone();
+		return;
+	    }
+	    if (b.mapped != null) {
+		mapped = new MappedAmplitudes(b.mapped);
+		return;
+	    }
+	}
+	Complex zero = new Complex(0,0);
+	data = new Complex[dimension];
+	for (int i = 0; i < dimension; i++) {
+	    if (v.data[i] == null || zero.equals(v.data[i]))
+		data[i] = null;
+	    else 
+		data[i] = new Complex(v.data[i]);
 	}
     }
 
@@ -62,9 +158,28 @@ public class Braket extends Vect {
      * @param n number of qubits
      */
     public Braket(int n) {
-	super(new Double(Math.pow(2,n)).intValue());
-	bra = true;
+	this(n, n > MAX_DENSE_QUBITS);
+    }
+
+    /**
+     * constructs an empty ket vector with n qubits in sparse or dense storage.
+     * More than 30 qubits always need sparse storage.
+     * @param n number of qubits
+     * @param sparse true for sparse storage
+     */
+    public Braket(int n, boolean sparse) {
+	super();
 	this.n = n;
+	if (n > MAX_DENSE_QUBITS) {
+	    dimension = 0;
+	    map = new AmplitudeMap();
+	}
+	else {
+	    dimension = new Double(Math.pow(2,n)).intValue();
+	    if (sparse) map = new AmplitudeMap();
+	    else allocateDense();
+	}
+	bra = true;
 	transpose();
     }
 
@@ -74,11 +189,455 @@ public class Braket extends Vect {
      * @param n number of qubits
      */
     public Braket(int state, int n) {
-	super(new Double(Math.pow(2,n)).intValue());
-	data[state] = new Complex(1);
-	bra = true;
-	this.n = n;
-	transpose();
+	this((long)state, n);
+    }
+
+    /**
+     * constructs a basis ket. It is sparse if a single component is below the
+     * sparse threshold.
+     * @param state 0<= state < 2^n
+     * @param n number of qubits
+     */
+    public Braket(long state, int n) {
+	this(n, sparseThreshold*Math.pow(2, n) > 1);
+	set(state, 1, 0);
+    }
+
+    /**
+     * sets the fraction of populated components up to which brakets are kept in
+     * sparse storage. 0 disables sparse storage for up to 30 qubits.
+     * @see Braket#adaptStorage()
+     */
+    public static void setSparseThreshold(double threshold) {
+	sparseThreshold = threshold;
+    }
+
+    /**
+     * returns the fraction of populated components up to which brakets are kept
+     * in sparse storage
+     */
+    public static double getSparseThreshold() {
+	return sparseThreshold;
+    }
+
+    /**
+     * sets the storage mode for brakets created from now on.
+     * @param primitive true for primitive storage, false for Complex objects
+     */
+    public static void setPrimitiveStorage(boolean primitive) {
+	primitiveStorage = primitive;
+    }
+
+    /**
+     * @return true if newly created brakets use primitive storage
+     */
+    public static boolean getPrimitiveStorage() {
+	return primitiveStorage;
+    }
+
+    /**
+     * sets the number of qubits from which dense brakets created from now on
+     * are memory mapped. 0 maps the brakets that take more than half of the
+     * maximum heap size.
+     * @see Braket#setMapped(boolean)
+     */
+    public static void setMappedQubits(int qubits) {
+	mappedQubits = qubits;
+    }
+
+    /**
+     * returns the number of qubits from which dense brakets are memory mapped
+     */
+    public static int getMappedQubits() {
+	return mappedQubits;
+    }
+
+    /**
+     * returns true if dense brakets of n qubits are memory mapped
+     */
+    private static boolean needsMapping(int n) {
+	if (mappedQubits > 0) return n >= mappedQubits;
+	return 16.0*Math.pow(2, n) > Runtime.getRuntime().maxMemory()/2;
+    }
+
+    /**
+     * allocates dense storage for the dimension according to the storage mode
+     * for new brakets
+     */
+    private void allocateDense() {
+	if (needsMapping(n)) mapped = new MappedAmplitudes(dimension);
+	else if (primitiveStorage) amplitudes = new double[2*dimension];
+	else data = new Complex[dimension];
+    }
+
+    /**
+     * @return true if this braket keeps its components in memory mapped storage
+     */
+    public boolean isMapped() {
+	return mapped != null;
+    }
+
+    /**
+     * converts the dense storage of this braket between memory mapped and heap
+     * storage. Heap storage is primitive. Components are preserved; sparse 
+     * brakets are not changed.
+     * @param mapped true for memory mapped storage
+     */
+    public void setMapped(boolean mapped) {
+	if (map != null) return;
+	if (mapped && this.mapped == null) {
+	    MappedAmplitudes m = new MappedAmplitudes(dimension);
+	    for (int i = 0; i < dimension; i++) {
+		if (!isZero(i)) m.set(i, re(i), im(i));
+	    }
+	    this.mapped = m;
+	    amplitudes = null;
+	    data = null;
+	}
+	else if (mapped == false && this.mapped != null) {
+	    double[] a = new double[2*dimension];
+	    this.mapped.read(0, a, dimension);
+	    amplitudes = a;
+	    this.mapped.release();
+	    this.mapped = null;
+	}
+    }
+
+    /**
+     * releases memory mapped storage right away instead of when the braket is
+     * garbage collected, so that the disk space of the file is returned. The
+     * braket must not be used afterwards. Brakets with other storage are not
+     * changed.
+     * @see MappedAmplitudes#release()
+     */
+    public void release() {
+	if (mapped != null) mapped.release();
+    }
+
+    /**
+     * @return true if this braket keeps its components in primitive storage
+     */
+    public boolean isPrimitive() {
+	return amplitudes != null;
+    }
+
+    /**
+     * @return true if this braket keeps its components in sparse storage
+     */
+    public boolean isSparse() {
+	return map != null;
+    }
+
+    /**
+     * returns the number of populated components. For dense storage all 
+     * components are checked.
+     */
+    public long countNonZero() {
+	if (map != null) return map.size();
+	long count = 0;
+	for (int i = 0; i < dimension; i++) {
+	    if (!isZero(i)) count++;
+	}
+	return count;
+    }
+
+    /**
+     * returns the indices of the populated components, in no particular order
+     * for sparse storage
+     */
+    public long[] nonZeroIndices() {
+	if (map != null) return map.keys();
+	long[] indices = new long[(int)countNonZero()];
+	for (int i = 0, k = 0; i < dimension; i++) {
+	    if (!isZero(i)) indices[k++] = i;
+	}
+	return indices;
+    }
+
+    /**
+     * converts the storage of this braket between sparse and dense storage. Dense 
+     * storage is primitive or uses Complex objects depending on the storage mode 
+     * for new brakets. Components are preserved. Throws an IllegalArgumentException
+     * if a braket of more than 30 qubits is to be made dense.
+     * @param sparse true for sparse storage
+     */
+    public void setSparse(boolean sparse) throws IllegalArgumentException {
+	if (sparse && map == null) {
+	    AmplitudeMap m = new AmplitudeMap();
+	    for (int i = 0; i < dimension; i++) {
+		if (!isZero(i)) m.put(i, re(i), im(i));
+	    }
+	    map = m;
+	    amplitudes = null;
+	    if (mapped != null) mapped.release();
+	    mapped = null;
+	    data = null;
+	}
+	else if (sparse == false && map != null) {
+	    if (n > MAX_DENSE_QUBITS) 
+		throw new IllegalArgumentException("too many qubits for dense storage: " + n);
+	    AmplitudeMap m = map;
+	    map = null;
+	    allocateDense();
+	    for (int s = 0; s < m.capacity(); s++) {
+		if (m.keyAt(s) != -1) set((int)m.keyAt(s), m.reAt(s), m.imAt(s));
+	    }
+	}
+    }
+
+    /**
+     * converts the storage according to the sparse threshold: sparse brakets 
+     * with more populated components than the threshold become dense, dense ones
+     * with less than a quarter of it become sparse. The check is cheap for sparse
+     * brakets; for dense ones all components are counted, so it is only done
+     * after operations that visit all components anyway, like measurements.
+     * @see Braket#setSparseThreshold(double)
+     */
+    public void adaptStorage() {
+	if (sparseThreshold <= 0 || n > MAX_DENSE_QUBITS) return;
+	if (map != null) {
+	    if (map.size() > sparseThreshold*dimension) setSparse(false);
+	}
+	else if (countNonZero() < sparseThreshold*dimension/4) setSparse(true);
+    }
+
+    /**
+     * converts the storage of this braket. Components are preserved.
+     * @param primitive true for primitive storage, false for Complex objects
+     */
+    public void setPrimitive(boolean primitive) {
+	if (map != null || mapped != null) return;
+	if (primitive && amplitudes == null) {
+	    double[] a = new double[2*dimension];
+	    for (int i = 0; i < dimension; i++) {
+		if (data[i] != null) {
+		    a[2*i] = data[i].re;
+		    a[2*i+1] = data[i].im;
+		}
+	    }
+	    amplitudes = a;
+	    data = null;
+	}
+	else if (primitive == false && amplitudes != null) {
+	    Complex[] d = new Complex[dimension];
+	    for (int i = 0; i < dimension; i++) {
+		if (amplitudes[2*i] != 0 || amplitudes[2*i+1] != 0)
+		    d[i] = new Complex(amplitudes[2*i], amplitudes[2*i+1]);
+	    }
+	    data = d;
+	    amplitudes = null;
+	}
+    }
+
+    /**
+     * returns the number of changes of the components so far. Results derived
+     * from the components can be cached as long as the version is unchanged.
+     */
+    public int getVersion() {
+	return version;
+    }
+
+    /**
+     * marks the components as changed. Code that writes the component arrays
+     * directly, like the gate kernels, calls it before the changes.
+     */
+    public void modified() {
+	version++;
+    }
+
+    /**
+     * returns the real part of component i without creating an object.
+     */
+    public double re(int i) {
+	if (amplitudes != null) return amplitudes[2*i];
+	else if (map != null) return map.re(i);
+	else if (mapped != null) return mapped.re(i);
+	else return (data[i] == null) ? 0 : data[i].re;
+    }
+
+    /**
+     * returns the imaginary part of component i without creating an object.
+     */
+    public double im(int i) {
+	if (amplitudes != null) return amplitudes[2*i+1];
+	else if (map != null) return map.im(i);
+	else if (mapped != null) return mapped.im(i);
+	else return (data[i] == null) ? 0 : data[i].im;
+    }
+
+    /**
+     * returns the squared magnitude of component i, i.e. the probability of the basis
+     * state i.
+     */
+    public double magnitudeSquared(int i) {
+	if (amplitudes != null) 
+	    return amplitudes[2*i]*amplitudes[2*i] + amplitudes[2*i+1]*amplitudes[2*i+1];
+	else if (map != null) return map.re(i)*map.re(i) + map.im(i)*map.im(i);
+	else if (mapped != null) return mapped.re(i)*mapped.re(i) + mapped.im(i)*mapped.im(i);
+	else return (data[i] == null) ? 0 : data[i].magnitudeSquared();
+    }
+
+    /**
+     * returns true if component i has not been populated (or is exactly 0 in case of
+     * primitive storage).
+     */
+    public boolean isZero(int i) {
+	if (amplitudes != null) return amplitudes[2*i] == 0 && amplitudes[2*i+1] == 0;
+	else if (map != null) return !map.contains(i);
+	else if (mapped != null) return mapped.re(i) == 0 && mapped.im(i) == 0;
+	else return data[i] == null;
+    }
+
+    /**
+     * sets component i to re + i*im.
+     */
+    public void set(int i, double re, double im) {
+	version++;
+	if (amplitudes != null) {
+	    amplitudes[2*i] = re;
+	    amplitudes[2*i+1] = im;
+	}
+	else if (map != null) map.put(i, re, im);
+	else if (mapped != null) mapped.set(i, re, im);
+	else data[i] = new Complex(re, im);
+    }
+
+    /**
+     * sets component i to 0.
+     */
+    public void clear(int i) {
+	version++;
+	if (amplitudes != null) {
+	    amplitudes[2*i] = 0;
+	    amplitudes[2*i+1] = 0;
+	}
+	else if (map != null) map.remove(i);
+	else if (mapped != null) mapped.set(i, 0, 0);
+	else data[i] = null;
+    }
+
+    /**
+     * returns the real part of component i, also for more than 30 qubits.
+     */
+    public double re(long i) {
+	return (map != null) ? map.re(i) : re((int)i);
+    }
+
+    /**
+     * returns the imaginary part of component i, also for more than 30 qubits.
+     */
+    public double im(long i) {
+	return (map != null) ? map.im(i) : im((int)i);
+    }
+
+    /**
+     * returns the squared magnitude of component i, also for more than 30 qubits.
+     */
+    public double magnitudeSquared(long i) {
+	if (map == null) return magnitudeSquared((int)i);
+	double re = map.re(i), im = map.im(i);
+	return re*re + im*im;
+    }
+
+    /**
+     * returns true if component i is 0, also for more than 30 qubits.
+     */
+    public boolean isZero(long i) {
+	return (map != null) ? !map.contains(i) : isZero((int)i);
+    }
+
+    /**
+     * sets component i to re + i*im, also for more than 30 qubits.
+     */
+    public void set(long i, double re, double im) {
+	version++;
+	if (map != null) map.put(i, re, im);
+	else set((int)i, re, im);
+    }
+
+    /**
+     * sets component i to 0, also for more than 30 qubits.
+     */
+    public void clear(long i) {
+	version++;
+	if (map != null) map.remove(i);
+	else clear((int)i);
+    }
+
+    /**
+     * multiplies all components by a real factor.
+     */
+    public void scale(double factor) {
+	version++;
+	if (amplitudes != null) {
+	    for (int i = 0; i < 2*dimension; i++) amplitudes[i] *= factor;
+	}
+	else if (map != null) map.scale(factor);
+	else if (mapped != null) mapped.scale(factor, factor);
+	else {
+	    for (int i = 0; i < dimension; i++) {
+		if (data[i] != null) data[i] = data[i].times(factor);
+	    }
+	}
+    }
+
+    /**
+     * returns component x. In case of primitive, sparse or mapped storage a new
+     * Complex object is created, otherwise the stored object is returned.
+     * @see Vect#getElement(int)
+     */
+    public Complex getElement(int x) {
+	if (map != null) return (x >= 0 && x < dimension) ? new Complex(map.re(x), map.im(x)) : null;
+	if (mapped != null) return (x >= 0 && x < dimension) ? new Complex(mapped.re(x), mapped.im(x)) : null;
+	if (amplitudes == null) return super.getElement(x);
+	if (x >= 0 && x < dimension) return new Complex(amplitudes[2*x], amplitudes[2*x+1]);
+	else return null;
+    }
+
+    /**
+     * sets component x.
+     * @see Vect#setElement(int, Complex)
+     */
+    public void setElement(int x, Complex value) {
+	version++;
+	if (map != null || mapped != null) {
+	    if (x < 0 || x >= dimension) return;
+	    if (value == null) clear(x);
+	    else set(x, value.re, value.im);
+	}
+	else if (amplitudes == null) super.setElement(x, value);
+	else if (value == null) clear(x);
+	else set(x, value.re, value.im);
+    }
+
+    /**
+     * conjugates the braket
+     */
+    public void conjugate() {
+	version++;
+	if (map != null) map.conjugate();
+	else if (mapped != null) mapped.scale(1, -1);
+	else if (amplitudes == null) super.conjugate();
+	else {
+	    for (int i = 1; i < 2*dimension; i += 2) {
+		if (amplitudes[i] != 0) amplitudes[i] = -amplitudes[i];
+	    }
+	}
+    }
+
+    /**
+     * negates the braket
+     */
+    public void negative() {
+	version++;
+	if (map != null) map.negative();
+	else if (mapped != null) mapped.scale(-1, -1);
+	else if (amplitudes == null) super.negative();
+	else {
+	    for (int i = 0; i < 2*dimension; i++) {
+		if (amplitudes[i] != 0) amplitudes[i] = -amplitudes[i];
+	    }
+	}
     }
 
     /**
@@ -111,11 +670,8 @@ public class Braket extends Vect {
 	    b = new Braket(n);
 	    if (v.transpose == true) b.bra = false;
 	    for (int i = 0; i < v.dimension; i++) {
-		c = v.data[i];
-		if (c == null)
-		    b.data[i] = null;
-		else
-		    b.data[i] = new Complex(c);
+		c = (v.data == null) ? v.getElement(i) : v.data[i];
+		if (c != null) b.set(i, c.re, c.im);
 	    }
 	    return b;
 	}
@@ -139,7 +695,7 @@ public class Braket extends Vect {
 	Braket b = null;
 	boolean bra = true;
 	int n, dimension;
-	int state = 0;
+	long state = 0;
 
 	try {
 	    if ((str.charAt(0) == '<') 
@@ -157,10 +713,9 @@ public class Braket extends Vect {
 	n = str.length();
 
 	dimension = new Double(Math.pow(2,n)).intValue();
-	b = new Braket(n);
 
 	try {
-	    state = Integer.parseInt(str, 2);
+	    state = Long.parseLong(str, 2);
 	} catch (Exception e) {
 	    if (dimension == 2)  {
 		if (str.equals("+")) state = 0;
@@ -173,9 +728,7 @@ public class Braket extends Vect {
 		throw new NumberFormatException("binary number in between " + ((bra == false) ? "|>": "<|") + " expected!");
 	    }
 	}
-	for (int i = 0; i < dimension; i++) {
-	    b.data[i] = (i == state) ? new Complex(1) : null;
-	}
+	b = new Braket(state, n);
 	if (bra == true) b.transpose();
 	return b;
     }
@@ -215,8 +768,16 @@ public class Braket extends Vect {
      * @see Braket#toString()
      */
     public static String getBasisString(int basisState, int n, boolean bra) {
+	return getBasisString((long)basisState, n, bra);
+    }
+
+    /**
+     * returns the string representation of a basis braket like
+     * <tt>getBasisString(int, int, boolean)</tt>, also for more than 30 qubits.
+     */
+    public static String getBasisString(long basisState, int n, boolean bra) {
 	String str = new String("");
-	String binaryStr = Integer.toBinaryString(basisState);
+	String binaryStr = Long.toBinaryString(basisState);
 	str = (bra) ? "<" : "|";
 	for(int i = 1; i <= n-binaryStr.length(); i++) {
 	    str = str.concat("0");
@@ -235,36 +796,7 @@ public class Braket extends Vect {
      * @see Braket#getBasisString(int,int,boolean)
      */
     public String toString() {
-	String str = new String("");
-	Complex factor;
-
-	for (int i = 0; i < dimension; i++) {
-	    factor = data[i];
-	    if (factor != null) {
-		if ((factor.im() == 0) && (factor.re() != 0)) {
-		    str = str + ((factor.re() > 0) ? " + " : " ");
-		    str = str.concat(factor.toString());
-		    str = str.concat("*");
-		    str = str.concat(getBasisString(i, n, bra));
-		}
-		else if ((factor.re() == 0) && (factor.im() != 0)) {
-		    str = str + ((factor.im() > 0) ? " + " : " ");
-		    str = str.concat(factor.toString());
-		    str = str.concat("*");
-		    str = str.concat(getBasisString(i, n, bra));
-		}
-		else if ((factor.im() != 0) && (factor.re() != 0)) {
-		    str = str.concat(" + (");
-		    str = str.concat(factor.toString());
-		    str = str.concat(")*");
-		    str = str.concat(getBasisString(i, n, bra));
-		}
-	    }
-
-	}
-	if (str.equals("")) str = str.concat("0");
-
-	return str;
+	return toString(Integer.MAX_VALUE);
     }
 
     /**
@@ -272,42 +804,87 @@ public class Braket extends Vect {
      * canonical z-axis basis. In contrast to the normal toString() method, this method
      * limits its output to the number given as an argument. This is useful since
      * the string representation grows exponentially with the number of qubits!
+     * A truncated string ends with "...".
      * @param length length of the string after which it is truncated
      * @return the string representation of this braket object
      * @see Braket#toString()
      */
     public String toString(int length) {
-	String str = new String("");
-	Complex factor;
+	return new Rendering(length, 0, 0).render(this);
+    }
 
-	for (int i = 0; i < dimension; i++) {
-	    if (str.length() >= length) return str;
-	    factor = data[i];
-	    if (factor != null) {
-		if ((factor.im() == 0) && (factor.re() != 0)) {
-		    str = str + ((factor.re() > 0) ? " + " : " ");
-		    str = str.concat(factor.toString());
-		    str = str.concat("*");
-		    str = str.concat(getBasisString(i, n, bra));
-		}
-		else if ((factor.re() == 0) && (factor.im() != 0)) {
-		    str = str + ((factor.im() > 0) ? " + " : " ");
-		    str = str.concat(factor.toString());
-		    str = str.concat("*");
-		    str = str.concat(getBasisString(i, n, bra));
-		}
-		else if ((factor.im() != 0) && (factor.re() != 0)) {
-		    str = str.concat(" + (");
-		    str = str.concat(factor.toString());
-		    str = str.concat(")*");
-		    str = str.concat(getBasisString(i, n, bra));
-		}
+    /**
+     * appends the expansion in the basis states. The terms are limited as 
+     * given by the rendering options; in that case the output ends with "...".
+     * @exception IOException if the output can not be written
+     * @see Rendering
+     */
+    public void append(Appendable out, Rendering r) throws IOException {
+	Rendering.Counter buf = Rendering.count(out);
+	long start = buf.length();
+	long[] selected = r.select(this);
+	boolean limited = false;
+
+	if (selected != null) {
+	    limited = selected.length < countNonZero();
+	    for (int i = 0; i < selected.length; i++) {
+		if (r.isFull(buf, start)) { limited = true; break; }
+		term(buf, re(selected[i]), im(selected[i]), selected[i]);
+	    }
+	}
+	else if (map != null) {
+	    long[] keys = map.keys();
+	    for (int i = 0; i < keys.length; i++) {
+		if (r.isFull(buf, start)) { limited = true; break; }
+		limited |= !term(buf, r, map.re(keys[i]), map.im(keys[i]), keys[i]);
 	    }
-
 	}
-	if (str.equals("")) str = str.concat("0");
+	else {
+	    for (int i = 0; i < dimension; i++) {
+		if (isZero(i)) continue;
+		if (r.isFull(buf, start)) { limited = true; break; }
+		limited |= !term(buf, r, re(i), im(i), i);
+	    }
+	}
+	if (limited) buf.append(" ...");
+	else if (buf.length() == start) buf.append("0");
+    }
 
-	return str;
+    /**
+     * appends the term of a basis state if the rendering accepts it
+     * @return false if a nonzero term was left out
+     */
+    private boolean term(Appendable buf, Rendering r, double re, double im, long basisState)
+	throws IOException {
+	if (r.accepts(re, im)) term(buf, re, im, basisState);
+	else if (re != 0 || im != 0) return false;
+	return true;
+    }
+
+    /**
+     * appends the term of a basis state to the string representation
+     */
+    private void term(Appendable buf, double re, double im, long basisState)
+	throws IOException {
+	Complex factor = new Complex(re, im);
+	if ((factor.im() == 0) && (factor.re() != 0)) {
+	    buf.append((factor.re() > 0) ? " + " : " ");
+	    buf.append(factor.toString());
+	    buf.append("*");
+	    buf.append(getBasisString(basisState, n, bra));
+	}
+	else if ((factor.re() == 0) && (factor.im() != 0)) {
+	    buf.append((factor.im() > 0) ? " + " : " ");
+	    buf.append(factor.toString());
+	    buf.append("*");
+	    buf.append(getBasisString(basisState, n, bra));
+	}
+	else if ((factor.im() != 0) && (factor.re() != 0)) {
+	    buf.append(" + (");
+	    buf.append(factor.toString());
+	    buf.append(")*");
+	    buf.append(getBasisString(basisState, n, bra));
+	}
     }
 
     /**
@@ -317,6 +894,14 @@ public class Braket extends Vect {
 	return toString();
     }
 
+    /**
+     * appends the parsable string representation term by term
+     * @exception IOException if the output can not be written
+     */
+    public void appendParseable(Appendable out) throws IOException {
+	append(out, Rendering.FULL);
+    }
+
 
 }
 
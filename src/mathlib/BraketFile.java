@@ -0,0 +1,381 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+package mathlib;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+/**
+ * <p>binary snapshot of a braket, so that a computation can be resumed or a
+ * reference state be reused without computing it again. The file starts with
+ * a header of 40 bytes: the magic number "JQS1", the format version, the number
+ * of qubits, flags (1 sparse, 2 bra), the step, the norm and the number of 
+ * stored components. Dense brakets are followed by the real and imaginary 
+ * parts of all components in index order, sparse ones by index, real and 
+ * imaginary part of each populated component. Since version 2 the components
+ * are followed by the number of values of a trace (e.g. the fidelities of
+ * the computation up to the step) and the values. All numbers are little 
+ * endian.</p>
+ * <p>The components are transferred through a <tt>FileChannel</tt> in blocks
+ * of 2^15 components, or through memory mapped windows of 2^22 components if
+ * the system property jaquzzi.mapsnapshots is true. Reading recomputes the 
+ * norm and rejects the file if it does not match the header.</p>
+ * @see Command#save(MathObject, String, MathObject)
+ * @see Command#load(MathObject)
+ */
+public class BraketFile {
+    /** "JQS1" */
+    public static final int MAGIC = 0x4A515331;
+    /** current format version */
+    public static final int VERSION = 2;
+
+    private static final int HEADER = 40;
+    private static final int SPARSE = 1;
+    private static final int BRA = 2;
+    /** number of components per transfer */
+    private static final int BLOCK = 1 << 15;
+    /** number of components per mapped window */
+    private static final int WINDOW = 1 << 22;
+
+    private File file;
+    private boolean map;
+    private int step = 0;
+    private double norm = 0;
+    private double[] trace = new double[0];
+
+    /**
+     * creates a snapshot file. The file is not accessed before <tt>read</tt> or 
+     * <tt>write</tt>.
+     */
+    public BraketFile(File file) {
+	this(file, Boolean.getBoolean("jaquzzi.mapsnapshots"));
+    }
+
+    /**
+     * creates a snapshot file which is transferred through memory mapped 
+     * windows or the channel
+     */
+    public BraketFile(File file, boolean map) {
+	this.file = file;
+	this.map = map;
+    }
+
+    /**
+     * returns the step of the snapshot last read or written
+     */
+    public int getStep() {
+	return step;
+    }
+
+    /**
+     * returns the norm of the braket last read or written
+     */
+    public double getNorm() {
+	return norm;
+    }
+
+    /**
+     * returns the trace of the snapshot last read or written, an empty array
+     * if there is none
+     */
+    public double[] getTrace() {
+	return trace;
+    }
+
+    //----------------------------------------------
+    // writing
+
+    /**
+     * writes a braket together with the step of the computation
+     */
+    public void write(Braket q, int step) throws IOException {
+	write(q, step, new double[0]);
+    }
+
+    /**
+     * writes a braket together with the step of the computation and a trace
+     * of values up to the step
+     */
+    public void write(Braket q, int step, double[] trace) throws IOException {
+	RandomAccessFile raf = new RandomAccessFile(file, "rw");
+	try {
+	    FileChannel channel = raf.getChannel();
+	    long count;
+	    double sum;
+	    if (q.isSparse()) {
+		long[] keys = q.nonZeroIndices();
+		Arrays.sort(keys);
+		count = keys.length;
+		raf.setLength(HEADER + 24L*count + 8 + 8L*trace.length);
+		sum = writeSparse(channel, q, keys);
+		writeTrace(channel, trace, HEADER + 24L*count);
+	    }
+	    else {
+		count = q.dimension;
+		raf.setLength(HEADER + 16L*count + 8 + 8L*trace.length);
+		sum = writeDense(channel, q);
+		writeTrace(channel, trace, HEADER + 16L*count);
+	    }
+	    this.step = step;
+	    this.norm = Math.sqrt(sum);
+	    this.trace = trace;
+
+	    ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+	    header.putInt(MAGIC).putInt(VERSION).putInt(q.n);
+	    header.putInt((q.isSparse() ? SPARSE : 0) | (q.isBra() ? BRA : 0));
+	    header.putLong(step).putDouble(norm).putLong(count);
+	    header.flip();
+	    writeFully(channel, header, 0);
+	}
+	finally {
+	    raf.close();
+	}
+    }
+
+    private double writeDense(FileChannel channel, Braket q) throws IOException {
+	double[] block = new double[2*Math.min(BLOCK, Math.max(q.dimension, 1))];
+	ByteBuffer buffer = (map) ? null : ByteBuffer.allocateDirect(16*BLOCK);
+	int window = (map) ? WINDOW : BLOCK;
+	double sum = 0;
+	ByteBuffer bytes;
+	DoubleBuffer doubles;
+	int length, n;
+	for (int w = 0; w < q.dimension; w += length) {
+	    length = Math.min(window, q.dimension - w);
+	    if (map) bytes = channel.map(FileChannel.MapMode.READ_WRITE, HEADER + 16L*w, 16L*length);
+	    else {
+		bytes = buffer;
+		bytes.clear();
+		bytes.limit(16*length);
+	    }
+	    doubles = bytes.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+	    for (int i = w; i < w + length; i += n) {
+		n = Math.min(BLOCK, w + length - i);
+		sum += get(q, i, block, n);
+		doubles.put(block, 0, 2*n);
+	    }
+	    if (!map) writeFully(channel, bytes, HEADER + 16L*w);
+	}
+	return sum;
+    }
+
+    private double writeSparse(FileChannel channel, Braket q, long[] keys) throws IOException {
+	ByteBuffer bytes = ByteBuffer.allocateDirect(24*BLOCK).order(ByteOrder.LITTLE_ENDIAN);
+	long position = HEADER;
+	double sum = 0, re, im;
+	for (int k = 0; k < keys.length; k++) {
+	    re = q.re(keys[k]);
+	    im = q.im(keys[k]);
+	    bytes.putLong(keys[k]).putDouble(re).putDouble(im);
+	    sum += re*re + im*im;
+	    if (bytes.remaining() < 24 || k == keys.length - 1) {
+		bytes.flip();
+		position += writeFully(channel, bytes, position);
+		bytes.clear();
+	    }
+	}
+	return sum;
+    }
+
+    private void writeTrace(FileChannel channel, double[] trace, long position) throws IOException {
+	ByteBuffer bytes = ByteBuffer.allocate(8 + 8*trace.length).order(ByteOrder.LITTLE_ENDIAN);
+	bytes.putLong(trace.length);
+	bytes.asDoubleBuffer().put(trace);
+	bytes.clear();
+	writeFully(channel, bytes, position);
+    }
+
+    /**
+     * copies the components index, ..., index+length-1 into the block and 
+     * returns the sum of their squared magnitudes
+     */
+    private static double get(Braket q, int index, double[] block, int length) {
+	if (q.amplitudes != null) System.arraycopy(q.amplitudes, 2*index, block, 0, 2*length);
+	else if (q.mapped != null) q.mapped.read(index, block, length);
+	else {
+	    for (int j = 0; j < length; j++) {
+		block[2*j] = q.re(index + j);
+		block[2*j+1] = q.im(index + j);
+	    }
+	}
+	double sum = 0;
+	for (int j = 0; j < 2*length; j++) sum += block[j]*block[j];
+	return sum;
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer bytes, long position) throws IOException {
+	int written = 0;
+	while (bytes.hasRemaining()) written += channel.write(bytes, position + written);
+	return written;
+    }
+
+    //----------------------------------------------
+    // reading
+
+    /**
+     * reads a braket. Its storage is chosen as for new brakets, sparse 
+     * snapshots are read into sparse storage.
+     * @exception IOException if the file can not be read, is no snapshot of a
+     * known version or is corrupt
+     */
+    public Braket read() throws IOException {
+	RandomAccessFile raf = new RandomAccessFile(file, "r");
+	try {
+	    FileChannel channel = raf.getChannel();
+	    ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+	    if (channel.size() < HEADER) throw new IOException(file + ": no braket snapshot");
+	    readFully(channel, header, 0);
+	    header.flip();
+	    if (header.getInt() != MAGIC) throw new IOException(file + ": no braket snapshot");
+	    int version = header.getInt();
+	    if (version != 1 && version != VERSION) 
+		throw new IOException(file + ": unsupported version " + version);
+	    int n = header.getInt();
+	    int flags = header.getInt();
+	    long step = header.getLong();
+	    double norm = header.getDouble();
+	    long count = header.getLong();
+
+	    boolean sparse = (flags & SPARSE) != 0;
+	    if (n < 0 || n > 62 || step < 0 || step > Integer.MAX_VALUE ||
+		(!sparse && (n > Braket.MAX_DENSE_QUBITS || count != (1L << n))) ||
+		(sparse && (count < 0 || count > (1L << n))))
+		throw new IOException(file + ": corrupt header");
+	    long end = HEADER + ((sparse) ? 24 : 16)*count;
+	    double[] trace = (version == 1) ? new double[0] : readTrace(channel, end);
+	    if (version > 1) end += 8 + 8L*trace.length;
+	    if (channel.size() != end) throw new IOException(file + ": corrupt header");
+
+	    Braket q = new Braket(n, sparse);
+	    double sum = (sparse) ? readSparse(channel, q, count) : readDense(channel, q);
+	    if (Math.abs(Math.sqrt(sum) - norm) > 1e-9*Math.max(1, norm)) 
+		throw new IOException(file + ": norm does not match");
+	    if ((flags & BRA) != 0) q.transpose();
+
+	    this.step = (int)step;
+	    this.norm = norm;
+	    this.trace = trace;
+	    return q;
+	}
+	finally {
+	    raf.close();
+	}
+    }
+
+    private double readDense(FileChannel channel, Braket q) throws IOException {
+	double[] block = new double[2*Math.min(BLOCK, Math.max(q.dimension, 1))];
+	ByteBuffer buffer = (map) ? null : ByteBuffer.allocateDirect(16*BLOCK);
+	int window = (map) ? WINDOW : BLOCK;
+	double sum = 0;
+	ByteBuffer bytes;
+	DoubleBuffer doubles;
+	int length, n;
+	q.modified();
+	for (int w = 0; w < q.dimension; w += length) {
+	    length = Math.min(window, q.dimension - w);
+	    if (map) bytes = channel.map(FileChannel.MapMode.READ_ONLY, HEADER + 16L*w, 16L*length);
+	    else {
+		bytes = buffer;
+		bytes.clear();
+		bytes.limit(16*length);
+		readFully(channel, bytes, HEADER + 16L*w);
+		bytes.flip();
+	    }
+	    doubles = bytes.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+	    for (int i = w; i < w + length; i += n) {
+		n = Math.min(BLOCK, w + length - i);
+		doubles.get(block, 0, 2*n);
+		sum += set(q, i, block, n);
+	    }
+	}
+	return sum;
+    }
+
+    private double readSparse(FileChannel channel, Braket q, long count) throws IOException {
+	ByteBuffer bytes = ByteBuffer.allocateDirect(24*BLOCK).order(ByteOrder.LITTLE_ENDIAN);
+	long position = HEADER;
+	long key, limit = (q.n > 62) ? Long.MAX_VALUE : (1L << q.n);
+	double sum = 0, re, im;
+	int records;
+	for (long k = 0; k < count; k += records) {
+	    records = (int)Math.min(BLOCK, count - k);
+	    bytes.clear();
+	    bytes.limit(24*records);
+	    readFully(channel, bytes, position);
+	    bytes.flip();
+	    position += 24*records;
+	    for (int r = 0; r < records; r++) {
+		key = bytes.getLong();
+		re = bytes.getDouble();
+		im = bytes.getDouble();
+		if (key < 0 || key >= limit) throw new IOException(file + ": corrupt component index " + key);
+		if (re != 0 || im != 0) q.set(key, re, im);
+		sum += re*re + im*im;
+	    }
+	}
+	return sum;
+    }
+
+    private double[] readTrace(FileChannel channel, long position) throws IOException {
+	ByteBuffer bytes = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+	if (channel.size() < position + 8) throw new IOException(file + ": corrupt header");
+	readFully(channel, bytes, position);
+	long length = bytes.getLong(0);
+	if (length < 0 || length > Integer.MAX_VALUE/8 || channel.size() != position + 8 + 8*length) 
+	    throw new IOException(file + ": corrupt trace");
+	bytes = ByteBuffer.allocate(8*(int)length).order(ByteOrder.LITTLE_ENDIAN);
+	readFully(channel, bytes, position + 8);
+	bytes.flip();
+	double[] trace = new double[(int)length];
+	bytes.asDoubleBuffer().get(trace);
+	return trace;
+    }
+
+    /**
+     * copies the block into the components index, ..., index+length-1 and 
+     * returns the sum of their squared magnitudes
+     */
+    private static double set(Braket q, int index, double[] block, int length) {
+	if (q.amplitudes != null) System.arraycopy(block, 0, q.amplitudes, 2*index, 2*length);
+	else if (q.mapped != null) q.mapped.write(index, block, length);
+	else {
+	    for (int j = 0; j < length; j++) {
+		if (block[2*j] != 0 || block[2*j+1] != 0) 
+		    q.data[index + j] = new Complex(block[2*j], block[2*j+1]);
+	    }
+	}
+	double sum = 0;
+	for (int j = 0; j < 2*length; j++) sum += block[j]*block[j];
+	return sum;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer bytes, long position) throws IOException {
+	int read, done = 0;
+	while (bytes.hasRemaining()) {
+	    read = channel.read(bytes, position + done);
+	    if (read < 0) throw new IOException("unexpected end of file");
+	    done += read;
+	}
+    }
+}
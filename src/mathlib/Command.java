@@ -22,6 +22,7 @@
 
 package mathlib;
 
+import java.io.*;
 
 /**
  * <p>
@@ -42,7 +43,7 @@ public class Command extends MathMap {
 
     /**
      * creates a new command. The commands are actually hard coded. Implemented commads
-     * so far: register, unregister, delete
+     * so far: register, unregister, delete, gateproperty, save, load
      * @see Command#apply(String, MathObject, String, MathObject)
      */
     public Command(String command) {
@@ -61,6 +62,7 @@ public class Command extends MathMap {
      * <ul>
      * <li> delete(variable) - deletes a variable
      * <li> unregister(variable) - removes a variable from a category
+     * <li> load(filename) - reads a braket snapshot
      * </ul>
      * @param s1 name of the variable
      * @param o1 value of the variable
@@ -74,6 +76,7 @@ public class Command extends MathMap {
      * <ul>
      * <li> register(category, variable) - registers a variable in a certain catgory
      * <li> gateproperty(gatename, variable) - adds/creates properties of a gate
+     * <li> save(filename, braket) - writes a braket snapshot
      * </itemize>
      * @param s1 name of the first variale
      * @param o1 value of the first variable
@@ -104,6 +107,15 @@ public class Command extends MathMap {
 	    if (s2 == null && o2 == null) return delete(s1);
 	    else { LOG.LOG(0, command + "() too many parameters!"); return null; }
 	}
+	// save command: writes a braket to a file
+	else if ("save".equals(command)) {
+	    return save(o1, s2, o2);
+	}
+	// load command: reads a braket from a file
+	else if ("load".equals(command)) {
+	    if (s2 == null && o2 == null) return load(o1);
+	    else { LOG.LOG(0, command + "() too many parameters!"); return null; }
+	}
 	LOG.LOG(0, command + ": no such function!");
 	return null;
 
@@ -226,6 +238,51 @@ public class Command extends MathMap {
 	return new StringArgument(s1 + " deleted.");
     }
 
+    /**
+     * writes a braket to a binary snapshot file. The step in the header is 0.
+     * @see BraketFile
+     * @param o1 StringArgument with the file name
+     * @param s2 name of the braket variable
+     * @param o2 the braket
+     */
+    public MathObject save(MathObject o1, String s2, MathObject o2) {
+	if (!(o1 instanceof StringArgument)) {
+	    LOG.LOG(0, command + " requires file name as string argument! e.g. save(\"ket.jqs\", ...)");
+	    return null;
+	}
+	if (!(o2 instanceof Braket)) {
+	    LOG.LOG(0, command + " requires braket! e.g. save(..., qubits)");
+	    return null;
+	}
+
+	try {
+	    new BraketFile(new File(o1.toString())).write((Braket)o2, 0);
+	} catch (IOException e) {
+	    LOG.LOG(0, command + " can not write "+ o1.toString() + ": " + e.getMessage());
+	    return null;
+	}
+	return new StringArgument(((s2 == null) ? "braket" : s2) + " saved to " + o1.toString());
+    }
+
+    /**
+     * reads a braket from a binary snapshot file, e.g. q=load("ket.jqs")
+     * @see BraketFile
+     * @param o1 StringArgument with the file name
+     */
+    public MathObject load(MathObject o1) {
+	if (!(o1 instanceof StringArgument)) {
+	    LOG.LOG(0, command + " requires file name as string argument! e.g. load(\"ket.jqs\")");
+	    return null;
+	}
+
+	try {
+	    return new BraketFile(new File(o1.toString())).read();
+	} catch (IOException e) {
+	    LOG.LOG(0, command + " can not read "+ o1.toString() + ": " + e.getMessage());
+	    return null;
+	}
+    }
+
     /**
      * returns the name of the command
      */
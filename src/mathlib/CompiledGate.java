@@ -0,0 +1,377 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+
+package mathlib;
+
+import java.util.*;
+
+/**
+ * a gate resolved for repeated execution. The gate description is decoded
+ * once into the kernel to use, the bit masks of the subspace and the matrix
+ * coefficients, so that <tt>apply</tt> does the same as
+ * <tt>BinaryOp.implicitApply</tt> without parsing the description or looking
+ * up the matrix again. No computation events are fired.
+ * <p>The compiled gate is a snapshot: later changes of the gate or its matrix
+ * are not reflected.</p>
+ * @see BinaryOp#implicitApply(Gate, Braket, Matrix)
+ */
+public class CompiledGate {
+
+    /** kernel types */
+    public static final int IDENTITY = 0;
+    public static final int MEASUREMENT = 1;
+    public static final int PREPARATION = 2;
+    public static final int GENERAL = 3;
+    public static final int DIAGONAL = 4;
+    public static final int ANTIDIAGONAL = 5;
+    public static final int MATRIX = 6;
+    public static final int DIAGONALS = 7;
+    /** any gate on more than <tt>Braket.MAX_DENSE_QUBITS</tt> qubits */
+    public static final int GATE = 8;
+
+    /** the gate this object was compiled from */
+    protected Gate gate;
+    /** one of the kernel types */
+    protected int kind;
+    /** dimension of the ket vectors the gate applies to */
+    protected int dimension;
+    /** number of qubits of the ket vectors the gate applies to */
+    protected int n;
+    /** control mask (index of the first component of each subspace) */
+    protected int first;
+    /** target mask of 2x2 kernels */
+    protected int offset;
+    /** mask of the free qubits */
+    protected int free;
+    /** target offsets of the NxN kernel */
+    protected int[] offsets;
+    /** measured qubit */
+    protected int measured;
+    /** matrix coefficients, row major, real and imaginary parts interleaved */
+    protected double[] coefficients;
+    /** matrix for the NxN kernel on non primitive storage */
+    protected Matrix matrix;
+    /** control masks of a sequence of diagonal gates, or of a diagonal GATE */
+    protected long[] controls;
+    /** target masks of a sequence of diagonal gates, or of a diagonal GATE */
+    protected long[] targets;
+
+    /**
+     * creates an empty compiled gate, used for fused gates
+     */
+    protected CompiledGate() {
+	measured = -1;
+    }
+
+    /**
+     * compiles the given gate.
+     */
+    public CompiledGate(Gate g) {
+	int n = g.n;
+	int cs = 0, ms = 0;
+	int u = 0, d = 0;
+	int targets = 0;
+
+	gate = g;
+	this.n = n;
+	dimension = BinaryOp.pow(2, n);
+	measured = g.gate_descr.indexOf('!');
+
+	// the masks do not fit into an int, the sparse kernels decode the gate.
+	// Diagonal single qubit gates keep their long masks for fusing.
+	if (n > Braket.MAX_DENSE_QUBITS) {
+	    dimension = 0;
+	    kind = (measured != -1) ? MEASUREMENT : GATE;
+	    String descr = g.gate_descr;
+	    long m = SparseKernels.mask(descr, 'm');
+	    if (kind == GATE && Long.bitCount(m) == 1 && descr.indexOf('u') == -1 &&
+		descr.indexOf('d') == -1 && g.getEntry().diagonal) {
+		controls = new long[] {SparseKernels.mask(descr, '1')};
+		this.targets = new long[] {m};
+		coefficients = g.getCoefficients();
+	    }
+	    return;
+	}
+
+	for (int k = 0; k < n; k++) {
+	    switch (g.gate_descr.charAt(k)) {
+	    case '1': cs++; first += (1 << (n-k-1)); break;
+	    case 'm': targets |= 1 << (n-k-1); ms++; break;
+	    case 'u': offset += (1 << (n-k-1)); u = 1; break;
+	    case 'd': offset += (1 << (n-k-1)); d = 1; break;
+	    case '-': free |= 1 << (n-k-1); break;
+	    }
+	}
+
+	if (measured != -1)
+	    kind = MEASUREMENT;
+	else if (u != 0 || d != 0) {
+	    kind = PREPARATION;
+	    // 'm' and 'u'/'d' share the pair offset as in implicitApply2x2InPlace
+	    offset += targets;
+	    if (u != 0 && d == 0) coefficients = BinaryOp.UP;
+	    else if (u == 0 && d != 0) coefficients = BinaryOp.DOWN;
+	    else coefficients = g.getCoefficients();
+	}
+	else if (ms == 1) {
+	    MatrixCache.Entry entry = g.getEntry();
+	    offset = targets;
+	    coefficients = g.getCoefficients();
+	    if (entry.antiDiagonal) kind = ANTIDIAGONAL;
+	    else if (entry.diagonal) kind = DIAGONAL;
+	    else kind = GENERAL;
+	}
+	else if (ms > 1) {
+	    kind = MATRIX;
+	    offsets = SubspaceIndex.indices(targets);
+	    coefficients = g.getCoefficients();
+	    matrix = g.getMatrix();
+	}
+	else kind = IDENTITY;
+    }
+
+    /**
+     * returns the gate this object was compiled from, null for fused gates
+     */
+    public Gate getGate() {
+	return gate;
+    }
+
+    /**
+     * returns the kernel type
+     */
+    public int getKind() {
+	return kind;
+    }
+
+    /**
+     * returns true if the gate is a measurement or a preparation, i.e. it can
+     * not be undone by its adjoint.
+     */
+    public boolean isIrreversible() {
+	if (kind == GATE) 
+	    return gate.gate_descr.indexOf('u') != -1 || gate.gate_descr.indexOf('d') != -1;
+	return kind == MEASUREMENT || kind == PREPARATION;
+    }
+
+    /**
+     * returns the fraction of the ket components a single application reads
+     * and writes. Controlled gates only touch the subspace of their controls.
+     */
+    public double getCost() {
+	switch (kind) {
+	case PREPARATION:
+	case GENERAL:
+	case DIAGONAL:
+	case ANTIDIAGONAL:
+	case MATRIX:
+	    return 1.0/(1 << Integer.bitCount(first));
+	case IDENTITY:
+	    return 0;
+	}
+	return 1;
+    }
+
+    /**
+     * returns true for single qubit gates without preparation
+     */
+    private boolean isSingleQubit() {
+	return kind == GENERAL || kind == DIAGONAL || kind == ANTIDIAGONAL;
+    }
+
+    /**
+     * returns true for diagonal gates and sequences of diagonal gates
+     */
+    private boolean isDiagonal() {
+	return kind == DIAGONAL || kind == DIAGONALS || (kind == GATE && controls != null);
+    }
+
+    /**
+     * returns a single gate that has the same effect as applying a and then b,
+     * or null if the gates can not be fused or fusing would not save work. Two
+     * single qubit gates with the same target and controls are multiplied into
+     * one 2x2 matrix; diagonal gates are collected into a sequence that is
+     * applied in one pass over the ket.
+     * The error modifier is ignored when applying fused gates, so only gates
+     * without operational error may be fused.
+     */
+    public static CompiledGate fuse(CompiledGate a, CompiledGate b) {
+	if (a.dimension != b.dimension || a.n != b.n) return null;
+
+	CompiledGate g = new CompiledGate();
+	g.dimension = a.dimension;
+	g.n = a.n;
+
+	if (a.isSingleQubit() && b.isSingleQubit() && 
+	    a.first == b.first && a.offset == b.offset) {
+	    g.first = a.first;
+	    g.offset = a.offset;
+	    g.free = a.free;
+	    g.coefficients = multiply(b.coefficients, a.coefficients);
+	    double[] c = g.coefficients;
+
+	    if (c[2] == 0 && c[3] == 0 && c[4] == 0 && c[5] == 0) g.kind = DIAGONAL;
+	    else if (c[0] == 0 && c[1] == 0 && c[6] == 0 && c[7] == 0) g.kind = ANTIDIAGONAL;
+	    else g.kind = GENERAL;
+	    return g;
+	}
+
+	if (a.isDiagonal() && b.isDiagonal()) {
+	    g.kind = DIAGONALS;
+	    int na = (a.kind == DIAGONALS) ? a.controls.length : 1;
+	    int nb = (b.kind == DIAGONALS) ? b.controls.length : 1;
+	    g.controls = new long[na+nb];
+	    g.targets = new long[na+nb];
+	    g.coefficients = new double[4*(na+nb)];
+	    a.copyDiagonals(g, 0);
+	    b.copyDiagonals(g, na);
+
+	    // one full pass must not be more expensive than the single passes
+	    if (g.getCost() > a.getCost()+b.getCost()) return null;
+	    return g;
+	}
+	return null;
+    }
+
+    /**
+     * returns the product a*b of two 2x2 matrices given by their coefficients
+     */
+    private static double[] multiply(double[] a, double[] b) {
+	double[] c = new double[8];
+	for (int r = 0; r < 2; r++) {
+	    for (int k = 0; k < 2; k++) {
+		for (int j = 0; j < 2; j++) {
+		    int ia = 2*(2*r+j), ib = 2*(2*j+k);
+		    c[2*(2*r+k)] += a[ia]*b[ib] - a[ia+1]*b[ib+1];
+		    c[2*(2*r+k)+1] += a[ia]*b[ib+1] + a[ia+1]*b[ib];
+		}
+	    }
+	}
+	return c;
+    }
+
+    /**
+     * copies the diagonal gates of this object into the sequence of g,
+     * starting at index pos
+     */
+    private void copyDiagonals(CompiledGate g, int pos) {
+	if (kind == DIAGONALS) {
+	    System.arraycopy(controls, 0, g.controls, pos, controls.length);
+	    System.arraycopy(targets, 0, g.targets, pos, targets.length);
+	    System.arraycopy(coefficients, 0, g.coefficients, 4*pos, coefficients.length);
+	}
+	else {
+	    g.controls[pos] = (kind == GATE) ? controls[0] : first;
+	    g.targets[pos] = (kind == GATE) ? targets[0] : offset;
+	    g.coefficients[4*pos] = coefficients[0];
+	    g.coefficients[4*pos+1] = coefficients[1];
+	    g.coefficients[4*pos+2] = coefficients[6];
+	    g.coefficients[4*pos+3] = coefficients[7];
+	}
+    }
+
+    /**
+     * applies the gate to the ket v. The 2x2 matrix error modifies single qubit
+     * gates (except fused ones) and may be null. Kets of the wrong dimension are
+     * left untouched.
+     */
+    public void apply(Braket v, Matrix error) {
+	if (v.dimension != dimension || (dimension == 0 && v.n != n)) return;
+
+	switch (kind) {
+	case MEASUREMENT:
+	    Measurement.partialMeasurement(v, measured);
+	    break;
+	case PREPARATION:
+	    BinaryOp.apply2x2(v, first, offset, free, coefficients);
+	    break;
+	case GENERAL:
+	case DIAGONAL:
+	case ANTIDIAGONAL:
+	    if (error != null && gate != null)
+		BinaryOp.apply2x2(v, first, offset, free, BinaryOp.errorCoefficients(gate, error));
+	    else if (kind == ANTIDIAGONAL)
+		BinaryOp.apply2x2b(v, first, offset, free, coefficients);
+	    else if (kind == DIAGONAL)
+		BinaryOp.apply2x2a(v, first, offset, free, coefficients);
+	    else
+		BinaryOp.apply2x2(v, first, offset, free, coefficients);
+	    break;
+	case MATRIX:
+	    BinaryOp.applyNxN(v, first, offsets, free, coefficients,
+			      (v.amplitudes == null) ? matrix : null);
+	    break;
+	case DIAGONALS:
+	    BinaryOp.applyDiagonals(v, controls, targets, coefficients);
+	    break;
+	case GATE:
+	    SparseKernels.apply(gate, v, error);
+	    break;
+	}
+    }
+
+    /**
+     * applies the gate to the ket v like <tt>apply(v, error)</tt>, with the
+     * error modifier given by its coefficients (or null). Measurements draw
+     * from the given random generator and fire no events, so that independent
+     * simulations can run concurrently.
+     * @see NoiseError#coefficients(double, Random)
+     */
+    public void apply(Braket v, double[] error, Random random) {
+	if (v.dimension != dimension || (dimension == 0 && v.n != n)) return;
+
+	if (kind == MEASUREMENT)
+	    Measurement.partialMeasurement(v, measured, random);
+	else if (error != null && gate != null && isSingleQubit())
+	    BinaryOp.apply2x2(v, first, offset, free, multiply(coefficients, error));
+	else if (error != null && kind == GATE && 
+		 Long.bitCount(SparseKernels.mask(gate.gate_descr, 'm')) == 1)
+	    SparseKernels.applyModified(gate, v, multiply(gate.getCoefficients(), error));
+	else
+	    apply(v, null);
+    }
+
+    /**
+     * applies the gate to the reference ket ref like <tt>apply(ref, null, 
+     * random)</tt> and returns the fidelity |&lt;ref|q&gt;|^2 of the result
+     * with the ket q. For single qubit gates and sequences of diagonal gates on
+     * primitive storage both are done in one pass over the kets.
+     * @see Overlap#fidelity(Braket, Braket)
+     */
+    public double applyFidelity(Braket ref, Braket q, Random random) {
+	if (ref.dimension == dimension && q.dimension == dimension &&
+	    ref.amplitudes != null && q.amplitudes != null) {
+	    if (isSingleQubit()) {
+		ref.modified();
+		return Overlap.apply2x2(ref.amplitudes, q.amplitudes, first, offset, 
+					coefficients, kind);
+	    }
+	    if (kind == DIAGONALS) {
+		ref.modified();
+		return Overlap.applyDiagonals(ref.amplitudes, q.amplitudes, controls, targets, 
+					      coefficients);
+	    }
+	}
+	apply(ref, null, random);
+	return Overlap.fidelity(ref, q);
+    }
+}
@@ -31,7 +31,9 @@ package mathlib;
  * @see Mathlib
  */
 public class Complex extends Argument {
-    private double re, im;
+    /** real and imaginary part. Package visible for the gate methods working on
+     * primitive braket storage. */
+    double re, im;
     private static int digits = 2;
     private static int internalDigits = 14;
     private static boolean simple = true;
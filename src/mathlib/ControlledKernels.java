@@ -0,0 +1,182 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+
+package mathlib;
+
+/**
+ * the gate kernels for controlled gates on brakets in primitive storage. The
+ * controls fix some bits of the index to 1, so the subspace of a gate is
+ * enumerated by its free bits. The lowest free bits usually form a contiguous
+ * run (all qubits below the lowest control or target), which is walked with a
+ * plain loop; <tt>SubspaceIndex.next</tt> is only needed between runs.
+ * <p>The loop bodies are chosen by the matrix: a NOT (as in Toffoli gates) 
+ * only swaps components, an antidiagonal matrix swaps and multiplies, and a 
+ * diagonal matrix leaves the components with a factor 1 untouched, e.g. a 
+ * controlled phase only touches the target-one half of the subspace.</p>
+ * @see BinaryOp#apply2x2(Braket, int, int, int, double[])
+ * @see CompiledGate
+ */
+class ControlledKernels {
+
+    /**
+     * a range of a kernel that walks the subspace given by first and free in
+     * contiguous runs. <tt>run</tt> processes the indices from, ..., to-1 of
+     * the full ket, which all belong to the subspace. Each range gets its own
+     * scratch array of the given size, since ranges may run in parallel.
+     */
+    private static abstract class Runs implements ParallelKernel.Range {
+	private int first, outer, bits, scratch;
+
+	Runs(int first, int free, int scratch) {
+	    this.first = first;
+	    this.scratch = scratch;
+	    bits = Integer.numberOfTrailingZeros(~free);
+	    outer = free & ~((1 << bits) - 1);
+	}
+
+	Runs(int first, int free) {
+	    this(first, free, 0);
+	}
+
+	public void apply(int lo, int hi) {
+	    double[] tmp = (scratch > 0) ? new double[scratch] : null;
+	    int mask = (1 << bits) - 1;
+	    int high = SubspaceIndex.deposit(lo >>> bits, outer);
+	    for (int i = lo; i < hi; high = SubspaceIndex.next(high, outer)) {
+		int low = i & mask;
+		int end = Math.min(mask + 1, low + hi - i);
+		run(first + high + low, first + high + end, tmp);
+		i += end - low;
+	    }
+	}
+
+	abstract void run(int from, int to, double[] tmp);
+    }
+
+    /**
+     * returns true if the real and imaginary part at c[k], c[k+1] are 1 and 0
+     */
+    private static boolean isOne(double[] c, int k) {
+	return c[k] == 1 && c[k+1] == 0;
+    }
+
+    /**
+     * applies a 2x2 matrix like <tt>BinaryOp.apply2x2</tt>. For the kinds 
+     * DIAGONAL and ANTIDIAGONAL of <tt>CompiledGate</tt> only the respective
+     * coefficients are used.
+     */
+    static void apply2x2(final double[] a, int first, final int offset, int free, 
+			 final double[] c, int kind) {
+	int count = SubspaceIndex.size(free);
+
+	if (kind == CompiledGate.DIAGONAL) {
+	    // components with factor 1 are skipped
+	    if (!isOne(c, 0)) multiply(a, first, free, c[0], c[1]);
+	    if (!isOne(c, 6)) multiply(a, first + offset, free, c[6], c[7]);
+	}
+	else if (kind == CompiledGate.ANTIDIAGONAL && isOne(c, 2) && isOne(c, 4)) {
+	    ParallelKernel.run(count, new Runs(first, free) {
+		void run(int from, int to, double[] tmp) {
+		    for (int i = 2*from, j = 2*(from+offset); i < 2*to; i += 2, j += 2) {
+			double re = a[i], im = a[i+1];
+			a[i] = a[j]; a[i+1] = a[j+1];
+			a[j] = re; a[j+1] = im;
+		    }
+		}
+	    });
+	}
+	else if (kind == CompiledGate.ANTIDIAGONAL) {
+	    final double m12r = c[2], m12i = c[3], m21r = c[4], m21i = c[5];
+	    ParallelKernel.run(count, new Runs(first, free) {
+		void run(int from, int to, double[] tmp) {
+		    for (int i = 2*from, j = 2*(from+offset); i < 2*to; i += 2, j += 2) {
+			double c1r = a[i], c1i = a[i+1], c2r = a[j], c2i = a[j+1];
+			a[i] = m12r*c2r - m12i*c2i; a[i+1] = m12r*c2i + m12i*c2r;
+			a[j] = m21r*c1r - m21i*c1i; a[j+1] = m21r*c1i + m21i*c1r;
+		    }
+		}
+	    });
+	}
+	else {
+	    final double m11r = c[0], m11i = c[1], m12r = c[2], m12i = c[3];
+	    final double m21r = c[4], m21i = c[5], m22r = c[6], m22i = c[7];
+	    ParallelKernel.run(count, new Runs(first, free) {
+		void run(int from, int to, double[] tmp) {
+		    for (int i = 2*from, j = 2*(from+offset); i < 2*to; i += 2, j += 2) {
+			double c1r = a[i], c1i = a[i+1], c2r = a[j], c2i = a[j+1];
+			a[i] = m11r*c1r - m11i*c1i + m12r*c2r - m12i*c2i;
+			a[i+1] = m11r*c1i + m11i*c1r + m12r*c2i + m12i*c2r;
+			a[j] = m21r*c1r - m21i*c1i + m22r*c2r - m22i*c2i;
+			a[j+1] = m21r*c1i + m21i*c1r + m22r*c2i + m22i*c2r;
+		    }
+		}
+	    });
+	}
+    }
+
+    /**
+     * multiplies the components first+step, where step runs over all submasks
+     * of free, by re + i*im
+     */
+    private static void multiply(final double[] a, int first, int free, 
+				 final double re, final double im) {
+	ParallelKernel.run(SubspaceIndex.size(free), new Runs(first, free) {
+	    void run(int from, int to, double[] tmp) {
+		for (int i = 2*from; i < 2*to; i += 2) {
+		    double cr = a[i], ci = a[i+1];
+		    a[i] = re*cr - im*ci;
+		    a[i+1] = re*ci + im*cr;
+		}
+	    }
+	});
+    }
+
+    /**
+     * applies an NxN matrix like <tt>BinaryOp.applyNxN</tt>
+     */
+    static void applyNxN(final double[] a, int first, final int[] offsets, int free, 
+			 final double[] c) {
+	final int size = offsets.length;
+
+	// tmp is the working copy of the subspace
+	ParallelKernel.run(SubspaceIndex.size(free), new Runs(first, free, 2*size) {
+	    void run(int from, int to, double[] tmp) {
+		for (int base = from; base < to; base++) {
+		    for (int l = 0; l < size; l++) {
+			tmp[2*l] = a[2*(base+offsets[l])];
+			tmp[2*l+1] = a[2*(base+offsets[l])+1];
+		    }
+		    for (int l = 0; l < size; l++) {
+			double re = 0, im = 0;
+			for (int k = 0; k < size; k++) {
+			    double mr = c[2*(l*size+k)], mi = c[2*(l*size+k)+1];
+			    re += mr*tmp[2*k] - mi*tmp[2*k+1];
+			    im += mr*tmp[2*k+1] + mi*tmp[2*k];
+			}
+			a[2*(base+offsets[l])] = re;
+			a[2*(base+offsets[l])+1] = im;
+		    }
+		}
+	    }
+	});
+    }
+}
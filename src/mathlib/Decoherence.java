@@ -36,10 +36,15 @@ import java.util.*;
  * therefore a decay is possible.
  */
 public class Decoherence extends MathMap {
-    static int decQubit = -1;
-    static boolean decayed;
+    /** qubit that decayed in the last step, -1 if none */
+    protected int decQubit = -1;
+    /** true if a qubit decayed in the last step */
+    protected boolean decayed;
+    /** qubit affected by decoherence, -1 for a random one */
+    protected int presetQubit = -1;
 
-    public static int presetQubit=-1;
+    /** context providing the random generator and the circuit properties */
+    protected MathlibContext context = null;
 
     /**
      * create a measurement map for a full measurement
@@ -48,17 +53,49 @@ public class Decoherence extends MathMap {
 	decayed = false;
     }
 
+    /**
+     * creates a decoherence map working on the given context instead of the 
+     * current one
+     */
+    public Decoherence(MathlibContext context) {
+	this();
+	this.context = context;
+    }
+
+    /**
+     * returns the context of this map
+     */
+    private MathlibContext context() {
+	return (context == null) ? Parse.context() : context;
+    }
+
+    /**
+     * sets the qubit affected by decoherence, -1 for a random one
+     */
+    public void setPresetQubit(int qubit) {
+	presetQubit = qubit;
+    }
+
+    /**
+     * returns the qubit affected by decoherence, -1 for a random one
+     */
+    public int getPresetQubit() {
+	return presetQubit;
+    }
+
     public MathObject apply(double rate, double decay, MathObject o) {
 	if (o instanceof Braket){
+	    Random random = context().getRandom();
 	    int qubit;
 	    if (presetQubit == -1) 
-		qubit = Mathlib.getRandom().nextInt(((Braket)o).n);
+		qubit = random.nextInt(((Braket)o).n);
 	    else
 		qubit = presetQubit;
 
 	    // decohere!!
-	    if (Mathlib.getRandom().nextDouble() <= rate) {
-		decayed = decohere((Braket)o, 1-decay, qubit);
+	    if (random.nextDouble() <= rate) {
+		decayed = decohere((Braket)o, 1-decay, qubit, random);
+		decQubit = decayed ? qubit : -1;
 		if (decayed) {
 		    LOG.LOG(0,"qubit "+qubit+" decayed.");
 		}
@@ -85,7 +122,8 @@ public class Decoherence extends MathMap {
      */
     public MathObject apply(MathObject o) {
 	if (o instanceof Braket){
-	    MathObject cp = Mathlib.getVar("circuit_properties");
+	    MathlibContext context = context();
+	    MathObject cp = context.getVar("circuit_properties");
 	    if (cp != null) {
 		Argument rate = ((GateProperty)cp).getProperty("rate");
 		if (rate != null) {
@@ -98,10 +136,13 @@ public class Decoherence extends MathMap {
 			decayVal = 0.5;
 
 		    double rateVal = ((Complex)rate).re();
-		    int qubit = Mathlib.getRandom().nextInt(((Braket)o).n);
+		    Random random = context.getRandom();
+		    int qubit = random.nextInt(((Braket)o).n);
 		    // decohere!!
-		    if (Mathlib.getRandom().nextDouble() <= rateVal) {
-			boolean yes = decohere((Braket)o, 1-decayVal, qubit);
+		    if (random.nextDouble() <= rateVal) {
+			boolean yes = decohere((Braket)o, 1-decayVal, qubit, random);
+			decayed = yes;
+			decQubit = yes ? qubit : -1;
 			System.out.println("decoherence step on qubit " + qubit+ " with decay probability p = " + decayVal);
 			if (yes) 
 			    System.out.println("qubit decayed.");
@@ -130,81 +171,108 @@ public class Decoherence extends MathMap {
      * @return true if a decay occured
      */
     public static boolean decohere(Braket q, double p, int qubit) {
-	if (Mathlib.getRandom().nextDouble() > p) {
-	    int dim = 0, n = 0;
-	    int offset, step;
-	    double norm = 0;
-	    boolean zeroCheck = true;
-
-	    n = q.n;
-	    dim = q.dimension;
-
-	    offset = BinaryOp.pow(2, n-qubit-1);
+	return decohere(q, p, qubit, Mathlib.getRandom());
+    }
 
-	    // counter
-	    int[] jokers = new int[n]; int j = 0;
-	    for (int i = 0; i < n; i++) if (i!= qubit) jokers[j++] = n-i-1;
+    /**
+     * decoheres a qubit like <tt>decohere(q, p, qubit)</tt>, drawing from the
+     * given random generator
+     */
+    public static boolean decohere(Braket q, double p, int qubit, Random random) {
+	// was already in |0> if project returns false
+	return random.nextDouble() > p && project(q, qubit);
+    }
 
-	    boolean[] binary_counter = new boolean[n-1];
+    /**
+     * performs a decoherence step like <tt>apply(rate, decay, q)</tt>, but draws
+     * the random numbers from the given generator and keeps no state, so that
+     * independent simulations can run concurrently.
+     * @param q ket vector
+     * @param rate probability of a decoherence event
+     * @param decay probability of the decay of the chosen qubit
+     * @param qubit the qubit to decohere, -1 for a random one
+     * @param random random generator of the simulation
+     * @return the decayed qubit or -1 if no decay occurred
+     */
+    public static int decohere(Braket q, double rate, double decay, int qubit, Random random) {
+	if (qubit == -1) qubit = random.nextInt(q.n);
 
-	    for (int i = 0; i < BinaryOp.pow(2,n-1); i++) {
-		step = 0;
-		if (n-1 > 0) {
+	if (random.nextDouble() <= rate && random.nextDouble() > 1-decay && project(q, qubit))
+	    return qubit;
+	return -1;
+    }
 
-		    // calculate stepsize
-		    for (int l = 0; l < n-1; l++) {
-			step += (binary_counter[l]? BinaryOp.pow(2,jokers[n-1-l-1]) : 0);
-		    } 
+    /**
+     * projects the given qubit onto the state |0>, i.e. the components with
+     * the qubit in state |1> are moved to the ones with the qubit in state |0>.
+     * The state is renormalized afterwards.
+     * @return false if the qubit was already in state |0>
+     */
+    private static boolean project(Braket q, int qubit) {
+	int dim = 0, n = 0;
+	int offset, step;
+	double norm = 0;
+	boolean zeroCheck = true;
 
-		    // increase binary counter
-		    for(j=0;(j<n-1)&&!(binary_counter[j]=!binary_counter[j++]););
-		}
+	n = q.n;
+	dim = q.dimension;
 
-		if (q.data[step+offset] != null) {
-		    zeroCheck = false;		
-		    
-		    q.data[step] = q.data[step+offset];
-		    q.data[step+offset] = null;
-		    norm += q.data[step].magnitudeSquared();
-		}
+	if (q.isSparse()) {
+	    long bit = 1L << (n-qubit-1);
+	    long[] keys = q.map.keys();
+	    for (int i = 0; i < keys.length; i++) {
+		if ((keys[i] & bit) == 0) continue;
+		zeroCheck = false;
+		q.set(keys[i] & ~bit, q.re(keys[i]), q.im(keys[i]));
+		q.clear(keys[i]);
+		norm += q.magnitudeSquared(keys[i] & ~bit);
 	    }
-	    // was already in |0>
 	    if (zeroCheck) return false;
+	    norm = Math.sqrt(1/norm);
+	    if (norm != 1) q.scale(norm);
+	    q.adaptStorage();
+	    return true;
+	}
 
-	    norm = Math.sqrt(1/norm);	
-	    if (norm == 1) {
-		decQubit = qubit;
-		decayed = true;
-		return true;
-	    }
+	offset = 1 << (n-qubit-1);
+
+	// all basis states with the qubit in state |0>
+	int free = (dim - 1) & ~offset;
+	int count = SubspaceIndex.size(free);
+	step = 0;
 
-	    // renormalize
-	    for (int i = 0; i < dim; i++) {
-		if (q.data[i] != null) q.data[i] = q.data[i].times(norm);
+	for (int i = 0; i < count; i++, step = SubspaceIndex.next(step, free)) {
+	    if (!q.isZero(step+offset)) {
+		zeroCheck = false;		
+		    
+		q.set(step, q.re(step+offset), q.im(step+offset));
+		q.clear(step+offset);
+		norm += q.magnitudeSquared(step);
 	    }
-	    decQubit = qubit;
-	    decayed = true;
-	    return true;
-	}
-	else {
-	    decQubit = -1;
-	    decayed = false;
-	    return false;
 	}
+	// was already in |0>
+	if (zeroCheck) return false;
+
+	norm = Math.sqrt(1/norm);	
+	if (norm == 1) return true;
+
+	// renormalize
+	q.scale(norm);
+	return true;
     }
 
     /**
      * returns the last decohered qubit. -1 if nothing happend during last decoherence
      * step
      */
-    public static int getLastDecoheredQubit() {
+    public int getLastDecoheredQubit() {
 	return decQubit;
     }
 
     /**
      * returns true if at the last operation the qubit decayed
      */
-    public static boolean decayOccurred() {
+    public boolean decayOccurred() {
 	return decayed;
     }
 
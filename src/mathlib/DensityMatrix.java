@@ -0,0 +1,559 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+
+package mathlib;
+
+import java.util.*;
+
+/**
+ * density matrix of a register of qubits, as an alternative to sampling
+ * trajectories of ket vectors. The channels are linear:
+ * <ul>
+ * <li>operational errors: the average of rho -&gt; G E rho E^+ G^+ over the 
+ * error matrices E of <tt>NoiseError</tt></li>
+ * <li>decoherence: with probability rate*decay one qubit (random or
+ * a given one) is reset to |0&gt;</li>
+ * <li>measurements are non-selective, i.e. the coherences between the 
+ * outcomes are removed</li>
+ * <li>preparations reset the target qubit to |0&gt; (u) or |1&gt; (d)</li>
+ * </ul>
+ * <p>Operational errors and measurements give what the Monte Carlo 
+ * simulation approaches with many runs. Decoherence and preparations do not
+ * in general: on a ket, <tt>Decoherence</tt> moves the |1&gt; amplitudes of 
+ * the qubit onto |0&gt; and renormalizes, and a preparation adds them to the
+ * amplitudes of the prepared state without renormalizing. Both keep the 
+ * ket coherent, while the reset here leaves a mixture. The engines agree 
+ * only if the affected qubit is not in a superposition, e.g. for (|00&gt;+|11&gt;)/sqrt(2)
+ * they differ.</p>
+ * <p>The matrix is stored dense (row major, real and imaginary parts 
+ * interleaved), which limits it to <tt>MAX_QUBITS</tt> qubits: 13 qubits take
+ * 1 GB.</p>
+ * @see CompiledGate
+ * @see NoiseError#superoperator(double)
+ */
+public class DensityMatrix {
+
+    /** maximum number of qubits */
+    public static final int MAX_QUBITS = 13;
+
+    /** number of qubits */
+    public int n;
+    /** dimension of the state space */
+    public int dimension;
+    /** matrix elements, row major, real and imaginary parts interleaved */
+    protected double[] rho;
+
+    /**
+     * creates the density matrix of the state |0...0&gt; of n qubits
+     */
+    public DensityMatrix(int n) throws IllegalArgumentException {
+	if (n < 1 || n > MAX_QUBITS) 
+	    throw new IllegalArgumentException("density matrix of "+n+" qubits not supported");
+	this.n = n;
+	dimension = 1 << n;
+	rho = new double[2*dimension*dimension];
+	rho[0] = 1;
+    }
+
+    /**
+     * creates the density matrix |q&gt;&lt;q| of the given ket
+     */
+    public DensityMatrix(Braket q) throws IllegalArgumentException {
+	this(q.n);
+	rho[0] = 0;
+	int d = dimension;
+	for (int r = 0; r < d; r++) {
+	    if (q.isZero(r)) continue;
+	    double ar = q.re(r), ai = q.im(r);
+	    for (int c = 0; c < d; c++) {
+		if (q.isZero(c)) continue;
+		double br = q.re(c), bi = -q.im(c);
+		rho[2*(r*d+c)] = ar*br - ai*bi;
+		rho[2*(r*d+c)+1] = ar*bi + ai*br;
+	    }
+	}
+    }
+
+    /**
+     * creates a copy of the given density matrix
+     */
+    public DensityMatrix(DensityMatrix m) {
+	n = m.n;
+	dimension = m.dimension;
+	rho = (double[])m.rho.clone();
+    }
+
+    /**
+     * returns the real part of the element (r, c)
+     */
+    public double re(int r, int c) {
+	return rho[2*(r*dimension+c)];
+    }
+
+    /**
+     * returns the imaginary part of the element (r, c)
+     */
+    public double im(int r, int c) {
+	return rho[2*(r*dimension+c)+1];
+    }
+
+    /**
+     * returns the trace
+     */
+    public double trace() {
+	double t = 0;
+	for (int i = 0; i < dimension; i++) t += rho[2*(i*dimension+i)];
+	return t;
+    }
+
+    /**
+     * applies the gate without operational error
+     */
+    public void apply(Gate g) {
+	apply(new CompiledGate(g), 0);
+    }
+
+    /**
+     * applies the compiled gate. Single qubit gates (except fused ones) get the
+     * operational error of standard deviation sigma, as in 
+     * <tt>CompiledGate.apply(Braket, double[], Random)</tt>.
+     * Gates of the wrong dimension are ignored.
+     * @throws IllegalArgumentException for gates on more than 
+     * <tt>Braket.MAX_DENSE_QUBITS</tt> qubits
+     */
+    public void apply(CompiledGate g, double sigma) throws IllegalArgumentException {
+	if (g.kind == CompiledGate.GATE)
+	    throw new IllegalArgumentException("gate not supported by density matrices");
+	if (g.dimension != dimension) return;
+
+	double[] c = g.coefficients;
+	switch (g.kind) {
+	case CompiledGate.MEASUREMENT:
+	    dephase(1 << (n-g.measured-1));
+	    break;
+	case CompiledGate.PREPARATION:
+	    if (c == BinaryOp.UP) 
+		apply2x2(g.first, g.offset, add(product(RESET0, RESET0), product(LOWER, LOWER)), 
+			 RESET0);
+	    else if (c == BinaryOp.DOWN) 
+		apply2x2(g.first, g.offset, add(product(RESET1, RESET1), product(RAISE, RAISE)), 
+			 RESET1);
+	    else apply2x2(g.first, g.offset, product(c, c), c);
+	    break;
+	case CompiledGate.GENERAL:
+	case CompiledGate.DIAGONAL:
+	case CompiledGate.ANTIDIAGONAL:
+	    if (sigma != 0 && g.gate != null) 
+		apply2x2(g.first, g.offset, 
+			 multiply(product(c, c), NoiseError.superoperator(sigma), 4), 
+			 multiply(c, NoiseError.mean(sigma), 2));
+	    else apply2x2(g.first, g.offset, product(c, c), c);
+	    break;
+	case CompiledGate.MATRIX:
+	    applyNxN(g.first, g.offsets, c);
+	    break;
+	case CompiledGate.DIAGONALS:
+	    applyDiagonals(g.controls, g.targets, c);
+	    break;
+	}
+    }
+
+    /** Kraus operators of the preparations */
+    private static final double[] RESET0 = {1, 0, 0, 0, 0, 0, 0, 0};
+    private static final double[] LOWER = {0, 0, 1, 0, 0, 0, 0, 0};
+    private static final double[] RESET1 = {0, 0, 0, 0, 0, 0, 1, 0};
+    private static final double[] RAISE = {0, 0, 0, 0, 1, 0, 0, 0};
+
+    /**
+     * returns a x b* for two 2x2 matrices, i.e. the map rho -&gt; a rho b^+
+     * (layout as in <tt>NoiseError.superoperator</tt>)
+     */
+    private static double[] product(double[] a, double[] b) {
+	double[] t = new double[32];
+	for (int r = 0; r < 4; r++) {
+	    for (int c = 0; c < 4; c++) {
+		int x = 2*(2*(r/2) + c/2), y = 2*(2*(r%2) + c%2);
+		t[2*(4*r+c)] = a[x]*b[y] + a[x+1]*b[y+1];
+		t[2*(4*r+c)+1] = a[x+1]*b[y] - a[x]*b[y+1];
+	    }
+	}
+	return t;
+    }
+
+    /**
+     * returns the sum of two arrays
+     */
+    private static double[] add(double[] a, double[] b) {
+	double[] c = new double[a.length];
+	for (int i = 0; i < c.length; i++) c[i] = a[i]+b[i];
+	return c;
+    }
+
+    /**
+     * returns the product of two complex size x size matrices
+     */
+    private static double[] multiply(double[] a, double[] b, int size) {
+	double[] c = new double[2*size*size];
+	for (int r = 0; r < size; r++) {
+	    for (int k = 0; k < size; k++) {
+		for (int j = 0; j < size; j++) {
+		    int ia = 2*(size*r+j), ib = 2*(size*j+k);
+		    c[2*(size*r+k)] += a[ia]*b[ib] - a[ia+1]*b[ib+1];
+		    c[2*(size*r+k)+1] += a[ia]*b[ib+1] + a[ia+1]*b[ib];
+		}
+	    }
+	}
+	return c;
+    }
+
+    /**
+     * returns the status of the basis states for a 2x2 kernel: 1 for the 
+     * first and 2 for the second component of a pair, 0 for the states the
+     * gate does not touch
+     */
+    private byte[] status(int first, int offset) {
+	byte[] s = new byte[dimension];
+	for (int i = 0; i < dimension; i++) {
+	    if ((i & first) != first) continue;
+	    if ((i & offset) == 0) s[i] = 1;
+	    else if ((i & offset) == offset) s[i] = 2;
+	}
+	return s;
+    }
+
+    /**
+     * applies a channel that acts on the pairs of basis states first+step and
+     * first+offset+step like the 2x2 ket kernel and leaves the other states
+     * alone. The elements between two pairs are mapped by the 4x4 matrix t
+     * (<tt>NoiseError.superoperator</tt> layout), the elements between a pair 
+     * and an untouched state by the 2x2 matrix a from the left (or a^+ from
+     * the right).
+     * @see BinaryOp#apply2x2(Braket, int, int, int, double[])
+     */
+    private void apply2x2(int first, final int offset, final double[] t, final double[] a) {
+	final byte[] s = status(first, offset);
+	final int d = dimension;
+	final double[] m = rho;
+
+	ParallelKernel.run(d, new ParallelKernel.Range() {
+	    public void apply(int lo, int hi) {
+		double[] x = new double[8];
+		for (int r = lo; r < hi; r++) {
+		    if (s[r] == 2) continue;
+		    int r1 = r+offset;
+		    for (int c = 0; c < d; c++) {
+			if (s[c] == 2) continue;
+			if (s[r] == 1 && s[c] == 1) {
+			    int c1 = c+offset;
+			    int[] e = {r*d+c, r*d+c1, r1*d+c, r1*d+c1};
+			    for (int k = 0; k < 4; k++) {
+				x[2*k] = m[2*e[k]]; x[2*k+1] = m[2*e[k]+1];
+			    }
+			    for (int j = 0; j < 4; j++) {
+				double re = 0, im = 0;
+				for (int k = 0; k < 4; k++) {
+				    double tr = t[2*(4*j+k)], ti = t[2*(4*j+k)+1];
+				    re += tr*x[2*k] - ti*x[2*k+1];
+				    im += tr*x[2*k+1] + ti*x[2*k];
+				}
+				m[2*e[j]] = re; m[2*e[j]+1] = im;
+			    }
+			}
+			else if (s[r] == 1) {
+			    // a * (rho[r][c], rho[r1][c])
+			    int e0 = 2*(r*d+c), e1 = 2*(r1*d+c);
+			    double x0r = m[e0], x0i = m[e0+1], x1r = m[e1], x1i = m[e1+1];
+			    m[e0] = a[0]*x0r - a[1]*x0i + a[2]*x1r - a[3]*x1i;
+			    m[e0+1] = a[0]*x0i + a[1]*x0r + a[2]*x1i + a[3]*x1r;
+			    m[e1] = a[4]*x0r - a[5]*x0i + a[6]*x1r - a[7]*x1i;
+			    m[e1+1] = a[4]*x0i + a[5]*x0r + a[6]*x1i + a[7]*x1r;
+			}
+			else if (s[c] == 1) {
+			    // (rho[r][c], rho[r][c1]) * a^+
+			    int e0 = 2*(r*d+c), e1 = 2*(r*d+c+offset);
+			    double x0r = m[e0], x0i = m[e0+1], x1r = m[e1], x1i = m[e1+1];
+			    m[e0] = a[0]*x0r + a[1]*x0i + a[2]*x1r + a[3]*x1i;
+			    m[e0+1] = a[0]*x0i - a[1]*x0r + a[2]*x1i - a[3]*x1r;
+			    m[e1] = a[4]*x0r + a[5]*x0i + a[6]*x1r + a[7]*x1i;
+			    m[e1+1] = a[4]*x0i - a[5]*x0r + a[6]*x1i - a[7]*x1r;
+			}
+		    }
+		}
+	    }
+	});
+    }
+
+    /**
+     * applies the unitary matrix c to the subspaces first+offsets[l]+step from 
+     * both sides
+     * @see BinaryOp#applyNxN(Braket, int, int[], int, double[], Matrix)
+     */
+    private void applyNxN(final int first, final int[] offsets, final double[] c) {
+	final int targets = offsets[offsets.length-1];
+	final int size = offsets.length;
+	final int d = dimension;
+	final double[] m = rho;
+
+	// rho -> c rho: columns are independent
+	ParallelKernel.run(d, new ParallelKernel.Range() {
+	    public void apply(int lo, int hi) {
+		double[] tmp = new double[2*size];
+		for (int col = lo; col < hi; col++) {
+		    for (int base = 0; base < d; base++) {
+			if ((base & first) != first || (base & targets) != 0) continue;
+			for (int l = 0; l < size; l++) {
+			    int e = 2*((base+offsets[l])*d+col);
+			    tmp[2*l] = m[e]; tmp[2*l+1] = m[e+1];
+			}
+			for (int l = 0; l < size; l++) {
+			    double re = 0, im = 0;
+			    for (int k = 0; k < size; k++) {
+				double mr = c[2*(l*size+k)], mi = c[2*(l*size+k)+1];
+				re += mr*tmp[2*k] - mi*tmp[2*k+1];
+				im += mr*tmp[2*k+1] + mi*tmp[2*k];
+			    }
+			    int e = 2*((base+offsets[l])*d+col);
+			    m[e] = re; m[e+1] = im;
+			}
+		    }
+		}
+	    }
+	});
+
+	// rho -> rho c^+: rows are independent
+	ParallelKernel.run(d, new ParallelKernel.Range() {
+	    public void apply(int lo, int hi) {
+		double[] tmp = new double[2*size];
+		for (int row = lo; row < hi; row++) {
+		    for (int base = 0; base < d; base++) {
+			if ((base & first) != first || (base & targets) != 0) continue;
+			for (int l = 0; l < size; l++) {
+			    int e = 2*(row*d+base+offsets[l]);
+			    tmp[2*l] = m[e]; tmp[2*l+1] = m[e+1];
+			}
+			for (int l = 0; l < size; l++) {
+			    double re = 0, im = 0;
+			    for (int k = 0; k < size; k++) {
+				double mr = c[2*(l*size+k)], mi = -c[2*(l*size+k)+1];
+				re += mr*tmp[2*k] - mi*tmp[2*k+1];
+				im += mr*tmp[2*k+1] + mi*tmp[2*k];
+			    }
+			    int e = 2*(row*d+base+offsets[l]);
+			    m[e] = re; m[e+1] = im;
+			}
+		    }
+		}
+	    }
+	});
+    }
+
+    /**
+     * applies a sequence of diagonal gates: element (r, c) is multiplied by the
+     * phase of r and the conjugate phase of c
+     * @see BinaryOp#applyDiagonals(Braket, long[], long[], double[])
+     */
+    private void applyDiagonals(long[] controls, long[] targets, double[] c) {
+	final int d = dimension;
+	final double[] m = rho;
+	final double[] phase = new double[2*d];
+	for (int i = 0; i < d; i++) {
+	    double pr = 1, pi = 0;
+	    for (int j = 0; j < controls.length; j++) {
+		if ((i & controls[j]) != controls[j]) continue;
+		int k = ((i & targets[j]) == 0) ? 4*j : 4*j+2;
+		double t = pr*c[k] - pi*c[k+1];
+		pi = pr*c[k+1] + pi*c[k];
+		pr = t;
+	    }
+	    phase[2*i] = pr;
+	    phase[2*i+1] = pi;
+	}
+
+	ParallelKernel.run(d, new ParallelKernel.Range() {
+	    public void apply(int lo, int hi) {
+		for (int r = lo; r < hi; r++) {
+		    for (int c = 0; c < d; c++) {
+			// phase[r] * conj(phase[c])
+			double pr = phase[2*r]*phase[2*c] + phase[2*r+1]*phase[2*c+1];
+			double pi = phase[2*r+1]*phase[2*c] - phase[2*r]*phase[2*c+1];
+			int e = 2*(r*d+c);
+			double re = m[e], im = m[e+1];
+			m[e] = pr*re - pi*im;
+			m[e+1] = pr*im + pi*re;
+		    }
+		}
+	    }
+	});
+    }
+
+    /**
+     * removes the coherences between the states that differ in the given bit
+     */
+    private void dephase(int bit) {
+	int d = dimension;
+	for (int r = 0; r < d; r++) {
+	    for (int c = 0; c < d; c++) {
+		if (((r ^ c) & bit) == 0) continue;
+		rho[2*(r*d+c)] = 0;
+		rho[2*(r*d+c)+1] = 0;
+	    }
+	}
+    }
+
+    /**
+     * applies a decoherence step: with probability rate*decay the chosen qubit
+     * is reset to |0&gt;. The qubit is the given one or, if qubit is -1, each 
+     * qubit with the same probability. This is the linear counterpart of 
+     * <tt>Decoherence.decohere(q, rate, decay, qubit, random)</tt>, which 
+     * renormalizes the ket and therefore gives a different average if the 
+     * qubit is in a superposition.
+     * @see Decoherence#decohere(Braket, double, double, int, Random)
+     */
+    public void decohere(double rate, double decay, int qubit) {
+	double p = rate*decay;
+	if (p <= 0) return;
+	if (qubit != -1) {
+	    decay(qubit, p);
+	    return;
+	}
+	// average of decay(qubit, p) over the qubits: an element keeps 1-p of
+	// its value for each qubit set in its row or column and gains p times
+	// the element with the qubit set in both for the others. Those come
+	// later, so the update can be done in place.
+	int d = dimension;
+	double q = p/n;
+	for (int r = 0; r < d; r++) {
+	    for (int c = 0; c < d; c++) {
+		int e = 2*(r*d+c);
+		int set = r | c;
+		int k = 0;
+		double sr = 0, si = 0;
+		for (int bit = 1; bit < d; bit <<= 1) {
+		    if ((set & bit) != 0) k++;
+		    else {
+			int f = 2*((r|bit)*d+(c|bit));
+			sr += rho[f];
+			si += rho[f+1];
+		    }
+		}
+		rho[e] = (1-k*q)*rho[e] + q*sr;
+		rho[e+1] = (1-k*q)*rho[e+1] + q*si;
+	    }
+	}
+    }
+
+    /**
+     * with probability p resets the given qubit to |0&gt;, i.e. applies the
+     * channel with the Kraus operators sqrt(1-p) I, sqrt(p) |0&gt;&lt;0| and 
+     * sqrt(p) |0&gt;&lt;1|
+     */
+    private void decay(int qubit, double p) {
+	int d = dimension;
+	int bit = 1 << (n-qubit-1);
+	for (int r = 0; r < d; r++) {
+	    for (int c = 0; c < d; c++) {
+		int e = 2*(r*d+c);
+		if ((r & bit) == 0 && (c & bit) == 0) {
+		    // the elements with the bit set come later
+		    int f = 2*((r|bit)*d+(c|bit));
+		    rho[e] += p*rho[f];
+		    rho[e+1] += p*rho[f+1];
+		}
+		else {
+		    rho[e] *= 1-p;
+		    rho[e+1] *= 1-p;
+		}
+	    }
+	}
+    }
+
+    /**
+     * returns the probability distribution of the given qubits (the last qubit
+     * is the least significant bit of the index), like 
+     * <tt>Measurement.getProbDistribution</tt> for kets
+     * @see Measurement#getProbDistribution(Braket, int[])
+     */
+    public double[] getProbabilities(int[] qubits) {
+	int[] offsets = SubspaceIndex.offsets(qubits, n);
+	double[] p = new double[offsets.length];
+	int mask = 0;
+	for (int i = 0; i < qubits.length; i++) mask |= 1 << (n-qubits[i]-1);
+	int rest = (dimension-1) & ~mask;
+	int count = SubspaceIndex.size(rest);
+	for (int k = 0; k < offsets.length; k++) {
+	    int step = 0;
+	    for (int i = 0; i < count; i++, step = SubspaceIndex.next(step, rest)) {
+		int x = offsets[k]+step;
+		p[k] += rho[2*(x*dimension+x)];
+	    }
+	}
+	return p;
+    }
+
+    /**
+     * returns the fidelity &lt;q|rho|q&gt; with respect to the pure state q
+     */
+    public double fidelity(Braket q) {
+	int d = dimension;
+	double re = 0;
+	for (int r = 0; r < d; r++) {
+	    if (q.isZero(r)) continue;
+	    // conj(q[r]) * sum_c rho[r][c] q[c]
+	    double sr = 0, si = 0;
+	    for (int c = 0; c < d; c++) {
+		if (q.isZero(c)) continue;
+		int e = 2*(r*d+c);
+		sr += rho[e]*q.re(c) - rho[e+1]*q.im(c);
+		si += rho[e]*q.im(c) + rho[e+1]*q.re(c);
+	    }
+	    re += q.re(r)*sr + q.im(r)*si;
+	}
+	return re;
+    }
+
+    /**
+     * returns the overlap Tr(rho sigma) with the given density matrix
+     */
+    public double fidelity(DensityMatrix m) {
+	int d = dimension;
+	double re = 0;
+	for (int r = 0; r < d; r++) {
+	    for (int c = 0; c < d; c++) {
+		int e = 2*(r*d+c), f = 2*(c*d+r);
+		re += rho[e]*m.rho[f] - rho[e+1]*m.rho[f+1];
+	    }
+	}
+	return re;
+    }
+
+    /**
+     * returns a string representation of the diagonal and the trace
+     */
+    public String toString() {
+	StringBuilder s = new StringBuilder("diag(");
+	for (int i = 0; i < dimension; i++) {
+	    if (i > 0) s.append(", ");
+	    s.append(rho[2*(i*dimension+i)]);
+	}
+	return s.append(")").toString();
+    }
+}
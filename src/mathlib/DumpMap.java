@@ -38,18 +38,27 @@ public class DumpMap extends MathMap {
     }
 
     /**
-     * returns the components of a braket as a StringArgument object
+     * returns the components of a braket as a StringArgument object. Components
+     * beyond the length of the console rendering are left out and replaced by
+     * "...".
+     * @see Rendering#getConsole()
      */
     public MathObject apply(MathObject o) {
 	if (o instanceof Braket) {
-	    String dump = new String("");
+	    StringBuilder dump = new StringBuilder();
 	    Braket b = (Braket)o;
-	    for (int i = 0; i < b.dimension-1; i++) {
-		dump = dump.concat( ((b.data[i]== null)?"0":b.data[i].toString()) + " | ");
+	    Rendering r = Rendering.getConsole();
+	    for (int i = 0; i < b.dimension; i++) {
+		if (i > 0 && r.isFull(dump, 0)) {
+		    dump.append(" | ...");
+		    break;
+		}
+		if (i > 0) dump.append(" | ");
+		dump.append((b.isZero(i)) ? "0" : b.getElement(i).toString());
 	    }
-	    dump = dump.concat(((b.data[b.dimension-1]== null)?"0":b.data[b.dimension-1].toString())+"\n");
-	    dump = dump.concat("transpose: " + b.transpose);
-	    return new StringArgument(dump);
+	    dump.append("\n");
+	    dump.append("transpose: " + b.transpose);
+	    return new StringArgument(dump.toString());
 	}
 
 	LOG.LOG(0, toString() + " not defined for argument");
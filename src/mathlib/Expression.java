@@ -0,0 +1,220 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+
+package mathlib;
+
+/**
+ * a compiled expression: the tree of operations of a parsed string whose 
+ * variables are resolved each time it is evaluated. Literals are parsed and
+ * operators on literals only are applied once when the expression is 
+ * compiled; evaluating the expression applies the remaining operators and the
+ * functions, which may be stochastic, to the current values of the variables
+ * without preprocessing or tokenizing the string again. Gate literals and 
+ * vector or matrix literals containing names are parsed on evaluation. 
+ * Expressions are immutable and cached by the parser.
+ * <p>While parsing, the nodes take the place of the values in the token stream,
+ * so the parser builds the tree with the same grammar it evaluates strings 
+ * with. Assignments and commands have side effects and are not compiled.</p>
+ * @see Parse#compile(String, boolean)
+ */
+public abstract class Expression extends Argument {
+
+    /**
+     * name of the answer variable of a statement that is a single variable,
+     * otherwise null
+     * @see Tokenizer#getAnswerVar()
+     */
+    String answerVar;
+
+    /**
+     * evaluates the expression with the variables of the current context. 
+     * Each call returns new objects.
+     * @return the value or null if an operation failed or a variable is unknown
+     */
+    public abstract MathObject evaluate();
+
+    /**
+     * returns the given value as an expression
+     */
+    static Expression of(MathObject o) {
+	return (o instanceof Expression) ? (Expression)o : new Constant(o);
+    }
+
+    /**
+     * expressions are only equal to themselves
+     */
+    public boolean equals(MathObject m) {
+	return this == m;
+    }
+
+    /**
+     * a literal or the result of operations on literals
+     */
+    static class Constant extends Expression {
+	private MathObject value;
+
+	Constant(MathObject value) {
+	    this.value = value;
+	}
+
+	public MathObject evaluate() {
+	    return (MathObject)value.clone();
+	}
+
+	public String toString() {
+	    return value.toString();
+	}
+    }
+
+    /**
+     * a variable, resolved on evaluation
+     */
+    static class Reference extends Expression {
+	private String name, source;
+	private int pos;
+
+	/**
+	 * @param name name of the variable
+	 * @param source the preprocessed string, for error messages
+	 * @param pos position of the name in the string
+	 */
+	Reference(String name, String source, int pos) {
+	    this.name = name;
+	    this.source = source;
+	    this.pos = pos;
+	}
+
+	public MathObject evaluate() {
+	    MathObject value;
+	    try {
+		value = Mathlib.getVar(name);
+	    }
+	    catch (java.util.MissingResourceException e) {
+		LOG.ERROR(source, "parse error: unknown object!", pos+name.length()+1);
+		return null;
+	    }
+	    if (value == null) {
+		LOG.ERROR(source, "parse error: unknown variable!", pos+name.length()+1);
+		return null;
+	    }
+	    return (MathObject)value.clone();
+	}
+
+	public String toString() {
+	    return name;
+	}
+    }
+
+    /**
+     * a vector, matrix or gate literal reading variables, parsed on evaluation
+     */
+    static class Literal extends Expression {
+	private char kind;
+	private String text, source;
+	private int pos;
+
+	/**
+	 * @param kind 'v' for vectors, 'm' for matrices and 'g' for gates
+	 * @param text the literal
+	 * @param source the preprocessed string, for error messages
+	 * @param pos position of the literal in the string
+	 */
+	Literal(char kind, String text, String source, int pos) {
+	    this.kind = kind;
+	    this.text = text;
+	    this.source = source;
+	    this.pos = pos;
+	}
+
+	public MathObject evaluate() {
+	    try {
+		if (kind == 'g') return Gate.parseGate(text);
+		else if (kind == 'm') return Matrix.parseMatrix(text);
+		else return Vect.parseVector(text);
+	    } catch (Exception e) {
+		LOG.ERROR(source, e.getMessage(), pos);
+		return null;
+	    }
+	}
+
+	public String toString() {
+	    return text;
+	}
+    }
+
+    /**
+     * a unary operator or a function applied to an expression
+     */
+    static class Unary extends Expression {
+	private MathObject op;
+	private Expression arg;
+
+	/**
+	 * @param op a UnaryOp or a MathMap
+	 */
+	Unary(MathObject op, Expression arg) {
+	    this.op = op;
+	    this.arg = arg;
+	}
+
+	public MathObject evaluate() {
+	    MathObject a = arg.evaluate();
+	    if (a == null) return null;
+	    if (op instanceof UnaryOp) return ((UnaryOp)op).apply(a);
+	    else return ((MathMap)op).apply(a);
+	}
+
+	public String toString() {
+	    return op.toString() + "(" + arg + ")";
+	}
+    }
+
+    /**
+     * a binary or conditional operator applied to two expressions
+     */
+    static class Binary extends Expression {
+	private Operator op;
+	private Expression arg1, arg2;
+
+	/**
+	 * @param op a BinaryOp or a ConditionalOp
+	 */
+	Binary(Operator op, Expression arg1, Expression arg2) {
+	    this.op = op;
+	    this.arg1 = arg1;
+	    this.arg2 = arg2;
+	}
+
+	public MathObject evaluate() {
+	    MathObject a1 = arg1.evaluate();
+	    if (a1 == null) return null;
+	    MathObject a2 = arg2.evaluate();
+	    if (a2 == null) return null;
+	    if (op instanceof BinaryOp) return ((BinaryOp)op).apply(a1, a2);
+	    else return ((ConditionalOp)op).apply((Argument)a1, (Argument)a2);
+	}
+
+	public String toString() {
+	    return "(" + arg1 + op + arg2 + ")";
+	}
+    }
+}
@@ -56,6 +56,13 @@ public class Gate extends Argument {
     /** holds the number of qubits */
     public int n;
 
+    /** resolved matrix, valid for entryCache, entryName, entryFlags and entryVersion */
+    private MatrixCache.Entry entry = null;
+    private MatrixCache entryCache = null;
+    private String entryName = null;
+    private int entryFlags = 0;
+    private int entryVersion = -1;
+
 
     /**
      * here n is the number of qubits ==> the dimension of the corresponding
@@ -94,7 +101,7 @@ public class Gate extends Argument {
     public Gate(String gate_descr, String matrixName) {
 	this.n = gate_descr.length();
 	this.gate_descr = gate_descr;
-	this.matrixDimension = ((matrixName == null)? 0:((Matrix)Parse.parseExpression(matrixName)).n());
+	this.matrixDimension = ((matrixName == null)? 0:MatrixCache.getEntry(matrixName, false, false, false).matrix.n());
 	this.matrixName = ((matrixName == null) ? "" : matrixName);
     }
 
@@ -108,7 +115,7 @@ public class Gate extends Argument {
 	    descr[i] = ((matrixPos == i)? 'm':'-');
 	}
 	this.gate_descr = new String(descr);
-	this.matrixDimension = ((matrixName == null)? 0:((Matrix)Parse.parseExpression(matrixName)).n());
+	this.matrixDimension = ((matrixName == null)? 0:MatrixCache.getEntry(matrixName, false, false, false).matrix.n());
 	this.matrixName = ((matrixName == null) ? "" : matrixName);
     }
 
@@ -120,10 +127,20 @@ public class Gate extends Argument {
     }
 
     /**
-     * parses a gate from a given string. Throws an IllegalArgumentException when the
-     * operation fails.
+     * parses a gate from a given string in the current context. Throws an 
+     * IllegalArgumentException when the operation fails.
+     * @see MathlibContext#current()
      */
     public static Gate parseGate(String str) throws IllegalArgumentException {
+	return parseGate(str, Parse.context().getMathlib());
+    }
+
+    /**
+     * parses a gate from a given string, evaluating the matrix expressions with
+     * the given Mathlib object. Throws an IllegalArgumentException when the
+     * operation fails.
+     */
+    public static Gate parseGate(String str, Mathlib mathlib) throws IllegalArgumentException {
 	Gate g = null;
 
 	int pos1 = 0, pos2 = 0; 
@@ -181,7 +198,7 @@ public class Gate extends Argument {
 			if (matrixAssigned && g.matrixName.equals(str.substring(pos1,pos2).trim()) == false)
 			    throw new IllegalArgumentException("matrix mismatch");
 			else if (matrixAssigned == false) {
-			    matrix = (Matrix)mathlib.getVar(tmpName);
+			    matrix = (Matrix)mathlib.getContext().getVar(tmpName);
 			}
 		    } catch (IllegalArgumentException iae) {
 			throw new IllegalArgumentException("invalid object in gate definition: " + str.substring(pos1, pos2));
@@ -231,15 +248,55 @@ public class Gate extends Argument {
     }
 
     /**
-     * returns the matrix applied to the subspace
+     * returns the matrix applied to the subspace. The matrix is taken from the 
+     * matrix cache, the object returned is a copy.
+     * @see MatrixCache
      */
     public Matrix getMatrix() {
+	MatrixCache.Entry e = getEntry();
+	if (e == null) return null;
+	return new Matrix(e.matrix);
+    }
+
+    /**
+     * returns the coefficients of the matrix applied to the subspace in row-major
+     * order with real and imaginary parts interleaved, i.e. element (i,j) of a 
+     * NxN matrix is found at 2*(i*N+j). The array is shared and must not be 
+     * modified.
+     * @see MatrixCache
+     */
+    public double[] getCoefficients() {
+	MatrixCache.Entry e = getEntry();
+	if (e == null) return null;
+	return e.coefficients;
+    }
+
+    /**
+     * returns the cache entry of the matrix. It is looked up again only if the
+     * matrix name, the flags, the context or the cache version changed.
+     */
+    MatrixCache.Entry getEntry() {
 	if (matrixName == null || matrixName.trim().equals("")) return null;
-	Matrix m = new Matrix((Matrix)Parse.parseExpression(matrixName));
-	if (transpose) m.transpose();
-	if (conjugate) m.conjugate();
-	if (negative) m.negative();
-	return m;
+	int flags = getFlags();
+	MatrixCache cache = MatrixCache.getInstance();
+	int version = cache.currentVersion();
+	if (entry == null || entryCache != cache || entryVersion != version 
+	    || entryFlags != flags || !matrixName.equals(entryName)) {
+	    entry = cache.lookup(matrixName, transpose, conjugate, negative);
+	    entryCache = cache;
+	    entryName = matrixName;
+	    entryFlags = flags;
+	    entryVersion = version;
+	}
+	return entry;
+    }
+
+    /**
+     * returns the operations applied to the matrix: 1 if transposed, 2 if 
+     * conjugated and 4 if negated.
+     */
+    public int getFlags() {
+	return ((transpose) ? 1 : 0) | ((conjugate) ? 2 : 0) | ((negative) ? 4 : 0);
     }
 
     /**
@@ -132,33 +132,33 @@ public class GateProperty extends Argument{
      * returns the contained properties
      */
     public String toString() {
-	String str = new String("property object:\n");
+	StringBuilder str = new StringBuilder("property object:\n");
 	Enumeration e = properties.keys();
 	String propertyName;
 	Argument property;
 	while (e.hasMoreElements()) {
 	    propertyName = (String)e.nextElement();
 	    property = getProperty(propertyName);
-	    str = str.concat(propertyName +":\t" + property.toString()+"\n");
+	    str.append(propertyName +":\t" + property.toString()+"\n");
 	}
-	str = str.concat("gate: " + getGate()+"\n");
-	return str;
+	str.append("gate: " + getGate()+"\n");
+	return str.toString();
     }
 
     /**
      * returns a parsable sequence of commands representing this property object
      */
     public String toParseableString() {
-	String str = new String("");
+	StringBuilder str = new StringBuilder();
 	Enumeration e = properties.keys();
 	String propertyName;
 	Argument property;
 	while (e.hasMoreElements()) {
 	    propertyName = (String)e.nextElement();
 	    property = getProperty(propertyName);
-	    str = str.concat("gateproperty(\""+getGate()+"\","+propertyName +"=" + property.toParseableString()+")\n");
+	    str.append("gateproperty(\""+getGate()+"\","+propertyName +"=" + property.toParseableString()+")\n");
 	}
-	return str;
+	return str.toString();
     }
 
     /**
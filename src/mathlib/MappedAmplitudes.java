@@ -0,0 +1,239 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+
+package mathlib;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+ * the components of a dense braket in a memory mapped file instead of the
+ * heap, so that the size of a register is limited by the memory and disk of 
+ * the machine rather than by the maximum heap size. The file is created in the
+ * directory given by the system property jaquzzi.mapdir (the temporary 
+ * directory by default) and deleted right away or on exit; the operating 
+ * system pages the components in and out as needed.
+ * <p>The components are mapped in chunks of 2^26 (1 GiB), real and imaginary
+ * parts interleaved in native byte order. The gate kernels copy whole blocks
+ * into the heap (<tt>read</tt>, <tt>write</tt>) and process them in index
+ * order, see <tt>MappedKernels</tt>.</p>
+ * <p>The disk space of the deleted file is only returned when the chunks are
+ * unmapped, which the garbage collector does late. <tt>release</tt> unmaps 
+ * them right away.</p>
+ * @see Braket#setMapped(boolean)
+ * @see Braket#release()
+ */
+public class MappedAmplitudes {
+
+    /** number of components per mapped chunk is 2^CHUNK_BITS */
+    private static final int CHUNK_BITS = 26;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+
+    /** number of components */
+    private int dimension;
+    /** the mapped chunks */
+    private DoubleBuffer[] chunks;
+    /** the mapped buffers of the chunks, needed to unmap them */
+    private MappedByteBuffer[] buffers;
+
+    /** sun.misc.Unsafe and its invokeCleaner method, null if not available */
+    private static Object unsafe;
+    private static Method invokeCleaner;
+
+    static {
+	try {
+	    Class c = Class.forName("sun.misc.Unsafe");
+	    Field f = c.getDeclaredField("theUnsafe");
+	    f.setAccessible(true);
+	    unsafe = f.get(null);
+	    invokeCleaner = c.getMethod("invokeCleaner", new Class[] {ByteBuffer.class});
+	}
+	catch (Exception e) {
+	    // the garbage collector unmaps the chunks
+	    invokeCleaner = null;
+	}
+    }
+
+    /**
+     * creates a file of the given number of components, all 0
+     * @throws IllegalArgumentException if the file can not be created or mapped
+     */
+    public MappedAmplitudes(int dimension) throws IllegalArgumentException {
+	this.dimension = dimension;
+	File dir = new File(System.getProperty("jaquzzi.mapdir", 
+					       System.getProperty("java.io.tmpdir")));
+	File file = null;
+	RandomAccessFile raf = null;
+	try {
+	    file = File.createTempFile("jaquzzi", ".amp", dir);
+	    raf = new RandomAccessFile(file, "rw");
+	    raf.setLength(16L*dimension);
+	    FileChannel channel = raf.getChannel();
+	    chunks = new DoubleBuffer[(int)(((long)dimension + CHUNK_MASK) >>> CHUNK_BITS)];
+	    buffers = new MappedByteBuffer[chunks.length];
+	    for (int c = 0; c < chunks.length; c++) {
+		long start = (long)c << CHUNK_BITS;
+		long length = Math.min(1L << CHUNK_BITS, dimension - start);
+		buffers[c] = channel.map(FileChannel.MapMode.READ_WRITE, 16*start, 16*length);
+		chunks[c] = buffers[c].order(ByteOrder.nativeOrder()).asDoubleBuffer();
+	    }
+	}
+	catch (IOException e) {
+	    throw new IllegalArgumentException("can not map "+dimension+" components: "+e.getMessage());
+	}
+	finally {
+	    try {
+		if (raf != null) raf.close();
+	    } catch (IOException e) { }
+	    // the mapping stays valid
+	    if (file != null && file.delete() == false) file.deleteOnExit();
+	}
+    }
+
+    /**
+     * creates a copy of the given components in a new file
+     */
+    public MappedAmplitudes(MappedAmplitudes m) throws IllegalArgumentException {
+	this(m.dimension);
+	int size = blockSize();
+	double[] buffer = new double[2*size];
+	for (int i = 0; i < dimension; i += size) {
+	    m.read(i, buffer, size);
+	    write(i, buffer, size);
+	}
+    }
+
+    /**
+     * unmaps the file, so that its disk space is returned right away. The 
+     * components must not be used afterwards. If the JVM does not support 
+     * unmapping, the chunks are only dropped and unmapped by the garbage
+     * collector.
+     */
+    public synchronized void release() {
+	if (buffers == null) return;
+	MappedByteBuffer[] b = buffers;
+	chunks = null;
+	buffers = null;
+	if (invokeCleaner == null) return;
+	for (int c = 0; c < b.length; c++) {
+	    try {
+		invokeCleaner.invoke(unsafe, new Object[] {b[c]});
+	    }
+	    catch (Exception e) {
+		return;
+	    }
+	}
+    }
+
+    /**
+     * returns true if the file has been released
+     */
+    public synchronized boolean isReleased() {
+	return buffers == null;
+    }
+
+    /**
+     * returns the number of components
+     */
+    public int getDimension() {
+	return dimension;
+    }
+
+    /**
+     * returns the number of components the kernels process at once: 2^15 or
+     * the dimension if smaller
+     */
+    public int blockSize() {
+	return Math.min(1 << 15, dimension);
+    }
+
+    /**
+     * returns the real part of component i
+     */
+    public double re(int i) {
+	return chunks[i >>> CHUNK_BITS].get(2*(i & CHUNK_MASK));
+    }
+
+    /**
+     * returns the imaginary part of component i
+     */
+    public double im(int i) {
+	return chunks[i >>> CHUNK_BITS].get(2*(i & CHUNK_MASK)+1);
+    }
+
+    /**
+     * sets component i to re + i*im
+     */
+    public void set(int i, double re, double im) {
+	DoubleBuffer chunk = chunks[i >>> CHUNK_BITS];
+	chunk.put(2*(i & CHUNK_MASK), re);
+	chunk.put(2*(i & CHUNK_MASK)+1, im);
+    }
+
+    /**
+     * copies the components index, ..., index+length-1 into the buffer
+     */
+    public void read(int index, double[] buffer, int length) {
+	int done = 0;
+	while (done < length) {
+	    int i = index + done;
+	    int n = Math.min(length - done, (CHUNK_MASK & ~i) + 1);
+	    DoubleBuffer chunk = chunks[i >>> CHUNK_BITS].duplicate();
+	    chunk.position(2*(i & CHUNK_MASK));
+	    chunk.get(buffer, 2*done, 2*n);
+	    done += n;
+	}
+    }
+
+    /**
+     * copies the buffer into the components index, ..., index+length-1
+     */
+    public void write(int index, double[] buffer, int length) {
+	int done = 0;
+	while (done < length) {
+	    int i = index + done;
+	    int n = Math.min(length - done, (CHUNK_MASK & ~i) + 1);
+	    DoubleBuffer chunk = chunks[i >>> CHUNK_BITS].duplicate();
+	    chunk.position(2*(i & CHUNK_MASK));
+	    chunk.put(buffer, 2*done, 2*n);
+	    done += n;
+	}
+    }
+
+    /**
+     * multiplies the real parts by re and the imaginary parts by im
+     */
+    public void scale(double re, double im) {
+	int size = blockSize();
+	double[] buffer = new double[2*size];
+	for (int i = 0; i < dimension; i += size) {
+	    read(i, buffer, size);
+	    for (int j = 0; j < 2*size; j += 2) {
+		buffer[j] *= re;
+		buffer[j+1] *= im;
+	    }
+	    write(i, buffer, size);
+	}
+    }
+}
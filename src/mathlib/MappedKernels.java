@@ -0,0 +1,194 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+
+package mathlib;
+
+/**
+ * the gate kernels for brakets in memory mapped storage. The index space is
+ * cut into blocks of <tt>MappedAmplitudes.blockSize()</tt> components; a 
+ * kernel copies the blocks it needs into the heap, processes them like the
+ * kernels for primitive storage in <tt>BinaryOp</tt> and writes them back.
+ * Target qubits within a block need one block at a time, higher target qubits
+ * the block and its partners. The blocks are visited in increasing order, so
+ * the file is read in a few sequential streams, which suits the page cache.
+ * Ranges of blocks are distributed with <tt>ParallelKernel</tt>.
+ * @see MappedAmplitudes
+ */
+class MappedKernels {
+
+    /**
+     * returns the number of index bits within a block
+     */
+    private static int blockBits(Braket v) {
+	return Integer.numberOfTrailingZeros(v.mapped.blockSize());
+    }
+
+    /**
+     * applies a 2x2 matrix like <tt>BinaryOp.apply2x2</tt>. For the kinds 
+     * DIAGONAL and ANTIDIAGONAL of <tt>CompiledGate</tt> only the respective
+     * coefficients are used.
+     * @see BinaryOp#apply2x2(Braket, int, int, int, double[])
+     */
+    static void apply2x2(Braket v, int first, int offset, int free, double[] c, int kind) {
+	final MappedAmplitudes m = v.mapped;
+	final int bits = blockBits(v);
+	final int low = (1 << bits) - 1;
+	final int firstLow = first & low, offsetLow = offset & low, freeLow = free & low;
+	final int firstHigh = first >>> bits, offsetHigh = offset >>> bits;
+	final int freeHigh = free >>> bits;
+
+	final double[] k = (double[])c.clone();
+	if (kind == CompiledGate.DIAGONAL) k[2] = k[3] = k[4] = k[5] = 0;
+	else if (kind == CompiledGate.ANTIDIAGONAL) k[0] = k[1] = k[6] = k[7] = 0;
+
+	ParallelKernel.run(SubspaceIndex.size(freeHigh), new ParallelKernel.Range() {
+	    public void apply(int lo, int hi) {
+		int size = 1 << bits;
+		double[] a = new double[2*size];
+		// the partners are in the same block or in another one
+		double[] b = (offsetHigh == 0) ? a : new double[2*size];
+		int pairs = SubspaceIndex.size(freeLow);
+		int block = SubspaceIndex.deposit(lo, freeHigh);
+
+		for (int i = lo; i < hi; i++, block = SubspaceIndex.next(block, freeHigh)) {
+		    int start = (firstHigh | block) << bits;
+		    int partner = start + (offsetHigh << bits);
+		    m.read(start, a, size);
+		    if (b != a) m.read(partner, b, size);
+
+		    int step = 0;
+		    for (int j = 0; j < pairs; j++, step = SubspaceIndex.next(step, freeLow)) {
+			int i1 = 2*(firstLow + step), i2 = 2*(firstLow + offsetLow + step);
+			double c1r = a[i1], c1i = a[i1+1], c2r = b[i2], c2i = b[i2+1];
+			a[i1] = k[0]*c1r - k[1]*c1i + k[2]*c2r - k[3]*c2i;
+			a[i1+1] = k[0]*c1i + k[1]*c1r + k[2]*c2i + k[3]*c2r;
+			b[i2] = k[4]*c1r - k[5]*c1i + k[6]*c2r - k[7]*c2i;
+			b[i2+1] = k[4]*c1i + k[5]*c1r + k[6]*c2i + k[7]*c2r;
+		    }
+
+		    m.write(start, a, size);
+		    if (b != a) m.write(partner, b, size);
+		}
+	    }
+	});
+    }
+
+    /**
+     * applies an NxN matrix like <tt>BinaryOp.applyNxN</tt>. The blocks of 
+     * all combinations of the target qubits above the block size are held at
+     * once.
+     * @see BinaryOp#applyNxN(Braket, int, int[], int, double[], Matrix)
+     */
+    static void applyNxN(Braket v, int first, final int[] offsets, int free, final double[] c) {
+	final MappedAmplitudes m = v.mapped;
+	final int bits = blockBits(v);
+	final int low = (1 << bits) - 1;
+	final int size = offsets.length;
+	final int targets = offsets[size-1];
+	final int firstLow = first & low, freeLow = free & low;
+	final int firstHigh = first >>> bits, freeHigh = free >>> bits;
+
+	// the blocks of a subspace and the position of each target offset
+	final int[] blockOffsets = SubspaceIndex.indices(targets >>> bits);
+	final int[] blockOf = new int[size];
+	final int[] lowOffsets = new int[size];
+	for (int l = 0; l < size; l++) {
+	    lowOffsets[l] = offsets[l] & low;
+	    for (int j = 0; j < blockOffsets.length; j++)
+		if (blockOffsets[j] == offsets[l] >>> bits) blockOf[l] = j;
+	}
+
+	ParallelKernel.run(SubspaceIndex.size(freeHigh), new ParallelKernel.Range() {
+	    public void apply(int lo, int hi) {
+		int blockSize = 1 << bits;
+		double[][] buffers = new double[blockOffsets.length][2*blockSize];
+		double[] tmp = new double[2*size];
+		int count = SubspaceIndex.size(freeLow);
+		int block = SubspaceIndex.deposit(lo, freeHigh);
+
+		for (int i = lo; i < hi; i++, block = SubspaceIndex.next(block, freeHigh)) {
+		    int start = (firstHigh | block) << bits;
+		    for (int j = 0; j < blockOffsets.length; j++)
+			m.read(start + (blockOffsets[j] << bits), buffers[j], blockSize);
+
+		    int step = 0;
+		    for (int s = 0; s < count; s++, step = SubspaceIndex.next(step, freeLow)) {
+			int base = firstLow + step;
+			for (int l = 0; l < size; l++) {
+			    double[] a = buffers[blockOf[l]];
+			    tmp[2*l] = a[2*(base+lowOffsets[l])];
+			    tmp[2*l+1] = a[2*(base+lowOffsets[l])+1];
+			}
+			for (int l = 0; l < size; l++) {
+			    double re = 0, im = 0;
+			    for (int t = 0; t < size; t++) {
+				double mr = c[2*(l*size+t)], mi = c[2*(l*size+t)+1];
+				re += mr*tmp[2*t] - mi*tmp[2*t+1];
+				im += mr*tmp[2*t+1] + mi*tmp[2*t];
+			    }
+			    double[] a = buffers[blockOf[l]];
+			    a[2*(base+lowOffsets[l])] = re;
+			    a[2*(base+lowOffsets[l])+1] = im;
+			}
+		    }
+
+		    for (int j = 0; j < blockOffsets.length; j++)
+			m.write(start + (blockOffsets[j] << bits), buffers[j], blockSize);
+		}
+	    }
+	});
+    }
+
+    /**
+     * applies a sequence of diagonal gates like <tt>BinaryOp.applyDiagonals</tt>
+     * @see BinaryOp#applyDiagonals(Braket, long[], long[], double[])
+     */
+    static void applyDiagonals(Braket v, final long[] controls, final long[] targets, 
+			       final double[] c) {
+	final MappedAmplitudes m = v.mapped;
+	final int size = m.blockSize();
+	final int count = controls.length;
+
+	ParallelKernel.run(v.dimension/size, new ParallelKernel.Range() {
+	    public void apply(int lo, int hi) {
+		double[] a = new double[2*size];
+		for (int b = lo; b < hi; b++) {
+		    m.read(b*size, a, size);
+		    for (int j = 0, i = b*size; j < size; j++, i++) {
+			double pr = 1, pi = 0;
+			for (int g = 0; g < count; g++) {
+			    if ((i & controls[g]) != controls[g]) continue;
+			    int k = ((i & targets[g]) == 0) ? 4*g : 4*g+2;
+			    double t = pr*c[k] - pi*c[k+1];
+			    pi = pr*c[k+1] + pi*c[k];
+			    pr = t;
+			}
+			double re = a[2*j], im = a[2*j+1];
+			a[2*j] = pr*re - pi*im;
+			a[2*j+1] = pr*im + pi*re;
+		    }
+		    m.write(b*size, a, size);
+		}
+	    }
+	});
+    }
+}
@@ -58,49 +58,71 @@ public class Mathlib implements MathlibEventListener {
      */
     static int SIMPLE = 1;
 
-
     /**
-     * This variable holds the defined variables
+     * This variable selects the storage of newly created kets. If it is set to a
+     * value >= 1, the amplitudes are held in a primitive double array instead of
+     * <tt>Complex</tt> objects, which is considerably faster for larger registers.
+     * @see Braket#setPrimitiveStorage(boolean)
      */
-    protected static Hashtable vars = null;
+    static int PRIMITIVE = 0;
 
-    /**
-     * this hashtable provides categories for variables
-     */
-    protected static Hashtable categories = null;
 
     /**
-     * this vector holds computation event listeners
+     * the context holding the variables, functions, listeners and the random
+     * generator of this object
      */
-    protected static Vector listeners = null;
-
-    /**
-     * This variable holds the defined functions
-     */
-    protected static Hashtable functions = null;
+    protected MathlibContext context;
     private Parse parser = null;
 
-    protected static Random random;
-
     /**
      * This constructor initializes the hashtables for variables and functions
      * that might be used in algebraic expressions. It defines certain variables
      * and registers available functions. It as well instatiates a parser object.
      * If this constructor is not called, the parsing part of the mathlib 
      * package cannot be used.
+     * <p>The new context replaces the default context used by the static 
+     * methods; only the ComputationEvent listeners are taken over.</p>
      */
     public Mathlib() {
-	random = new Random();
-	vars = new Hashtable();
-	categories = new Hashtable();
-	functions = new Hashtable();
-	parser = new Parse(this);
+	this(new MathlibContext());
+	MathlibContext old = MathlibContext.getDefault();
+	if (old != null) context.computationListeners.addAll(old.computationListeners);
+	MathlibContext.setDefault(context);
 	MathObject.mathlib = this;
+    }
+
+    /**
+     * initializes the given context like <tt>Mathlib()</tt>, but leaves the 
+     * default context alone. The static methods only use the context while it
+     * is bound to the calling thread.
+     * @see MathlibContext#setCurrent(MathlibContext)
+     */
+    public Mathlib(MathlibContext context) {
+	this.context = context;
+	context.mathlib = this;
+	parser = new Parse(this);
+	context.addMathlibEventListener(context.getMatrixCache());
+
+	MathlibContext previous = MathlibContext.setCurrent(context);
+	try {
+	    initialize();
+	}
+	finally {
+	    MathlibContext.setCurrent(previous);
+	}
+    }
+
+    /**
+     * defines the system variables, presets and functions
+     */
+    private void initialize() {
+	Hashtable functions = context.functions;
 
 	// system
 	parser.fireMathlibEvent("DEBUGLEVEL", null, "system", new Complex(DEBUGLEVEL), MathlibEvent.ADD);
 	parser.fireMathlibEvent("DIGITS", null, "system", new Complex(DIGITS), MathlibEvent.ADD);
 	parser.fireMathlibEvent("SIMPLE", null, "system", new Complex(SIMPLE), MathlibEvent.ADD);
+	parser.fireMathlibEvent("PRIMITIVE", null, "system", new Complex(PRIMITIVE), MathlibEvent.ADD);
 	//	try{
 	    // presets
 	    putVar("pi", new Complex(Math.PI));
@@ -135,6 +157,8 @@ public class Mathlib implements MathlibEventListener {
 	    functions.put("unregister", new Command("unregister"));
 	    functions.put("delete", new Command("delete"));
 	    functions.put("gateproperty", new Command("gateproperty"));
+	    functions.put("save", new Command("save"));
+	    functions.put("load", new Command("load"));
 	    /*
 	} Acatch (Exception e) {
 	    LOG.LOG(0, "serious error while initializing preset variables!");
@@ -152,10 +176,7 @@ public class Mathlib implements MathlibEventListener {
      * @see MathObject
      */
     public static void putVar(String key, MathObject m) throws MissingResourceException {
-	if (vars == null) 
-	    throw new MissingResourceException("mathlib not initialized!", "Mathlib","");
-	vars.remove(key);
-	vars.put(key, m);
+	Parse.context().putVar(key, m);
     }
 
     /**
@@ -166,9 +187,7 @@ public class Mathlib implements MathlibEventListener {
      * @see MathObject
      */
     public static void removeVar(String key) throws MissingResourceException {
-	if (vars == null) 
-	    throw new MissingResourceException("mathlib not initialized!", "Mathlib","");
-	vars.remove(key);
+	Parse.context().removeVar(key);
     }
 
     /**
@@ -180,9 +199,7 @@ public class Mathlib implements MathlibEventListener {
      * @return MathObject 
      */
     public static MathObject getVar(String key) throws MissingResourceException {
-	if (vars == null) 
-	    throw new MissingResourceException("mathlib not initialized!", "Mathlib","");
-	return (MathObject) vars.get(key);
+	return Parse.context().getVar(key);
     }
 
     /**
@@ -193,10 +210,7 @@ public class Mathlib implements MathlibEventListener {
      * @return MathObject 
      */
     public static String getCategory(String key) throws MissingResourceException {
-	if (categories == null) 
-	    throw new MissingResourceException("mathlib not initialized!", "Mathlib","");
-	Object o = categories.get(key);
-	return ((o == null) ? null : (String) categories.get(key));
+	return Parse.context().getCategory(key);
     }
 
 
@@ -210,9 +224,7 @@ public class Mathlib implements MathlibEventListener {
      * @return MathMap
      */
     public static MathMap getFunction(String key) throws MissingResourceException {
-	if (functions == null) 
-	    throw new MissingResourceException("mathlib not initialized!", "Mathlib","");
-	return (MathMap) functions.get(key);
+	return Parse.context().getFunction(key);
     }
 
     /**
@@ -233,21 +245,36 @@ public class Mathlib implements MathlibEventListener {
      * returns a Enumeration object of all variable names
      */
     public Enumeration getVars() {
-	return vars.keys();
+	return context.getVars();
     }
 
     /**
      * returns a Enumeration object of all function names
      */
     public Enumeration getFunctions() {
-	return functions.keys();
+	return context.getFunctions();
+    }
+
+    /**
+     * returns the context of this object
+     */
+    public MathlibContext getContext() {
+	return context;
     }
 
     /**
-     * returns the random object of the mathlib class
+     * returns the random object of the current context
      */
     public static Random getRandom() {
-	return random;
+	return Parse.context().getRandom();
+    }
+
+    /**
+     * restarts the random generator of the current context with the given seed
+     * @see MathlibContext#setSeed(long)
+     */
+    public static void setSeed(long seed) {
+	Parse.context().setSeed(seed);
     }
 
     /**
@@ -255,7 +282,7 @@ public class Mathlib implements MathlibEventListener {
      */
 
     public void listVars() {
-	Enumeration variables = vars.keys();
+	Enumeration variables = context.getVars();
 	System.out.println("List of variables:");
 	while (variables.hasMoreElements()) {
 	    System.out.print(variables.nextElement()+ ", ");
@@ -271,6 +298,7 @@ public class Mathlib implements MathlibEventListener {
 	System.out.println("DEBUGLEVEL = " + DEBUGLEVEL);
 	System.out.println("DIGITS     = " + DIGITS);
 	System.out.println("SIMPLE     = " + SIMPLE);
+	System.out.println("PRIMITIVE  = " + PRIMITIVE);
     }
 
     /**
@@ -279,9 +307,9 @@ public class Mathlib implements MathlibEventListener {
      */
     public void updateSystem() {
 	try {
-	    DEBUGLEVEL= new Double(((Complex)getVar("DEBUGLEVEL")).re()).intValue();
-	    DIGITS = new Double(((Complex)getVar("DIGITS")).re()).intValue();
-	    SIMPLE = new Double(((Complex)getVar("SIMPLE")).re()).intValue();
+	    DEBUGLEVEL= new Double(((Complex)context.getVar("DEBUGLEVEL")).re()).intValue();
+	    DIGITS = new Double(((Complex)context.getVar("DIGITS")).re()).intValue();
+	    SIMPLE = new Double(((Complex)context.getVar("SIMPLE")).re()).intValue();
 	} 
 	catch(Exception e) { 
 	    DEBUGLEVEL = 100; 
@@ -292,6 +320,11 @@ public class Mathlib implements MathlibEventListener {
 	LOG.setDebuglevel(DEBUGLEVEL);
 	Complex.setDigits(DIGITS);
 	Complex.setSimple((SIMPLE > 0) ? true : false);
+
+	MathObject primitive = context.getVar("PRIMITIVE");
+	if (primitive instanceof Complex)
+	    PRIMITIVE = new Double(((Complex)primitive).re()).intValue();
+	Braket.setPrimitiveStorage((PRIMITIVE > 0) ? true : false);
     }
 
     /**
@@ -300,9 +333,9 @@ public class Mathlib implements MathlibEventListener {
      */
     public void removeVariable(MathlibEvent e) {
 	// only remove if not system!
-	if ("system".equals(categories.get(e.getObjectName())) == false) {
-	    removeVar(e.getObjectName());
-	    categories.remove(e.getObjectName());
+	if ("system".equals(context.getCategory(e.getObjectName())) == false) {
+	    context.removeVar(e.getObjectName());
+	    context.setCategory(e.getObjectName(), null);
 	}
     }
 
@@ -312,8 +345,8 @@ public class Mathlib implements MathlibEventListener {
      */
     public void addVariable(MathlibEvent e) {
 	if (e.getMathObject() != null) {
-	    putVar(e.getObjectName(), e.getMathObject());
-	    if (e.getCategory() != null) categories.put(e.getObjectName(), e.getCategory());
+	    context.putVar(e.getObjectName(), e.getMathObject());
+	    if (e.getCategory() != null) context.setCategory(e.getObjectName(), e.getCategory());
 	}
     }
 
@@ -323,22 +356,22 @@ public class Mathlib implements MathlibEventListener {
      */
     public void changeVariable(MathlibEvent e) {
 	if (e.getAction() == MathlibEvent.CHANGE) {
-	    putVar(e.getObjectName(), e.getMathObject());
+	    context.putVar(e.getObjectName(), e.getMathObject());
 	}
 	else if (e.getAction() == MathlibEvent.CHANGE_CATEGORY) {
 	    if ("system".equals(e.getCategory()) == false) {
-		categories.remove(e.getObjectName());
-		if (e.getNewName() != null) categories.put(e.getObjectName(),e.getNewName());
+		context.setCategory(e.getObjectName(), e.getNewName());
 	    }
 	}
 	else if (e.getAction() == MathlibEvent.CHANGE_NAME) {
 	    if ("system".equals(e.getCategory()) == false) {
-		MathObject m = (MathObject)vars.remove(e.getObjectName());
+		MathObject m = context.getVar(e.getObjectName());
+		context.removeVar(e.getObjectName());
 		if (m != null && e.getNewName() != null) {
-		    putVar(e.getNewName(), m); 
+		    context.putVar(e.getNewName(), m); 
 
-		    categories.remove(e.getObjectName());
-		    if (e.getCategory() != null) categories.put(e.getNewName(), e.getCategory());
+		    context.setCategory(e.getObjectName(), null);
+		    if (e.getCategory() != null) context.setCategory(e.getNewName(), e.getCategory());
 		}
 	    }
 	}
@@ -366,34 +399,27 @@ public class Mathlib implements MathlibEventListener {
 
 
     /**
-     * registers a ComputationEventListener
+     * registers a ComputationEventListener with the current context
      * @param m listener object
      */
-    public static synchronized void addComputationEventListener(ComputationEventListener m) {
-	if (m == null) return;
-
-	if (listeners == null) listeners = new Vector();
-        listeners.add(m);
+    public static void addComputationEventListener(ComputationEventListener m) {
+	Parse.context().addComputationEventListener(m);
     }
 
     /**
-     * removes a ComputationEventListener
+     * removes a ComputationEventListener from the current context
      */
-    public static synchronized void removeComputationEventListener(ComputationEventListener m){
-	if (m == null) return;
-	listeners.remove(m);
+    public static void removeComputationEventListener(ComputationEventListener m){
+	Parse.context().removeComputationEventListener(m);
     }
 
     /**
-     * is called internally by fireMathlibEvent in order to dispatch the event
+     * is called internally by fireComputationEvent in order to dispatch the event
+     * to the listeners of the current context
      * @param e ComputationEvent to dispatch
      */
-    protected static synchronized void processEvent(ComputationEvent event) {
-	if (listeners != null) {
-	    for (int i = 0; i < listeners.size(); i++) {
-		((ComputationEventListener)listeners.get(i)).computationEvent(event);
-	    }
-	}
+    protected static void processEvent(ComputationEvent event) {
+	Parse.context().processEvent(event);
     }
 
     /**
@@ -0,0 +1,43 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+
+package mathlib;
+
+
+/**
+ * this interface is implemented by MathlibEvent listeners who would like to 
+ * be notified once about all the variables changed in a batch, e.g. while a 
+ * circuit is loaded, instead of once for each variable. Within a batch the
+ * events are only dispatched to the listeners not implementing this interface,
+ * which keep the variable table up to date.
+ * @see MathlibContext#beginBatch()
+ * @see MathlibEventListener
+ */
+public interface MathlibBatchListener extends MathlibEventListener {
+
+    /**
+     * method called at the end of a batch
+     * @param events the events of the batch in the order they were fired
+     */
+    public void processBatch(MathlibEvent[] events);
+
+}
@@ -0,0 +1,410 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+
+package mathlib;
+
+import java.util.*;
+
+/**
+ * the state of a mathlib instance: the variable table with the variable 
+ * categories, the function registry, the random generator, the listeners for 
+ * MathlibEvents and ComputationEvents, the matrix cache and the compiled 
+ * expressions of the parser.
+ * <p>The static methods of <tt>Mathlib</tt> and <tt>Parse</tt> work on the
+ * current context, which is the context bound to the calling thread or, if
+ * none is bound, the default context. Each <tt>Mathlib()</tt> object creates
+ * a new default context, so the static API behaves as before. Independent 
+ * simulations in one virtual machine create their own contexts with
+ * <tt>Mathlib(MathlibContext)</tt> and bind them to their threads with
+ * <tt>setCurrent</tt>.</p>
+ * <p>The system variables (DEBUGLEVEL, DIGITS, SIMPLE, PRIMITIVE) control the 
+ * output and storage format and remain global.</p>
+ * @see Mathlib
+ * @see Parse
+ */
+public class MathlibContext {
+
+    /** the context used by threads without a bound context */
+    private static MathlibContext defaultContext = null;
+    /** contexts bound to threads */
+    private static ThreadLocal bound = new ThreadLocal();
+
+    /** the defined variables */
+    protected Hashtable vars = new Hashtable();
+    /** categories of the variables */
+    protected Hashtable categories = new Hashtable();
+    /** the defined functions */
+    protected Hashtable functions = new Hashtable();
+    /** MathlibEvent listeners */
+    protected Vector mathlibListeners = new Vector();
+    /** depth of the nested batches */
+    protected int batchDepth = 0;
+    /** MathlibEvents of the current batch */
+    protected Vector batchEvents = new Vector();
+    /** ComputationEvent listeners */
+    protected Vector computationListeners = new Vector();
+    /** category preset for assignments of the parser */
+    protected String category = null;
+    /** random generator of all stochastic components */
+    protected Random random = new RandomStream();
+    /** matrices of the gates in this context */
+    protected MatrixCache matrixCache = new MatrixCache();
+    /** compiled expressions of the parser by source string */
+    protected Hashtable expressions = new Hashtable();
+    /** compiled statements of the parser by source string */
+    protected Hashtable statements = new Hashtable();
+    /** the Mathlib object initializing this context */
+    protected Mathlib mathlib = null;
+
+    /**
+     * creates an empty context. A Mathlib object has to be created for it in
+     * order to define the preset variables and functions.
+     * @see Mathlib#Mathlib(MathlibContext)
+     */
+    public MathlibContext() {
+    }
+
+    /**
+     * returns the default context or null if no Mathlib object was created yet.
+     */
+    public static synchronized MathlibContext getDefault() {
+	return defaultContext;
+    }
+
+    /**
+     * sets the context used by all threads without a bound context.
+     */
+    public static synchronized void setDefault(MathlibContext context) {
+	defaultContext = context;
+    }
+
+    /**
+     * returns the context of the calling thread: the bound context or the 
+     * default context if none is bound.
+     */
+    public static MathlibContext current() {
+	MathlibContext context = (MathlibContext)bound.get();
+	return (context == null) ? getDefault() : context;
+    }
+
+    /**
+     * binds a context to the calling thread and returns the previously bound 
+     * one, which should be restored afterwards. null unbinds the thread.
+     */
+    public static MathlibContext setCurrent(MathlibContext context) {
+	MathlibContext previous = (MathlibContext)bound.get();
+	if (context == null) bound.remove();
+	else bound.set(context);
+	return previous;
+    }
+
+    /**
+     * returns the Mathlib object of this context
+     */
+    public Mathlib getMathlib() {
+	return mathlib;
+    }
+
+    /**
+     * registers a variable, replacing an old one of the same name.
+     */
+    public void putVar(String key, MathObject m) {
+	vars.remove(key);
+	vars.put(key, m);
+    }
+
+    /**
+     * removes a variable
+     */
+    public void removeVar(String key) {
+	vars.remove(key);
+    }
+
+    /**
+     * returns the value of a variable or null if it is not defined.
+     */
+    public MathObject getVar(String key) {
+	return (MathObject) vars.get(key);
+    }
+
+    /**
+     * returns an Enumeration of all variable names
+     */
+    public Enumeration getVars() {
+	return vars.keys();
+    }
+
+    /**
+     * returns the category of a variable or null
+     */
+    public String getCategory(String key) {
+	return (String) categories.get(key);
+    }
+
+    /**
+     * sets the category of a variable, null removes it.
+     */
+    public void setCategory(String key, String category) {
+	categories.remove(key);
+	if (category != null) categories.put(key, category);
+    }
+
+    /**
+     * registers a function or command
+     */
+    public void putFunction(String key, MathMap m) {
+	functions.put(key, m);
+	// functions are resolved when compiling
+	expressions.clear();
+	statements.clear();
+    }
+
+    /**
+     * returns a function or null if it is not defined.
+     */
+    public MathMap getFunction(String key) {
+	return (MathMap) functions.get(key);
+    }
+
+    /**
+     * returns an Enumeration of all function names
+     */
+    public Enumeration getFunctions() {
+	return functions.keys();
+    }
+
+    /**
+     * returns the random generator of this context
+     */
+    public Random getRandom() {
+	return random;
+    }
+
+    /**
+     * restarts the random generator with the given seed, so that the following
+     * computations are reproducible.
+     * @see RandomStream
+     */
+    public void setSeed(long seed) {
+	random = new RandomStream(seed);
+    }
+
+    /**
+     * replaces the random generator, e.g. by a seeded one.
+     */
+    public void setRandom(Random random) {
+	this.random = random;
+    }
+
+    /**
+     * returns the matrix cache of this context
+     */
+    public MatrixCache getMatrixCache() {
+	return matrixCache;
+    }
+
+    /**
+     * returns the compiled expressions or, if assignments are allowed, the 
+     * compiled statements of the parser
+     * @see Parse#compile(String, boolean)
+     */
+    Hashtable getCompiled(boolean assignmentAllowed) {
+	return (assignmentAllowed) ? statements : expressions;
+    }
+
+    /**
+     * returns the category preset for assignments of the parser
+     */
+    public String getPresetCategory() {
+	return category;
+    }
+
+    /**
+     * sets the category preset for assignments of the parser
+     */
+    public void setPresetCategory(String category) {
+	this.category = category;
+    }
+
+    /**
+     * registers a MathlibEventListener
+     */
+    public synchronized void addMathlibEventListener(MathlibEventListener m) {
+	if (m == null) return;
+	mathlibListeners.add(m);
+    }
+
+    /**
+     * removes a MathlibEventListener
+     */
+    public synchronized void removeMathlibEventListener(MathlibEventListener m) {
+	if (m == null) return;
+	mathlibListeners.remove(m);
+    }
+
+    /**
+     * starts a batch of changes, e.g. the loading of a circuit. Until the 
+     * matching endBatch() the MathlibEvents are only dispatched to the 
+     * listeners not implementing <tt>MathlibBatchListener</tt>. Batches can be
+     * nested.
+     * @see MathlibBatchListener
+     */
+    public synchronized void beginBatch() {
+	batchDepth++;
+    }
+
+    /**
+     * ends a batch. At the end of the outermost batch the MathlibBatchListeners
+     * are notified once about all its events.
+     */
+    public synchronized void endBatch() {
+	if (batchDepth == 0 || --batchDepth > 0) return;
+
+	MathlibEvent[] events = new MathlibEvent[batchEvents.size()];
+	batchEvents.copyInto(events);
+	batchEvents.removeAllElements();
+
+	LOG.LOG(1, "\nMathlibEvent batch: " + events.length + " events");
+	for (int i = 0; i < mathlibListeners.size(); i++) {
+	    if (mathlibListeners.get(i) instanceof MathlibBatchListener)
+		((MathlibBatchListener)mathlibListeners.get(i)).processBatch(events);
+	}
+    }
+
+    /**
+     * returns whether a batch is in progress
+     */
+    public synchronized boolean inBatch() {
+	return batchDepth > 0;
+    }
+
+    /**
+     * returns whether a listener is notified at the end of the current batch
+     */
+    private boolean deferred(Object listener) {
+	return batchDepth > 0 && listener instanceof MathlibBatchListener;
+    }
+
+    /**
+     * dispatches a MathlibEvent to the listeners of this context
+     * @param e MathlibEvent to dispatch
+     */
+    public synchronized void processEvent(MathlibEvent event) {
+	if (event.getAction() == MathlibEvent.ADD && getVar(event.getObjectName())!= null) {
+	    LOG.LOG(0, "variable '"+event.getObjectName()+"' already existing. No action performed."); 
+	    return;
+	}
+
+	// add category to the variable
+	MathlibEvent e;
+	if (event.getCategory() == null) 
+	    e = new MathlibEvent(event.getSource(), event.getObjectName(), event.getNewName(), getCategory(event.getObjectName()), event.getMathObject(), event.getAction());
+	else e = event;
+
+	// debug
+	LOG.LOG(1, "\nMathlibEvent: " + e.getObjectName());
+	LOG.LOG(1, "action: " + e.getAction());
+	if (e.getNewName() != null) LOG.LOG(1, "newName: " + e.getNewName());
+	if (e.getCategory() != null) LOG.LOG(1, "category: " + e.getCategory());
+	LOG.LOG(1, "mathObject: " + ((e.getMathObject() == null) ? "null": e.getMathObject().toString()));
+
+	if (batchDepth > 0) batchEvents.add(e);
+
+	if (e.getAction() == MathlibEvent.ADD) {
+	    for (int i = 0; i < mathlibListeners.size(); i++) {
+		if (deferred(mathlibListeners.get(i))) continue;
+		((MathlibEventListener)mathlibListeners.get(i)).addVariable(e);
+	    }
+	}
+	else if (e.getAction() == MathlibEvent.REMOVE) {
+	    for (int i = 0; i < mathlibListeners.size(); i++) {
+		if (deferred(mathlibListeners.get(i))) continue;
+		((MathlibEventListener)mathlibListeners.get(i)).removeVariable(e);
+	    }
+	}
+	else if (e.getAction() == MathlibEvent.CHANGE || 
+		 e.getAction() == MathlibEvent.CHANGE_NAME ||
+		 e.getAction() == MathlibEvent.CHANGE_CATEGORY) {
+	    for (int i = 0; i < mathlibListeners.size(); i++) {
+		if (deferred(mathlibListeners.get(i))) continue;
+		((MathlibEventListener)mathlibListeners.get(i)).changeVariable(e);
+	    }
+	}
+    }
+
+    /**
+     * creates a MathlibEvent and dispatches it
+     * @see Parse#fireMathlibEvent(String, MathObject, int)
+     */
+    public void fireMathlibEvent(String objectName, MathObject mathObject, int action) {
+	processEvent(new MathlibEvent(objectName, mathObject, action));
+    }
+
+    /**
+     * creates a MathlibEvent and dispatches it
+     * @see Parse#fireMathlibEvent(String, String, String, MathObject, int)
+     */
+    public void fireMathlibEvent(String objectName, String newName, String category, MathObject mathObject, int action) {
+	processEvent(new MathlibEvent(objectName, newName, category, mathObject, action));
+    }
+
+    /**
+     * creates a MathlibEvent and dispatches it
+     * @see Parse#fireMathlibEvent(String, String)
+     */
+    public void fireMathlibEvent(String objectName, String newName) {
+	processEvent(new MathlibEvent(objectName, newName));
+    }
+
+    /**
+     * registers a ComputationEventListener
+     */
+    public synchronized void addComputationEventListener(ComputationEventListener m) {
+	if (m == null) return;
+	computationListeners.add(m);
+    }
+
+    /**
+     * removes a ComputationEventListener
+     */
+    public synchronized void removeComputationEventListener(ComputationEventListener m) {
+	if (m == null) return;
+	computationListeners.remove(m);
+    }
+
+    /**
+     * dispatches a ComputationEvent to the listeners of this context
+     */
+    public synchronized void processEvent(ComputationEvent event) {
+	for (int i = 0; i < computationListeners.size(); i++) {
+	    ((ComputationEventListener)computationListeners.get(i)).computationEvent(event);
+	}
+    }
+
+    /**
+     * creates a ComputationEvent and dispatches it
+     * @see Mathlib#fireComputationEvent(MathObject, MathObject, int, int, int)
+     */
+    public void fireComputationEvent(MathObject operator, MathObject var, int currentStep, int maxStep, int action) {
+	processEvent(new ComputationEvent(operator, var, currentStep, maxStep, action));
+    }
+}
@@ -22,6 +22,8 @@
 
 package mathlib;
 
+import java.io.*;
+
 
 /**
  * Class representing a mathematical matrix object.
@@ -262,15 +264,30 @@ public class Matrix extends Argument {
      * returns a string representation of the object
      */
     public String toString() {
-	String str = new String("\n");
+	return Rendering.FULL.render(this);
+    }
 
+    /**
+     * appends the string representation. Rows beyond the length of the 
+     * rendering are left out and replaced by "...".
+     * @exception IOException if the output can not be written
+     * @see Rendering
+     */
+    public void append(Appendable out, Rendering r) throws IOException {
+	Rendering.Counter buf = Rendering.count(out);
+	long start = buf.length();
+	buf.append("\n");
 	for (int i = 0; i < n(); i++) {
+	    if (i > 0 && r.isFull(buf, start)) {
+		buf.append("...\n");
+		break;
+	    }
 	    for (int j = 0; j < m(); j++) {
-		str = str.concat(getElement(i,j).toString() + "\t");
+		buf.append(getElement(i,j).toString());
+		buf.append("\t");
 	    }
-	    str = str.concat("\n");
+	    buf.append("\n");
 	}
-	return str;
     }
 
     /**
@@ -278,15 +295,23 @@ public class Matrix extends Argument {
      * machine precision).
      */
     public String toParseableString() {
-	String str = new String("[");
+	return Rendering.parseable(this);
+    }
+
+    /**
+     * appends the parsable string representation element by element
+     * @exception IOException if the output can not be written
+     */
+    public void appendParseable(Appendable out) throws IOException {
+	out.append("[");
 	for (int i = 0; i < n(); i++) {
 	    for (int j = 0; j < m(); j++) {
-		str = str.concat(getElement(i,j).toParseableString() + " ");
+		out.append(getElement(i,j).toParseableString());
+		out.append(" ");
 	    }
-	    if (i < n()-1) str = str.concat(", ");
+	    if (i < n()-1) out.append(", ");
 	}
-	str = str.concat("]");
-	return str;
+	out.append("]");
     }
 
 }
@@ -0,0 +1,247 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+
+package mathlib;
+
+import java.util.*;
+
+
+/**
+ * class caching the matrices of gates. A gate only holds the expression of its 
+ * matrix (usually a variable name), which used to be parsed on every gate 
+ * application. The cache keeps the resolved matrix together with its coefficients
+ * in a primitive array for each combination of expression and transpose, conjugate
+ * and negative flags.
+ * <p>The cache listens to MathlibEvents: whenever a variable used by a cached 
+ * expression is changed, removed or renamed, the entry is dropped and the version
+ * number is increased, so that gates holding a reference to an old entry resolve
+ * the matrix again.</p>
+ * <p>Each MathlibContext owns a cache, as the same expression may denote different
+ * matrices in different contexts. The static methods work on the cache of the 
+ * current context.</p>
+ * @see Gate#getMatrix()
+ * @see Gate#getCoefficients()
+ * @see MathlibContext#getMatrixCache()
+ */
+public class MatrixCache implements MathlibEventListener {
+
+    /**
+     * a resolved gate matrix
+     */
+    static class Entry {
+	/** the matrix with all flags applied */
+	Matrix matrix;
+	/** row-major coefficients, real and imaginary part interleaved */
+	double[] coefficients;
+	/** identifiers used in the expression */
+	String[] names;
+	/** 2x2 matrix with zero counter diagonal */
+	boolean diagonal;
+	/** 2x2 matrix with zero diagonal */
+	boolean antiDiagonal;
+    }
+
+    /** cache used when no context exists */
+    private static MatrixCache fallback = new MatrixCache();
+    private Hashtable entries = new Hashtable();
+    private int version = 0;
+
+    MatrixCache() {
+    }
+
+    /**
+     * returns the cache of the current context, which is the listener instance 
+     * registered with its parser.
+     * @see MathlibContext#current()
+     */
+    public static MatrixCache getInstance() {
+	MathlibContext context = MathlibContext.current();
+	return (context == null) ? fallback : context.getMatrixCache();
+    }
+
+    /**
+     * returns the current version of the cache. It changes whenever entries are 
+     * invalidated.
+     */
+    public static int getVersion() {
+	return getInstance().currentVersion();
+    }
+
+    /**
+     * removes all entries.
+     */
+    public static void clear() {
+	getInstance().removeAll();
+    }
+
+    /**
+     * returns the number of cached matrices.
+     */
+    public static int size() {
+	return getInstance().entries.size();
+    }
+
+    /**
+     * returns the version of this cache.
+     */
+    int currentVersion() {
+	return version;
+    }
+
+    /**
+     * removes all entries of this cache.
+     */
+    synchronized void removeAll() {
+	entries.clear();
+	version++;
+    }
+
+    /**
+     * returns the cache entry for a matrix expression and the given flags from 
+     * the cache of the current context.
+     * @see #lookup(String, boolean, boolean, boolean)
+     */
+    static Entry getEntry(String expression, boolean transpose, 
+			  boolean conjugate, boolean negative) 
+	throws IllegalArgumentException {
+	return getInstance().lookup(expression, transpose, conjugate, negative);
+    }
+
+    /**
+     * returns the cache entry for a matrix expression and the given flags. The 
+     * expression is parsed if it is not cached yet. Throws an 
+     * IllegalArgumentException if the expression does not evaluate to a matrix.
+     */
+    synchronized Entry lookup(String expression, boolean transpose, 
+			      boolean conjugate, boolean negative) 
+	throws IllegalArgumentException {
+	String key = expression + ((transpose) ? "|T" : "|") + ((conjugate) ? "C" : "") 
+	    + ((negative) ? "N" : "");
+	Entry entry = (Entry)entries.get(key);
+	if (entry == null) {
+	    MathObject o = Parse.parseExpression(expression);
+	    if (!(o instanceof Matrix)) 
+		throw new IllegalArgumentException("no matrix: " + expression);
+	    Matrix m = new Matrix((Matrix)o);
+	    if (transpose) m.transpose();
+	    if (conjugate) m.conjugate();
+	    if (negative) m.negative();
+
+	    entry = new Entry();
+	    entry.matrix = new Matrix(m);
+	    entry.coefficients = new double[2*m.n()*m.m()];
+	    for (int i = 0; i < m.n(); i++) {
+		for (int j = 0; j < m.m(); j++) {
+		    Complex c = m.getElement(i, j);
+		    entry.coefficients[2*(i*m.m()+j)] = c.re;
+		    entry.coefficients[2*(i*m.m()+j)+1] = c.im;
+		}
+	    }
+	    entry.names = identifiers(expression);
+	    if (m.n() == 2 && m.m() == 2) {
+		Complex zero = new Complex(0, 0);
+		entry.diagonal = m.getElement(1,0).equals(zero) && m.getElement(0,1).equals(zero);
+		entry.antiDiagonal = m.getElement(0,0).equals(zero) && m.getElement(1,1).equals(zero);
+	    }
+	    entries.put(key, entry);
+	}
+	return entry;
+    }
+
+    /**
+     * returns all identifiers (variable or function names) of an expression.
+     */
+    private static String[] identifiers(String expression) {
+	Vector names = new Vector();
+	int start = -1;
+	for (int i = 0; i <= expression.length(); i++) {
+	    char c = (i < expression.length()) ? expression.charAt(i) : ' ';
+	    boolean part = Character.isLetter(c) || c == '_' 
+		|| (start != -1 && Character.isDigit(c));
+	    if (part && start == -1) start = i;
+	    else if (!part && start != -1) {
+		names.add(expression.substring(start, i));
+		start = -1;
+	    }
+	}
+	String[] result = new String[names.size()];
+	names.copyInto(result);
+	return result;
+    }
+
+    /**
+     * drops all entries depending on the variable name.
+     */
+    private synchronized void invalidate(String name) {
+	if (name == null) return;
+	boolean changed = false;
+	Enumeration keys = entries.keys();
+	while (keys.hasMoreElements()) {
+	    Object key = keys.nextElement();
+	    String[] names = ((Entry)entries.get(key)).names;
+	    for (int i = 0; i < names.length; i++) {
+		if (names[i].equals(name)) {
+		    entries.remove(key);
+		    changed = true;
+		    break;
+		}
+	    }
+	}
+	if (changed) version++;
+    }
+
+    /**
+     * gates and gate properties never occur in matrix expressions.
+     */
+    private static boolean affects(MathlibEvent e) {
+	return !(e.getMathObject() instanceof Gate || e.getMathObject() instanceof GateProperty);
+    }
+
+    /**
+     * required by the MathlibEventListener interface. A newly added variable
+     * cannot change a cached expression.
+     */
+    public void addVariable(MathlibEvent e) {
+    }
+
+    /**
+     * required by the MathlibEventListener interface. It drops the entries using 
+     * the removed variable.
+     */
+    public void removeVariable(MathlibEvent e) {
+	invalidate(e.getObjectName());
+    }
+
+    /**
+     * required by the MathlibEventListener interface. It drops the entries using 
+     * the changed or renamed variable.
+     */
+    public void changeVariable(MathlibEvent e) {
+	if (e.getAction() == MathlibEvent.CHANGE && affects(e)) {
+	    invalidate(e.getObjectName());
+	}
+	else if (e.getAction() == MathlibEvent.CHANGE_NAME) {
+	    invalidate(e.getObjectName());
+	    invalidate(e.getNewName());
+	}
+    }
+}
@@ -31,7 +31,7 @@ import java.util.*;
  * as a MathMap since and the partial measurement can be accessed with a gate of the 
  * notation {-:!:-:-:-:-}, which would measure the second qubit and renormalize the
  * state. This class also provides a method to give the probability distribution
- * of the state vector.
+ * of the state vector and one to sample many measurements of a register.
  * @see BinaryOp
  */
 public class Measurement extends MathMap {
@@ -50,14 +50,28 @@ public class Measurement extends MathMap {
     public MathObject apply(MathObject o) {
 	if (o instanceof Braket){
 	    Braket qubits = (Braket) o;
-	    Random random = new Random();
-	    double randDouble = random.nextDouble();
+	    double randDouble = Mathlib.getRandom().nextDouble();
 
 	    double probBin = 0.0;
 
-	    for (int i = 0; i < qubits.dimension; i++) {
-		if (qubits.data[i] != null)
-		    probBin += qubits.data[i].magnitudeSquared();
+	    if (qubits.isSparse()) {
+		long[] keys = qubits.map.keys();
+		for (int i = 0; i < keys.length; i++) {
+		    probBin += qubits.magnitudeSquared(keys[i]);
+		    if (probBin > randDouble) {
+			prob = qubits.magnitudeSquared(keys[i]);
+			return new Braket(keys[i], qubits.n);
+		    }
+		}
+		// rounding left randDouble beyond the summed probabilities
+		if (keys.length > 0) {
+		    long key = keys[keys.length-1];
+		    prob = qubits.magnitudeSquared(key);
+		    return new Braket(key, qubits.n);
+		}
+	    }
+	    else for (int i = 0; i < qubits.dimension; i++) {
+		probBin += qubits.magnitudeSquared(i);
 		if (probBin > randDouble) {
 		    prob = qubits.getElement(i).magnitudeSquared();
 		    return new Braket(i, qubits.n);
@@ -69,6 +83,77 @@ public class Measurement extends MathMap {
 	return null;
     }
 
+    /**
+     * measures a register of qubits shots times without changing the ket and
+     * returns how often each outcome occurred. The random numbers are drawn 
+     * from the generator of the current context.
+     * @see Measurement#sample(Braket, int[], int, Random)
+     */
+    public static Hashtable sample(Braket q, int[] qubits, int shots) {
+	return sample(q, qubits, shots, Mathlib.getRandom());
+    }
+
+    /**
+     * measures a register of qubits shots times without changing the ket. The 
+     * cumulative distribution is built once and each shot is drawn by a binary
+     * search, so the cost is O(dim + shots*log(dim)) instead of a scan of the
+     * ket per shot. Sparse kets are sampled over their populated components.
+     * @return the number of shots (Integer) for each outcome that occurred,
+     * keyed by its bit string; character j is the state of qubits[j]
+     */
+    public static Hashtable sample(Braket q, int[] qubits, int shots, Random random) {
+	int k = qubits.length;
+	Hashtable histogram = new Hashtable();
+	double[] cumulative;
+	long[] states = null;
+
+	// outcomes are basis states of the register, or of the ket if sparse
+	if (q.isSparse()) {
+	    states = q.map.keys();
+	    cumulative = new double[states.length];
+	    for (int i = 0; i < states.length; i++) 
+		cumulative[i] = q.magnitudeSquared(states[i]);
+	}
+	else cumulative = (double[])getProbabilities(q, qubits).clone();
+
+	int last = -1;
+	for (int i = 0; i < cumulative.length; i++) {
+	    if (cumulative[i] > 0) last = i;
+	    if (i > 0) cumulative[i] += cumulative[i-1];
+	}
+	if (last == -1) {
+	    LOG.LOG(0, "sample() not defined for the zero vector");
+	    return histogram;
+	}
+	double total = cumulative[last];
+
+	int[] counts = new int[last+1];
+	for (int s = 0; s < shots; s++) {
+	    double u = random.nextDouble()*total;
+	    // first outcome whose cumulative probability exceeds u
+	    int lo = 0, hi = last;
+	    while (lo < hi) {
+		int mid = (lo + hi) >>> 1;
+		if (cumulative[mid] > u) hi = mid;
+		else lo = mid + 1;
+	    }
+	    counts[lo]++;
+	}
+
+	char[] bits = new char[k];
+	for (int i = 0; i <= last; i++) {
+	    if (counts[i] == 0) continue;
+	    for (int j = 0; j < k; j++) {
+		long bit = (states == null) ? (i >>> (k-j-1)) : (states[i] >>> (q.n-qubits[j]-1));
+		bits[j] = ((bit & 1) == 0) ? '0' : '1';
+	    }
+	    String key = new String(bits);
+	    Integer count = (Integer)histogram.get(key);
+	    histogram.put(key, new Integer(counts[i] + ((count == null) ? 0 : count.intValue())));
+	}
+	return histogram;
+    }
+
     /**
      * performing a partial measurement to the qubit given. It renormalizes the ket
      * vector afterwards.
@@ -76,34 +161,9 @@ public class Measurement extends MathMap {
      */
     public static void partialMeasurement(Braket q, int qubit) {
 	int n = q.n;
-	int step = 0;
-
-	double zeroProb = 0.0;
+	double zeroProb = zeroProbability(q, qubit);
 
-	// counter
-	int[] jokers = new int[n]; int j = 0;
-	for (int i = 0; i < n; i++) if (i!= qubit) jokers[j++] = n-i-1;
-
-	// initialize binary counter
-	boolean[] binary_counter = new boolean[n-1];
-
-	for (int i = 0; i < BinaryOp.pow(2,n-1); i++) {
-	    step = 0;
-	    if (n-1 > 0) {
-		// calculate stepsize
-		for (int l = 0; l < n-1; l++) {
-		    step += (binary_counter[l]? BinaryOp.pow(2,jokers[n-1-l-1]) : 0);
-		} 
-
-		// increase binary counter
-		for(j=0;(j<n-1)&&!(binary_counter[j]=!binary_counter[j++]););
-	    }
-
-	    if (q.data[step] != null)
-		zeroProb += q.data[step].magnitudeSquared();
-	}
-	Random random = new Random();
-	double randDouble = random.nextDouble();
+	double randDouble = Mathlib.getRandom().nextDouble();
 
 	int event = (Mathlib.getVar("projector") == null)? MathlibEvent.ADD:MathlibEvent.CHANGE;
 	// ok...we measured the qubit state |0>
@@ -116,76 +176,131 @@ public class Measurement extends MathMap {
 	    Parse.fireMathlibEvent("projector", Matrix.parseMatrix("[0 0, 0 1/"+(zeroProb)+ "]"), event);
 	} 
 	// okay...modifying state vector!!!
-	BinaryOp.implicitApply2x2(new Gate(n, qubit, "projector"), q, null);
+	BinaryOp.implicitApply2x2InPlace(new Gate(n, qubit, "projector"), q, null);
+	q.adaptStorage();
     }
 
     /**
-     * returns the probability distribution for the outcome of a particular basis ket
-     * when performing a measurement without actually performing a measurement.
-     * The array qubits specifies which qubits are considered. 
+     * performs a partial measurement like <tt>partialMeasurement(q, qubit)</tt>,
+     * but draws the random number from the given generator. No projector
+     * variable is created and no events are fired, so that independent 
+     * simulations can run concurrently.
+     * @return the measured state of the qubit (0 or 1)
      */
-    public static Vector getProbDistribution(Braket q, int[] qubits) {
-	int k = qubits.length;
+    public static int partialMeasurement(Braket q, int qubit, Random random) {
 	int n = q.n;
-	Vector probDistrib = new Vector(BinaryOp.pow(2, k));
-
-	// joker digits
-	int[] jokers = new int[n-k];
-	boolean[] binary_counter1 = new boolean[n-k];
-	int step;
-
-	double prob = 0;
-
-	// counter for possible states
-	boolean[] binary_counter2 = new boolean[k];
-	int offset = 0;
-
-	// fill the joker array with remaining qubit positions
-	int pos = 0;
-	boolean found = false;
-	for (int i = 0; i < n; i++) {
-	    found = false;
-	    for (int j = 0; j < k; j++)
-		if (qubits[j] == i) found = true;
-	    if (found == false && n-k > pos) 
-		jokers[pos++] = i;
-	}
+	double zeroProb = zeroProbability(q, qubit);
+	double[] projector = new double[8];
+	int result;
 
+	if (zeroProb > random.nextDouble()) {
+	    projector[0] = 1/Math.sqrt(zeroProb);
+	    result = 0;
+	}
+	else {
+	    projector[6] = 1/Math.sqrt(1-zeroProb);
+	    result = 1;
+	}
+	if (q.isSparse()) 
+	    SparseKernels.apply2x2(q, 0, 1L << (n-qubit-1), projector, CompiledGate.DIAGONAL);
+	else {
+	    int offset = 1 << (n-qubit-1);
+	    BinaryOp.apply2x2(q, 0, offset, ((1 << n) - 1) & ~offset, projector);
+	}
+	q.adaptStorage();
+	return result;
+    }
 
-	// for each possible state
-	for (int i = 0; i < BinaryOp.pow(2, k); i++) {
+    /**
+     * returns the probability to find the given qubit in state |0>
+     */
+    private static double zeroProbability(Braket q, int qubit) {
+	int n = q.n;
+	int step = 0;
 
-	    offset = 0;
-	    // calculate stepsize
-	    for (int l = 0; l < k; l++) {
-		offset += (binary_counter2[l]? BinaryOp.pow(2,n-qubits[k-l-1]-1) : 0);
-	    } 
+	if (q.isSparse()) return SparseKernels.zeroProbability(q, 1L << (n-qubit-1));
 
-	    // increase binary counter
-	    for(int l=0;(l < k)&&!(binary_counter2[l]=!binary_counter2[l++]););
+	double zeroProb = 0.0;
 
-	    prob = 0;
+	// all basis states with the qubit in state |0>
+	int free = ((1 << n) - 1) & ~(1 << (n-qubit-1));
+	int count = SubspaceIndex.size(free);
 
-	    // sum probabilities
-	    for (int j = 0; j < BinaryOp.pow(2, n-k); j++) {
-		step = 0;
+	for (int i = 0; i < count; i++, step = SubspaceIndex.next(step, free)) {
+	    zeroProb += q.magnitudeSquared(step);
+	}
+	return zeroProb;
+    }
 
-		// calculate stepsize
-		for (int l = 0; l < n-k; l++) {
-		    step += (binary_counter1[l]? BinaryOp.pow(2,n-jokers[n-k-l-1]-1) : 0);
-		} 
+    /**
+     * returns the probability distribution for the outcome of a particular basis ket
+     * when performing a measurement without actually performing a measurement.
+     * The array qubits specifies which qubits are considered. 
+     * @see Measurement#getProbabilities(Braket, int[])
+     */
+    public static Vector getProbDistribution(Braket q, int[] qubits) {
+	double[] p = getProbabilities(q, qubits);
+	Vector probDistrib = new Vector(p.length);
 
-		// increase binary counter
-		for(int l=0;(l < n-k)&&!(binary_counter1[l]=!binary_counter1[l++]););
+	for (int i = 0; i < p.length; i++) probDistrib.add(new Double(p[i]));
+	return probDistrib;
+    }
 
-		if (q.data[offset + step] != null)
-		    prob += q.data[offset + step].magnitudeSquared();
+    /**
+     * returns the probabilities of the basis states of a register of qubits, the
+     * last qubit in the array being the least significant bit of the state.
+     * The distribution is computed in a single pass over the ket and kept with
+     * it until its components change, so repeated queries (e.g. of the charts
+     * after each step) are answered without visiting the ket again. The
+     * returned array is shared and must not be modified.
+     */
+    public static double[] getProbabilities(Braket q, int[] qubits) {
+	StringBuffer key = new StringBuffer();
+	for (int i = 0; i < qubits.length; i++) key.append(qubits[i]).append(',');
+
+	synchronized (q) {
+	    if (q.distributions == null || q.distributionsVersion != q.version) {
+		q.distributions = new Hashtable();
+		q.distributionsVersion = q.version;
 	    }
+	    double[] p = (double[])q.distributions.get(key.toString());
+	    if (p == null) {
+		p = marginals(q, qubits);
+		q.distributions.put(key.toString(), p);
+	    }
+	    return p;
+	}
+    }
 
-	    probDistrib.add(new Double(prob));
-
+    /**
+     * sums the squared magnitudes of the components for each basis state of a
+     * register in one sequential pass over the ket.
+     */
+    private static double[] marginals(Braket q, int[] qubits) {
+	if (q.isSparse()) return SparseKernels.distribution(q, qubits, true);
+
+	double[] p = new double[1 << qubits.length];
+	int[][] tables = SubspaceIndex.outcomeTables(qubits, q.n);
+	int[] low = tables[0];
+	double[] a = q.amplitudes;
+
+	// the low byte of the index is looked up per component, the rest per block
+	for (int block = 0; block < q.dimension; block += 256) {
+	    int high = 0;
+	    for (int c = 1; c < tables.length; c++) high |= tables[c][(block >>> 8*c) & 255];
+	    int end = Math.min(256, q.dimension);
+
+	    if (a != null) {
+		for (int j = 0, i = 2*block; j < end; j++, i += 2) 
+		    p[high | low[j]] += a[i]*a[i] + a[i+1]*a[i+1];
+	    }
+	    else {
+		for (int j = 0; j < end; j++) {
+		    if (!q.isZero(block + j)) p[high | low[j]] += q.magnitudeSquared(block + j);
+		}
+	    }
 	}
-	return probDistrib;
+	return p;
     }
 
     /**
@@ -193,65 +308,30 @@ public class Measurement extends MathMap {
      */
     public static Vector getPhaseDistribution(Braket q, int[] qubits) {
 	int k = qubits.length;
-	int n = q.n;
 	Vector phaseDistrib = new Vector(BinaryOp.pow(2, k));
+	double[] d;
 
-	// joker digits
-	int[] jokers = new int[n-k];
-	boolean[] binary_counter1 = new boolean[n-k];
-	int step;
-
-	Complex phase;
-
-	// counter for possible states
-	boolean[] binary_counter2 = new boolean[k];
-	int offset = 0;
-
-	// fill the joker array with remaining qubit positions
-	int pos = 0;
-	boolean found = false;
-	for (int i = 0; i < n; i++) {
-	    found = false;
-	    for (int j = 0; j < k; j++)
-		if (qubits[j] == i) found = true;
-	    if (found == false && n-k > pos) 
-		jokers[pos++] = i;
-	}
-
-
-	// for each possible state
-	for (int i = 0; i < BinaryOp.pow(2, k); i++) {
-
-	    offset = 0;
-	    // calculate stepsize
-	    for (int l = 0; l < k; l++) {
-		offset += (binary_counter2[l]? BinaryOp.pow(2,n-qubits[k-l-1]-1) : 0);
-	    } 
-
-	    // increase binary counter
-	    for(int l=0;(l < k)&&!(binary_counter2[l]=!binary_counter2[l++]););
-
-	    phase = new Complex(0);
-
-	    // sum probabilities
-	    for (int j = 0; j < BinaryOp.pow(2, n-k); j++) {
-		step = 0;
-
-		// calculate stepsize
-		for (int l = 0; l < n-k; l++) {
-		    step += (binary_counter1[l]? BinaryOp.pow(2,n-jokers[n-k-l-1]-1) : 0);
-		} 
-
-		// increase binary counter
-		for(int l=0;(l < n-k)&&!(binary_counter1[l]=!binary_counter1[l++]););
-
-		if (q.data[offset + step] != null)
-		    phase = phase.plus(q.data[offset+step]);
+	if (q.isSparse()) d = SparseKernels.distribution(q, qubits, false);
+	else {
+	    d = new double[2 << k];
+	    int[][] tables = SubspaceIndex.outcomeTables(qubits, q.n);
+	    int[] low = tables[0];
+
+	    // sum the components in one pass like the probabilities
+	    for (int block = 0; block < q.dimension; block += 256) {
+		int high = 0;
+		for (int c = 1; c < tables.length; c++) high |= tables[c][(block >>> 8*c) & 255];
+		int end = Math.min(256, q.dimension);
+
+		for (int j = 0; j < end; j++) {
+		    if (q.isZero(block + j)) continue;
+		    int o = high | low[j];
+		    d[2*o] += q.re(block + j);
+		    d[2*o+1] += q.im(block + j);
+		}
 	    }
-
-	    phaseDistrib.add(phase);
-
 	}
+	for (int i = 0; i < d.length; i += 2) phaseDistrib.add(new Complex(d[i], d[i+1]));
 	return phaseDistrib;
     }
 
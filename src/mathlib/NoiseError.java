@@ -49,39 +49,163 @@ public class NoiseError extends MathMap {
     public MathObject apply(MathObject o) {
 	if (o instanceof Complex) {
 	    double sigma = ((Complex)o).re();
-
-	    double eps1_2 = sigma * Mathlib.getRandom().nextGaussian()/2.0;
-	    double eps2_2 = sigma * Mathlib.getRandom().nextGaussian()/2.0;
-	    double eps3_2 = sigma * Mathlib.getRandom().nextGaussian()/2.0;
-	    double eps4 = sigma * Mathlib.getRandom().nextGaussian();
-	    //	    System.out.println(" error: eps1 = "+eps1_2*2 +"\t eps2 = "+eps2_2*2+ "\t eps3 = " + eps3_2*2);
-
-	    double cos = Math.cos(eps2_2);
-	    double sin = Math.sin(eps2_2);
-	    double cos1plus3 = Math.cos(eps1_2+eps3_2);
-	    double cos1minus3 = Math.cos(eps1_2-eps3_2);
-	    double sin1plus3 = Math.sin(eps1_2+eps3_2);
-	    double sin1minus3 = Math.sin(eps1_2-eps3_2);
-
-	    double phasecos = Math.cos(eps4);
-	    double phasesin = Math.sin(eps4);
-
-	    Complex m11 = new Complex(phasecos*cos1plus3*cos,-phasesin*sin1plus3*cos);
-	    Complex m12 = new Complex(cos1minus3*sin,-sin1minus3*sin);
-	    Complex m21 = new Complex(-phasecos*cos1minus3*sin,-phasesin*sin1minus3*sin);
-	    Complex m22 = new Complex(cos1plus3*cos,sin1plus3*cos);
+	    double[] c = coefficients(sigma, Mathlib.getRandom());
 
 	    Matrix m = new Matrix(2);
-	    m.setElement(0,0,m11);
-	    m.setElement(0,1,m12);
-	    m.setElement(1,0,m21);
-	    m.setElement(1,1,m22);
+	    m.setElement(0,0,new Complex(c[0],c[1]));
+	    m.setElement(0,1,new Complex(c[2],c[3]));
+	    m.setElement(1,0,new Complex(c[4],c[5]));
+	    m.setElement(1,1,new Complex(c[6],c[7]));
 	    return m;
 	}
 	LOG.LOG(0, "invalid parameter for noiseError()");
 	return null;
     }
 
+    /**
+     * returns the coefficients (row major, real and imaginary parts interleaved)
+     * of an infinitesimal 2x2 rotation matrix whose parameters are drawn from 
+     * the given random generator with standard deviation sigma. Used by
+     * simulations that run with their own random generator.
+     */
+    public static double[] coefficients(double sigma, Random random) {
+	double eps1_2 = sigma * random.nextGaussian()/2.0;
+	double eps2_2 = sigma * random.nextGaussian()/2.0;
+	double eps3_2 = sigma * random.nextGaussian()/2.0;
+	double eps4 = sigma * random.nextGaussian();
+	//	    System.out.println(" error: eps1 = "+eps1_2*2 +"\t eps2 = "+eps2_2*2+ "\t eps3 = " + eps3_2*2);
+	return coefficients(eps1_2, eps2_2, eps3_2, eps4);
+    }
+
+    /**
+     * returns the coefficients of the rotation matrix for the given parameters
+     * (half angles of the first three)
+     */
+    private static double[] coefficients(double eps1_2, double eps2_2, double eps3_2, 
+					 double eps4) {
+
+	double cos = Math.cos(eps2_2);
+	double sin = Math.sin(eps2_2);
+	double cos1plus3 = Math.cos(eps1_2+eps3_2);
+	double cos1minus3 = Math.cos(eps1_2-eps3_2);
+	double sin1plus3 = Math.sin(eps1_2+eps3_2);
+	double sin1minus3 = Math.sin(eps1_2-eps3_2);
+
+	double phasecos = Math.cos(eps4);
+	double phasesin = Math.sin(eps4);
+
+	double[] c = new double[8];
+	c[0] = phasecos*cos1plus3*cos; c[1] = -phasesin*sin1plus3*cos;
+	c[2] = cos1minus3*sin; c[3] = -sin1minus3*sin;
+	c[4] = -phasecos*cos1minus3*sin; c[5] = -phasesin*sin1minus3*sin;
+	c[6] = cos1plus3*cos; c[7] = sin1plus3*cos;
+	return c;
+    }
+
+    /** number of Gauss-Hermite points per parameter */
+    private static final int POINTS = 8;
+    /** Gauss-Hermite nodes and weights for the standard normal distribution */
+    private static double[] nodes, weights;
+    /** sigma of the cached moments */
+    private static double momentSigma = Double.NaN;
+    /** cached moments for momentSigma */
+    private static double[] mean, superoperator;
+
+    /**
+     * returns the expectation of the error matrix for the standard deviation 
+     * sigma (row major, real and imaginary parts interleaved).
+     * @see NoiseError#superoperator(double)
+     */
+    public static synchronized double[] mean(double sigma) {
+	moments(sigma);
+	return mean;
+    }
+
+    /**
+     * returns the expectation of E x E* for the error matrix E of standard 
+     * deviation sigma, i.e. the map rho -> &lt;E rho E^+&gt; applied to the 2x2 
+     * density matrix of a qubit. Entry ((a,b),(c,d)) at index 2*(4*(2a+b)+2c+d)
+     * is &lt;E[a][c] E[b][d]*&gt;, real and imaginary parts interleaved. A density
+     * matrix simulation applies this channel instead of drawing error matrices.
+     * @see DensityMatrix
+     */
+    public static synchronized double[] superoperator(double sigma) {
+	moments(sigma);
+	return superoperator;
+    }
+
+    /**
+     * computes the first and second moments of the error matrix by Gauss-Hermite
+     * quadrature over the four normally distributed parameters. The integrands
+     * are smooth, so a few points per parameter give machine precision for the
+     * usual small sigmas.
+     */
+    private static void moments(double sigma) {
+	if (sigma == momentSigma) return;
+	if (nodes == null) gaussHermite();
+	double[] m = new double[8];
+	double[] s = new double[32];
+	for (int i = 0; i < POINTS; i++)
+	    for (int j = 0; j < POINTS; j++)
+		for (int k = 0; k < POINTS; k++)
+		    for (int l = 0; l < POINTS; l++) {
+			double w = weights[i]*weights[j]*weights[k]*weights[l];
+			double[] e = coefficients(sigma*nodes[i]/2.0, sigma*nodes[j]/2.0, 
+						  sigma*nodes[k]/2.0, sigma*nodes[l]);
+			for (int a = 0; a < 8; a++) m[a] += w*e[a];
+			for (int r = 0; r < 4; r++) {
+			    for (int c = 0; c < 4; c++) {
+				// E[a][c'] * conj(E[b][d])
+				int x = 2*(2*(r/2) + c/2), y = 2*(2*(r%2) + c%2);
+				s[2*(4*r+c)] += w*(e[x]*e[y] + e[x+1]*e[y+1]);
+				s[2*(4*r+c)+1] += w*(e[x+1]*e[y] - e[x]*e[y+1]);
+			    }
+			}
+		    }
+	mean = m;
+	superoperator = s;
+	momentSigma = sigma;
+    }
+
+    /**
+     * computes the nodes and weights of the Gauss-Hermite quadrature (Newton
+     * iteration on the normalized Hermite polynomials) and scales them to the
+     * standard normal distribution.
+     */
+    private static void gaussHermite() {
+	int n = POINTS;
+	double[] x = new double[n], w = new double[n];
+	double z = 0, pp = 0;
+	for (int i = 0; i < (n+1)/2; i++) {
+	    // initial guesses of the largest roots
+	    if (i == 0) z = Math.sqrt(2*n+1) - 1.85575*Math.pow(2*n+1, -0.16667);
+	    else if (i == 1) z -= 1.14*Math.pow(n, 0.426)/z;
+	    else if (i == 2) z = 1.86*z - 0.86*x[0];
+	    else if (i == 3) z = 1.91*z - 0.91*x[1];
+	    else z = 2.0*z - x[i-2];
+	    for (int it = 0; it < 100; it++) {
+		double p1 = 1/Math.pow(Math.PI, 0.25), p2 = 0, p3;
+		for (int j = 1; j <= n; j++) {
+		    p3 = p2;
+		    p2 = p1;
+		    p1 = z*Math.sqrt(2.0/j)*p2 - Math.sqrt((j-1.0)/j)*p3;
+		}
+		pp = Math.sqrt(2.0*n)*p2;
+		double z1 = z;
+		z = z1 - p1/pp;
+		if (Math.abs(z-z1) <= 3e-14) break;
+	    }
+	    x[i] = z;
+	    x[n-1-i] = -z;
+	    w[i] = w[n-1-i] = 2.0/(pp*pp);
+	}
+	for (int i = 0; i < n; i++) {
+	    x[i] *= Math.sqrt(2.0);
+	    w[i] /= Math.sqrt(Math.PI);
+	}
+	nodes = x;
+	weights = w;
+    }
 
     /**
      * string representation of the decoherence map
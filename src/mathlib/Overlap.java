@@ -0,0 +1,197 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+
+package mathlib;
+
+/**
+ * inner products of brakets that work directly on the storage of both 
+ * operands. Neither braket is changed (no transposing or conjugating in place)
+ * and no objects are created per component, so the fidelity of a simulation 
+ * can be computed after every step. Sparse brakets, also of more than 30 
+ * qubits, only visit their populated components.
+ * <p>The fused kernels apply a gate to a reference ket and compute the
+ * overlap with another ket in the same pass. They run in the calling thread,
+ * like the trajectories of a Monte Carlo sweep.</p>
+ * @see CompiledGate#applyFidelity(Braket, Braket, java.util.Random)
+ */
+public class Overlap {
+
+    /** number of components copied per block for mixed storage */
+    private static final int BLOCK = 1 << 12;
+
+    /**
+     * returns &lt;a|b&gt;, i.e. the sum of conj(a_i)*b_i. The transpose state
+     * of the brakets is ignored.
+     * @throws IllegalArgumentException if the numbers of qubits differ
+     */
+    public static Complex product(Braket a, Braket b) throws IllegalArgumentException {
+	double[] sum = sum(a, b);
+	return new Complex(sum[0], sum[1]);
+    }
+
+    /**
+     * returns the fidelity |&lt;a|b&gt;|^2
+     * @throws IllegalArgumentException if the numbers of qubits differ
+     */
+    public static double fidelity(Braket a, Braket b) throws IllegalArgumentException {
+	double[] sum = sum(a, b);
+	return sum[0]*sum[0] + sum[1]*sum[1];
+    }
+
+    /**
+     * returns the real and imaginary part of &lt;a|b&gt;
+     */
+    private static double[] sum(Braket a, Braket b) {
+	if (a.n != b.n) 
+	    throw new IllegalArgumentException("different number of qubits: "+a.n+", "+b.n);
+	double[] sum = new double[2];
+
+	if (a.isSparse() || b.isSparse()) {
+	    // visit the smaller map, conj(a_i)*b_i = conj(b_i*conj(a_i))
+	    boolean swap = !a.isSparse() || (b.isSparse() && b.map.size() < a.map.size());
+	    AmplitudeMap map = swap ? b.map : a.map;
+	    Braket other = swap ? a : b;
+	    double re = 0, im = 0;
+	    for (int s = 0; s < map.capacity(); s++) {
+		long k = map.keyAt(s);
+		if (k == -1 || other.isZero(k)) continue;
+		double mr = map.reAt(s), mi = map.imAt(s);
+		double or = other.re(k), oi = other.im(k);
+		re += mr*or + mi*oi;
+		im += mr*oi - mi*or;
+	    }
+	    sum[0] = re;
+	    sum[1] = swap ? -im : im;
+	}
+	else if (a.amplitudes != null && b.amplitudes != null) 
+	    add(a.amplitudes, b.amplitudes, 2*a.dimension, sum);
+	else {
+	    int size = Math.min(BLOCK, a.dimension);
+	    double[] ba = new double[2*size], bb = new double[2*size];
+	    for (int i = 0; i < a.dimension; i += size) {
+		block(a, i, ba, size);
+		block(b, i, bb, size);
+		add(ba, bb, 2*size, sum);
+	    }
+	}
+	return sum;
+    }
+
+    /**
+     * adds the sum of conj(a_i)*b_i over the first length/2 components of the
+     * interleaved arrays to sum
+     */
+    private static void add(double[] a, double[] b, int length, double[] sum) {
+	double re = 0, im = 0;
+	for (int i = 0; i < length; i += 2) {
+	    re += a[i]*b[i] + a[i+1]*b[i+1];
+	    im += a[i]*b[i+1] - a[i+1]*b[i];
+	}
+	sum[0] += re;
+	sum[1] += im;
+    }
+
+    /**
+     * copies the components start, ..., start+length-1 of a dense braket into
+     * the interleaved buffer
+     */
+    private static void block(Braket v, int start, double[] buffer, int length) {
+	if (v.amplitudes != null) 
+	    System.arraycopy(v.amplitudes, 2*start, buffer, 0, 2*length);
+	else if (v.mapped != null) 
+	    v.mapped.read(start, buffer, length);
+	else {
+	    for (int j = 0; j < length; j++) {
+		Complex c = v.data[start+j];
+		buffer[2*j] = (c == null) ? 0 : c.re;
+		buffer[2*j+1] = (c == null) ? 0 : c.im;
+	    }
+	}
+    }
+
+    /**
+     * applies a 2x2 matrix to the interleaved components ref like 
+     * <tt>BinaryOp.apply2x2</tt> and returns |&lt;ref|q&gt;|^2 of the result. 
+     * All pairs of components are visited once; those outside the subspace of
+     * the controls first are only added to the overlap. For the kinds DIAGONAL
+     * and ANTIDIAGONAL of <tt>CompiledGate</tt> only the respective 
+     * coefficients are used.
+     */
+    static double apply2x2(double[] ref, double[] q, int first, int offset, 
+			   double[] c, int kind) {
+	boolean diagonal = (kind == CompiledGate.DIAGONAL);
+	boolean antidiagonal = (kind == CompiledGate.ANTIDIAGONAL);
+	double m11r = antidiagonal ? 0 : c[0], m11i = antidiagonal ? 0 : c[1];
+	double m12r = diagonal ? 0 : c[2], m12i = diagonal ? 0 : c[3];
+	double m21r = diagonal ? 0 : c[4], m21i = diagonal ? 0 : c[5];
+	double m22r = antidiagonal ? 0 : c[6], m22i = antidiagonal ? 0 : c[7];
+	double re = 0, im = 0;
+
+	// pairs i1, i2 = i1+offset with the target bit of i1 clear
+	for (int base = 0; base < ref.length/2; base += 2*offset) {
+	    for (int i1 = base; i1 < base+offset; i1++) {
+		int j1 = 2*i1, j2 = 2*(i1+offset);
+		double c1r = ref[j1], c1i = ref[j1+1], c2r = ref[j2], c2i = ref[j2+1];
+		if ((i1 & first) == first) {
+		    double r1 = m11r*c1r - m11i*c1i + m12r*c2r - m12i*c2i;
+		    double t1 = m11r*c1i + m11i*c1r + m12r*c2i + m12i*c2r;
+		    double r2 = m21r*c1r - m21i*c1i + m22r*c2r - m22i*c2i;
+		    double t2 = m21r*c1i + m21i*c1r + m22r*c2i + m22i*c2r;
+		    ref[j1] = c1r = r1; ref[j1+1] = c1i = t1;
+		    ref[j2] = c2r = r2; ref[j2+1] = c2i = t2;
+		}
+		re += c1r*q[j1] + c1i*q[j1+1] + c2r*q[j2] + c2i*q[j2+1];
+		im += c1r*q[j1+1] - c1i*q[j1] + c2r*q[j2+1] - c2i*q[j2];
+	    }
+	}
+	return re*re + im*im;
+    }
+
+    /**
+     * applies a sequence of diagonal matrices to the interleaved components 
+     * ref like <tt>BinaryOp.applyDiagonals</tt> and returns |&lt;ref|q&gt;|^2
+     * of the result
+     */
+    static double applyDiagonals(double[] ref, double[] q, long[] controls, long[] targets, 
+				 double[] c) {
+	int count = controls.length;
+	double re = 0, im = 0;
+
+	for (int i = 0, j = 0; j < ref.length; i++, j += 2) {
+	    double pr = 1, pi = 0;
+	    for (int g = 0; g < count; g++) {
+		if ((i & controls[g]) != controls[g]) continue;
+		int k = ((i & targets[g]) == 0) ? 4*g : 4*g+2;
+		double t = pr*c[k] - pi*c[k+1];
+		pi = pr*c[k+1] + pi*c[k];
+		pr = t;
+	    }
+	    double cr = ref[j], ci = ref[j+1];
+	    double nr = pr*cr - pi*ci, ni = pr*ci + pi*cr;
+	    ref[j] = nr; 
+	    ref[j+1] = ni;
+	    re += nr*q[j] + ni*q[j+1];
+	    im += nr*q[j+1] - ni*q[j];
+	}
+	return re*re + im*im;
+    }
+}
@@ -0,0 +1,133 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+
+package mathlib;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+
+/**
+ * class to distribute the work of a gate kernel over several threads. The gate 
+ * kernels in <tt>BinaryOp</tt> touch a range of independent amplitude pairs 
+ * (or blocks for NxN gates), which is split recursively on a ForkJoinPool until
+ * the pieces are smaller than the threshold. Small registers are processed in 
+ * the calling thread.
+ * <p>The number of threads defaults to the system property <tt>jaquzzi.threads</tt>
+ * (1 if not set, i.e. serial execution) and can be changed with 
+ * <tt>setThreads</tt>, e.g. from the "threads" entry of circuit_properties.
+ * There is one pool per number of threads, so that changing the number does
+ * not disturb kernels running on the old pool; idle pool threads end by 
+ * themselves.</p>
+ * @see BinaryOp#implicitApply(Gate, Braket, Matrix)
+ */
+public class ParallelKernel extends RecursiveAction {
+
+    /**
+     * a piece of work on the index range [lo, hi) of a gate kernel. Different
+     * ranges must not touch the same amplitudes.
+     */
+    public interface Range {
+	public void apply(int lo, int hi);
+    }
+
+    private static volatile int threads = Integer.getInteger("jaquzzi.threads", 1).intValue();
+    private static volatile int threshold = 1 << 12;
+    /** the pools by number of threads */
+    private static Hashtable pools = new Hashtable();
+
+    private Range range;
+    private int lo, hi;
+
+    private ParallelKernel(Range range, int lo, int hi) {
+	this.range = range;
+	this.lo = lo;
+	this.hi = hi;
+    }
+
+    /**
+     * sets the number of threads used for gate kernels. Values < 2 switch to 
+     * serial execution.
+     */
+    public static void setThreads(int newThreads) {
+	threads = (newThreads < 1) ? 1 : newThreads;
+    }
+
+    /**
+     * returns the number of threads used for gate kernels.
+     */
+    public static int getThreads() {
+	return threads;
+    }
+
+    /**
+     * sets the minimum number of indices a single task works on. Ranges below 
+     * twice this size are always processed serially.
+     */
+    public static void setThreshold(int newThreshold) {
+	threshold = (newThreshold < 1) ? 1 : newThreshold;
+    }
+
+    /**
+     * returns the minimum number of indices a single task works on.
+     */
+    public static int getThreshold() {
+	return threshold;
+    }
+
+    /**
+     * returns the shared pool with the given number of threads. The pools are
+     * kept until the VM exits and must not be shut down by the caller.
+     */
+    public static ForkJoinPool getPool(int threads) {
+	synchronized (pools) {
+	    Integer key = new Integer(threads);
+	    ForkJoinPool pool = (ForkJoinPool)pools.get(key);
+	    if (pool == null) {
+		pool = new ForkJoinPool(threads);
+		pools.put(key, pool);
+	    }
+	    return pool;
+	}
+    }
+
+    /**
+     * processes the index range [0, count), in parallel if enabled and the range
+     * is large enough.
+     */
+    public static void run(int count, Range range) {
+	int threads = ParallelKernel.threads;
+	if (threads < 2 || count < 2*threshold || ForkJoinTask.inForkJoinPool()) 
+	    range.apply(0, count);
+	else 
+	    getPool(threads).invoke(new ParallelKernel(range, 0, count));
+    }
+
+    protected void compute() {
+	if (hi - lo <= threshold) range.apply(lo, hi);
+	else {
+	    int mid = (lo + hi) >>> 1;
+	    invokeAll(new ParallelKernel(range, lo, mid), 
+		      new ParallelKernel(range, mid, hi));
+	}
+    }
+}
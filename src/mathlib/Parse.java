@@ -41,89 +41,63 @@ import java.util.*;
  * class provides static expression evalutation methods, it is strongly recommended to provide a mathlib
  * object in order to use the full functinality (the Mathlib class provides the variable management). </p>
  * <p>MathlibEvent listeners are for example the classes Mathlib, QVarTree, GateTable.</p>
+ * <p>The listeners belong to the MathlibContext. The static methods work on the current
+ * context, a Parse object evaluates expressions in the context of its Mathlib object.</p>
  * @see Tokenizer
  * @see Mathlib
+ * @see MathlibContext
  * @see MathlibEvent
  * @see MathlibEventListener
  */
 public class Parse {
     /** still in use ? */
     public static boolean echoAnswer = true;
-    /** holds the MathlibEventListeners */
-    protected static Vector listeners = null;
+    /** number of compiled expressions a context caches before starting over */
+    public static final int MAX_COMPILED = 1024;
     /** holds the Mathlib object */
     protected Mathlib mathlib;
-    protected static String category = null;
 
     /** 
      * creates a Parse object associated with a certain Mathlib object */
     public Parse(Mathlib mathlib) {
 	this.mathlib = mathlib;
+	mathlib.getContext().addMathlibEventListener(mathlib);
+    }
 
-	listeners = new Vector();
-	addMathlibEventListener(mathlib);
+    /**
+     * returns the current context. Throws a MissingResourceException if no 
+     * Mathlib object was created.
+     * @see MathlibContext#current()
+     */
+    static MathlibContext context() throws MissingResourceException {
+	MathlibContext context = MathlibContext.current();
+	if (context == null) 
+	    throw new MissingResourceException("mathlib not initialized!", "Mathlib","");
+	return context;
     }
 
     /**
-     * registers a MathlibEventListener
+     * registers a MathlibEventListener with the current context
      * @param m listener object
      */
-    public static synchronized void addMathlibEventListener(MathlibEventListener m) {
-	if (m == null) return;
-        listeners.add(m);
+    public static void addMathlibEventListener(MathlibEventListener m) {
+	context().addMathlibEventListener(m);
     }
 
     /**
-     * removes a MathlibEventListener
+     * removes a MathlibEventListener from the current context
      */
-    public static synchronized void removeMathlibEventListener(MathlibEventListener m){
-	if (m == null) return;
-	listeners.remove(m);
+    public static void removeMathlibEventListener(MathlibEventListener m){
+	context().removeMathlibEventListener(m);
     }
 
     /**
      * is called internally by fireMathlibEvent in order to dispatch the event
+     * to the listeners of the current context
      * @param e MathlibEvent to dispatch
      */
-    protected static synchronized void processEvent(MathlibEvent event) {
-	if (event.getAction() == MathlibEvent.ADD && Mathlib.getVar(event.getObjectName())!= null) {
-	    LOG.LOG(0, "variable '"+event.getObjectName()+"' already existing. No action performed."); 
-	    return;
-	}
-
-	// add category to the variable
-	MathlibEvent e;
-	if (event.getCategory() == null) 
-	    e = new MathlibEvent(event.getSource(), event.getObjectName(), event.getNewName(), Mathlib.getCategory(event.getObjectName()), event.getMathObject(), event.getAction());
-	else e = event;
-
-	// debug
-	LOG.LOG(1, "\nMathlibEvent: " + e.getObjectName());
-	LOG.LOG(1, "action: " + e.getAction());
-	if (e.getNewName() != null) LOG.LOG(1, "newName: " + e.getNewName());
-	if (e.getCategory() != null) LOG.LOG(1, "category: " + e.getCategory());
-	LOG.LOG(1, "mathObject: " + ((e.getMathObject() == null) ? "null": e.getMathObject().toString()));
-
-	
-	if (listeners != null) {
-	    if (e.getAction() == MathlibEvent.ADD) {
-		for (int i = 0; i < listeners.size(); i++) {
-		    ((MathlibEventListener)listeners.get(i)).addVariable(e);
-		}
-	    }
-	    else if (e.getAction() == MathlibEvent.REMOVE) {
-		for (int i = 0; i < listeners.size(); i++) {
-		    ((MathlibEventListener)listeners.get(i)).removeVariable(e);
-		}
-	    }
-	    else if (e.getAction() == MathlibEvent.CHANGE || 
-		     e.getAction() == MathlibEvent.CHANGE_NAME ||
-		     e.getAction() == MathlibEvent.CHANGE_CATEGORY) {
-		for (int i = 0; i < listeners.size(); i++) {
-		    ((MathlibEventListener)listeners.get(i)).changeVariable(e);
-		}
-	    }
-	}
+    protected static void processEvent(MathlibEvent event) {
+	context().processEvent(event);
     }
 
     /**
@@ -163,7 +137,7 @@ public class Parse {
      * preset category (not used anymore)
      */
     public void setCategory(String newCategory) {
-	category = newCategory;
+	mathlib.getContext().setPresetCategory(newCategory);
     }
 
 
@@ -176,6 +150,14 @@ public class Parse {
     public static MathObject parseExpression(String str) 
 	throws IllegalArgumentException {
 	
+	Expression expression = compile(str, false);
+	if (expression != null) {
+	    MathObject result = expression.evaluate();
+	    if (result == null)
+		throw new IllegalArgumentException("illegal expression on r.h.s.");
+	    return result;
+	}
+
 	str = preprocess(str);
 	if (str == null) 
 	    throw new IllegalArgumentException("illegal assignment or emty statement");
@@ -195,29 +177,95 @@ public class Parse {
      * @param str string to be evaluated
      */
     public String evaluateExpression(String str) throws IllegalArgumentException {
-	String ans;
+	MathlibContext previous = MathlibContext.setCurrent(mathlib.getContext());
+	try {
+	    return evaluate(str);
+	}
+	finally {
+	    MathlibContext.setCurrent(previous);
+	}
+    }
+
+    /**
+     * evaluates an expression in the current context
+     */
+    private String evaluate(String str) throws IllegalArgumentException {
 	LOG.reset();
 
+	Expression expression = compile(str, true);
+	if (expression != null) {
+	    MathObject result = expression.evaluate();
+	    if (result != null) return answer(expression.answerVar, result);
+	    else throw new IllegalArgumentException("illegal expression on r.h.s.");
+	}
+
 	str = preprocess(str);
 	if (str != null) {
 	    Tokenizer t = new Tokenizer(str, true);
 	    MathObject result = parse(0, t, false, true);
-	    if (result != null) {
-		ans = ((t.getAnswerVar() == null) ? "ans" : t.getAnswerVar());
-		LOG.LOG(3, "evaluateExpression: name of answer variable = " + ans);
-		if (echoAnswer || t.getAnswerVar() == null) {
-		    if (mathlib.getVar(ans) == null) 
-			fireMathlibEvent("ans", result, MathlibEvent.ADD);
-		    else 
-			fireMathlibEvent("ans", result, MathlibEvent.CHANGE);
-		}
-		LOG.LOG(3, "evaluateExpression: value of answer variable = " + mathlib.getVar(ans).toString());
-		return ans;
-	    } else throw new IllegalArgumentException("illegal expression on r.h.s.");
+	    if (result != null) return answer(t.getAnswerVar(), result);
+	    else throw new IllegalArgumentException("illegal expression on r.h.s.");
 	}
 	else throw new IllegalArgumentException("illegal assignment or emty statement");
     }
 
+    /**
+     * assigns the result of a statement to the answer variable
+     * @param answerVar name of the answer variable or null
+     * @return the name of the answer variable
+     */
+    private String answer(String answerVar, MathObject result) {
+	String ans = ((answerVar == null) ? "ans" : answerVar);
+	LOG.LOG(3, "evaluateExpression: name of answer variable = " + ans);
+	if (echoAnswer || answerVar == null) {
+	    if (mathlib.getVar(ans) == null) 
+		fireMathlibEvent("ans", result, MathlibEvent.ADD);
+	    else 
+		fireMathlibEvent("ans", result, MathlibEvent.CHANGE);
+	}
+	if (LOG.getDebuglevel() >= 3)
+	    LOG.LOG(3, "evaluateExpression: value of answer variable = " + mathlib.getVar(ans).toString());
+	return ans;
+    }
+
+    /**
+     * compiles a string into an expression, which evaluates it with the current
+     * values of the variables. The expressions are cached by the current 
+     * context, repeated calls with the same string return the same object.
+     * @param str string to compile
+     * @param assignmentAllowed whether the string is a statement of the 
+     * evaluateExpression method
+     * @return the expression or null if the string contains assignments or 
+     * commands, which are only executed by the interpreter
+     * @throws IllegalArgumentException if the string is not a valid expression
+     * @see Expression
+     */
+    public static Expression compile(String str, boolean assignmentAllowed) 
+	throws IllegalArgumentException {
+	MathlibContext context = MathlibContext.current();
+	Hashtable cache = (context == null) ? null : context.getCompiled(assignmentAllowed);
+	Object cached = (cache == null) ? null : cache.get(str);
+	if (cached != null) return (cached instanceof Expression) ? (Expression)cached : null;
+
+	String s = preprocess(str);
+	if (s == null)
+	    throw new IllegalArgumentException("illegal assignment or emty statement");
+	Tokenizer t = new Tokenizer(s, assignmentAllowed, true);
+	Expression expression = null;
+	if (t.isCompilable()) {
+	    MathObject result = parse(0, t, false, assignmentAllowed);
+	    if (result == null)
+		throw new IllegalArgumentException("illegal expression on r.h.s.");
+	    expression = Expression.of(result);
+	    expression.answerVar = t.getAnswerVar();
+	}
+	if (cache != null) {
+	    if (cache.size() >= MAX_COMPILED) cache.clear();
+	    cache.put(str, (expression == null) ? (Object)Boolean.FALSE : expression);
+	}
+	return expression;
+    }
+
     /**
      * preprocesses a given string. It resolves certain task which right now cannot
      * be performed by the parse method.
@@ -291,7 +339,7 @@ mainloop:
 
 	    // apply leading unary op
 	    if (leadingUn != null) {
-		arg1 = ((UnaryOp)leadingUn).apply(arg1);
+		arg1 = unary(tokens, (UnaryOp)leadingUn, arg1);
 		LOG.LOG(1, "intermediate result: " + arg1.toString());
 		leadingUn = null;
 		LOG.LOG(1, "[parse("+n+"):arg1] "+arg1.toString());
@@ -330,14 +378,14 @@ mainloop:
 	    tokens.pushBack();
 	    tok1 = tokens.nextToken();
 	    if (tok1 instanceof ConditionalOp) {
-		arg1 = ((BinaryOp)op).apply((Argument)arg1, (Argument)arg2);
+		arg1 = binary(tokens, (BinaryOp)op, arg1, arg2);
 		LOG.LOG(1, "intermediate result: " + arg1.toString());
 		continue mainloop; 
 	    }
 	    while (tok1 instanceof BinaryOp) {
 		// well, this is the easy case ;-)
 		if ( ((BinaryOp)op).precedence((BinaryOp)tok1) ) { 
-		    arg1 = ((BinaryOp)op).apply(arg1, arg2);
+		    arg1 = binary(tokens, op, arg1, arg2);
 		    LOG.LOG(1, "intermediate result: " + arg1.toString());
 		    continue mainloop; // just leave the inner while loop !!
 		}
@@ -355,7 +403,7 @@ mainloop:
 		    if (arg3 == null) return null; // should be already an error message!
 
 		    // now we don't care anymore, we evaluate arg2 op2 arg3
-		    arg2 = ((BinaryOp)op2).apply(arg2, arg3);
+		    arg2 = binary(tokens, op2, arg2, arg3);
 		    LOG.LOG(1, "intermediate result: " + arg2.toString());
 
 		    tokens.pushBack();
@@ -365,8 +413,7 @@ mainloop:
 
 	    // XXX not sure about assignmentPending....
 	    if (tok1 == null || tok1 instanceof CloseDelimiter || assignmentPending) {
-		if (op instanceof BinaryOp) return ((BinaryOp)op).apply(arg1, arg2);
-		else return ((ConditionalOp)op).apply((Argument)arg1, (Argument)arg2);
+		return binary(tokens, op, arg1, arg2);
 	    }
 	    else {
 		LOG.LOG(0, "parse error: incomplete statement!");
@@ -431,7 +478,7 @@ mainloop:
 	    if (tok instanceof OpenDelimiter) {
 		arg = parse(n+1, tokens, false, assignmentAllowed);
 		LOG.LOG(2, "[processArg("+n+"):arg] apply function "+ tok.toString());
-		arg = func.apply(arg);
+		arg = function(tokens, func, arg);
 	    }
 	    else {
 		LOG.ERROR(func.toString(), "opening delimiter expected!", func.toString().length()+1);
@@ -453,7 +500,7 @@ mainloop:
 		if (assignmentAllowed) {
 		    LOG.LOG(2, "[processArg("+n+"):arg] fireMathlibEvent()");
 		    // assign answer variable
-		    fireMathlibEvent(var.toString(), null, category, arg, (Mathlib.getVar(var.toString()) == null) ? MathlibEvent.ADD: MathlibEvent.CHANGE);
+		    fireMathlibEvent(var.toString(), null, context().getPresetCategory(), arg, (Mathlib.getVar(var.toString()) == null) ? MathlibEvent.ADD: MathlibEvent.CHANGE);
 		}
 		return arg;
 	    } 
@@ -485,7 +532,7 @@ mainloop:
 	}
 
 	while (tok instanceof UnaryOp) {
-	    arg = ((UnaryOp)tok).apply(arg);
+	    arg = unary(tokens, (UnaryOp)tok, arg);
 	    LOG.LOG(1, "[processArg("+n+"):arg] "+arg.toString());
 	    if (n > 0 && assignmentPending == false) { 
 		tok = tokens.nextToken("parse error: ')' expected");
@@ -515,6 +562,45 @@ mainloop:
 
     }
 
+    /**
+     * applies a unary operator. When compiling, an operator on an expression 
+     * gives the node applying it.
+     */
+    private static MathObject unary(Tokenizer tokens, UnaryOp op, MathObject arg) {
+	MathObject result = null;
+	if (!(arg instanceof Expression)) result = op.apply(arg);
+	// failing operators fail on evaluation
+	if (result == null && tokens.isDeferred() && arg != null)
+	    result = new Expression.Unary(op, Expression.of(arg));
+	return result;
+    }
+
+    /**
+     * applies a binary or conditional operator. When compiling, an operator on
+     * an expression gives the node applying it.
+     */
+    private static MathObject binary(Tokenizer tokens, MathObject op, MathObject arg1, MathObject arg2) {
+	MathObject result = null;
+	if (!(arg1 instanceof Expression || arg2 instanceof Expression)) {
+	    if (op instanceof BinaryOp) result = ((BinaryOp)op).apply(arg1, arg2);
+	    else result = ((ConditionalOp)op).apply((Argument)arg1, (Argument)arg2);
+	}
+	// failing operators fail on evaluation
+	if (result == null && tokens.isDeferred() && arg1 != null && arg2 != null)
+	    result = new Expression.Binary((Operator)op, Expression.of(arg1), Expression.of(arg2));
+	return result;
+    }
+
+    /**
+     * applies a function. When compiling, functions are applied on evaluation
+     * only, since they may be stochastic.
+     */
+    private static MathObject function(Tokenizer tokens, MathMap func, MathObject arg) {
+	if (!tokens.isDeferred()) return func.apply(arg);
+	else if (arg == null) return null;
+	else return new Expression.Unary(func, Expression.of(arg));
+    }
+
     /**
      * function that checks whether a given name is a valid variable name
      * @return true if the name can be used as a variable name
@@ -0,0 +1,197 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+
+package mathlib;
+
+import java.util.*;
+
+
+/**
+ * a seedable and splittable random generator (SplitMix64). It is a drop-in
+ * replacement for <tt>java.util.Random</tt>, so it can be passed to all stochastic
+ * components (measurement, noise and decoherence). Like <tt>Random</tt> a stream
+ * of a given seed always produces the same numbers.
+ * <p>Independent simulations, e.g. the runs of a Monte Carlo sweep, should not
+ * share one generator: <tt>split()</tt> derives a new stream from this one, and
+ * <tt>substream(i)</tt> derives the i-th stream deterministically without
+ * advancing this one, so run i gets the same numbers regardless of the order
+ * in which the runs are executed. A single stream is not thread safe.</p>
+ * @see MathlibContext#getRandom()
+ */
+public class RandomStream extends Random {
+    /** increment of the seeds, the odd integer closest to 2^64/golden ratio */
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    /** seeds the unseeded streams */
+    private static long defaultSeed = System.currentTimeMillis();
+
+    /** state of the generator */
+    private long state;
+    /** increment of the state per number, always odd */
+    private long gamma;
+    /** second gaussian of the last pair, if not used yet */
+    private double nextGaussian;
+    private boolean haveNextGaussian;
+
+    /**
+     * creates a stream with a seed derived from the time of the first stream
+     * created. Streams created after each other differ.
+     */
+    public RandomStream() {
+	this(nextDefaultSeed());
+    }
+
+    /**
+     * creates a stream with the given seed
+     */
+    public RandomStream(long seed) {
+	this(seed, GOLDEN_GAMMA);
+    }
+
+    /**
+     * creates a stream with the given state and increment
+     */
+    private RandomStream(long seed, long gamma) {
+	super(0);
+	this.state = seed;
+	this.gamma = gamma;
+    }
+
+    /**
+     * returns a new seed for unseeded streams
+     */
+    private static synchronized long nextDefaultSeed() {
+	defaultSeed += 2*GOLDEN_GAMMA;
+	return mix64(defaultSeed);
+    }
+
+    /**
+     * restarts the stream with the given seed
+     */
+    public synchronized void setSeed(long seed) {
+	// also called by the constructor of Random, which clears the gaussians
+	super.setSeed(seed);
+	state = seed;
+	gamma = GOLDEN_GAMMA;
+	haveNextGaussian = false;
+    }
+
+    /**
+     * returns a copy of this stream in its current state, which produces the 
+     * same numbers as this one. Used to go back to an earlier point of a 
+     * simulation.
+     */
+    public synchronized RandomStream copy() {
+	RandomStream s = new RandomStream(state, gamma);
+	s.nextGaussian = nextGaussian;
+	s.haveNextGaussian = haveNextGaussian;
+	return s;
+    }
+
+    /**
+     * returns a new stream and advances this one. The new stream is 
+     * statistically independent of this one.
+     */
+    public RandomStream split() {
+	return new RandomStream(nextLong(), mixGamma(nextSeed()));
+    }
+
+    /**
+     * returns the stream with the given index derived from the current state.
+     * This stream is not advanced, so the same index always gives the same 
+     * stream until numbers are drawn from this one.
+     */
+    public RandomStream substream(long index) {
+	return new RandomStream(mix64(state + (2*index+1)*GOLDEN_GAMMA), 
+				mixGamma(state + (2*index+2)*GOLDEN_GAMMA));
+    }
+
+    /**
+     * returns the next 64 random bits
+     */
+    public long nextLong() {
+	return mix64(nextSeed());
+    }
+
+    /**
+     * returns a random number in [0, 1) with 53 random bits
+     */
+    public double nextDouble() {
+	return (nextLong() >>> 11) / (double)(1L << 53);
+    }
+
+    /**
+     * returns a normally distributed random number, the same as 
+     * <tt>Random.nextGaussian</tt> would. The pending second number of a pair 
+     * is part of the state of this stream, so it is kept by <tt>copy</tt>.
+     */
+    public synchronized double nextGaussian() {
+	if (haveNextGaussian) {
+	    haveNextGaussian = false;
+	    return nextGaussian;
+	}
+	double v1, v2, s;
+	do {
+	    v1 = 2*nextDouble() - 1;
+	    v2 = 2*nextDouble() - 1;
+	    s = v1*v1 + v2*v2;
+	} while (s >= 1 || s == 0);
+	double multiplier = StrictMath.sqrt(-2*StrictMath.log(s)/s);
+	nextGaussian = v2*multiplier;
+	haveNextGaussian = true;
+	return v1*multiplier;
+    }
+
+    /**
+     * returns the given number of random bits, used by all other methods of
+     * <tt>Random</tt>
+     */
+    protected int next(int bits) {
+	return (int)(nextLong() >>> (64 - bits));
+    }
+
+    /**
+     * advances the state
+     */
+    private long nextSeed() {
+	return state += gamma;
+    }
+
+    /**
+     * the finalizer of SplitMix64 (variant 13 of Stafford's mixers)
+     */
+    private static long mix64(long z) {
+	z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+	z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+	return z ^ (z >>> 31);
+    }
+
+    /**
+     * returns an odd increment with enough bit transitions
+     */
+    private static long mixGamma(long z) {
+	z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+	z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+	z = (z ^ (z >>> 33)) | 1L;
+	int n = Long.bitCount(z ^ (z >>> 1));
+	return (n < 24) ? z ^ 0xAAAAAAAAAAAAAAAAL : z;
+    }
+}
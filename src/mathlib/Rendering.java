@@ -0,0 +1,308 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+package mathlib;
+
+import java.io.*;
+
+/**
+ * <p>options for the string representation of MathObjects, which grows 
+ * exponentially with the number of qubits for brakets. The output is 
+ * appended to an <tt>Appendable</tt>, e.g. a <tt>StringBuilder</tt> or a 
+ * <tt>Writer</tt> that streams it to a file, and can be limited</p>
+ * <ul>
+ * <li> in length: no further terms, components or rows are appended once the
+ *      given number of characters is reached
+ * <li> to the terms of a braket with the largest magnitudes, which are then
+ *      listed in the order of decreasing magnitude
+ * <li> to the terms of a braket with a magnitude of at least a threshold
+ * </ul>
+ * Limited output ends with "...". The console and the state window use the 
+ * console rendering, which is given by the system properties 
+ * jaquzzi.printlength (65536 characters by default), jaquzzi.printterms (0, all
+ * terms) and jaquzzi.printthreshold (0).
+ * @see Braket#append(Appendable, Rendering)
+ */
+public class Rendering {
+    /** renders the complete objects, as <tt>toString()</tt> does */
+    public static final Rendering FULL = new Rendering(Integer.MAX_VALUE, 0, 0);
+
+    private static Rendering console = new Rendering(
+	Integer.getInteger("jaquzzi.printlength", 65536).intValue(),
+	Integer.getInteger("jaquzzi.printterms", 0).intValue(),
+	Double.valueOf(System.getProperty("jaquzzi.printthreshold", "0")).doubleValue());
+
+    /** maximum number of characters */
+    protected int length;
+    /** maximum number of braket terms, 0 for all */
+    protected int terms;
+    /** minimum magnitude of braket terms */
+    protected double threshold;
+
+    /**
+     * creates rendering options
+     * @param length number of characters after which the output is truncated
+     * @param terms number of braket terms with the largest magnitudes, 0 for all
+     * @param threshold minimum magnitude of braket terms
+     */
+    public Rendering(int length, int terms, double threshold) {
+	this.length = length;
+	this.terms = terms;
+	this.threshold = threshold;
+    }
+
+    /**
+     * returns the options used by the console and the state window
+     */
+    public static Rendering getConsole() {
+	return console;
+    }
+
+    /**
+     * sets the options used by the console and the state window
+     */
+    public static void setConsole(Rendering rendering) {
+	console = rendering;
+    }
+
+    /**
+     * returns the number of characters after which the output is truncated
+     */
+    public int getLength() {
+	return length;
+    }
+
+    /**
+     * returns the number of braket terms shown, 0 for all
+     */
+    public int getTerms() {
+	return terms;
+    }
+
+    /**
+     * returns the minimum magnitude of braket terms shown
+     */
+    public double getThreshold() {
+	return threshold;
+    }
+
+    /**
+     * returns the string representation of an object
+     */
+    public String render(MathObject o) {
+	StringBuilder buf = new StringBuilder();
+	try {
+	    append(buf, o);
+	}
+	catch (IOException e) {
+	    // a StringBuilder does not throw
+	}
+	return buf.toString();
+    }
+
+    /**
+     * appends the string representation of an object. Objects other than 
+     * brakets, vectors and matrices are truncated after rendering.
+     * @exception IOException if the output can not be written
+     */
+    public void append(Appendable out, MathObject o) throws IOException {
+	if (o instanceof Vect) ((Vect)o).append(out, this);
+	else if (o instanceof Matrix) ((Matrix)o).append(out, this);
+	else {
+	    String str = String.valueOf(o);
+	    if (str.length() > length) {
+		out.append(str.substring(0, length));
+		out.append("...");
+	    }
+	    else out.append(str);
+	}
+    }
+
+    /**
+     * returns the parsable string representation of an object
+     * @see MathObject#toParseableString()
+     */
+    public static String parseable(MathObject o) {
+	StringBuilder buf = new StringBuilder();
+	try {
+	    appendParseable(buf, o);
+	}
+	catch (IOException e) {
+	    // a StringBuilder does not throw
+	}
+	return buf.toString();
+    }
+
+    /**
+     * appends the parsable string representation of an object. Brakets, 
+     * vectors and matrices are written component by component, so that a
+     * file can be written without holding the whole string.
+     * @exception IOException if the output can not be written
+     */
+    public static void appendParseable(Appendable out, MathObject o) throws IOException {
+	if (o instanceof Vect) ((Vect)o).appendParseable(out);
+	else if (o instanceof Matrix) ((Matrix)o).appendParseable(out);
+	else out.append(o.toParseableString());
+    }
+
+    /**
+     * returns true if the output started at the given position reached the
+     * maximum length
+     */
+    public boolean isFull(StringBuilder buf, int start) {
+	return buf.length() - start >= length;
+    }
+
+    /**
+     * returns true if the output started at the given count reached the 
+     * maximum length
+     */
+    public boolean isFull(Counter out, long start) {
+	return out.length() - start >= length;
+    }
+
+    /**
+     * returns out if it counts the characters already, otherwise a counter
+     * that passes the output on to out
+     */
+    public static Counter count(Appendable out) {
+	return (out instanceof Counter) ? (Counter)out : new Counter(out);
+    }
+
+    /**
+     * passes the output on to another <tt>Appendable</tt> and counts the 
+     * characters, so that streamed output can be limited in length
+     */
+    public static class Counter implements Appendable {
+	private Appendable out;
+	private long count = 0;
+
+	public Counter(Appendable out) {
+	    this.out = out;
+	}
+
+	public Appendable append(CharSequence s) throws IOException {
+	    if (s == null) s = "null";
+	    out.append(s);
+	    count += s.length();
+	    return this;
+	}
+
+	public Appendable append(CharSequence s, int start, int end) throws IOException {
+	    if (s == null) s = "null";
+	    out.append(s, start, end);
+	    count += end - start;
+	    return this;
+	}
+
+	public Appendable append(char c) throws IOException {
+	    out.append(c);
+	    count++;
+	    return this;
+	}
+
+	/**
+	 * returns the number of characters appended so far
+	 */
+	public long length() {
+	    return count;
+	}
+    }
+
+    /**
+     * returns true if a braket term of the given components is shown
+     */
+    public boolean accepts(double re, double im) {
+	return threshold <= 0 || re*re + im*im >= threshold*threshold;
+    }
+
+    /**
+     * returns the indices of the terms of a braket with the largest magnitudes 
+     * above the threshold in the order of decreasing magnitude, or null if the
+     * number of terms is not limited
+     */
+    public long[] select(Braket b) {
+	if (terms <= 0) return null;
+	// min-heap of the largest magnitudes so far
+	long[] index = new long[terms];
+	double[] magnitude = new double[terms];
+	int size = 0;
+	if (b.isSparse() || b.dimension == 0) {
+	    long[] keys = b.nonZeroIndices();
+	    for (int k = 0; k < keys.length; k++) 
+		size = offer(index, magnitude, size, keys[k], b.re(keys[k]), b.im(keys[k]));
+	}
+	else {
+	    for (int i = 0; i < b.dimension; i++) {
+		if (!b.isZero(i)) size = offer(index, magnitude, size, i, b.re(i), b.im(i));
+	    }
+	}
+
+	// take the smallest off the heap
+	long[] selected = new long[size];
+	while (size > 0) {
+	    selected[size-1] = index[0];
+	    size--;
+	    index[0] = index[size];
+	    magnitude[0] = magnitude[size];
+	    down(index, magnitude, size);
+	}
+	return selected;
+    }
+
+    private int offer(long[] index, double[] magnitude, int size, long i, double re, double im) {
+	if (!accepts(re, im)) return size;
+	double m = re*re + im*im;
+	if (size < index.length) {
+	    // sift up
+	    int k = size, parent;
+	    while (k > 0 && magnitude[parent = (k-1) >> 1] > m) {
+		index[k] = index[parent];
+		magnitude[k] = magnitude[parent];
+		k = parent;
+	    }
+	    index[k] = i;
+	    magnitude[k] = m;
+	    return size + 1;
+	}
+	if (m > magnitude[0]) {
+	    index[0] = i;
+	    magnitude[0] = m;
+	    down(index, magnitude, size);
+	}
+	return size;
+    }
+
+    private static void down(long[] index, double[] magnitude, int size) {
+	int k = 0, child;
+	long i = index[0];
+	double m = magnitude[0];
+	while ((child = 2*k + 1) < size) {
+	    if (child + 1 < size && magnitude[child+1] < magnitude[child]) child++;
+	    if (magnitude[child] >= m) break;
+	    index[k] = index[child];
+	    magnitude[k] = magnitude[child];
+	    k = child;
+	}
+	index[k] = i;
+	magnitude[k] = m;
+    }
+}
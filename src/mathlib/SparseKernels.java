@@ -0,0 +1,304 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+
+package mathlib;
+
+import java.util.*;
+
+/**
+ * the gate kernels for brakets in sparse storage. They visit the populated 
+ * components only, so their cost grows with the number of components instead of 
+ * the dimension. Bit masks are longs, so registers with more than 30 qubits are
+ * supported.
+ * <p>The arithmetic is the same as the one of the kernels for primitive 
+ * storage in <tt>BinaryOp</tt>. After each operation the braket may switch to
+ * dense storage.</p>
+ * @see Braket#adaptStorage()
+ * @see AmplitudeMap
+ */
+class SparseKernels {
+
+    /**
+     * returns the bit mask of the qubits marked by c in the gate description
+     */
+    static long mask(String descr, char c) {
+	int n = descr.length();
+	long mask = 0;
+	for (int k = 0; k < n; k++) 
+	    if (descr.charAt(k) == c) mask |= 1L << (n-k-1);
+	return mask;
+    }
+
+    /**
+     * applies a gate like <tt>BinaryOp.implicitApply</tt>. The error matrix 
+     * modifies single qubit gates and may be null. Measurements are not handled
+     * here.
+     */
+    static void apply(Gate g, Braket v, Matrix error) {
+	applyModified(g, v, (error == null) ? null : BinaryOp.errorCoefficients(g, error));
+    }
+
+    /**
+     * applies a gate. The coefficients replace the ones of a single qubit gate 
+     * matrix if they are not null.
+     */
+    static void applyModified(Gate g, Braket v, double[] coefficients) {
+	String descr = g.gate_descr;
+	long first = mask(descr, '1');
+	long targets = mask(descr, 'm');
+	long up = mask(descr, 'u');
+	long down = mask(descr, 'd');
+
+	if (up != 0 || down != 0) {
+	    double[] c;
+	    if (up != 0 && down == 0) c = BinaryOp.UP;
+	    else if (up == 0 && down != 0) c = BinaryOp.DOWN;
+	    else c = g.getCoefficients();
+	    apply2x2(v, first, targets | up | down, c, CompiledGate.GENERAL);
+	}
+	else if (Long.bitCount(targets) == 1) {
+	    MatrixCache.Entry entry = g.getEntry();
+	    if (coefficients != null) 
+		apply2x2(v, first, targets, coefficients, CompiledGate.GENERAL);
+	    else if (entry.antiDiagonal) 
+		apply2x2(v, first, targets, g.getCoefficients(), CompiledGate.ANTIDIAGONAL);
+	    else if (entry.diagonal) 
+		apply2x2(v, first, targets, g.getCoefficients(), CompiledGate.DIAGONAL);
+	    else
+		apply2x2(v, first, targets, g.getCoefficients(), CompiledGate.GENERAL);
+	}
+	else if (targets != 0) applyNxN(v, first, targets, g.getCoefficients());
+    }
+
+    /**
+     * applies the 2x2 matrix with the coefficients c to the pairs of components
+     * k and k+offset, where k has all bits of first set and none of offset.
+     * kind is one of GENERAL, DIAGONAL and ANTIDIAGONAL of CompiledGate and 
+     * selects the arithmetic of the corresponding dense kernel.
+     * @see BinaryOp#apply2x2(Braket, int, int, int, double[])
+     */
+    static void apply2x2(Braket v, long first, long offset, double[] c, int kind) {
+	if (offset == 0) return;
+	v.modified();
+	AmplitudeMap in = v.map;
+
+	final double m11r = c[0], m11i = c[1], m12r = c[2], m12i = c[3];
+	final double m21r = c[4], m21i = c[5], m22r = c[6], m22i = c[7];
+
+	// diagonal matrices do not move components
+	if (kind == CompiledGate.DIAGONAL) {
+	    for (int s = 0; s < in.capacity(); s++) {
+		long k = in.keyAt(s);
+		if (k == -1 || (k & first) != first) continue;
+		long t = k & offset;
+		double cr = in.reAt(s), ci = in.imAt(s);
+		if (t == 0) 
+		    in.setAt(s, m11r*cr - m11i*ci, m11r*ci + m11i*cr);
+		else if (t == offset) 
+		    in.setAt(s, m22r*cr - m22i*ci, m22r*ci + m22i*cr);
+	    }
+	    in.removeZeros();
+	    v.adaptStorage();
+	    return;
+	}
+
+	AmplitudeMap out = new AmplitudeMap(in.size());
+	for (int s = 0; s < in.capacity(); s++) {
+	    long k = in.keyAt(s);
+	    if (k == -1) continue;
+	    long t = k & offset;
+	    if ((k & first) != first || (t != 0 && t != offset)) {
+		out.put(k, in.reAt(s), in.imAt(s));
+		continue;
+	    }
+	    long k1 = k & ~offset, k2 = k | offset;
+	    // the pair is computed once, at its first component if populated
+	    if (t != 0 && in.contains(k1)) continue;
+
+	    double c1r = in.re(k1), c1i = in.im(k1);
+	    double c2r = in.re(k2), c2i = in.im(k2);
+	    if (kind == CompiledGate.ANTIDIAGONAL) {
+		out.put(k1, m12r*c2r - m12i*c2i, m12r*c2i + m12i*c2r);
+		out.put(k2, m21r*c1r - m21i*c1i, m21r*c1i + m21i*c1r);
+	    }
+	    else {
+		out.put(k1, m11r*c1r - m11i*c1i + m12r*c2r - m12i*c2i,
+			m11r*c1i + m11i*c1r + m12r*c2i + m12i*c2r);
+		out.put(k2, m21r*c1r - m21i*c1i + m22r*c2r - m22i*c2i,
+			m21r*c1i + m21i*c1r + m22r*c2i + m22i*c2r);
+	    }
+	}
+	v.map = out;
+	v.adaptStorage();
+    }
+
+    /**
+     * applies the matrix with the coefficients c to the subspaces spanned by the
+     * target qubits, for all components with the bits of first set. Row l of the
+     * matrix belongs to the l-th submask of targets in ascending order.
+     * @see BinaryOp#applyNxN(Braket, int, int[], int, double[], Matrix)
+     */
+    static void applyNxN(Braket v, long first, long targets, double[] c) {
+	v.modified();
+	AmplitudeMap in = v.map;
+	int size = 1 << Long.bitCount(targets);
+	long[] offsets = new long[size];
+	for (int l = 1; l < size; l++) offsets[l] = (offsets[l-1] - targets) & targets;
+	double[] tmp = new double[2*size];
+
+	AmplitudeMap out = new AmplitudeMap(in.size());
+	for (int s = 0; s < in.capacity(); s++) {
+	    long k = in.keyAt(s);
+	    if (k == -1) continue;
+	    if ((k & first) != first) {
+		out.put(k, in.reAt(s), in.imAt(s));
+		continue;
+	    }
+	    // the subspace is computed once, at its first populated component
+	    long base = k & ~targets;
+	    boolean lowest = true;
+	    for (int l = 0; offsets[l] != (k & targets); l++) {
+		if (in.contains(base + offsets[l])) {
+		    lowest = false;
+		    break;
+		}
+	    }
+	    if (!lowest) continue;
+
+	    for (int l = 0; l < size; l++) {
+		tmp[2*l] = in.re(base+offsets[l]);
+		tmp[2*l+1] = in.im(base+offsets[l]);
+	    }
+	    for (int l = 0; l < size; l++) {
+		double re = 0, im = 0;
+		for (int j = 0; j < size; j++) {
+		    double mr = c[2*(l*size+j)], mi = c[2*(l*size+j)+1];
+		    re += mr*tmp[2*j] - mi*tmp[2*j+1];
+		    im += mr*tmp[2*j+1] + mi*tmp[2*j];
+		}
+		out.put(base+offsets[l], re, im);
+	    }
+	}
+	v.map = out;
+	v.adaptStorage();
+    }
+
+    /**
+     * applies a sequence of controlled diagonal 2x2 matrices, four coefficients
+     * per matrix.
+     * @see BinaryOp#applyDiagonals(Braket, long[], long[], double[])
+     */
+    static void applyDiagonals(Braket v, long[] controls, long[] targets, double[] c) {
+	v.modified();
+	AmplitudeMap in = v.map;
+	int count = controls.length;
+
+	for (int s = 0; s < in.capacity(); s++) {
+	    long k = in.keyAt(s);
+	    if (k == -1) continue;
+
+	    double pr = 1, pi = 0;
+	    for (int j = 0; j < count; j++) {
+		if ((k & controls[j]) != controls[j]) continue;
+		int m = ((k & targets[j]) == 0) ? 4*j : 4*j+2;
+		double t = pr*c[m] - pi*c[m+1];
+		pi = pr*c[m+1] + pi*c[m];
+		pr = t;
+	    }
+	    double re = in.reAt(s), im = in.imAt(s);
+	    in.setAt(s, pr*re - pi*im, pr*im + pi*re);
+	}
+	in.removeZeros();
+	v.adaptStorage();
+    }
+
+    /**
+     * returns the probability to find the qubit with the given bit in state |0>
+     */
+    static double zeroProbability(Braket q, long bit) {
+	AmplitudeMap map = q.map;
+	double zeroProb = 0.0;
+	for (int s = 0; s < map.capacity(); s++) {
+	    long k = map.keyAt(s);
+	    if (k == -1 || (k & bit) != 0) continue;
+	    zeroProb += map.reAt(s)*map.reAt(s) + map.imAt(s)*map.imAt(s);
+	}
+	return zeroProb;
+    }
+
+    /**
+     * returns the index of the outcome of a register of qubits for the basis 
+     * state k. qubits[0] is the most significant bit.
+     */
+    static int outcome(long k, int[] qubits, int n) {
+	int outcome = 0;
+	for (int j = 0; j < qubits.length; j++) 
+	    outcome = (outcome << 1) | (int)((k >>> (n-qubits[j]-1)) & 1);
+	return outcome;
+    }
+
+    /**
+     * returns the sum of the components for each outcome of a register 
+     * (real and imaginary parts interleaved), or of their squared magnitudes
+     * if <tt>probability</tt> is true.
+     * @see Measurement#getProbDistribution(Braket, int[])
+     */
+    static double[] distribution(Braket q, int[] qubits, boolean probability) {
+	AmplitudeMap map = q.map;
+	double[] result = new double[(probability ? 1 : 2) << qubits.length];
+	for (int s = 0; s < map.capacity(); s++) {
+	    long k = map.keyAt(s);
+	    if (k == -1) continue;
+	    int i = outcome(k, qubits, q.n);
+	    double re = map.reAt(s), im = map.imAt(s);
+	    if (probability) result[i] += re*re + im*im;
+	    else {
+		result[2*i] += re;
+		result[2*i+1] += im;
+	    }
+	}
+	return result;
+    }
+
+    /**
+     * returns the inner product of two brakets of which at least one is sparse
+     * (without conjugation, like the dense inner product).
+     */
+    static Complex product(Braket a, Braket b) {
+	if (!a.isSparse()) {
+	    Braket t = a;
+	    a = b;
+	    b = t;
+	}
+	AmplitudeMap map = a.map;
+	double re = 0, im = 0;
+	for (int s = 0; s < map.capacity(); s++) {
+	    long k = map.keyAt(s);
+	    if (k == -1 || b.isZero(k)) continue;
+	    double ar = map.reAt(s), ai = map.imAt(s);
+	    double br = b.re(k), bi = b.im(k);
+	    re += ar*br - ai*bi;
+	    im += ar*bi + ai*br;
+	}
+	return new Complex(re, im);
+    }
+}
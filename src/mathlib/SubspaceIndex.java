@@ -0,0 +1,148 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+
+package mathlib;
+
+
+/**
+ * helper class to enumerate the basis states of a subspace of a ket vector.
+ * A subspace is described by a bit mask of its free qubits (qubit k of n 
+ * corresponds to bit n-k-1); the remaining bits are fixed by the caller, e.g.
+ * control qubits set to 1. Consecutive indices are obtained in O(1) with
+ * <tt>next</tt>, which replaces the boolean binary counters formerly used in
+ * the gate kernels.
+ * <p> for (int i = 0, step = 0; i < size(mask); i++, step = next(step, mask)) </p>
+ * enumerates all submasks of mask in increasing order.
+ * @see BinaryOp#implicitApply(Gate, Braket, Matrix)
+ */
+public class SubspaceIndex {
+
+    /**
+     * returns the bit mask of all qubits in the gate description that carry the
+     * character c.
+     * @param descr gate description like "-1m-"
+     * @param c character to look for
+     */
+    public static int mask(String descr, char c) {
+	int n = descr.length();
+	int mask = 0;
+	for (int k = 0; k < n; k++) 
+	    if (descr.charAt(k) == c) mask |= 1 << (n-k-1);
+	return mask;
+    }
+
+    /**
+     * returns the bit mask of the given qubits in a register of n qubits.
+     */
+    public static int mask(int[] qubits, int n) {
+	int mask = 0;
+	for (int k = 0; k < qubits.length; k++) mask |= 1 << (n-qubits[k]-1);
+	return mask;
+    }
+
+    /**
+     * returns the number of indices in the subspace given by mask.
+     */
+    public static int size(int mask) {
+	return 1 << Integer.bitCount(mask);
+    }
+
+    /**
+     * returns the index following index in the subspace given by mask. After the
+     * last index 0 is returned again.
+     */
+    public static int next(int index, int mask) {
+	return (index - mask) & mask;
+    }
+
+    /**
+     * returns the i-th index of the subspace given by mask, i.e. the bits of i are
+     * deposited into the positions of the set bits of mask (lowest first).
+     */
+    public static int deposit(int i, int mask) {
+	int result = 0;
+	while (mask != 0 && i != 0) {
+	    int lowest = mask & -mask;
+	    if ((i & 1) != 0) result |= lowest;
+	    mask ^= lowest;
+	    i >>>= 1;
+	}
+	return result;
+    }
+
+    /**
+     * inserts a zero bit at position bit into i, shifting the higher bits up.
+     */
+    public static int insertZeroBit(int i, int bit) {
+	int low = i & ((1 << bit) - 1);
+	return ((i >>> bit) << (bit + 1)) | low;
+    }
+
+    /**
+     * returns all indices of the subspace given by mask in increasing order.
+     */
+    public static int[] indices(int mask) {
+	int[] result = new int[size(mask)];
+	int index = 0;
+	for (int i = 0; i < result.length; i++, index = next(index, mask)) 
+	    result[i] = index;
+	return result;
+    }
+
+    /**
+     * returns the offsets of all basis states of a register of qubits. The i-th
+     * entry is the index in the full ket of the basis state i of the register, 
+     * where the last qubit in the array is the least significant bit of i.
+     * @param qubits qubits of the register (0 is the first qubit)
+     * @param n number of qubits of the ket
+     */
+    public static int[] offsets(int[] qubits, int n) {
+	int k = qubits.length;
+	int[] result = new int[1 << k];
+	for (int i = 1; i < result.length; i++) {
+	    int l = Integer.numberOfTrailingZeros(i);
+	    result[i] = result[i & (i-1)] + (1 << (n-qubits[k-l-1]-1));
+	}
+	return result;
+    }
+
+    /**
+     * returns lookup tables that map an index of the full ket to the basis state
+     * of a register of qubits (numbered like in <tt>offsets</tt>). Table c maps
+     * the bits 8c..8c+7 of the index to their share of the register state, so
+     * the state of index i is the OR of tables[c][(i >>> 8*c) & 255] for all c.
+     * @param qubits qubits of the register (0 is the first qubit)
+     * @param n number of qubits of the ket
+     */
+    public static int[][] outcomeTables(int[] qubits, int n) {
+	int k = qubits.length;
+	int[][] tables = new int[Math.max(1, (n+7)/8)][256];
+	for (int j = 0; j < k; j++) {
+	    int bit = n-qubits[j]-1;
+	    int[] table = tables[bit/8];
+	    for (int b = 0; b < 256; b++) {
+		if ((b & (1 << (bit%8))) != 0) table[b] |= 1 << (k-j-1);
+	    }
+	}
+	return tables;
+    }
+}
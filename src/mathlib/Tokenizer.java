@@ -45,6 +45,9 @@ import java.util.*;
  * </ul>
  * <p>There are two general modi, in which the Tokenizer class can be run: (a)
  * assignments within the expression are allowed (b) assignments are not allowed.
+ * In the deferred mode used to compile expressions the values of variables and 
+ * literals depending on variables are not read while tokenizing, the tokens are
+ * <tt>Expression</tt> nodes resolving them on evaluation instead.</p>
  * @see Parse
  * @see Mathlib
  * 
@@ -56,6 +59,8 @@ public class Tokenizer {
 
     private boolean leadingUnaryOpExpected = true;
     private boolean assignmentAllowed = false;
+    private boolean deferred = false;
+    private boolean compilable = true;
 
     private Vector tokens;
 
@@ -70,8 +75,20 @@ public class Tokenizer {
      * @param assignmentAllowed switch whether or not assignments are allowed
      */
     public Tokenizer(String str, boolean assignmentAllowed) {
+	this(str, assignmentAllowed, false);
+    }
+
+    /**
+     * creates a Tokenizer object for the given string
+     * @param str string to work on
+     * @param assignmentAllowed switch whether or not assignments are allowed
+     * @param deferred switch whether variables are resolved on evaluation
+     * @see Expression
+     */
+    public Tokenizer(String str, boolean assignmentAllowed, boolean deferred) {
 	this.str = str;
 	this.assignmentAllowed = assignmentAllowed;
+	this.deferred = deferred;
 	tokens = new Vector();
 	tokenNames = new Vector();
 
@@ -131,6 +148,44 @@ public class Tokenizer {
 	return null;
     }
 
+    /**
+     * returns whether variables are resolved on evaluation
+     */
+    public boolean isDeferred() {
+	return deferred;
+    }
+
+    /**
+     * returns false if the string of a deferred tokenizer contains assignments
+     * or commands, which cannot be compiled into an expression.
+     */
+    public boolean isCompilable() {
+	return compilable;
+    }
+
+    /**
+     * returns whether an assignment follows at the given position of the string
+     */
+    private boolean assignmentFollows(int p) {
+	try {
+	    while (str.charAt(p) == ' ') p++;
+	    return str.charAt(p) == '=' && str.charAt(p+1) != '=';
+	} catch (Exception e) { 
+	    return false;
+	}
+    }
+
+    /**
+     * returns whether a vector or matrix literal contains names, whose values
+     * have to be read on evaluation
+     */
+    private static boolean containsNames(String literal) {
+	for (int i = 0; i < literal.length(); i++) {
+	    if ("0123456789.+-*/ ,[]iE".indexOf(literal.charAt(i)) == -1) return true;
+	}
+	return false;
+    }
+
     /**
      * returns whether or not there are more tokens.
      */
@@ -205,6 +260,9 @@ public class Tokenizer {
 		    +str.substring(oldpos,pos+1));
 	    pos++;
 	    leadingUnaryOpExpected = false;
+	    if (deferred && containsNames(str.substring(oldpos,pos)))
+		return new Expression.Literal((str.indexOf(',',oldpos) != -1) ? 'm' : 'v', 
+					      str.substring(oldpos,pos), str, oldpos);
 	    try {
 		if (str.indexOf(',',oldpos) != -1) 
 		    return Matrix.parseMatrix(str.substring(oldpos,pos));
@@ -225,6 +283,8 @@ public class Tokenizer {
 		    +str.substring(oldpos,pos+1));
 	    pos++;
 	    leadingUnaryOpExpected = false;
+	    if (deferred) 
+		return new Expression.Literal('g', str.substring(oldpos,pos), str, oldpos);
 	    try {
 		return Gate.parseGate(str.substring(oldpos,pos));
 
@@ -461,6 +521,15 @@ public class Tokenizer {
 		try { 
 		    LOG.LOG(5, "[Tokenizer] not a complex number: " + str.substring(oldpos, pos));
 		    result = Mathlib.getFunction(str.substring(oldpos, pos));
+		    if (deferred && result == null) {
+			tokenName = str.substring(oldpos, pos);
+			if (assignmentFollows(pos)) {
+			    compilable = false;
+			    return new Variable(tokenName);
+			}
+			return new Expression.Reference(tokenName, str, oldpos);
+		    }
+		    if (deferred && result instanceof Command) compilable = false;
 		    if (result == null) {
 			LOG.LOG(5, "[Tokenizer] not a function: " + str.substring(oldpos, pos));
 			result = Mathlib.getVar(str.substring(oldpos, pos)); 
@@ -482,19 +551,12 @@ public class Tokenizer {
 			    // assign answer variable
 			    tokenName = str.substring(oldpos, pos);
 
-			    // check for assignment
-			    int temp = pos;
-			    try {
-				while (str.charAt(temp) == ' ') temp++;
-			    } catch (Exception ee) { return result;}
-			    try {
-				// assignment!! ignore value!
-				if (str.charAt(temp) == '=' && str.charAt(++temp) != '=') {
-				    result = new Variable(str.substring(oldpos,pos));
-				    LOG.LOG(5, "[Tokenizer] returns new variable " + result.toString());
-				    return result;
-				}
-			    } catch (Exception ee ) { return result;}
+			    // assignment!! ignore value!
+			    if (assignmentFollows(pos)) {
+				result = new Variable(str.substring(oldpos,pos));
+				LOG.LOG(5, "[Tokenizer] returns new variable " + result.toString());
+				return result;
+			    }
 			    LOG.LOG(5, "[Tokenizer] returns " + result.toString());
 			    return result;
 			}
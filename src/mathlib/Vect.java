@@ -22,6 +22,8 @@
 
 package mathlib;
 
+import java.io.*;
+
 
 /**
  * Class representing a mathematical vector. The string representation of the default
@@ -76,10 +78,11 @@ public class Vect extends Argument {
 	    this.dimension = v.dimension;
 	    this.transpose = v.transpose;
 	    for (int i = 0; i < dimension; i++) {
-		if (v.data[i] == null || zero.equals(v.data[i]))
+		Complex c = v.getElement(i);
+		if (zero.equals(c))
 		    data[i] = null;
 		else 
-		    data[i] = new Complex(v.data[i]);
+		    data[i] = new Complex(c);
 	    }
 	}
     }
@@ -210,33 +213,62 @@ public class Vect extends Argument {
 	else return null;
     }
 
+    /**
+     * sets the component of the vector specified by <tt>x</tt>.
+     * @param x number of component starting with 0
+     * @param value complex component
+     */
+    public void setElement(int x, Complex value) {
+	if (x >= 0 && x < dimension) data[x] = value;
+    }
+
     /**
      * @return string representation of the vector object
      */
     public String toString() {
-	String str = new String("");
-	str = (transpose) ? "\n" : "";
-	str = str.concat("[");
+	return Rendering.FULL.render(this);
+    }
+
+    /**
+     * appends the string representation. Components beyond the length of the
+     * rendering are left out and replaced by "...".
+     * @exception IOException if the output can not be written
+     * @see Rendering
+     */
+    public void append(Appendable out, Rendering r) throws IOException {
+	Rendering.Counter buf = Rendering.count(out);
+	long start = buf.length();
+	if (transpose) buf.append("\n");
+	buf.append("[");
 	for (int i = 0; i < dimension; i++) {
-	    str = str.concat(getElement(i).toString());
-	    if (i < dimension-1) str = (transpose) ? str.concat("\n") : str.concat("\t");
+	    if (i > 0 && r.isFull(buf, start)) {
+		buf.append("...");
+		break;
+	    }
+	    buf.append(getElement(i).toString());
+	    if (i < dimension-1) buf.append((transpose) ? "\n" : "\t");
 	}
-	str = str.concat("]\n");
-	return str;
+	buf.append("]\n");
     }
 
     /**
      * @return parsable string representation of ths vector object.
      */
     public String toParseableString() {
-	String str = new String("");
-	str = str.concat("[");
+	return Rendering.parseable(this);
+    }
+
+    /**
+     * appends the parsable string representation component by component
+     * @exception IOException if the output can not be written
+     */
+    public void appendParseable(Appendable out) throws IOException {
+	out.append("[");
 	for (int i = 0; i < dimension; i++) {
-	    str = str.concat(getElement(i).toParseableString());
-	    if (i < dimension-1) str = str.concat(" ");
+	    out.append(getElement(i).toParseableString());
+	    if (i < dimension-1) out.append(" ");
 	}
-	str = str.concat("]");
-	return str;
+	out.append("]");
     }
 }
 
@@ -0,0 +1,538 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+package qsymbol2;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+import mathlib.Argument;
+import mathlib.Complex;
+import mathlib.Gate;
+import mathlib.GateProperty;
+import mathlib.MathObject;
+import mathlib.MathlibContext;
+import mathlib.MathlibEvent;
+import mathlib.Matrix;
+import mathlib.Parse;
+import mathlib.Rendering;
+import mathlib.StringArgument;
+
+/**
+ * <p>compact binary form of a circuit, an alternative to the textual .jaq file
+ * for large circuits. Instead of a line to parse per gate it holds</p>
+ * <ul>
+ * <li> a header with the magic number "JQB1", the format version and the number
+ *      of qubits
+ * <li> the variables of the circuit and the qubit names
+ * <li> the gate properties
+ * <li> a table of the matrices used by the gates (expression and dimension), each
+ *      matrix stored once
+ * <li> the gate containers in pre-order, groups with their number of children
+ *      and leaves with a gate descriptor: matrix flags, index into the matrix
+ *      table and one bit mask over the qubits per kind of qubit line
+ * </ul>
+ * <p>Every container record carries its number of iterations, so the "reps"
+ * property of containers is not repeated in the properties. All numbers are
+ * big endian, strings are written as length and UTF-8 bytes. The file is read
+ * through a memory mapped buffer.</p>
+ * @see GateTable#saveModelToFile(File)
+ * @see GateTable#loadModelFromFile(File)
+ */
+public class CircuitFile {
+    /** file name extension of binary circuits */
+    public static final String EXTENSION = ".jqb";
+    /** "JQB1" */
+    public static final int MAGIC = 0x4A514231;
+    /** current format version */
+    public static final int VERSION = 1;
+
+    /** kinds of qubit lines with a mask in the gate descriptor, '-' has none */
+    private static final String KINDS = "1mud!";
+    private static final byte LEAF = 0;
+    private static final byte GROUP = 1;
+    private static final String CATEGORY = "current circuit";
+
+    /** number of qubits */
+    protected int qubits = 0;
+    /** names and values of the variables, qubit names, properties and gates in
+	the order they are registered */
+    protected Vector names = new Vector();
+    protected Vector values = new Vector();
+    /** full names of the gates in column order */
+    protected Vector gates = new Vector();
+
+    /** containers and properties to be written */
+    private Vector containers = new Vector();
+    private Vector properties = new Vector();
+
+    /**
+     * creates an empty circuit
+     */
+    public CircuitFile() {
+    }
+
+    /**
+     * adds a variable of the circuit
+     */
+    public void addVariable(String name, MathObject value) {
+	names.addElement(name);
+	values.addElement(value);
+    }
+
+    /**
+     * adds a property object
+     */
+    public void addProperty(GateProperty property) {
+	properties.addElement(property);
+    }
+
+    /**
+     * adds a top level gate container with all its children
+     */
+    public void addContainer(GateContainer container) {
+	containers.addElement(container);
+    }
+
+    /**
+     * returns the number of qubits
+     */
+    public int getQubitCount() {
+	return qubits;
+    }
+
+    /**
+     * returns the full names of the gates in column order
+     */
+    public Enumeration getGateNames() {
+	return gates.elements();
+    }
+
+    /**
+     * determines whether a file is a binary circuit by its magic number
+     */
+    public static boolean isBinary(File file) {
+	DataInputStream in = null;
+	try {
+	    in = new DataInputStream(new FileInputStream(file));
+	    return in.readInt() == MAGIC;
+	} catch (IOException e) {
+	    return false;
+	} finally {
+	    if (in != null) try { in.close(); } catch (IOException e) { }
+	}
+    }
+
+    //----------------------------------------------
+    // writing
+
+    /**
+     * writes the circuit to a file
+     * @exception IllegalArgumentException if a gate holds an unknown kind of qubit line
+     */
+    public void write(File file) throws IOException {
+	DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+	try {
+	    write(out);
+	} finally {
+	    out.close();
+	}
+    }
+
+    private void write(DataOutputStream out) throws IOException {
+	// names of the containers, which carry their iteration count, and the matrix table
+	Hashtable iterated = new Hashtable();
+	Hashtable matrices = new Hashtable();
+	Vector table = new Vector();
+	qubits = 0;
+	for (int i = 0; i < containers.size(); i++) {
+	    collect((GateContainer)containers.elementAt(i), iterated, matrices, table);
+	}
+
+	out.writeInt(MAGIC);
+	out.writeInt(VERSION);
+	out.writeInt(qubits);
+
+	// variables
+	out.writeInt(names.size());
+	for (int i = 0; i < names.size(); i++) {
+	    writeString(out, (String)names.elementAt(i));
+	    writeValue(out, (MathObject)values.elementAt(i));
+	}
+
+	// properties
+	out.writeInt(properties.size());
+	GateProperty property;
+	Enumeration e;
+	String key;
+	Vector keys = new Vector();
+	for (int i = 0; i < properties.size(); i++) {
+	    property = (GateProperty)properties.elementAt(i);
+	    keys.removeAllElements();
+	    e = property.getPropertyKeys();
+	    while (e.hasMoreElements()) {
+		key = (String)e.nextElement();
+		if (!("reps".equals(key) && iterated.containsKey(property.getGate()))) keys.addElement(key);
+	    }
+	    writeString(out, property.getGate());
+	    out.writeInt(keys.size());
+	    for (int j = 0; j < keys.size(); j++) {
+		key = (String)keys.elementAt(j);
+		writeString(out, key);
+		writeValue(out, property.getProperty(key));
+	    }
+	}
+
+	// matrix table
+	out.writeInt(table.size());
+	Gate g;
+	for (int i = 0; i < table.size(); i++) {
+	    g = (Gate)table.elementAt(i);
+	    writeString(out, g.matrixName);
+	    out.writeInt(g.matrixDimension);
+	}
+
+	// containers
+	out.writeInt(containers.size());
+	for (int i = 0; i < containers.size(); i++) {
+	    writeContainer(out, (GateContainer)containers.elementAt(i), matrices);
+	}
+	out.flush();
+    }
+
+    /**
+     * registers the names of the container and its children and the matrices
+     * of their gates
+     */
+    private void collect(GateContainer container, Hashtable iterated, Hashtable matrices, Vector table) {
+	iterated.put(container.getFullName(), container);
+	if (container.isLeafContainer()) {
+	    Gate g = container.getGate();
+	    qubits = Math.max(qubits, g.n);
+	    String key = matrixKey(g);
+	    if (key != null && !matrices.containsKey(key)) {
+		matrices.put(key, new Integer(table.size()));
+		table.addElement(g);
+	    }
+	}
+	for (int i = 0; i < container.getChildCount(); i++) {
+	    collect(container.getChildContainer(i), iterated, matrices, table);
+	}
+    }
+
+    private static String matrixKey(Gate g) {
+	if (g.matrixName == null || g.matrixName.trim().equals("")) return null;
+	return g.matrixName + "\n" + g.matrixDimension;
+    }
+
+    private void writeContainer(DataOutputStream out, GateContainer container, Hashtable matrices) throws IOException {
+	boolean leaf = container.isLeafContainer();
+	out.writeByte(leaf ? LEAF : GROUP);
+	writeString(out, container.getTopLevelName());
+	out.writeInt(container.getMaxIteration());
+	if (leaf) {
+	    writeGate(out, container.getGate(), matrices);
+	}
+	else {
+	    out.writeInt(container.getChildCount());
+	    for (int i = 0; i < container.getChildCount(); i++) {
+		writeContainer(out, container.getChildContainer(i), matrices);
+	    }
+	}
+    }
+
+    private void writeGate(DataOutputStream out, Gate g, Hashtable matrices) throws IOException {
+	int n = g.n;
+	String key = matrixKey(g);
+	long[][] masks = new long[KINDS.length()][];
+	int present = 0;
+	char c;
+	int kind;
+	for (int q = 0; q < n; q++) {
+	    c = g.gate_descr.charAt(q);
+	    if (c == '-') continue;
+	    kind = KINDS.indexOf(c);
+	    if (kind < 0) throw new IllegalArgumentException("unknown qubit line '" + c + "' in gate " + g);
+	    if (masks[kind] == null) masks[kind] = new long[(n + 63) >> 6];
+	    masks[kind][q >> 6] |= 1L << (q & 63);
+	    present |= 1 << kind;
+	}
+	out.writeInt(n);
+	out.writeByte(g.getFlags());
+	out.writeInt((key == null) ? -1 : ((Integer)matrices.get(key)).intValue());
+	out.writeByte(present);
+	for (int k = 0; k < masks.length; k++) {
+	    if (masks[k] == null) continue;
+	    for (int w = 0; w < masks[k].length; w++) out.writeLong(masks[k][w]);
+	}
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+	byte[] b = s.getBytes("UTF8");
+	out.writeInt(b.length);
+	out.write(b);
+    }
+
+    /**
+     * writes the parsable string of a value like <tt>writeString</tt>. The 
+     * string is encoded while it is rendered instead of being built first.
+     */
+    private static void writeParseable(DataOutputStream out, MathObject value) throws IOException {
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	Writer writer = new OutputStreamWriter(bytes, "UTF8");
+	Rendering.appendParseable(writer, value);
+	writer.close();
+	out.writeInt(bytes.size());
+	bytes.writeTo(out);
+    }
+
+    private static void writeValue(DataOutputStream out, MathObject value) throws IOException {
+	if (value instanceof Complex) {
+	    out.writeByte('c');
+	    out.writeDouble(((Complex)value).re());
+	    out.writeDouble(((Complex)value).im());
+	}
+	else if (value instanceof StringArgument) {
+	    out.writeByte('s');
+	    writeString(out, value.toString());
+	}
+	else if (value instanceof Matrix) {
+	    Matrix m = (Matrix)value;
+	    out.writeByte('m');
+	    out.writeInt(m.n());
+	    out.writeInt(m.m());
+	    Complex c;
+	    for (int i = 0; i < m.n(); i++) {
+		for (int j = 0; j < m.m(); j++) {
+		    c = m.getElement(i, j);
+		    out.writeDouble(c.re());
+		    out.writeDouble(c.im());
+		}
+	    }
+	}
+	else {
+	    int digits = Complex.getDigits();
+	    Complex.setDigits(Complex.getInternalDigits());
+	    try {
+		out.writeByte('e');
+		writeParseable(out, value);
+	    }
+	    finally {
+		Complex.setDigits(digits);
+	    }
+	}
+    }
+
+    //----------------------------------------------
+    // reading
+
+    /**
+     * reads a circuit from a file
+     * @exception IOException if the file can not be read or is no binary circuit of
+     * a known version
+     */
+    public static CircuitFile read(File file) throws IOException {
+	FileInputStream in = new FileInputStream(file);
+	try {
+	    FileChannel channel = in.getChannel();
+	    if (channel.size() > Integer.MAX_VALUE) throw new IOException(file + ": file too large");
+	    ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+	    CircuitFile circuit = new CircuitFile();
+	    circuit.read(buf, file);
+	    return circuit;
+	} catch (BufferUnderflowException e) {
+	    throw new IOException(file + ": unexpected end of file");
+	} finally {
+	    in.close();
+	}
+    }
+
+    private void read(ByteBuffer buf, File file) throws IOException {
+	if (buf.remaining() < 8 || buf.getInt() != MAGIC) throw new IOException(file + ": no binary circuit");
+	int version = buf.getInt();
+	if (version != VERSION) throw new IOException(file + ": unsupported version " + version);
+	qubits = buf.getInt();
+
+	// variables
+	int count = buf.getInt();
+	for (int i = 0; i < count; i++) {
+	    addVariable(readString(buf), readValue(buf));
+	}
+
+	// properties
+	Hashtable properties = new Hashtable();
+	Vector order = new Vector();
+	count = buf.getInt();
+	GateProperty property;
+	String gate;
+	int keys;
+	for (int i = 0; i < count; i++) {
+	    gate = readString(buf);
+	    property = new GateProperty(gate);
+	    keys = buf.getInt();
+	    for (int j = 0; j < keys; j++) {
+		property.addProperty(readString(buf), readValue(buf));
+	    }
+	    properties.put(gate, property);
+	    order.addElement(gate);
+	}
+
+	// matrix table
+	count = buf.getInt();
+	String[] matrixNames = new String[count];
+	int[] dimensions = new int[count];
+	for (int i = 0; i < count; i++) {
+	    matrixNames[i] = readString(buf);
+	    dimensions[i] = buf.getInt();
+	}
+
+	// containers
+	Vector gateValues = new Vector();
+	count = buf.getInt();
+	for (int i = 0; i < count; i++) {
+	    readContainer(buf, null, properties, order, matrixNames, dimensions, gateValues);
+	}
+
+	for (int i = 0; i < order.size(); i++) {
+	    gate = (String)order.elementAt(i);
+	    addVariable(gate + "_properties", (GateProperty)properties.get(gate));
+	}
+	for (int i = 0; i < gates.size(); i++) {
+	    addVariable((String)gates.elementAt(i), (Gate)gateValues.elementAt(i));
+	}
+    }
+
+    private void readContainer(ByteBuffer buf, String parent, Hashtable properties, Vector order, 
+			       String[] matrixNames, int[] dimensions, Vector gateValues) throws IOException {
+	byte kind = buf.get();
+	String name = readString(buf);
+	if (parent != null) name = parent + "." + name;
+	int iterations = buf.getInt();
+	if (iterations != 1) {
+	    GateProperty property = (GateProperty)properties.get(name);
+	    if (property == null) {
+		property = new GateProperty(name);
+		properties.put(name, property);
+		order.addElement(name);
+	    }
+	    property.addProperty("reps", new Complex(iterations));
+	}
+	if (kind == LEAF) {
+	    gates.addElement(name);
+	    gateValues.addElement(readGate(buf, matrixNames, dimensions));
+	}
+	else if (kind == GROUP) {
+	    int childs = buf.getInt();
+	    for (int i = 0; i < childs; i++) {
+		readContainer(buf, name, properties, order, matrixNames, dimensions, gateValues);
+	    }
+	}
+	else throw new IOException("unknown container record " + kind);
+    }
+
+    private Gate readGate(ByteBuffer buf, String[] matrixNames, int[] dimensions) throws IOException {
+	int n = buf.getInt();
+	int flags = buf.get();
+	int matrix = buf.getInt();
+	int present = buf.get();
+	if (n < 0 || matrix < -1 || matrix >= matrixNames.length) throw new IOException("corrupt gate record");
+
+	char[] descr = new char[n];
+	Arrays.fill(descr, '-');
+	long word;
+	for (int k = 0; k < KINDS.length(); k++) {
+	    if ((present & (1 << k)) == 0) continue;
+	    for (int w = 0; w < (n + 63) >> 6; w++) {
+		word = buf.getLong();
+		for (int b = 0; b < 64 && (w << 6) + b < n; b++) {
+		    if ((word & (1L << b)) != 0) descr[(w << 6) + b] = KINDS.charAt(k);
+		}
+	    }
+	}
+
+	Gate g = new Gate(n);
+	g.gate_descr = new String(descr);
+	if (matrix >= 0) {
+	    g.matrixName = matrixNames[matrix];
+	    g.matrixDimension = dimensions[matrix];
+	}
+	if ((flags & 1) != 0) g.transpose();
+	if ((flags & 2) != 0) g.conjugate();
+	if ((flags & 4) != 0) g.negative();
+	return g;
+    }
+
+    private static String readString(ByteBuffer buf) throws IOException {
+	int length = buf.getInt();
+	if (length < 0 || length > buf.remaining()) throw new IOException("corrupt string");
+	byte[] b = new byte[length];
+	buf.get(b);
+	return new String(b, "UTF8");
+    }
+
+    private static Argument readValue(ByteBuffer buf) throws IOException {
+	byte tag = buf.get();
+	switch (tag) {
+	case 'c':
+	    return new Complex(buf.getDouble(), buf.getDouble());
+	case 's':
+	    return new StringArgument(readString(buf));
+	case 'm':
+	    int n = buf.getInt();
+	    int m = buf.getInt();
+	    Matrix matrix = new Matrix(n, m);
+	    for (int i = 0; i < n; i++) {
+		for (int j = 0; j < m; j++) {
+		    matrix.setElement(i, j, new Complex(buf.getDouble(), buf.getDouble()));
+		}
+	    }
+	    return matrix;
+	case 'e':
+	    String text = readString(buf);
+	    MathObject value = Parse.parseExpression(text);
+	    if (!(value instanceof Argument)) throw new IOException("can not parse " + text);
+	    return (Argument)value;
+	default:
+	    throw new IOException("unknown value tag " + tag);
+	}
+    }
+
+    //----------------------------------------------
+    // registering
+
+    /**
+     * registers the variables, properties and gates in the category "current 
+     * circuit" with the same events as loading the textual file.
+     */
+    public void register(MathlibContext context) {
+	String name;
+	MathObject value;
+	for (int i = 0; i < names.size(); i++) {
+	    name = (String)names.elementAt(i);
+	    value = (MathObject)values.elementAt(i);
+	    context.fireMathlibEvent(name, null, context.getPresetCategory(), value, 
+				     (context.getVar(name) == null) ? MathlibEvent.ADD : MathlibEvent.CHANGE);
+	    context.fireMathlibEvent(name, CATEGORY, null, value, MathlibEvent.CHANGE_CATEGORY);
+	}
+    }
+}
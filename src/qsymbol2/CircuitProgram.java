@@ -0,0 +1,255 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+
+package qsymbol2;
+
+import java.util.*;
+
+import mathlib.Complex;
+import mathlib.CompiledGate;
+import mathlib.Gate;
+import mathlib.Matrix;
+import mathlib.NoiseError;
+
+/**
+ * <p>flat representation of the circuit held by a GateTableModel. The
+ * GateContainer hierarchy is expanded in the order of the model, including the
+ * repetitions of gates and gate groups, into one operation per computational
+ * step. Each operation holds the compiled gate and the noise parameters (sigma,
+ * rate, decay) that the gate container would provide for that step, so the
+ * program can be executed without walking the container tree.</p>
+ * <p>The program is a snapshot of the circuit at the time of its creation.</p>
+ * <p>After <tt>fuse</tt> consecutive gates may be replaced by a single fused
+ * gate that spans several steps. Fusion is switched off with the system
+ * property jaquzzi.fusion=false.</p>
+ * @see GateTableModel#run()
+ * @see mathlib.CompiledGate
+ */
+public class CircuitProgram {
+
+    /** compiled gate of each step */
+    protected CompiledGate[] gates;
+    /** standard deviation of the operational error of each step */
+    protected double[] sigma;
+    /** decoherence rate of each step */
+    protected double[] rate;
+    /** decay probability of each step */
+    protected double[] decay;
+    /** number of steps */
+    protected int length;
+    /** number of steps covered by the gate of each step, null if not fused */
+    protected int[] span;
+
+    /** determines whether gates are fused */
+    private static boolean fusion = 
+	!"false".equals(System.getProperty("jaquzzi.fusion"));
+
+    private NoiseError noiseError = new NoiseError();
+
+    /**
+     * compiles the gate containers of the given model in model order.
+     */
+    public CircuitProgram(GateTableModel model) {
+	int capacity = model.getStepCount();
+	if (capacity < 1) capacity = 1;
+	gates = new CompiledGate[capacity];
+	sigma = new double[capacity];
+	rate = new double[capacity];
+	decay = new double[capacity];
+	length = 0;
+
+	for (int i = 0; i < model.getColumnCount(); i++) {
+	    compile(model.getGateContainer(i));
+	}
+    }
+
+    /**
+     * appends the steps of the given container and its childs.
+     */
+    private void compile(GateContainer gc) {
+	int reps = gc.getMaxIteration();
+	int start = length;
+
+	if (gc.isLeafContainer()) {
+	    Gate g = gc.getGate();
+	    if (g == null) return;
+	    ensureCapacity(length+1);
+	    gates[length] = new CompiledGate(g);
+	    sigma[length] = gc.getProperty("sigma");
+	    rate[length] = gc.getProperty("rate");
+	    decay[length] = gc.getProperty("decay");
+	    length++;
+	}
+	else {
+	    for (int i = 0; i < gc.getChildCount(); i++) {
+		compile(gc.getChildContainer(i));
+	    }
+	}
+
+	// repetitions share the compiled gates of the first iteration
+	int size = length-start;
+	if (reps < 1) length = start;
+	if (reps < 2 || size == 0) return;
+	ensureCapacity(start+reps*size);
+	for (int r = 1; r < reps; r++) {
+	    System.arraycopy(gates, start, gates, length, size);
+	    System.arraycopy(sigma, start, sigma, length, size);
+	    System.arraycopy(rate, start, rate, length, size);
+	    System.arraycopy(decay, start, decay, length, size);
+	    length += size;
+	}
+    }
+
+    /**
+     * grows the arrays to hold at least the given number of steps
+     */
+    private void ensureCapacity(int capacity) {
+	if (capacity <= gates.length) return;
+	int newCapacity = 2*gates.length;
+	if (newCapacity < capacity) newCapacity = capacity;
+
+	CompiledGate[] newGates = new CompiledGate[newCapacity];
+	System.arraycopy(gates, 0, newGates, 0, length);
+	gates = newGates;
+	sigma = grow(sigma, newCapacity);
+	rate = grow(rate, newCapacity);
+	decay = grow(decay, newCapacity);
+    }
+
+    private double[] grow(double[] array, int capacity) {
+	double[] newArray = new double[capacity];
+	System.arraycopy(array, 0, newArray, 0, length);
+	return newArray;
+    }
+
+    /**
+     * switches gate fusion on or off
+     */
+    public static void setFusion(boolean fusion) {
+	CircuitProgram.fusion = fusion;
+    }
+
+    /**
+     * returns true if gate fusion is switched on
+     */
+    public static boolean getFusion() {
+	return fusion;
+    }
+
+    /**
+     * fuses runs of consecutive gates for the given simulation mode. Only
+     * steps whose intermediate states are not needed are fused: the error free
+     * steps without decoherence. The fidelity is not affected since the ideal
+     * reference ket undergoes the same unitary gates.
+     * @see mathlib.CompiledGate#fuse(CompiledGate, CompiledGate)
+     */
+    public void fuse(int simulationMode) {
+	span = null;
+	if (fusion == false || simulationMode == 2 || simulationMode == 3) return;
+
+	boolean operational = (simulationMode == 1);
+	span = new int[length];
+	CompiledGate g, fused;
+	int k;
+	for (int step = 0; step < length; step += k) {
+	    g = gates[step];
+	    k = 1;
+	    if (operational == false || sigma[step] == 0) {
+		while (step+k < length && (operational == false || sigma[step+k] == 0)) {
+		    fused = CompiledGate.fuse(g, gates[step+k]);
+		    if (fused == null) break;
+		    g = fused;
+		    k++;
+		}
+	    }
+	    gates[step] = g;
+	    span[step] = k;
+	}
+    }
+
+    /**
+     * returns the number of steps performed by the gate of the given step.
+     * The steps covered by a fused gate other than its first one must not
+     * be executed.
+     */
+    public int getSpan(int step) {
+	return (span == null) ? 1 : span[step];
+    }
+
+    /**
+     * returns the number of computational steps
+     */
+    public int getLength() {
+	return length;
+    }
+
+    /**
+     * returns the compiled gate of the given step
+     */
+    public CompiledGate getGate(int step) {
+	return gates[step];
+    }
+
+    /**
+     * returns a new error modifier for the given step or null if the step has
+     * no operational error. Like GateContainer.getCurrentErrorMatrix, each call
+     * draws new random numbers.
+     * @see GateContainer#getCurrentErrorMatrix()
+     */
+    public Matrix getErrorMatrix(int step) {
+	if (sigma[step] == 0) return null;
+	return (Matrix)noiseError.apply(new Complex(sigma[step]));
+    }
+
+    /**
+     * returns the coefficients of a new error modifier for the given step drawn
+     * from the given random generator, or null if the step has no operational
+     * error.
+     * @see MonteCarloSweep
+     */
+    public double[] getErrorCoefficients(int step, Random random) {
+	if (sigma[step] == 0) return null;
+	return NoiseError.coefficients(sigma[step], random);
+    }
+
+    /**
+     * returns the standard deviation of the operational error of the given step
+     * @see DensityMatrixSweep
+     */
+    public double getSigma(int step) {
+	return sigma[step];
+    }
+
+    /**
+     * returns the decoherence rate of the given step
+     */
+    public double getDecoherenceRate(int step) {
+	return rate[step];
+    }
+
+    /**
+     * returns the decay probability of the given step
+     */
+    public double getDecayProbability(int step) {
+	return decay[step];
+    }
+}
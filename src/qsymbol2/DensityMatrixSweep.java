@@ -0,0 +1,125 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+
+package qsymbol2;
+
+import java.util.*;
+
+import mathlib.Braket;
+import mathlib.CompiledGate;
+import mathlib.DensityMatrix;
+
+/**
+ * <p>Simulation of a compiled circuit on a density matrix. Instead of 
+ * averaging many trajectories, each step is applied as a linear channel, so
+ * a single deterministic run gives the fidelity of each step and the 
+ * probability distribution of the final state.</p>
+ * <p>For operational errors and measurements these are the results a 
+ * <tt>MonteCarloSweep</tt> converges to. Decoherence and preparations are
+ * resets here, while the trajectories renormalize (decoherence) or add 
+ * amplitudes (preparations) coherently, so with these the two engines differ
+ * as soon as the affected qubit is in a superposition.</p>
+ * <p>The results do not depend on the number of runs or the seed; the first
+ * run computes them and further runs add nothing. The number of decays is
+ * not available and always 0. The memory grows with 4^n, see
+ * <tt>DensityMatrix.MAX_QUBITS</tt>.</p>
+ * @see DensityMatrix
+ */
+public class DensityMatrixSweep extends MonteCarloSweep {
+
+    /**
+     * creates a density matrix simulation of the given circuit
+     * @throws IllegalArgumentException if the register is too large
+     */
+    public DensityMatrixSweep(CircuitProgram program, int simulationMode, Braket initial, 
+			      int[] qubits) throws IllegalArgumentException {
+	super(program, simulationMode, initial, qubits);
+	if (initial.n > DensityMatrix.MAX_QUBITS)
+	    throw new IllegalArgumentException("density matrix of "+initial.n+
+					       " qubits not supported");
+    }
+
+    /**
+     * evolves the density matrix through the circuit, unless the results are
+     * already there
+     */
+    public void run(int repetitions) {
+	if (repetitions < 1 || getRuns() > 0) return;
+	trajectory(0);
+    }
+
+    /**
+     * evolves the density matrix and stores its results as a single run
+     */
+    protected void trajectory(int index) {
+	boolean operational = (simulationMode == 1 || simulationMode == 3);
+	boolean decoherent = (simulationMode == 2 || simulationMode == 3);
+	boolean reference = (simulationMode != 0);
+	Random random = streams.substream(index);
+
+	// measurements and preparations turn the ideal state into a mixture
+	boolean mixed = false;
+	int length = program.getLength();
+	for (int step = 0; step < length; step += program.getSpan(step))
+	    if (program.getGate(step).isIrreversible()) mixed = true;
+
+	DensityMatrix rho = new DensityMatrix(initial);
+	Braket refQ = (reference && !mixed) ? new Braket(initial) : null;
+	DensityMatrix refRho = (reference && mixed) ? new DensityMatrix(initial) : null;
+	double[] fid = new double[length+1];
+	int step = 0;
+	int span;
+	double f;
+
+	fid[0] = 1;
+	while (step < length) {
+	    CompiledGate g = program.getGate(step);
+	    span = program.getSpan(step);
+
+	    rho.apply(g, operational ? program.getSigma(step) : 0);
+	    if (decoherent)
+		rho.decohere(program.getDecoherenceRate(step), program.getDecayProbability(step),
+			     decayQubit);
+
+	    if (refQ != null) {
+		g.apply(refQ, null, random);
+		f = rho.fidelity(refQ);
+	    }
+	    else if (refRho != null) {
+		refRho.apply(g, 0);
+		f = rho.fidelity(refRho);
+	    }
+	    else f = 1;
+
+	    for (int i = 0; i < span; i++) fid[++step] = f;
+	}
+
+	double[] distribution = rho.getProbabilities(qubits);
+	if (refQ != null) refQ.release();
+
+	synchronized (this) {
+	    runs = 1;
+	    fidelity = fid;
+	    probabilities = distribution;
+	}
+    }
+}
@@ -0,0 +1,102 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+
+package qsymbol2;
+
+/**
+ * a trace of double values, e.g. the fidelity of each step
+ * @see Trace
+ */
+public class DoubleTrace extends Trace {
+
+    /** the segments, null beyond the last used one */
+    private double[][] segments = new double[0][];
+
+    /**
+     * appends a value
+     */
+    public void add(double value) {
+	int index;
+	synchronized (this) {
+	    grow();
+	    index = size;
+	    segments[index >>> SEGMENT_BITS][index & SEGMENT_MASK] = value;
+	    size++;
+	}
+	fireValuesAdded(index, index+1);
+    }
+
+    /**
+     * returns value number index
+     * @throws ArrayIndexOutOfBoundsException if index is not below the size
+     */
+    public synchronized double get(int index) {
+	if (index < 0 || index >= size) throw new ArrayIndexOutOfBoundsException(index);
+	return segments[index >>> SEGMENT_BITS][index & SEGMENT_MASK];
+    }
+
+    /**
+     * returns the last value
+     * @throws ArrayIndexOutOfBoundsException if the trace is empty
+     */
+    public synchronized double last() {
+	return get(size-1);
+    }
+
+    /**
+     * copies the values from, ..., to-1 into a new array
+     */
+    public synchronized double[] toArray(int from, int to) {
+	double[] result = new double[to-from];
+	for (int i = from; i < to; ) {
+	    int n = Math.min(to - i, SEGMENT_MASK + 1 - (i & SEGMENT_MASK));
+	    System.arraycopy(segments[i >>> SEGMENT_BITS], i & SEGMENT_MASK, result, i-from, n);
+	    i += n;
+	}
+	return result;
+    }
+
+    /**
+     * copies all values into a new array
+     */
+    public synchronized double[] toArray() {
+	return toArray(0, size);
+    }
+
+    protected int segmentCount() {
+	return segments.length;
+    }
+
+    protected void growSegments(int count) {
+	double[][] s = new double[count][];
+	System.arraycopy(segments, 0, s, 0, segments.length);
+	segments = s;
+    }
+
+    protected void allocateSegment(int segment) {
+	if (segments[segment] == null) segments[segment] = new double[SEGMENT_MASK + 1];
+    }
+
+    protected void trimSegments(int segment) {
+	for (int i = segment; i < segments.length; i++) segments[i] = null;
+    }
+}
@@ -976,7 +976,7 @@ public class GateContainer implements Steppable{
      * property object (gate preferred over circuit). returns 0 if no property assigned.
      * @param property the string identification of the property
      */
-    private double getProperty(String property) {
+    protected double getProperty(String property) {
 	double value = 0;
 	boolean assigned = false;
 	GateProperty gp;
@@ -37,7 +37,7 @@ import mathlib.MathObject;
 import mathlib.MathObjectConstraints;
 import mathlib.Mathlib;
 import mathlib.MathlibEvent;
-import mathlib.MathlibEventListener;
+import mathlib.MathlibBatchListener;
 import mathlib.Parse;
 import mathlib.Timing;
 import mathlib.VarAuthority;
@@ -70,7 +70,9 @@ import mathlib.VarAuthority;
  * <p>The GateTable class implements the MathlibEventListener interface and reacts to
  * MathlibEvents. E.g., if the event is to add a Gate with subcategory "current
  * circuit", the GateTable class informs the GateTableColumnModel as well as the
- * GateTableModel to provide the corresponding column information.
+ * GateTableModel to provide the corresponding column information. While a circuit
+ * is loaded the events are processed as one batch, so the table and the step 
+ * model are updated once.
  * </p>
  * <p>The rendering of the columns is done by the QubitRenderer class.
  * The column headers are rendered by the
@@ -87,7 +89,7 @@ import mathlib.VarAuthority;
  * @see QubitHeaderRenderer
  * @see QubitEditor
  */
-public class GateTable extends JTable implements StepHandler, MathlibEventListener {
+public class GateTable extends JTable implements StepHandler, MathlibBatchListener {
     /** hold the mathlib */
     protected Mathlib mathlib = null;
     /** this is to keep track of the properties of the GateTable class */
@@ -101,6 +103,8 @@ public class GateTable extends JTable implements StepHandler, MathlibEventListen
 
     /** depth of the deepest GateContainer in the GateTable */
     protected int depth;
+    /** true while the events of a batch are processed */
+    private boolean batch = false;
 
     /**
      * creates the GateTable which holds the quantum circuit. Required arguments are
@@ -367,6 +371,7 @@ public class GateTable extends JTable implements StepHandler, MathlibEventListen
 		    if (gcDepth > depth) depth = gcDepth;
 		}
 	    }
+	    if (batch) return;
 	    tableModel.tableUpdated();
 	    properties.firePropertyChange(GatePanel.stepCount, 0, getStepCount());
 	    properties.firePropertyChange(GatePanel.remainingTimeEstimate, new Double(0),
@@ -376,6 +381,7 @@ public class GateTable extends JTable implements StepHandler, MathlibEventListen
 		 && e.getMathObject() instanceof GateProperty) {
 	    GateTableModel tableModel = ((GateTableModel)getModel());
 
+	    if (batch) return;
 	    tableModel.tableUpdated();
 	    updateStepModel();
 	    properties.firePropertyChange(GatePanel.stepCount, 0, getStepCount());
@@ -470,6 +476,31 @@ public class GateTable extends JTable implements StepHandler, MathlibEventListen
 	}
     }
 
+    /**
+     * method of the MathlibBatchListener interface. The events are processed one 
+     * by one, the table and the step model are updated at the end.
+     */
+    public void processBatch(MathlibEvent[] events) {
+	batch = true;
+	((GateTableModel)getModel()).loading = true;
+	try {
+	    for (int i = 0; i < events.length; i++) {
+		if (events[i].getAction() == MathlibEvent.ADD) addVariable(events[i]);
+		else if (events[i].getAction() == MathlibEvent.REMOVE) removeVariable(events[i]);
+		else changeVariable(events[i]);
+	    }
+	}
+	finally {
+	    batch = false;
+	    ((GateTableModel)getModel()).loading = false;
+	}
+	((GateTableModel)getModel()).tableUpdated();
+	updateStepModel();
+	properties.firePropertyChange(GatePanel.stepCount, 0, getStepCount());
+	properties.firePropertyChange(GatePanel.remainingTimeEstimate, new Double(0),
+				      new Double(timing.getTimeEstimateForStepsSec(getStepCount()-getStep())));
+    }
+
     public void removeVariable(MathlibEvent e) {
 	if ("current circuit".equals(e.getCategory()) && e.getMathObject() instanceof Gate) {
 	    GateContainer gateContainer = getGateContainer(e.getObjectName());
@@ -626,17 +657,17 @@ public class GateTable extends JTable implements StepHandler, MathlibEventListen
 
     /**
      * wraps the GateTableModel method
-     * @see GateTableModel#getFidelityVector()
+     * @see GateTableModel#getFidelityTrace()
      */
-    public Vector getFidelityVector() {
-	return ((GateTableModel)getModel()).getFidelityVector();
+    public DoubleTrace getFidelityTrace() {
+	return ((GateTableModel)getModel()).getFidelityTrace();
     }
 
     /**
      * wraps the GateTableModel method
      * @see GateTableModel#getDecayedQubits()
      */
-    public Vector getDecayedQubits() {
+    public IntTrace getDecayedQubits() {
 	return ((GateTableModel)getModel()).getDecayedQubits();
     }
 
@@ -644,7 +675,7 @@ public class GateTable extends JTable implements StepHandler, MathlibEventListen
      * wraps the GateTableModel method
      * @see GateTableModel#getDecaySteps()
      */
-    public Vector getDecaySteps() {
+    public IntTrace getDecaySteps() {
 	return ((GateTableModel)getModel()).getDecaySteps();
     }
 
@@ -674,6 +705,20 @@ public class GateTable extends JTable implements StepHandler, MathlibEventListen
      * @see GateTableModel#stepBackward(int, int)
      */
     public void stepBackward() {
+	// noisy runs and irreversible steps are replayed from a checkpoint
+	GateTableModel model = (GateTableModel)getModel();
+	if (model.getSimulationMode() != 0 || getStep() <= getReverseVetoStep()+1) {
+	    int toStep = getStep()-1;
+	    int oldStepColumn = stepColumn;
+	    if (restoreCheckpoint(toStep)) {
+		while (getStep() < toStep) stepForward();
+		if (getUpdateTable()) {
+		    paintColumn(oldStepColumn);
+		    paintColumn(stepColumn);
+		}
+		return;
+	    }
+	}
 	if (getStep() <= getReverseVetoStep()+1) {
 	    JOptionPane.showMessageDialog(null, "Irreversible step! Sorry!");
 	    return;
@@ -693,8 +738,36 @@ public class GateTable extends JTable implements StepHandler, MathlibEventListen
 
 
     /**
-     * performs a calculation up to the given step
+     * restores the last checkpoint at or before the given step and moves the
+     * gate containers there in the order of the view
+     * @return false if there is no checkpoint
+     * @see GateTableModel#restoreCheckpoint(int)
+     */
+    private boolean restoreCheckpoint(int toStep) {
+	GateTableModel model = (GateTableModel)getModel();
+	int step = model.restoreCheckpoint(toStep);
+	if (step == -1) return false;
+
+	if (getColumnCount() > 0) {
+	    getGateContainer(convertColumnIndexToView(model.getStepColumn())).setStepFocus(false);
+	    stepColumn = 0;
+	    model.setStepColumn(convertColumnIndexToModel(stepColumn));
+	    getGateContainer(stepColumn).setStepFocus(true);
+	}
+	while (getStep() < step) {
+	    int nextColumn = (stepColumn == getColumnCount() -1)? stepColumn : stepColumn +1;
+	    model.skipForward(convertColumnIndexToModel(stepColumn), 
+			      convertColumnIndexToModel(nextColumn));
+	    stepColumn = convertColumnIndexToView(model.getStepColumn());
+	}
+	return true;
+    }
+
+    /**
+     * performs a calculation up to the given step. Earlier steps are reached 
+     * from the last checkpoint before them if there is one.
      * @return the step where the computation ended
+     * @see StateHistory
      */
     public int gotoStep(int toStep) {
 	setUpdateTable(false);
@@ -825,10 +898,18 @@ public class GateTable extends JTable implements StepHandler, MathlibEventListen
 
     /**
      * loads a circuit from a given file. It constructs all the gate containers and
-     * registers all variables belonging to the circuit in the category "current circuit"
+     * registers all variables belonging to the circuit in the category "current circuit".
+     * The file is loaded as one batch of MathlibEvents. Binary circuits are 
+     * recognized by their magic number.
+     * @see mathlib.MathlibContext#beginBatch()
+     * @see CircuitFile
      */
     public void loadModelFromFile(File file) {
-	String ans;
+	if (CircuitFile.isBinary(file)) {
+	    loadModelFromBinaryFile(file);
+	    return;
+	}
+	String ans, line;
 	InputFile inf = new InputFile(file.getAbsolutePath());
 	int rep;
 
@@ -837,34 +918,75 @@ public class GateTable extends JTable implements StepHandler, MathlibEventListen
 
 	Parse.echoAnswer = false;
 	MathObject ansObject;
-	while (inf.endOfFile() == false) {
-	    inf.getLine();
-
-	    try {
-		ans = mathlib.evaluateExpression(inf.currentLine());
-		ansObject = Mathlib.getVar(ans);
-		if (ansObject instanceof GateProperty) {
-		    Parse.fireMathlibEvent(((GateProperty)ansObject).getGate()+"_properties", "current circuit", null, ansObject, MathlibEvent.CHANGE_CATEGORY);
-		}
-		else {
-		    Parse.fireMathlibEvent(ans, "current circuit", null, Mathlib.getVar(ans), MathlibEvent.CHANGE_CATEGORY);
-		}
-		//		gateTableModel.addGate(ans);
-	    } catch (Exception e) {
-		if (inf.currentLine().trim().length() > 0)
-		    System.out.println("ignored line: "+inf.currentLine());
-	    }		
+	mathlib.getContext().beginBatch();
+	try {
+	    while (inf.endOfFile() == false) {
+		inf.getLine();
+		line = inf.currentLine();
+
+		try {
+		    ans = mathlib.evaluateExpression(line);
+		    ansObject = Mathlib.getVar(ans);
+		    if (ansObject instanceof GateProperty) {
+			Parse.fireMathlibEvent(((GateProperty)ansObject).getGate()+"_properties", "current circuit", null, ansObject, MathlibEvent.CHANGE_CATEGORY);
+		    }
+		    else {
+			Parse.fireMathlibEvent(ans, "current circuit", null, Mathlib.getVar(ans), MathlibEvent.CHANGE_CATEGORY);
+		    }
+		    //              gateTableModel.addGate(ans);
+		} catch (Exception e) {
+		    if (line.trim().length() > 0)
+			System.out.println("ignored line: "+line);
+		}           
+	    }
+	}
+	finally {
+	    mathlib.getContext().endBatch();
 	}
 	Parse.echoAnswer = true;
 	reset();
+	((GateTableModel)getModel()).reseed();
 	inf.close();
     }
 
+    /**
+     * loads a circuit in the binary format
+     * @see CircuitFile
+     */
+    protected void loadModelFromBinaryFile(File file) {
+	CircuitFile circuit;
+	try {
+	    circuit = CircuitFile.read(file);
+	} catch (IOException e) {
+	    System.err.println("cannot load circuit: " + e.getMessage());
+	    return;
+	}
+
+	flushCurrentCircuit();
+	timing.reset();
+
+	mathlib.getContext().beginBatch();
+	try {
+	    circuit.register(mathlib.getContext());
+	}
+	finally {
+	    mathlib.getContext().endBatch();
+	}
+	reset();
+	((GateTableModel)getModel()).reseed();
+    }
+
     /**
      * saves a circuit to a file. It writes all variables of the category "current 
-     * circuit" into a file.
+     * circuit" into a file. Files ending with ".jqb" are written in the binary
+     * format.
+     * @see CircuitFile
      */
     public void saveModelToFile(File file) {
+	if (file.getName().endsWith(CircuitFile.EXTENSION)) {
+	    saveModelToBinaryFile(file);
+	    return;
+	}
 	OutputFile of = new OutputFile(file.getAbsolutePath());
 
 	VarAuthority varAuthority = new VarAuthority(mathlib, false);
@@ -885,7 +1007,9 @@ public class GateTable extends JTable implements StepHandler, MathlibEventListen
 	    if (variable instanceof Gate == false && 
 		varName.startsWith("qubit_") == false && 
 		variable instanceof GateProperty == false) {
-		of.print(varName + "=" + variable.toParseableString() + "\n");
+		of.print(varName + "=");
+		of.printParseable(variable);
+		of.print("\n");
 	    }
 	}
 
@@ -895,7 +1019,9 @@ public class GateTable extends JTable implements StepHandler, MathlibEventListen
 	while (e.hasMoreElements() ){
 	    varName = (String)e.nextElement();
 	    variable = mathlib.getVar(varName);
-	    of.print("qubit_"+no + "=" + variable.toParseableString() + "\n");
+	    of.print("qubit_"+no + "=");
+	    of.printParseable(variable);
+	    of.print("\n");
 	    no++;
 	}
 
@@ -905,7 +1031,7 @@ public class GateTable extends JTable implements StepHandler, MathlibEventListen
 	e = varAuthority.getElementsInCategory("gateproperties");
 	while (e.hasMoreElements() ){
 	    variable = mathlib.getVar((String)e.nextElement());
-	    of.print(variable.toParseableString());
+	    of.printParseable(variable);
 	}
 
 	Complex.setDigits(digits);
@@ -929,6 +1055,56 @@ public class GateTable extends JTable implements StepHandler, MathlibEventListen
 	of.close();
     }
 
+    /**
+     * saves a circuit in the binary format
+     * @see CircuitFile
+     */
+    protected void saveModelToBinaryFile(File file) {
+	CircuitFile circuit = new CircuitFile();
+
+	VarAuthority varAuthority = new VarAuthority(mathlib, false);
+	varAuthority.registerCategory("current circuit", new MathObjectConstraints(
+		       null, "current circuit", -1, -1, -1, null));
+	Enumeration e = varAuthority.getElementsInCategory("current circuit");
+	String varName;
+	MathObject variable;
+
+	// variables
+	while (e.hasMoreElements()) {
+	    varName = (String)e.nextElement();
+	    variable = mathlib.getVar(varName);
+	    if (variable instanceof mathlib.Gate == false && 
+		varName.startsWith("qubit_") == false && 
+		variable instanceof GateProperty == false) {
+		circuit.addVariable(varName, variable);
+	    }
+	}
+
+	// qubit names
+	for (int i = 0; i < qubits.size(); i++) {
+	    circuit.addVariable("qubit_"+i, mathlib.getVar((String)qubits.elementAt(i)));
+	}
+
+	// gate properties
+	varAuthority.registerCategory("gateproperties", new MathObjectConstraints(
+		       GateProperty.class, "current circuit", -1, -1, -1, null));
+	e = varAuthority.getElementsInCategory("gateproperties");
+	while (e.hasMoreElements() ){
+	    circuit.addProperty((GateProperty)mathlib.getVar((String)e.nextElement()));
+	}
+
+	// gates
+	for (int i = 0; i < getColumnCount(); i++) {
+	    circuit.addContainer(getGateContainer(i));
+	}
+
+	try {
+	    circuit.write(file);
+	} catch (IOException ex) {
+	    System.err.println("cannot save circuit: " + ex.getMessage());
+	}
+    }
+
     boolean printQubits = true;
 
     /**
@@ -1029,6 +1205,8 @@ public class GateTable extends JTable implements StepHandler, MathlibEventListen
 	    else if (infoStep >= 100) infoStep = 100;
 	    calculationRunning = true;
 	    timing.start();
+	    // going back: replay from a checkpoint instead of undoing the steps
+	    if (this.toStep < getStepModel().getValue()) restoreCheckpoint(this.toStep);
 	    while (this.toStep > getStepModel().getValue() && stopPending == false) {
 		stepForward();
 		timing.stepsAccomplished(1);
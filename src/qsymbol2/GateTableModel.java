@@ -30,17 +30,23 @@ import javax.swing.table.*;
 import mathlib.Argument;
 import mathlib.BinaryOp;
 import mathlib.Braket;
+import mathlib.BraketFile;
 import mathlib.Complex;
+import mathlib.CompiledGate;
 import mathlib.Decoherence;
 import mathlib.Gate;
 import mathlib.GateProperty;
 import mathlib.LOG;
 import mathlib.MathObject;
 import mathlib.Mathlib;
+import mathlib.MathlibContext;
 import mathlib.MathlibEvent;
 import mathlib.Matrix;
 import mathlib.Measurement;
+import mathlib.Overlap;
+import mathlib.ParallelKernel;
 import mathlib.Parse;
+import mathlib.RandomStream;
 import mathlib.Timing;
 
 import java.util.*;
@@ -64,11 +70,11 @@ public class GateTableModel extends AbstractTableModel {
     /** hold the decoherence class */
     protected Decoherence decoherence;
     /** has one element for each computational step in case of the*/
-    protected Vector fidelity;
+    protected DoubleTrace fidelity;
     /** keeps track of the decayed qubits */
-    protected Vector decayedQubits;
+    protected IntTrace decayedQubits;
     /** keeps track of the steps where the decay occurred */
-    protected Vector decaySteps;
+    protected IntTrace decaySteps;
 
     /** determines whether fidelity is calculated (calculating the fidelity requires the double
      * amount of time and memory) */
@@ -76,6 +82,8 @@ public class GateTableModel extends AbstractTableModel {
 
     /** keeps track of the current computation step*/
     protected DefaultBoundedRangeModel stepModel;
+    /** true while a circuit is loaded, the step model is updated afterwards */
+    boolean loading = false;
 
     protected Mathlib mathlib;
 
@@ -84,6 +92,12 @@ public class GateTableModel extends AbstractTableModel {
      */
     protected int reverseVetoStep;
 
+    /** checkpoints of the forward computation */
+    protected StateHistory history;
+    /** the kets and their versions after the last step of the model */
+    private MathObject lastQubits, lastRefQubits;
+    private int lastVersion, lastRefVersion;
+
     /**
      * creates a GateTableModel. A gate is represented by a GateContainer. The
      * GateContainers are saved in an internal vector, but the gates themselves are
@@ -92,14 +106,15 @@ public class GateTableModel extends AbstractTableModel {
     public GateTableModel(Mathlib mathlib) {
 	this.mathlib = mathlib;
 	gateContainers = new Vector();
-	fidelity = new Vector();
-	fidelity.addElement(new Double(1));
+	fidelity = new DoubleTrace();
+	fidelity.add(1);
 	calcFidelity = false;
-	decayedQubits = new Vector();
-	decaySteps = new Vector();
-	decoherence = new Decoherence();
+	decayedQubits = new IntTrace();
+	decaySteps = new IntTrace();
+	decoherence = new Decoherence(mathlib.getContext());
 	stepModel = new DefaultBoundedRangeModel(0,0,0,0);
 	reverseVetoStep = -1;
+	history = new StateHistory();
     }
 
     /**
@@ -205,7 +220,7 @@ public class GateTableModel extends AbstractTableModel {
 	    if (value instanceof Boolean) {
 		gate_descr[row] = (((Boolean)value).booleanValue()) ? 'd':'u';
 		gate.gate_descr = new String(gate_descr);
-		Parse.fireMathlibEvent(getColumnName(col), null, "current circuit", gate, MathlibEvent.CHANGE);
+		mathlib.getContext().fireMathlibEvent(getColumnName(col), null, "current circuit", gate, MathlibEvent.CHANGE);
 	    }
 	}
     }
@@ -272,7 +287,7 @@ public class GateTableModel extends AbstractTableModel {
 			gate.gate_descr = gate.gate_descr.replace('m', '-');
 		    }
 
-		    Parse.fireMathlibEvent(getColumnName(i), null, "current circuit", gate, MathlibEvent.CHANGE);
+		    mathlib.getContext().fireMathlibEvent(getColumnName(i), null, "current circuit", gate, MathlibEvent.CHANGE);
 		}
 	    }
 	}
@@ -308,7 +323,7 @@ public class GateTableModel extends AbstractTableModel {
 
 		    gate.gate_descr = new String(gate_descr);
 
-		    Parse.fireMathlibEvent(getColumnName(i), null, "current circuit", gate, MathlibEvent.CHANGE);
+		    mathlib.getContext().fireMathlibEvent(getColumnName(i), null, "current circuit", gate, MathlibEvent.CHANGE);
 		}
 	    }
 	}
@@ -331,7 +346,7 @@ public class GateTableModel extends AbstractTableModel {
 	    
 		gate.gate_descr = gate.gate_descr.concat("-");
 
-		Parse.fireMathlibEvent(getColumnName(i), null, "current circuit", gate, MathlibEvent.CHANGE);
+		mathlib.getContext().fireMathlibEvent(getColumnName(i), null, "current circuit", gate, MathlibEvent.CHANGE);
 	    }
 	}
     }
@@ -366,7 +381,7 @@ public class GateTableModel extends AbstractTableModel {
     }
 
     public double getFidelity() {
-	return ((Double)fidelity.elementAt(fidelity.size()-1)).doubleValue();
+	return fidelity.last();
     }
 
     /**
@@ -380,15 +395,24 @@ public class GateTableModel extends AbstractTableModel {
 	this.calcFidelity = calcFidelity;
     }
 
-    public Vector getFidelityVector() {
+    /**
+     * returns the fidelity of each step so far, starting with the initial state
+     */
+    public DoubleTrace getFidelityTrace() {
 	return fidelity;
     }
 
-    public Vector getDecayedQubits() {
+    /**
+     * returns the qubits that decayed so far, in the order of the decays
+     */
+    public IntTrace getDecayedQubits() {
 	return decayedQubits;
     }
 
-    public Vector getDecaySteps() {
+    /**
+     * returns the steps at which the decays occurred
+     */
+    public IntTrace getDecaySteps() {
 	return decaySteps;
     }
 
@@ -407,18 +431,13 @@ public class GateTableModel extends AbstractTableModel {
     }
 
     /**
-     * calculates the fidelity of the quantum computation
+     * calculates the fidelity of the quantum computation. Neither ket is 
+     * changed.
+     * @see Overlap#fidelity(Braket, Braket)
      */
     protected double calculateFidelity(Braket q, Braket refQ) {
-	if (refQ != null) {
-	    refQ.transpose();
-	    refQ.conjugate();
-	    BinaryOp times = new BinaryOp('*');
-	    Complex fid = (Complex)times.apply(refQ, q);
-	    refQ.conjugate();
-	    refQ.transpose();
-	    return fid.magnitudeSquared();
-	} else return 1;
+	if (refQ != null) return Overlap.fidelity(refQ, q);
+	else return 1;
     }
 
     /**
@@ -453,6 +472,7 @@ public class GateTableModel extends AbstractTableModel {
      * updates the step model according to the gate containers.
      */
     protected void updateStepModel() {
+	if (loading) return;
 	int count = 0;
 	for (int i = 0; i < getColumnCount(); i++) {
 	    count += getGateContainer(i).getStepCount();
@@ -481,7 +501,15 @@ public class GateTableModel extends AbstractTableModel {
 	    rate = gc.getCurrentDecoherenceRate();
 	    decayProb = gc.getCurrentDecayProbability();
 	}
+	advance(gc, currentColumn, nextColumn);
+	return gate;
+    }
 
+    /**
+     * moves the step of the given container forward, passing on to the next
+     * column at its end
+     */
+    private void advance(GateContainer gc, int currentColumn, int nextColumn) {
 	boolean result = gc.stepForward();
 	if (result == false && currentColumn == nextColumn) {
 	    endOfTable = true;
@@ -492,7 +520,6 @@ public class GateTableModel extends AbstractTableModel {
 	    stepColumn = nextColumn;
 	    gc.setStepFocus(true);
 	}
-	return gate;
     }
 
     /**
@@ -545,14 +572,31 @@ public class GateTableModel extends AbstractTableModel {
      * GateTableModel indices.
      */
     public void stepForward(int currentColumn, int nextColumn) {
+	MathlibContext previous = MathlibContext.setCurrent(mathlib.getContext());
+	try {
+	    forward(currentColumn, nextColumn);
+	}
+	finally {
+	    MathlibContext.setCurrent(previous);
+	}
+    }
+
+    /**
+     * performs the next calculation step in forward direction in the context
+     * of the model
+     */
+    private void forward(int currentColumn, int nextColumn) {
 	forward = true;
+	updateThreads();
 	if (stepModel.getValue() < getStepCount()) {
+	    // before nextGate, which draws the error matrix
+	    checkpoint(getStep());
 	    Gate g = nextGate(currentColumn, nextColumn);
 	    if (g.gate_descr.indexOf("!") != -1 || g.gate_descr.indexOf("u") != -1 ||
 		g.gate_descr.indexOf("d") != -1) setReverseVetoStep(getStep());
 	    int simulationMode = getSimulationMode();
-	    Braket q = (Braket) Mathlib.getVar("qubits");
-	    MathObject refQ = Mathlib.getVar("refQubits");
+	    Braket q = (Braket) mathlib.getContext().getVar("qubits");
+	    MathObject refQ = mathlib.getContext().getVar("refQubits");
 	    // operational error
 	    if (simulationMode == 1 || simulationMode ==3)
 		BinaryOp.implicitApply(g, q, getCurrentErrorMatrix());
@@ -564,8 +608,8 @@ public class GateTableModel extends AbstractTableModel {
 		decoherence.apply(getCurrentDecoherenceRate(), 
 				  getCurrentDecayProbability(), q);
 		if (decoherence.decayOccurred()) {
-		    decayedQubits.add(new Integer(decoherence.getLastDecoheredQubit()));
-		    decaySteps.add(new Integer(getStep()));
+		    decayedQubits.add(decoherence.getLastDecoheredQubit());
+		    decaySteps.add(getStep());
 		    LOG.LOG(0, "decoherence at step: " + getStep());
 		}
 
@@ -573,11 +617,12 @@ public class GateTableModel extends AbstractTableModel {
 	    // reference qubit
 	    if (calcFidelity && simulationMode != 0) {
 		BinaryOp.implicitApply(g, (Braket)refQ, null);
-		fidelity.addElement(new Double(calculateFidelity(q, (Braket)refQ)));
+		fidelity.add(calculateFidelity(q, (Braket)refQ));
 	    }
-	    else fidelity.addElement(new Double(calculateFidelity(q, null)));
+	    else fidelity.add(calculateFidelity(q, null));
 
 	    stepModel.setValue(stepModel.getValue()+1);
+	    markHistory();
 	}
     }
 
@@ -596,14 +641,30 @@ public class GateTableModel extends AbstractTableModel {
      * GateTableModel indices.
      */
     public void stepBackward(int currentColumn, int previousColumn) {
+	MathlibContext previous = MathlibContext.setCurrent(mathlib.getContext());
+	try {
+	    backward(currentColumn, previousColumn);
+	}
+	finally {
+	    MathlibContext.setCurrent(previous);
+	}
+    }
+
+    /**
+     * performs the next calculation step in backward direction in the context
+     * of the model
+     */
+    private void backward(int currentColumn, int previousColumn) {
 	forward = false;
+	updateThreads();
 	if (stepModel.getValue() > 0) {
+	    validateHistory();
 	    Gate g = previousGate(currentColumn, previousColumn);
 	    g.transpose();
 	    g.conjugate();
 
-	    Braket q = (Braket)Mathlib.getVar("qubits");
-	    MathObject refQ = Mathlib.getVar("refQubits");
+	    Braket q = (Braket)mathlib.getContext().getVar("qubits");
+	    MathObject refQ = mathlib.getContext().getVar("refQubits");
 
 	    int simulationMode = getSimulationMode();
 	    if (simulationMode == 1 || simulationMode ==3)
@@ -616,8 +677,8 @@ public class GateTableModel extends AbstractTableModel {
 		decoherence.apply(getCurrentDecoherenceRate(), 
 				  getCurrentDecayProbability(), q);
 		if (decoherence.decayOccurred()) {
-		    decayedQubits.add(new Integer(decoherence.getLastDecoheredQubit()));
-		    decaySteps.add(new Integer(getStep()));
+		    decayedQubits.add(decoherence.getLastDecoheredQubit());
+		    decaySteps.add(getStep());
 		    LOG.LOG(0, "decoherence at step: " + getStep());
 		}
 	    }
@@ -625,17 +686,141 @@ public class GateTableModel extends AbstractTableModel {
 	    // reference qubit
 	    if (calcFidelity && simulationMode != 0) {
 		BinaryOp.implicitApply(g, (Braket)refQ, null);
-		fidelity.addElement(new Double(calculateFidelity(q, (Braket)refQ)));
+		fidelity.add(calculateFidelity(q, (Braket)refQ));
 	    }
-	    else fidelity.addElement(new Double(calculateFidelity(q, null)));
+	    else fidelity.add(calculateFidelity(q, null));
 
 	    stepModel.setValue(stepModel.getValue()-1);
 	    g.conjugate();
 	    g.transpose();
+	    // forward from here the states differ from the recorded ones
+	    history.truncate(getStep());
+	    markHistory();
+	}
+    }
+
+    /**
+     * takes a checkpoint before the given step if one is due. Kets changed 
+     * outside the model invalidate the history.
+     * @see StateHistory
+     */
+    private void checkpoint(int step) {
+	validateHistory();
+	if (history.isDue(step)) {
+	    MathObject refQ = mathlib.getContext().getVar("refQubits");
+	    history.record(step, (Braket)mathlib.getContext().getVar("qubits"), 
+			   (refQ instanceof Braket) ? (Braket)refQ : null, 
+			   mathlib.getContext().getRandom(), fidelity.size(), 
+			   decaySteps.size(), reverseVetoStep);
+	}
+    }
+
+    /**
+     * clears the history if the kets are not the ones the model left behind
+     */
+    private void validateHistory() {
+	MathObject q = mathlib.getContext().getVar("qubits");
+	MathObject refQ = mathlib.getContext().getVar("refQubits");
+	if (q != lastQubits || refQ != lastRefQubits || 
+	    (q instanceof Braket && ((Braket)q).getVersion() != lastVersion) ||
+	    (refQ instanceof Braket && ((Braket)refQ).getVersion() != lastRefVersion))
+	    history.clear();
+    }
+
+    /**
+     * remembers the kets after a step of the model
+     */
+    private void markHistory() {
+	lastQubits = mathlib.getContext().getVar("qubits");
+	lastRefQubits = mathlib.getContext().getVar("refQubits");
+	if (lastQubits instanceof Braket) lastVersion = ((Braket)lastQubits).getVersion();
+	if (lastRefQubits instanceof Braket) lastRefVersion = ((Braket)lastRefQubits).getVersion();
+    }
+
+    /**
+     * restores the last checkpoint at or before the given step: the kets, the
+     * random generator, the fidelities and the decays. The gate containers are
+     * reset to the first step; <tt>skipForward</tt> moves them to the step of
+     * the checkpoint, from where <tt>stepForward</tt> replays the computation
+     * as it was recorded.
+     * @return the step of the checkpoint or -1 if there is none
+     * @see StateHistory
+     */
+    public int restoreCheckpoint(int toStep) {
+	MathlibContext previous = MathlibContext.setCurrent(mathlib.getContext());
+	try {
+	    validateHistory();
+	    StateHistory.Checkpoint c = history.find(toStep);
+	    if (c == null) return -1;
+	    history.truncate(c.getStep());
+
+	    Parse.fireMathlibEvent("qubits", c.getQubits(), MathlibEvent.CHANGE);
+	    Braket refQ = c.getRefQubits();
+	    if (refQ != null) Parse.fireMathlibEvent("refQubits", refQ, MathlibEvent.CHANGE);
+	    RandomStream random = c.getRandom();
+	    if (random != null) mathlib.getContext().setRandom(random);
+	    fidelity.setSize(c.getFidelityCount());
+	    decayedQubits.setSize(c.getDecayCount());
+	    decaySteps.setSize(c.getDecayCount());
+	    reverseVetoStep = c.getReverseVetoStep();
+	    markHistory();
+
+	    GateContainer gc;
+	    for (int i = 0; i < getColumnCount(); i++) {
+		gc = getGateContainer(i);
+		gc.reset();
+		gc.setStepFocus(false);
+	    }
+	    forward = true;
+	    endOfTable = false;
+	    if (getColumnCount() > 0) getGateContainer(0).setStepFocus(true);
+	    stepColumn = 0;
+	    stepModel.setValue(0);
+	    return c.getStep();
+	}
+	finally {
+	    MathlibContext.setCurrent(previous);
+	}
+    }
+
+    /**
+     * moves the gate containers one step forward without computing. The 
+     * columns are given as for <tt>stepForward</tt>.
+     * @see GateTableModel#restoreCheckpoint(int)
+     */
+    public void skipForward(int currentColumn, int nextColumn) {
+	if (stepModel.getValue() < getStepCount()) {
+	    stepColumn = currentColumn;
+	    advance(getGateContainer(currentColumn), currentColumn, nextColumn);
+	    stepModel.setValue(stepModel.getValue()+1);
 	}
     }
 
+    /**
+     * returns the checkpoints of the computation
+     */
+    public StateHistory getHistory() {
+	return history;
+    }
+
+    /**
+     * runs the circuit to its end in the context of the model. The gates and
+     * computation events use the context of the Mathlib object of the model.
+     */
     public void run() {
+	MathlibContext previous = MathlibContext.setCurrent(mathlib.getContext());
+	try {
+	    runToEnd();
+	}
+	finally {
+	    MathlibContext.setCurrent(previous);
+	}
+    }
+
+    /**
+     * runs the circuit to its end
+     */
+    private void runToEnd() {
 	int toStep = getStepCount();
 	int oldStep = getStep();
 	int infoStep = ((toStep > oldStep)? toStep-oldStep : oldStep-toStep)/10;
@@ -645,6 +830,11 @@ public class GateTableModel extends AbstractTableModel {
 	Timing timing = new Timing();
 	timing.start();
 	System.out.println("computation started");
+	// a complete forward run executes the compiled circuit
+	if (oldStep == 0 && toStep > 0) {
+	    CircuitProgram program = new CircuitProgram(this);
+	    if (program.getLength() == toStep) run(program, timing, infoStep);
+	}
 	while (toStep > stepModel.getValue()) {
 	    stepForward();
 	    timing.stepsAccomplished(1);
@@ -670,6 +860,92 @@ public class GateTableModel extends AbstractTableModel {
 	
     }
 
+    /**
+     * executes all steps of the compiled circuit from the current step on. The
+     * bookkeeping (fidelity, decays, reverse veto step) is the same as for
+     * <tt>stepForward</tt>; afterwards the gate containers are set to the state
+     * they would have after stepping through the whole table. Consecutive gates
+     * are fused where the simulation mode allows it. A checkpoint is taken 
+     * before the run if one is due, but none during the run; going back 
+     * replays from the last checkpoint before it.
+     * @see CircuitProgram
+     */
+    protected void run(CircuitProgram program, Timing timing, int infoStep) {
+	forward = true;
+	updateThreads();
+	validateHistory();
+	history.truncate(getStep());
+	checkpoint(getStep());
+
+	int simulationMode = getSimulationMode();
+	boolean operational = (simulationMode == 1 || simulationMode == 3);
+	boolean decoherent = (simulationMode == 2 || simulationMode == 3);
+	Braket q = (Braket) mathlib.getContext().getVar("qubits");
+	MathObject refQ = mathlib.getContext().getVar("refQubits");
+	boolean reference = calcFidelity && simulationMode != 0 && refQ instanceof Braket;
+	int step = getStep();
+	int span;
+	double fid;
+
+	program.fuse(simulationMode);
+	while (step < program.getLength()) {
+	    CompiledGate g = program.getGate(step);
+	    span = program.getSpan(step);
+	    if (g.isIrreversible()) setReverseVetoStep(step);
+
+	    // operational error
+	    if (operational) {
+		errorMatrix = program.getErrorMatrix(step);
+		g.apply(q, errorMatrix);
+	    }
+	    else g.apply(q, null);
+
+	    // decoherence error
+	    if (decoherent) {
+		rate = program.getDecoherenceRate(step);
+		decayProb = program.getDecayProbability(step);
+		decoherence.apply(rate, decayProb, q);
+		if (decoherence.decayOccurred()) {
+		    decayedQubits.add(decoherence.getLastDecoheredQubit());
+		    decaySteps.add(step);
+		    LOG.LOG(0, "decoherence at step: " + step);
+		}
+	    }
+
+	    // reference qubit
+	    if (reference) {
+		g.apply((Braket)refQ, null);
+		fid = calculateFidelity(q, (Braket)refQ);
+	    }
+	    else fid = calculateFidelity(q, null);
+
+	    // a fused gate accounts for all steps it spans
+	    for (int i = 0; i < span; i++) {
+		fidelity.add(fid);
+		step++;
+		timing.stepsAccomplished(1);
+		if (step % infoStep == 0) {
+		    System.out.println("step: "+ step + 
+				       "\t"+GatePanel.elapsedTime+": "+timing.getElapsedTimeSec() +
+				       "\t"+GatePanel.avgTimePerGate+": "+timing.getAvgTimePerStepMillis());
+		}
+	    }
+	    markHistory();
+	}
+
+	// synchronize the gate containers
+	GateContainer gc;
+	for (int i = 0; i < getColumnCount(); i++) {
+	    gc = getGateContainer(i);
+	    gc.complete();
+	    gc.setStepFocus(false);
+	}
+	stepColumn = getColumnCount()-1;
+	getGateContainer(stepColumn).setStepFocus(true);
+	endOfTable = true;
+	stepModel.setValue(step);
+    }
+
     /**
      * resets the step handler and the gate containers
      */
@@ -681,16 +957,17 @@ public class GateTableModel extends AbstractTableModel {
 	    gc.setStepFocus(false);
 	}
 	forward = true;
-	fidelity.removeAllElements();
-	fidelity.addElement(new Double(1));
-	decayedQubits.removeAllElements();
-	decaySteps.removeAllElements();
+	fidelity.clear();
+	fidelity.add(1);
+	decayedQubits.clear();
+	decaySteps.clear();
 	endOfTable = false;
 	if (getColumnCount() > 0) getGateContainer(0).setStepFocus(true);
 	stepColumn = 0;
 	stepModel.setValue(0);
 	updateStepModel(); 
 	reverseVetoStep = -1;
+	history.clear();
     } 
 
     /**
@@ -714,7 +991,7 @@ public class GateTableModel extends AbstractTableModel {
      * 2 = decoherence errors, 3 = both errors
      */
     public int getSimulationMode() {
-	MathObject cp = Mathlib.getVar("circuit_properties");
+	MathObject cp = mathlib.getContext().getVar("circuit_properties");
 	if (cp != null) {
 	    Argument simMode = ((GateProperty)cp).getProperty("mode");
 	    if (simMode != null) {
@@ -725,16 +1002,60 @@ public class GateTableModel extends AbstractTableModel {
 	return 0;
     }
 
+    /**
+     * sets the qubit affected by decoherence, -1 for a random one
+     */
+    public void setDecayQubit(int qubit) {
+	decoherence.setPresetQubit(qubit);
+    }
+
+    /**
+     * returns the qubit affected by decoherence, -1 for a random one
+     */
+    public int getDecayQubit() {
+	return decoherence.getPresetQubit();
+    }
+
+    /**
+     * passes the number of threads given by the "threads" entry of
+     * circuit_properties on to the gate kernels. Without the entry the current
+     * setting (by default the system property jaquzzi.threads) is kept.
+     * @see ParallelKernel
+     */
+    private void updateThreads() {
+	double threads = getCircuitProperty("threads");
+	if (threads > 0) ParallelKernel.setThreads((int)threads);
+    }
+
+    /**
+     * restarts the random generator of the context with the "seed" entry of
+     * circuit_properties, e.g. gateproperty("circuit", seed=42), so that the
+     * following runs are reproducible. Without the entry the generator is
+     * left alone. Called after loading a circuit.
+     * @see mathlib.RandomStream
+     */
+    public void reseed() {
+	double seed = getCircuitProperty("seed");
+	if (seed >= 0) mathlib.getContext().setSeed((long)seed);
+    }
+
     /**
      * This method provides functionality to load just a table model from a file. In the 
      * interactive mode this method is not used, but in the batch mode. This method is much
      * simpler than the loadModelFromFile method implemented by the GateTable class. The reason
      * for this is, that no columns need to be created as well as all the other mathlibEvent 
-     * listener need to be informed.
+     * listener need to be informed. The file is loaded as one batch of MathlibEvents.
+     * Binary circuits are recognized by their magic number.
      * @see GateTable#loadModelFromFile(File)
+     * @see mathlib.MathlibContext#beginBatch()
+     * @see CircuitFile
      */
     public void primitiveLoadFromFile(File file) {
-	String ans;
+	if (CircuitFile.isBinary(file)) {
+	    primitiveLoadFromBinaryFile(file);
+	    return;
+	}
+	String ans, line;
 	InputFile inf = new InputFile(file.getAbsolutePath());
 	int rep;
 	setCalcFidelity(true);
@@ -743,40 +1064,147 @@ public class GateTableModel extends AbstractTableModel {
 	Parse.echoAnswer = false;
 	MathObject ansObject;
 	int qubits = 0;
-	while (inf.endOfFile() == false) {
-	    inf.getLine();
-
-	    try {
-		ans = mathlib.evaluateExpression(inf.currentLine());
-		ansObject = Mathlib.getVar(ans);
-		if (ansObject instanceof Gate) {
-		    qubits = ((Gate)ansObject).n;
-		    // add gate to Model
-		    GateContainer gateContainer = new GateContainer(null, ans, ans);
-
-		    if (getColumnCount() == 0) {
-			addGateContainer(gateContainer);
-		    }
-		    // try to merge new container with the last one...
-		    else {
-			GateContainer lastContainer = (GateContainer)getValueAt(0, getColumnCount()-1);
-			// merge insuccessful ==> add
-			if (lastContainer.addContainerIfPossible(gateContainer)!=lastContainer) {
+	loading = true;
+	mathlib.getContext().beginBatch();
+	try {
+	    while (inf.endOfFile() == false) {
+		inf.getLine();
+		line = inf.currentLine();
+
+		try {
+		    ans = mathlib.evaluateExpression(line);
+		    ansObject = mathlib.getContext().getVar(ans);
+		    if (ansObject instanceof Gate) {
+			qubits = ((Gate)ansObject).n;
+			// add gate to Model
+			GateContainer gateContainer = new GateContainer(null, ans, ans);
+
+			if (getColumnCount() == 0) {
 			    addGateContainer(gateContainer);
 			}
+			// try to merge new container with the last one...
+			else {
+			    GateContainer lastContainer = (GateContainer)getValueAt(0, getColumnCount()-1);
+			    // merge insuccessful ==> add
+			    if (lastContainer.addContainerIfPossible(gateContainer)!=lastContainer) {
+				addGateContainer(gateContainer);
+			    }
+			}
 		    }
-		}
-	    } catch (Exception e) {
-		System.out.println("ignored line: "+inf.currentLine());
-	    }		
+		} catch (Exception e) {
+		    System.out.println("ignored line: "+line);
+		}           
+	    }
+	}
+	finally {
+	    mathlib.getContext().endBatch();
+	    loading = false;
 	}
-	Parse.fireMathlibEvent("qubits", new Braket(0,qubits), MathlibEvent.ADD);
-	Parse.fireMathlibEvent("refQubits", new Braket(0,qubits), MathlibEvent.ADD);
+	updateStepModel();
+	mathlib.getContext().fireMathlibEvent("qubits", new Braket(0,qubits), MathlibEvent.ADD);
+	mathlib.getContext().fireMathlibEvent("refQubits", new Braket(0,qubits), MathlibEvent.ADD);
 	Parse.echoAnswer = true;
 	reset();
+	reseed();
 	inf.close();
     }
 
+    /**
+     * loads just a table model from a binary circuit
+     * @see #primitiveLoadFromFile(File)
+     */
+    protected void primitiveLoadFromBinaryFile(File file) {
+	CircuitFile circuit;
+	try {
+	    circuit = CircuitFile.read(file);
+	} catch (IOException e) {
+	    System.err.println("cannot load circuit: " + e.getMessage());
+	    return;
+	}
+	setCalcFidelity(true);
+	gateContainers.removeAllElements();
+
+	loading = true;
+	mathlib.getContext().beginBatch();
+	try {
+	    circuit.register(mathlib.getContext());
+	    Enumeration e = circuit.getGateNames();
+	    String name;
+	    GateContainer gateContainer, lastContainer;
+	    while (e.hasMoreElements()) {
+		name = (String)e.nextElement();
+		gateContainer = new GateContainer(null, name, name);
+		if (getColumnCount() == 0) {
+		    addGateContainer(gateContainer);
+		}
+		else {
+		    lastContainer = (GateContainer)getValueAt(0, getColumnCount()-1);
+		    if (lastContainer.addContainerIfPossible(gateContainer)!=lastContainer) {
+			addGateContainer(gateContainer);
+		    }
+		}
+	    }
+	}
+	finally {
+	    mathlib.getContext().endBatch();
+	    loading = false;
+	}
+	updateStepModel();
+	int qubits = circuit.getQubitCount();
+	mathlib.getContext().fireMathlibEvent("qubits", new Braket(0,qubits), MathlibEvent.ADD);
+	mathlib.getContext().fireMathlibEvent("refQubits", new Braket(0,qubits), MathlibEvent.ADD);
+	reset();
+	reseed();
+    }
+
+    /**
+     * writes the ket, the current step and the fidelities recorded so far to a
+     * snapshot file
+     * @see mathlib.BraketFile
+     */
+    public void saveState(File file) throws IOException {
+	new BraketFile(file).write((Braket)mathlib.getContext().getVar("qubits"), getStep(),
+				   fidelity.toArray());
+    }
+
+    /**
+     * resumes a computation from a snapshot file. The ket and the reference ket
+     * are set to the saved ket, the recorded fidelities are restored and
+     * the gate containers are moved to the saved step without computing, so 
+     * the fidelities after the step are taken relative to the saved ket. The
+     * random generator is not part of the snapshot, measurements and noise 
+     * after the step draw from the current one.
+     * @exception IOException if the file can not be read or does not fit the circuit
+     * @see mathlib.BraketFile
+     */
+    public void loadState(File file) throws IOException {
+	BraketFile snapshot = new BraketFile(file);
+	Braket q = snapshot.read();
+	MathObject qubits = mathlib.getContext().getVar("qubits");
+	if (qubits instanceof Braket && ((Braket)qubits).n != q.n)
+	    throw new IOException(file + ": " + q.n + " qubits instead of " + ((Braket)qubits).n);
+	if (snapshot.getStep() > getStepCount())
+	    throw new IOException(file + ": step " + snapshot.getStep() + " beyond the circuit");
+	double[] trace = snapshot.getTrace();
+
+	MathlibContext previous = MathlibContext.setCurrent(mathlib.getContext());
+	try {
+	    reset();
+	    Parse.fireMathlibEvent("qubits", q, MathlibEvent.CHANGE);
+	    Parse.fireMathlibEvent("refQubits", (Braket)q.clone(), MathlibEvent.CHANGE);
+	    while (getStep() < snapshot.getStep()) 
+		skipForward(stepColumn, (stepColumn < getColumnCount()-1) ? stepColumn+1:stepColumn);
+	    if (trace.length > 0) {
+		fidelity.clear();
+		for (int i = 0; i < trace.length; i++) fidelity.add(trace[i]);
+	    }
+	    markHistory();
+	}
+	finally {
+	    MathlibContext.setCurrent(previous);
+	}
+    }
+
     /**
      * dumps the simultation results into a file. The format can be interpreted by
      * the GNUPlot prorgam. The naming convention is the following. The name of the
@@ -810,7 +1238,7 @@ public class GateTableModel extends AbstractTableModel {
 	of.print("set title \"Probability Distribution ("+f.getName()+")\"\n");
 	of.print("set xlabel \"state (qubits: "+qubStr+")\"\n");
 	of.print("plot [*:*] [0:1] '-' with impulses \n");
-	Braket q = (Braket)Mathlib.getVar(GatePanel.qubits);
+	Braket q = (Braket)mathlib.getContext().getVar(GatePanel.qubits);
 
 	if (qubits== null) {
 	    qubits = new int[q.n];
@@ -830,9 +1258,74 @@ public class GateTableModel extends AbstractTableModel {
 	of.print("set title \"Fidelity ("+f.getName()+")\"\n");
 	of.print("set xlabel \"step\"\n");
 	of.print("plot [*:*] [0:1] '-' with dots \n");
-	e = getFidelityVector().elements();
-	while (e.hasMoreElements()) {
-	    of.print(((Double)e.nextElement()).doubleValue()+"\n");
+	double[] values = fidelity.toArray();
+	for (int i = 0; i < values.length; i++) {
+	    of.print(values[i]+"\n");
+	}
+	of.close();
+    }
+
+    /**
+     * dumps the averaged results of a Monte Carlo sweep into two files in the
+     * format of <tt>dumpData(File, int[])</tt>: the mean probability 
+     * distribution and the mean fidelity of each step.
+     * @see MonteCarloSweep
+     */
+    public void dumpData(File file, int[] qubits, MonteCarloSweep sweep) {
+	String fileName = file.getName();
+
+	if (fileName.endsWith(".jaq")) 
+	    fileName = fileName.substring(0, fileName.length()-4);
+
+	int counter = 0;
+	File f = new File(fileName+counter+".prob");
+	while (f.exists()) {
+	    counter++;
+	    f = new File(fileName+counter+".prob");
+	}
+
+	OutputFile of = new OutputFile(f.getAbsolutePath());
+
+	String qubStr = new String("");
+	if (qubits == null) qubStr = "all";
+	else if (qubits.length > 0) {
+	    qubStr = qubStr.concat(""+qubits[0]);
+	    for (int i = 1; i < qubits.length; i++)
+		qubStr = qubStr.concat(", "+qubits[i]);
+	}
+
+	// decays of each qubit
+	int[] decayed = sweep.getDecayedQubits();
+	String decStr = new String("dec bits = ");
+	for (int i = 0; i < decayed.length; i++) {
+	    decStr = decStr.concat(decayed[i]+",");
+	}
+	String runStr = "runs = "+sweep.getRuns()+", decays = "+sweep.getDecays();
+
+	// write probability distribution
+	of.print("# runs = "+sweep.getRuns()+"\n");
+	writeHeader(of, decStr, runStr);
+	of.print("set title \"Probability Distribution ("+f.getName()+")\"\n");
+	of.print("set xlabel \"state (qubits: "+qubStr+")\"\n");
+	of.print("plot [*:*] [0:1] '-' with impulses \n");
+	double[] values = sweep.getProbDistribution();
+	for (int i = 0; i < values.length; i++) {
+	    of.print(values[i]+"\n");
+	}
+	of.close();
+
+	f = new File(fileName+counter+".fid");
+	of = new OutputFile(f.getAbsolutePath());
+
+	// write fidelity
+	of.print("# runs = "+sweep.getRuns()+"\n");
+	writeHeader(of, decStr, runStr);
+	of.print("set title \"Fidelity ("+f.getName()+")\"\n");
+	of.print("set xlabel \"step\"\n");
+	of.print("plot [*:*] [0:1] '-' with dots \n");
+	values = sweep.getFidelity();
+	for (int i = 0; i < values.length; i++) {
+	    of.print(values[i]+"\n");
 	}
 	of.close();
     }
@@ -841,11 +1334,26 @@ public class GateTableModel extends AbstractTableModel {
      * writes some header data for gnu readable file
      */
     private void writeHeader(OutputFile of) {
+	int[] values = decayedQubits.toArray();
+	StringBuffer bits = new StringBuffer("dec bits = ");
+	for (int i = 0; i < values.length; i++) bits.append(values[i]).append(',');
+
+	values = decaySteps.toArray();
+	StringBuffer steps = new StringBuffer("dec steps = ");
+	for (int i = 0; i < values.length; i++) steps.append(values[i]).append(',');
+	writeHeader(of, bits.toString(), steps.toString());
+    }
+
+    /**
+     * writes some header data for gnu readable file with the given labels
+     * describing the decays
+     */
+    private void writeHeader(OutputFile of, String decayBits, String decaySteps) {
 	of.print("# steps in circuit = "+ getStepCount()+"\n");
 
 	int simMode = getSimulationMode();
 
-	MathObject cp = Mathlib.getVar("circuit_properties");
+	MathObject cp = mathlib.getContext().getVar("circuit_properties");
 	if (cp != null) {
 	    Argument a = ((GateProperty)cp).getProperty("sigma");
 	    of.print("set label 2 \"sigma = "+((a == null || simMode == 0 || simMode == 2)? "0":a.toString())+"\" at 1,0.9\n");
@@ -857,19 +1365,8 @@ public class GateTableModel extends AbstractTableModel {
 	    of.print("set label 4 \"decay = "+((a == null || simMode == 0 || simMode == 1)? "0":a.toString())+"\" at 1,0.7\n");
 	}
 
-	Enumeration e = getDecayedQubits().elements();
-	String str = new String("dec bits = ");
-	while (e.hasMoreElements()) {
-	    str = str.concat(((Integer)e.nextElement()).intValue()+",");
-	}
-	of.print("set label 5 \""+str+"\" at 1,0.6\n");
-
-	e = getDecaySteps().elements();
-	str = new String("dec steps = ");
-	while (e.hasMoreElements()) {
-	    str = str.concat(((Integer)e.nextElement()).intValue()+",");
-	}
-	of.print("set label 6 \""+str+"\" at 1,0.5\n");
+	of.print("set label 5 \""+decayBits+"\" at 1,0.6\n");
+	of.print("set label 6 \""+decaySteps+"\" at 1,0.5\n");
 	of.print("set nokey\n");
     }
 
@@ -884,7 +1381,7 @@ public class GateTableModel extends AbstractTableModel {
      * @return double value
      */
     public double getCircuitProperty(String property) {
-	MathObject o = Mathlib.getVar("circuit_properties");
+	MathObject o = mathlib.getContext().getVar("circuit_properties");
 	if (o != null) {
 	    Argument a = ((GateProperty)o).getProperty(property);
 	    if (a != null) {
@@ -902,7 +1399,7 @@ public class GateTableModel extends AbstractTableModel {
      */
     public void setCircuitProperty(String property, double value) {
 	int action;
-	MathObject o = Mathlib.getVar("circuit_properties");
+	MathObject o = mathlib.getContext().getVar("circuit_properties");
 	GateProperty cp;
 	if (o == null) {
 	    action = MathlibEvent.ADD;
@@ -915,7 +1412,7 @@ public class GateTableModel extends AbstractTableModel {
 
 	cp.addProperty(property, new Complex(value));
 
-	Parse.fireMathlibEvent("circuit_properties", null, "current circuit", 
+	mathlib.getContext().fireMathlibEvent("circuit_properties", null, "current circuit", 
 			       cp, action);
     }
 
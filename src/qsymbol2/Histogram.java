@@ -58,19 +58,19 @@ public class Histogram extends Chart {
 
     protected void resizeChart(Dimension d, Insets insets) {
 	int width = d.width-insets.left-insets.right;
-	int number = (yValues.size() == 0)? width: width/yValues.size();
+	int number = (getYDataCount() == 0)? width: width/getYDataCount();
 
 	if (number <= 0) {
 	    int oldValuesPerBin = getValuesPerBin();
 	    setPixelPerTick(1);
-	    setValuesPerBin(new Double(Math.ceil(1.0*yValues.size()/width)).intValue());
-	    setXAxisRange(0, new Double(Math.ceil(1.0*yValues.size()/getValuesPerBin())).intValue()-1);
+	    setValuesPerBin(new Double(Math.ceil(1.0*getYDataCount()/width)).intValue());
+	    setXAxisRange(0, new Double(Math.ceil(1.0*getYDataCount()/getValuesPerBin())).intValue()-1);
 
 	}
 	else {
 	    setValuesPerBin(1);
 	    setPixelPerTick(number);
-	    setXAxisRange(0, yValues.size()-1);
+	    setXAxisRange(0, getYDataCount()-1);
 	}
     }
 
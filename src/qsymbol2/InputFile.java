@@ -52,11 +52,8 @@ public class InputFile {
 	String line = null;
 	try {
 	    line = br.readLine();
-	    int len = line.length();
-	    buf.setLength(len);
-	    for (int i = 0; i < len; i++)
-		buf.setCharAt(i, line.charAt(i));
-	    buf.setLength(len);
+	    buf.setLength(0);
+	    if (line != null) buf.append(line);
 	} catch (IOException e) {
 	    error("getLine() error reading line from" + fileName);
 	    buf.setLength(0);
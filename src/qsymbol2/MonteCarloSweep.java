@@ -0,0 +1,313 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+
+package qsymbol2;
+
+import java.util.*;
+import java.util.concurrent.RecursiveAction;
+
+import mathlib.Braket;
+import mathlib.CompiledGate;
+import mathlib.Decoherence;
+import mathlib.Measurement;
+import mathlib.ParallelKernel;
+import mathlib.RandomStream;
+
+/**
+ * <p>Monte Carlo simulation of a compiled circuit. Each run (trajectory)
+ * starts from a copy of the initial ket and has its own ket vectors and random
+ * generator, so that the runs are independent of each other and of the
+ * mathlib variables. The runs are distributed over the shared pool of 
+ * <tt>ParallelKernel</tt> for the number of threads and the results are 
+ * averaged: the fidelity of each step, the probability distribution of the
+ * final state and the number of decays.</p>
+ * <p>Run i draws from substream i of a random stream with the given seed, so
+ * the results do not depend on the number of threads.</p>
+ * @see CircuitProgram
+ * @see GateTableModel#dumpData(java.io.File, int[], MonteCarloSweep)
+ */
+public class MonteCarloSweep {
+
+    /** the circuit */
+    protected CircuitProgram program;
+    /** simulation mode (0 = ideal, 1 = operational errors, 2 = decoherence, 3 = both) */
+    protected int simulationMode;
+    /** initial state of each run */
+    protected Braket initial;
+    /** qubits of the probability distribution */
+    protected int[] qubits;
+    /** number of threads */
+    protected int threads;
+    /** qubit affected by decoherence, -1 for a random one */
+    protected int decayQubit = -1;
+    /** seed of the random generators */
+    protected long seed;
+    /** the random streams of the runs are derived from this one */
+    protected RandomStream streams;
+
+    /** number of completed runs */
+    protected int runs;
+    /** summed fidelity of each step */
+    protected double[] fidelity;
+    /** summed probability distribution */
+    protected double[] probabilities;
+    /** number of decays */
+    protected int decays;
+    /** number of decays of each qubit */
+    protected int[] decayedQubits;
+
+    /** results of the runs in progress, by run index minus first */
+    private Run[] pending;
+    /** index of the first run in progress */
+    private int first;
+
+    /**
+     * results of a single run
+     */
+    private static class Run {
+	/** fidelity of each step */
+	double[] fidelity;
+	/** probability distribution of the final state */
+	Vector distribution;
+	/** number of decays of each qubit */
+	int[] decayed;
+	/** number of decays */
+	int count;
+    }
+
+    /**
+     * creates a sweep of the given circuit. The initial ket is copied for each
+     * run. If qubits is null, the probability distribution covers all qubits.
+     */
+    public MonteCarloSweep(CircuitProgram program, int simulationMode, Braket initial, 
+			   int[] qubits) {
+	this.program = program;
+	this.simulationMode = simulationMode;
+	this.initial = initial;
+	if (qubits == null) {
+	    qubits = new int[initial.n];
+	    for (int i = 0; i < initial.n; i++) qubits[i] = i;
+	}
+	this.qubits = qubits;
+	threads = Runtime.getRuntime().availableProcessors();
+	setSeed(0);
+	program.fuse(simulationMode);
+	reset();
+    }
+
+    /**
+     * discards the results of previous runs
+     */
+    public synchronized void reset() {
+	runs = 0;
+	fidelity = new double[program.getLength()+1];
+	probabilities = new double[1 << qubits.length];
+	decays = 0;
+	decayedQubits = new int[initial.n];
+    }
+
+    /**
+     * sets the number of threads
+     */
+    public void setThreads(int threads) {
+	this.threads = (threads < 1) ? 1 : threads;
+    }
+
+    /**
+     * returns the number of threads
+     */
+    public int getThreads() {
+	return threads;
+    }
+
+    /**
+     * sets the qubit affected by decoherence, -1 for a random one
+     */
+    public void setDecayQubit(int qubit) {
+	decayQubit = qubit;
+    }
+
+    /**
+     * returns the qubit affected by decoherence, -1 for a random one
+     */
+    public int getDecayQubit() {
+	return decayQubit;
+    }
+
+    /**
+     * sets the seed of the random generators
+     */
+    public void setSeed(long seed) {
+	this.seed = seed;
+	streams = new RandomStream(seed);
+    }
+
+    /**
+     * performs the given number of runs and adds them to the results. The
+     * results are summed in the order of the runs, so the sums do not depend
+     * on the order in which the runs complete.
+     */
+    public synchronized void run(int repetitions) {
+	if (repetitions < 1) return;
+	first = runs;
+	pending = new Run[repetitions];
+	ParallelKernel.getPool(threads).invoke(new Runs(first, first+repetitions));
+
+	for (int r = 0; r < pending.length; r++) {
+	    Run run = pending[r];
+	    runs++;
+	    for (int i = 0; i < fidelity.length; i++) fidelity[i] += run.fidelity[i];
+	    for (int i = 0; i < probabilities.length; i++)
+		probabilities[i] += ((Double)run.distribution.elementAt(i)).doubleValue();
+	    decays += run.count;
+	    for (int i = 0; i < decayedQubits.length; i++) decayedQubits[i] += run.decayed[i];
+	}
+	pending = null;
+    }
+
+    /**
+     * fork/join task performing the runs lo, ..., hi-1
+     */
+    private class Runs extends RecursiveAction {
+	private int lo, hi;
+
+	Runs(int lo, int hi) {
+	    this.lo = lo;
+	    this.hi = hi;
+	}
+
+	protected void compute() {
+	    if (hi-lo == 1) trajectory(lo);
+	    else {
+		int mid = (lo+hi) >>> 1;
+		invokeAll(new Runs(lo, mid), new Runs(mid, hi));
+	    }
+	}
+    }
+
+    /**
+     * performs run number index and stores its results until all runs are
+     * done
+     */
+    protected void trajectory(int index) {
+	Random random = streams.substream(index);
+	boolean operational = (simulationMode == 1 || simulationMode == 3);
+	boolean decoherent = (simulationMode == 2 || simulationMode == 3);
+	boolean reference = (simulationMode != 0);
+
+	Braket q = new Braket(initial);
+	Braket refQ = reference ? new Braket(initial) : null;
+	int length = program.getLength();
+	double[] fid = new double[length+1];
+	int[] decayed = new int[initial.n];
+	int count = 0;
+	int step = 0;
+	int span;
+	double f;
+
+	fid[0] = 1;
+	while (step < length) {
+	    CompiledGate g = program.getGate(step);
+	    span = program.getSpan(step);
+
+	    // operational error
+	    if (operational) g.apply(q, program.getErrorCoefficients(step, random), random);
+	    else g.apply(q, null, random);
+
+	    // decoherence error
+	    if (decoherent) {
+		int qubit = Decoherence.decohere(q, program.getDecoherenceRate(step), 
+						 program.getDecayProbability(step), 
+						 decayQubit, random);
+		if (qubit != -1) {
+		    decayed[qubit]++;
+		    count++;
+		}
+	    }
+
+	    // reference qubit
+	    if (reference) f = g.applyFidelity(refQ, q, random);
+	    else f = 1;
+
+	    for (int i = 0; i < span; i++) fid[++step] = f;
+	}
+
+	Run run = new Run();
+	run.fidelity = fid;
+	run.distribution = Measurement.getProbDistribution(q, qubits);
+	// memory mapped kets give their disk space back right away
+	q.release();
+	if (refQ != null) refQ.release();
+	run.decayed = decayed;
+	run.count = count;
+	// each run has its own slot
+	pending[index-first] = run;
+    }
+
+    /**
+     * returns the number of completed runs
+     */
+    public synchronized int getRuns() {
+	return runs;
+    }
+
+    /**
+     * returns the mean fidelity of each step (starting with the initial state)
+     */
+    public synchronized double[] getFidelity() {
+	double[] mean = new double[fidelity.length];
+	for (int i = 0; i < mean.length; i++)
+	    mean[i] = (runs == 0) ? 0 : fidelity[i]/runs;
+	return mean;
+    }
+
+    /**
+     * returns the mean probability distribution of the final state
+     */
+    public synchronized double[] getProbDistribution() {
+	double[] mean = new double[probabilities.length];
+	for (int i = 0; i < mean.length; i++)
+	    mean[i] = (runs == 0) ? 0 : probabilities[i]/runs;
+	return mean;
+    }
+
+    /**
+     * returns the qubits of the probability distribution
+     */
+    public int[] getQubits() {
+	return qubits;
+    }
+
+    /**
+     * returns the total number of decays
+     */
+    public synchronized int getDecays() {
+	return decays;
+    }
+
+    /**
+     * returns the number of decays of each qubit
+     */
+    public synchronized int[] getDecayedQubits() {
+	return (int[])decayedQubits.clone();
+    }
+}
@@ -24,6 +24,9 @@ package qsymbol2;
 
 import java.io.*;
 
+import mathlib.MathObject;
+import mathlib.Rendering;
+
 public class OutputFile {
 
     String fileName;
@@ -53,6 +56,20 @@ public class OutputFile {
 	    pw.println(i);
     }
 
+    /**
+     * writes the parsable string of an object while it is rendered, so that
+     * large brakets are not built as a string first
+     */
+    public void printParseable (MathObject o) {
+	if (pw != null) {
+	    try {
+		Rendering.appendParseable(pw, o);
+	    } catch (IOException e) {
+		// a PrintWriter does not throw
+	    }
+	}
+    }
+
     public void close () {
 	if (pw != null)
 	    pw.close();
@@ -34,16 +34,17 @@ import mathlib.LOG;
 import mathlib.MathObject;
 import mathlib.MathObjectConstraints;
 import mathlib.Mathlib;
+import mathlib.MathlibBatchListener;
 import mathlib.MathlibEvent;
-import mathlib.MathlibEventListener;
 import mathlib.Matrix;
+import mathlib.Rendering;
 import mathlib.VarAuthority;
 
 /**
  * class implementing a panel which lists the variables of a Mathlib object and
  * allows to access the math engine directly.
  */
-public class QVarTree extends JPanel implements ActionListener, MathlibEventListener {
+public class QVarTree extends JPanel implements ActionListener, MathlibBatchListener {
 
     JTextField inputLine;
     JTextArea outputArea;
@@ -186,7 +187,7 @@ public class QVarTree extends JPanel implements ActionListener, MathlibEventList
     public void singleClick(TreePath path) {
 	String var = ((String)((DefaultMutableTreeNode)path.getLastPathComponent()).getUserObject());
 	MathObject m = math.getVar(var);
-	if (m != null) outputArea.append(var+" = \n"+m.toString()+"\n");
+	if (m != null) outputArea.append(var+" = \n"+Rendering.getConsole().render(m)+"\n");
     }
 
     /**
@@ -203,7 +204,7 @@ public class QVarTree extends JPanel implements ActionListener, MathlibEventList
         String expr = inputLine.getText();
 	try {
 	    String var = math.evaluateExpression(expr);
-	    outputArea.append(var+" = \n"+math.getVar(var).toString()+"\n");
+	    outputArea.append(var+" = \n"+Rendering.getConsole().render(math.getVar(var))+"\n");
 	} catch (Exception e) {
 	    //	    outputArea.append("exception: " + e.getMessage() + "\n");
 	}
@@ -261,6 +262,56 @@ public class QVarTree extends JPanel implements ActionListener, MathlibEventList
 
     }
 
+    /**
+     * updates the nodes of the variables changed in a batch, e.g. while a circuit
+     * is loaded. Each variable is inserted once into its final category and the
+     * tree is informed once for each changed category.
+     */
+    public void processBatch(MathlibEvent[] events) {
+	Hashtable changed = new Hashtable();
+	Vector names = new Vector();
+	Vector parents = new Vector();
+	DefaultMutableTreeNode node, parent;
+	String name, category;
+
+	for (int i = 0; i < events.length; i++) {
+	    name = events[i].getObjectName();
+	    if (changed.put(name, name) == null) names.add(name);
+	    if (events[i].getAction() == MathlibEvent.CHANGE_NAME) {
+		name = events[i].getNewName();
+		if (changed.put(name, name) == null) names.add(name);
+	    }
+	}
+
+	for (int i = 0; i < names.size(); i++) {
+	    name = (String)names.elementAt(i);
+	    node = (DefaultMutableTreeNode)nodes.remove(name);
+	    if (node != null && node.getParent() != null) {
+		parent = (DefaultMutableTreeNode)node.getParent();
+		parent.remove(node);
+		if (parents.contains(parent) == false) parents.add(parent);
+	    }
+	    if (math.getVar(name) == null) continue;
+
+	    category = varAuthority.whichCategory(name, math.getCategory(name));
+	    parent = (category == null) ? null : (DefaultMutableTreeNode)nodes.get(category);
+	    if (parent == null) continue;
+	    node = new DefaultMutableTreeNode(name);
+	    nodes.put(name, node);
+	    parent.add(node);
+	    if (parents.contains(parent) == false) parents.add(parent);
+	}
+
+	model = (DefaultTreeModel)tree.getModel();
+	for (int i = 0; i < parents.size(); i++) {
+	    parent = (DefaultMutableTreeNode)parents.elementAt(i);
+	    TreePath path = new TreePath(parent.getPath());
+	    boolean expanded = tree.isExpanded(path);
+	    model.nodeStructureChanged(parent);
+	    if (expanded) tree.expandPath(path);
+	}
+    }
+
     /**
      * builds the children of a category node and returns the category node.
      * @return category node
@@ -34,7 +34,8 @@ import mathlib.MathlibEventListener;
 import mathlib.Measurement;
 import mathlib.Parse;
 
-public class QubitChart extends Histogram implements MathlibEventListener, ComputationEventListener {
+public class QubitChart extends Histogram 
+    implements MathlibEventListener, ComputationEventListener, TraceListener {
     public static final int PROBABILITY_CHART = 0;
     public static final int REAMPLITUDE_CHART = 1;
     public static final int IMAMPLITUDE_CHART = 2;
@@ -44,6 +45,14 @@ public class QubitChart extends Histogram implements MathlibEventListener, Compu
     protected int type;
     protected boolean listen;
     protected GateTable table;
+    /** the fidelity trace followed by the fidelity chart */
+    protected DoubleTrace trace;
+    /** copy of the values of the trace plotted by the fidelity chart */
+    private double[] traceValues = new double[16];
+    /** number of values of the trace copied so far */
+    private int traceCount;
+    /** smallest size of the trace reported since the last update */
+    private int removedSize = Integer.MAX_VALUE;
 
     public QubitChart(GateTable table, int type, int[] qubits) {
 	super();
@@ -90,9 +99,9 @@ public class QubitChart extends Histogram implements MathlibEventListener, Compu
 		int i = 0;
 		// bin the values
 		for (int j = 0; j < getValuesPerBin(); j++) {
-		    if (index*getValuesPerBin()+j < yValues.size()) {
+		    if (index*getValuesPerBin()+j < traceCount) {
 			i++;
-			yValue += ((Double)yValues.elementAt(index*getValuesPerBin()+j)).doubleValue();
+			yValue += traceValues[index*getValuesPerBin()+j];
 		    }
 		}
 		return yValue/i;
@@ -107,12 +116,27 @@ public class QubitChart extends Histogram implements MathlibEventListener, Compu
 	    }
 
 	}
+	else if (type == FIDELITY_CHART) return traceValues[index];
 	else return ((Double)yValues.elementAt(index)).doubleValue();
     }
 
+    /**
+     * returns the number of values, for the fidelity chart the number of 
+     * values of the trace
+     */
+    public int getYDataCount() {
+	if (type == FIDELITY_CHART) return traceCount;
+	return super.getYDataCount();
+    }
+
     private void updateDataVector() {
 	double prob;
 
+	if (type == FIDELITY_CHART) {
+	    setPlotStyle(POINT_STYLE);
+	    followTrace(table.getFidelityTrace());
+	    return;
+	}
 	yValues.removeAllElements();
 
 	// fetch qubits
@@ -141,21 +165,71 @@ public class QubitChart extends Histogram implements MathlibEventListener, Compu
 		    }
 		    yAxisRange.setRange(-1,1);
 		}
-		else if (type == FIDELITY_CHART) {
-		    setPlotStyle(POINT_STYLE);
-		    Enumeration e = table.getFidelityVector().elements();
-		    while (e.hasMoreElements()) {
-			yValues.addElement(e.nextElement());
-		    }
-		    xAxisRange.setRange(0, yValues.size()-1);
-		    yAxisRange.setRange(0, 1);
-		}
 		//		xAxisRange.setRange(0, BinaryOp.pow(2, qubits.length)-1);
 	    }
 	}
 
     }
 
+    /**
+     * follows the given trace: listens to it and brings the plotted values up
+     * to date. Only values added since the last update are copied; values
+     * removed in the meantime are copied again even if the trace has grown
+     * back to its old size.
+     */
+    private void followTrace(DoubleTrace t) {
+	if (t != trace) {
+	    if (trace != null) trace.removeTraceListener(this);
+	    trace = t;
+	    trace.addTraceListener(this);
+	    traceCount = 0;
+	    removedSize = Integer.MAX_VALUE;
+	}
+
+	synchronized (trace) {
+	    int size = trace.size();
+	    int keep = Math.min(Math.min(traceCount, removedSize), size);
+	    removedSize = Integer.MAX_VALUE;
+	    if (size > traceValues.length) {
+		double[] values = new double[Math.max(size, 2*traceValues.length)];
+		System.arraycopy(traceValues, 0, values, 0, keep);
+		traceValues = values;
+	    }
+	    double[] values = trace.toArray(keep, size);
+	    System.arraycopy(values, 0, traceValues, keep, values.length);
+	    traceCount = size;
+	}
+	xAxisRange.setRange(0, traceCount-1);
+	yAxisRange.setRange(0, 1);
+    }
+
+    /**
+     * brings the values of the fidelity chart up to date before painting, in
+     * the event dispatch thread
+     */
+    public void paint(java.awt.Graphics g) {
+	if (type == FIDELITY_CHART && trace != null) followTrace(trace);
+	super.paint(g);
+    }
+
+    /**
+     * repaints the fidelity chart, which appends the new values
+     */
+    public void valuesAdded(Trace t, int from, int to) {
+	if (type == FIDELITY_CHART && isVisible() && listen) repaint();
+    }
+
+    /**
+     * remembers the size for the next update and repaints the fidelity chart,
+     * which drops the removed values
+     */
+    public void valuesRemoved(Trace t, int size) {
+	synchronized (t) {
+	    if (size < removedSize) removedSize = size;
+	}
+	if (type == FIDELITY_CHART && isVisible() && listen) repaint();
+    }
+
     public String getAxisTick(int pos) {
 	if (getYDataCount() < 16 && type != FIDELITY_CHART) return Braket.getBasisString(xAxisRange.getLowerBound()+pos, qubits.length, false);
 	else return ""+(xAxisRange.getLowerBound()+pos);
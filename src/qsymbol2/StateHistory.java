@@ -0,0 +1,352 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+
+package qsymbol2;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+import mathlib.Braket;
+import mathlib.RandomStream;
+
+/**
+ * <p>checkpoints of a computation in forward direction, so that an earlier step
+ * can be reached by restoring the nearest checkpoint before it and replaying
+ * the steps from there. Unlike stepping backward with the adjoint gates this
+ * works beyond measurements and preparations and reproduces noisy runs, since
+ * the random generator is part of the checkpoint.</p>
+ * <p>The kets are kept deflated. A checkpoint is taken every 
+ * <tt>interval</tt> steps (system property jaquzzi.checkpoint, 16 by default);
+ * if the checkpoints exceed the memory budget (system property 
+ * jaquzzi.history in MB, 64 by default, 0 switches the history off) every
+ * other one is dropped and the interval is doubled. Kets that can not fit
+ * into the budget switch the history off until it is cleared.</p>
+ * @see GateTableModel#restoreCheckpoint(int)
+ */
+public class StateHistory {
+
+    /**
+     * state of the computation before a given step
+     */
+    public static class Checkpoint {
+	/** the step */
+	protected int step;
+	/** deflated ket and reference ket (null if there is none) */
+	protected byte[] qubits, refQubits;
+	/** random generator at the step, null if it can not be copied */
+	protected RandomStream random;
+	/** number of fidelity values and decays recorded so far */
+	protected int fidelityCount, decayCount;
+	/** step of the last irreversible gate */
+	protected int reverseVetoStep;
+
+	/**
+	 * returns the step
+	 */
+	public int getStep() {
+	    return step;
+	}
+
+	/**
+	 * returns a new copy of the ket
+	 */
+	public Braket getQubits() {
+	    return decode(qubits);
+	}
+
+	/**
+	 * returns a new copy of the reference ket or null
+	 */
+	public Braket getRefQubits() {
+	    return (refQubits == null) ? null : decode(refQubits);
+	}
+
+	/**
+	 * returns a new copy of the random generator or null
+	 */
+	public RandomStream getRandom() {
+	    return (random == null) ? null : random.copy();
+	}
+
+	/**
+	 * returns the number of fidelity values recorded before the step
+	 */
+	public int getFidelityCount() {
+	    return fidelityCount;
+	}
+
+	/**
+	 * returns the number of decays recorded before the step
+	 */
+	public int getDecayCount() {
+	    return decayCount;
+	}
+
+	/**
+	 * returns the step of the last irreversible gate before the step
+	 */
+	public int getReverseVetoStep() {
+	    return reverseVetoStep;
+	}
+
+	/**
+	 * returns the memory taken by the kets in bytes
+	 */
+	public int getSize() {
+	    return qubits.length + ((refQubits == null) ? 0 : refQubits.length);
+	}
+    }
+
+    /** memory budget in bytes */
+    private long budget;
+    /** initial number of steps between checkpoints */
+    private int initialInterval;
+    /** number of steps between checkpoints */
+    private int interval;
+    /** the checkpoints in increasing order of their steps */
+    private Vector checkpoints = new Vector();
+    /** memory taken by the checkpoints */
+    private long size;
+    /** true if the kets do not fit into the budget */
+    private boolean disabled;
+
+    /**
+     * creates a history with the budget and interval given by the system 
+     * properties
+     */
+    public StateHistory() {
+	this(Long.getLong("jaquzzi.history", 64).longValue() << 20,
+	     Integer.getInteger("jaquzzi.checkpoint", 16).intValue());
+    }
+
+    /**
+     * creates a history with the given memory budget (in bytes) and number of
+     * steps between checkpoints
+     */
+    public StateHistory(long budget, int interval) {
+	this.budget = budget;
+	initialInterval = (interval < 1) ? 1 : interval;
+	this.interval = initialInterval;
+    }
+
+    /**
+     * removes all checkpoints
+     */
+    public synchronized void clear() {
+	checkpoints.removeAllElements();
+	size = 0;
+	interval = initialInterval;
+	disabled = false;
+    }
+
+    /**
+     * returns true if a checkpoint should be taken before the given step
+     */
+    public synchronized boolean isDue(int step) {
+	if (budget <= 0 || disabled) return false;
+	if (checkpoints.isEmpty()) return true;
+	return step >= ((Checkpoint)checkpoints.lastElement()).step + interval;
+    }
+
+    /**
+     * adds a checkpoint for the given step. Later checkpoints are dropped.
+     * @param step the step that is executed next
+     * @param qubits the ket
+     * @param refQubits the reference ket or null
+     * @param random the random generator, only copied if it is a RandomStream
+     * @param fidelityCount number of fidelity values recorded so far
+     * @param decayCount number of decays recorded so far
+     * @param reverseVetoStep step of the last irreversible gate
+     */
+    public synchronized void record(int step, Braket qubits, Braket refQubits, Random random,
+				    int fidelityCount, int decayCount, int reverseVetoStep) {
+	truncate(step-1);
+	if (estimate(qubits) + estimate(refQubits) > budget) {
+	    disabled = true;
+	    return;
+	}
+	Checkpoint c = new Checkpoint();
+	c.step = step;
+	c.qubits = encode(qubits);
+	c.refQubits = (refQubits == null) ? null : encode(refQubits);
+	c.random = (random instanceof RandomStream) ? ((RandomStream)random).copy() : null;
+	c.fidelityCount = fidelityCount;
+	c.decayCount = decayCount;
+	c.reverseVetoStep = reverseVetoStep;
+	checkpoints.addElement(c);
+	size += c.getSize();
+
+	// thin out: keep the first and every other checkpoint
+	while (size > budget && checkpoints.size() > 1) {
+	    for (int i = checkpoints.size()-1; i > 0; i -= 2) {
+		size -= ((Checkpoint)checkpoints.elementAt(i)).getSize();
+		checkpoints.removeElementAt(i);
+	    }
+	    interval *= 2;
+	}
+	// a single checkpoint that does not fit is useless
+	if (size > budget) {
+	    truncate(-1);
+	    disabled = true;
+	}
+    }
+
+    /**
+     * returns the last checkpoint at or before the given step, or null
+     */
+    public synchronized Checkpoint find(int step) {
+	for (int i = checkpoints.size()-1; i >= 0; i--) {
+	    Checkpoint c = (Checkpoint)checkpoints.elementAt(i);
+	    if (c.step <= step) return c;
+	}
+	return null;
+    }
+
+    /**
+     * drops the checkpoints after the given step
+     */
+    public synchronized void truncate(int step) {
+	while (!checkpoints.isEmpty() && 
+	       ((Checkpoint)checkpoints.lastElement()).step > step) {
+	    size -= ((Checkpoint)checkpoints.lastElement()).getSize();
+	    checkpoints.removeElementAt(checkpoints.size()-1);
+	}
+    }
+
+    /**
+     * returns the number of checkpoints
+     */
+    public synchronized int getCount() {
+	return checkpoints.size();
+    }
+
+    /**
+     * returns the memory taken by the checkpoints in bytes
+     */
+    public synchronized long getSize() {
+	return size;
+    }
+
+    /**
+     * returns the number of steps between checkpoints
+     */
+    public synchronized int getInterval() {
+	return interval;
+    }
+
+    /**
+     * returns true if the kets did not fit into the budget
+     */
+    public synchronized boolean isDisabled() {
+	return disabled;
+    }
+
+    /**
+     * returns an upper bound of the memory the encoded ket takes in bytes,
+     * ignoring the compression
+     */
+    private static long estimate(Braket q) {
+	if (q == null) return 0;
+	if (q.isSparse()) return 24 * q.countNonZero();
+	return 16L * q.dimension;
+    }
+
+    /**
+     * returns the deflated components of the ket. The storage mode and the
+     * orientation (bra or ket) are kept.
+     */
+    private static byte[] encode(Braket q) {
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	try {
+	    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+		new DeflaterOutputStream(bytes, deflater), 1 << 16));
+	    out.writeInt(q.n);
+	    out.writeBoolean(q.isSparse());
+	    out.writeBoolean(q.isPrimitive());
+	    out.writeBoolean(q.isBra());
+	    if (q.isSparse()) {
+		long[] keys = q.nonZeroIndices();
+		out.writeInt(keys.length);
+		for (int i = 0; i < keys.length; i++) {
+		    out.writeLong(keys[i]);
+		    out.writeDouble(q.re(keys[i]));
+		    out.writeDouble(q.im(keys[i]));
+		}
+	    }
+	    else {
+		for (int i = 0; i < q.dimension; i++) {
+		    out.writeDouble(q.re(i));
+		    out.writeDouble(q.im(i));
+		}
+	    }
+	    out.close();
+	}
+	catch (IOException e) {
+	    // not thrown by byte array streams
+	    throw new RuntimeException(e.toString());
+	}
+	finally {
+	    deflater.end();
+	}
+	return bytes.toByteArray();
+    }
+
+    /**
+     * returns a new ket with the encoded components
+     */
+    private static Braket decode(byte[] data) {
+	Inflater inflater = new Inflater();
+	try {
+	    DataInputStream in = new DataInputStream(new BufferedInputStream(
+		new InflaterInputStream(new ByteArrayInputStream(data), inflater), 1 << 16));
+	    int n = in.readInt();
+	    boolean sparse = in.readBoolean();
+	    boolean primitive = in.readBoolean();
+	    boolean bra = in.readBoolean();
+	    Braket q = new Braket(n, sparse);
+	    if (bra) q.transpose();
+	    if (sparse) {
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+		    long key = in.readLong();
+		    q.set(key, in.readDouble(), in.readDouble());
+		}
+	    }
+	    else {
+		q.setPrimitive(primitive);
+		for (int i = 0; i < q.dimension; i++) {
+		    double re = in.readDouble(), im = in.readDouble();
+		    if (re != 0 || im != 0) q.set(i, re, im);
+		}
+	    }
+	    return q;
+	}
+	catch (IOException e) {
+	    throw new RuntimeException(e.toString());
+	}
+	finally {
+	    inflater.end();
+	}
+    }
+}
@@ -34,7 +34,9 @@ import mathlib.MathlibEvent;
 import mathlib.MathlibEventListener;
 import mathlib.Measurement;
 import mathlib.Parse;
+import mathlib.Rendering;
 
+import java.io.*;
 import java.util.*;
 
 public class StateWindow extends JPanel implements MathlibEventListener, ComputationEventListener {
@@ -87,35 +89,53 @@ public class StateWindow extends JPanel implements MathlibEventListener, Computa
     }
 
     protected void updateText() {
+	Rendering r = Rendering.getConsole();
+	StringBuilder str = new StringBuilder();
 	if ("fidelity".equals(var)) {
-	    String str = new String("");
-	    str = str.concat("Fidelity:\n");
-	    Vector v = table.getFidelityVector();
-	    for (int i = 0; i< v.size(); i++) {
-		str = str.concat(Easy.format(((Double)v.elementAt(i)).doubleValue(),5) + " ");
+	    str.append("Fidelity:\n");
+	    // every value takes at least two characters, so only the values that
+	    // can be shown are copied
+	    DoubleTrace trace = table.getFidelityTrace();
+	    int size = trace.size();
+	    double[] v = trace.toArray(0, (int)Math.min(size, r.getLength()/2L + 1));
+	    int i;
+	    for (i = 0; i< v.length && !r.isFull(str, 0); i++) {
+		str.append(Easy.format(v[i],5) + " ");
 	    }
-	    textArea.setText(str);
+	    if (i < size) str.append("...");
 	}
 	else if ("prob".equals(var)) {
-	    String str = new String("");
-	    str = str.concat("probability distribution:\n");
+	    str.append("probability distribution:\n");
 	    Vector v = Measurement.getProbDistribution((Braket)Mathlib.getVar(GatePanel.qubits), qubits);
-	    for (int i = 0; i< v.size(); i++) {
-		str = str.concat(Easy.format(((Double)v.elementAt(i)).doubleValue(),5) + " ");
-	    }
-	    textArea.setText(str);
+	    appendValues(str, v, r);
 	}
 	else if ("probIdeal".equals(var)) {
-	    String str = new String("");
-	    str = str.concat("ideal probability distribution:\n");
+	    str.append("ideal probability distribution:\n");
 	    Braket q = ((Mathlib.getVar(GatePanel.refQubits) == null)? (Braket)Mathlib.getVar(GatePanel.qubits): (Braket)Mathlib.getVar(GatePanel.refQubits));
 	    Vector v = Measurement.getProbDistribution(q, qubits);
-	    for (int i = 0; i< v.size(); i++) {
-		str = str.concat(Easy.format(((Double)v.elementAt(i)).doubleValue(),5) + " ");
+	    appendValues(str, v, r);
+	}
+	else {
+	    str.append(var+"\n");
+	    try {
+		r.append(str, mathlib.getVar(var));
+	    } catch (IOException e) {
+		// a StringBuilder does not throw
 	    }
-	    textArea.setText(str);
 	}
-	else textArea.setText(var+"\n"+mathlib.getVar(var).toString());
+	textArea.setText(str.toString());
+    }
+
+    /**
+     * appends the values of a distribution up to the length of the rendering,
+     * followed by "..." if values are left out
+     */
+    private static void appendValues(StringBuilder str, Vector v, Rendering r) {
+	int i;
+	for (i = 0; i< v.size() && !r.isFull(str, 0); i++) {
+	    str.append(Easy.format(((Double)v.elementAt(i)).doubleValue(),5) + " ");
+	}
+	if (i < v.size()) str.append("...");
     }
 
     public void setVisible(boolean visible) {
@@ -0,0 +1,128 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+
+package qsymbol2;
+
+import java.util.*;
+
+/**
+ * a growable sequence of primitive values recorded during a computation, like
+ * the fidelity of each step. The values are kept in segments of 4096, so 
+ * appending never copies the values recorded so far and millions of steps
+ * need no boxed objects. Listeners are told which values were added or 
+ * removed, so that views can update incrementally.
+ * <p>The methods are synchronized: values are recorded by the calculation 
+ * thread and read by the event dispatch thread.</p>
+ * @see DoubleTrace
+ * @see IntTrace
+ */
+public abstract class Trace {
+
+    /** number of values per segment is 2^SEGMENT_BITS */
+    protected static final int SEGMENT_BITS = 12;
+    protected static final int SEGMENT_MASK = (1 << SEGMENT_BITS) - 1;
+
+    /** number of values */
+    protected int size;
+    /** the registered TraceListeners */
+    private Vector listeners = new Vector();
+
+    /**
+     * returns the number of values
+     */
+    public synchronized int size() {
+	return size;
+    }
+
+    /**
+     * removes the values from index size on. Larger sizes are ignored.
+     */
+    public void setSize(int size) {
+	synchronized (this) {
+	    if (size >= this.size) return;
+	    this.size = size;
+	    trimSegments((size + SEGMENT_MASK) >>> SEGMENT_BITS);
+	}
+	fireValuesRemoved(size);
+    }
+
+    /**
+     * removes all values
+     */
+    public void clear() {
+	setSize(0);
+    }
+
+    /**
+     * makes room for the value at index size, allocating a new segment if
+     * needed. Called with the lock held.
+     */
+    protected void grow() {
+	int segment = size >>> SEGMENT_BITS;
+	if ((size & SEGMENT_MASK) == 0) {
+	    if (segment == segmentCount()) growSegments(Math.max(4, 2*segment));
+	    allocateSegment(segment);
+	}
+    }
+
+    /** returns the capacity of the segment directory */
+    protected abstract int segmentCount();
+
+    /** enlarges the segment directory to the given capacity */
+    protected abstract void growSegments(int count);
+
+    /** allocates the given segment */
+    protected abstract void allocateSegment(int segment);
+
+    /** releases all segments from the given one on */
+    protected abstract void trimSegments(int segment);
+
+    /**
+     * adds a listener that is notified about added and removed values
+     */
+    public void addTraceListener(TraceListener l) {
+	listeners.addElement(l);
+    }
+
+    /**
+     * removes a listener
+     */
+    public void removeTraceListener(TraceListener l) {
+	listeners.removeElement(l);
+    }
+
+    /**
+     * notifies the listeners that the values from, ..., to-1 have been added
+     */
+    protected void fireValuesAdded(int from, int to) {
+	for (int i = 0; i < listeners.size(); i++)
+	    ((TraceListener)listeners.elementAt(i)).valuesAdded(this, from, to);
+    }
+
+    /**
+     * notifies the listeners that the values from index size on have been removed
+     */
+    protected void fireValuesRemoved(int size) {
+	for (int i = 0; i < listeners.size(); i++)
+	    ((TraceListener)listeners.elementAt(i)).valuesRemoved(this, size);
+    }
+}
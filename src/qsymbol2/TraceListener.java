@@ -0,0 +1,40 @@
+//  jaQuzzi 0.1 - Interactive Quantum Computer Simulator    
+//  Copyright (C) 2000  Felix Schuermann
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 2 of the License, or
+//  any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program; if not, write to the Free Software
+//  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+//
+//  The author can be reached under: fschuermann@usa.net
+//  
+//  A full copy of the source can be obtained from: 
+//  www.physics.buffalo.edu/~phygons/jaQuzzi
+
+package qsymbol2;
+
+/**
+ * interface for objects that follow a trace incrementally
+ * @see Trace#addTraceListener(TraceListener)
+ */
+public interface TraceListener {
+
+    /**
+     * invoked after the values from, ..., to-1 have been appended to the trace
+     */
+    public void valuesAdded(Trace trace, int from, int to);
+
+    /**
+     * invoked after the values from index size on have been removed
+     */
+    public void valuesRemoved(Trace trace, int size);
+}